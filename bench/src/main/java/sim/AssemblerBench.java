@@ -0,0 +1,39 @@
+package sim;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Assemblage de sources synthétiques de grande taille : assembleur d'origine ({@code legacy})
+ * contre l'analyse par octets de {@link MiniAssembler_V6} ({@code stream}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class AssemblerBench {
+    @Param({"1000", "10000"})
+    public int lines;
+
+    @Param({"legacy", "stream"})
+    public String impl;
+
+    private String source;
+    private CPU6809_V6 cpu;
+    private MiniAssembler_V6 assembler;
+    private LegacyAssembler legacy;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        source = RandomPrograms.generate(new Random(6809), lines);
+        cpu = new CPU6809_V6();
+        assembler = new MiniAssembler_V6();
+        legacy = new LegacyAssembler();
+    }
+
+    @Benchmark
+    public boolean assemble() throws Exception {
+        return impl.equals("legacy") ? legacy.assemble(source, cpu) : assembler.assemble(source, cpu);
+    }
+}
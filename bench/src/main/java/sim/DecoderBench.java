@@ -0,0 +1,81 @@
+package sim;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Débit du décodeur par famille d'instructions et par niveau d'exécution
+ * (pas à pas par le switch fusionné ou par les seules tables de dispatch, cache de blocs, JIT).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(DecoderBench.INSTRUCTIONS)
+public class DecoderBench {
+    static final int INSTRUCTIONS = 10_000;
+    // Instructions exécutées sur chaque famille avant la mesure
+    static final int PROFILE_INSTRUCTIONS = 2_000_000;
+    static final String[] MIXES = {"loadStore", "inhAlu", "branchLoop", "indexed"};
+
+    @Param({"loadStore", "inhAlu", "branchLoop", "indexed"})
+    public String mix;
+
+    @Param({"switch", "table", "block", "jit"})
+    public String engine;
+
+    private CPU6809_V6 cpu;
+    private InstructionDecoder_V6 decoder;
+    private JitTier tier;
+
+    /**
+     * Chaque fork ne mesure qu'une famille : sans passage préalable par les autres, C2 spécialiserait
+     * le switch (ou l'appel de handler) sur les trois ou quatre opcodes d'une seule boucle, ce qu'aucun
+     * programme réel ne permet. Le profil est donc d'abord nourri par les quatre familles.
+     */
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        for (String other : MIXES) {
+            CPU6809_V6 warm = machine(other);
+            InstructionDecoder_V6 warmDecoder = decoder(warm);
+            execute(warmDecoder, new JitTier(warm, warmDecoder), PROFILE_INSTRUCTIONS);
+        }
+        cpu = machine(mix);
+        decoder = decoder(cpu);
+        tier = new JitTier(cpu, decoder);
+    }
+
+    @Benchmark
+    public int run() throws Exception {
+        execute(decoder, tier, INSTRUCTIONS);
+        return cpu.PC;
+    }
+
+    private static CPU6809_V6 machine(String mix) throws Exception {
+        CPU6809_V6 cpu = new CPU6809_V6();
+        cpu.setLazyFlags(true);
+        new MiniAssembler_V6().assemble(Programs.byName(mix), cpu);
+        return cpu;
+    }
+
+    private InstructionDecoder_V6 decoder(CPU6809_V6 cpu) {
+        InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+        decoder.setTablesOnly(engine.equals("table"));
+        return decoder;
+    }
+
+    private void execute(InstructionDecoder_V6 decoder, JitTier tier, int instructions) throws Exception {
+        switch (engine) {
+            case "switch":
+            case "table":
+                for (int i = 0; i < instructions; i++) decoder.executeNext();
+                break;
+            case "block":
+                for (int i = 0; i < instructions; ) i += decoder.executeBlock();
+                break;
+            default:
+                for (int i = 0; i < instructions; ) i += tier.executeBlock();
+                break;
+        }
+    }
+}
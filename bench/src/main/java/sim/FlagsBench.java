@@ -0,0 +1,52 @@
+package sim;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coût des helpers updateFlags* : calcul immédiat vs flags paresseux.
+ * Une lecture de Z toutes les 4 opérations (branchement) et de CC toutes les 64 (affichage).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(FlagsBench.OPS)
+public class FlagsBench {
+    static final int OPS = 1024;
+
+    @Param({"false", "true"})
+    public boolean lazy;
+
+    private CPU6809_V6 cpu;
+    private int seed = 0x1234;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        cpu = new CPU6809_V6();
+        cpu.setLazyFlags(lazy);
+    }
+
+    @Benchmark
+    public int updateFlags() {
+        int acc = 0;
+        int v = seed;
+        for (int i = 0; i < OPS; i++) {
+            v = v * 1103515245 + 12345;
+            int a = (v >>> 8) & 0xFF;
+            int b = (v >>> 16) & 0xFF;
+            switch (i & 3) {
+                case 0: cpu.updateFlagsAdd8(a, b, a + b); break;
+                case 1: cpu.updateFlagsNZ(a, false); break;
+                case 2: cpu.updateFlagsInc8(a, (a + 1) & 0xFF); break;
+                default:
+                    cpu.updateFlagsAdd16(v & 0xFFFF, b, (v & 0xFFFF) + b);
+                    if (cpu.testFlag(CPU6809_V6.FLAG_Z)) acc++;
+                    break;
+            }
+            if ((i & 63) == 63) acc += cpu.getCC();
+        }
+        seed = v;
+        return acc;
+    }
+}
@@ -0,0 +1,53 @@
+package sim;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Accès mémoire du décodeur (readMem/writeMem) sur les 64 Ko selon le stockage,
+ * le suivi des cases révélées et la présence d'un terminal projeté en $D000.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(65536)
+public class MemoryBench {
+    @Param({"byte", "direct", "int"})
+    public String backend;
+
+    @Param({"false", "true"})
+    public boolean reveal;
+
+    @Param({"false", "true"})
+    public boolean terminal;
+
+    private CPU6809_V6 cpu;
+    private InstructionDecoder_V6 decoder;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        cpu = new CPU6809_V6(Memory.create(backend));
+        cpu.setRevealTracking(reveal);
+        decoder = new InstructionDecoder_V6(cpu);
+        if (terminal) {
+            StringBuilder output = new StringBuilder();
+            cpu.bus.mapDevice(TerminalDevice.BASE, new TerminalDevice(c -> output.append((char) c)));
+        }
+    }
+
+    @Benchmark
+    public int read() {
+        int sum = 0;
+        for (int addr = 0; addr < 65536; addr++) sum += decoder.readMem(addr);
+        return sum;
+    }
+
+    @Benchmark
+    public void write() {
+        // $D000 exclu : le terminal n'est pas l'objet de la mesure
+        for (int addr = 0; addr < 65536; addr++) {
+            if (addr != 0xD000) decoder.writeMem(addr, addr);
+        }
+    }
+}
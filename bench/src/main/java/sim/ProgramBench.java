@@ -0,0 +1,35 @@
+package sim;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exécutions complètes sans interface (assemblage + exécution via BatchRunner).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProgramBench {
+    private String straightLine;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        straightLine = RandomPrograms.generate(new Random(6809), 2000);
+    }
+
+    @Benchmark
+    public BatchRunner.StopReason straightLineToHalt() throws Exception {
+        BatchRunner runner = new BatchRunner();
+        runner.load(straightLine);
+        return runner.run(BatchRunner.DEFAULT_MAX_INSTRUCTIONS);
+    }
+
+    @Benchmark
+    public BatchRunner.StopReason loop100kInstructions() throws Exception {
+        BatchRunner runner = new BatchRunner();
+        runner.load(Benchmarks.LOOP_PROGRAM);
+        return runner.run(100_000);
+    }
+}
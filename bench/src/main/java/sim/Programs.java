@@ -0,0 +1,65 @@
+package sim;
+
+/**
+ * Programmes de référence des benchmarks : boucles infinies, une par famille d'instructions.
+ * Les cibles de saut restent des adresses absolues, pour garder les résultats comparables
+ * à ceux mesurés avant l'ajout des étiquettes.
+ */
+final class Programs {
+    static final String LOAD_STORE =
+            "LDX #$2000\n" +
+            "LDA $2000     ; $0003\n" +
+            "STA $2001\n" +
+            "LDD $2002\n" +
+            "STD $2004\n" +
+            "LDB <$40\n" +
+            "STB <$41\n" +
+            "LDX $2006\n" +
+            "STX $2008\n" +
+            "JMP $0003\n";
+
+    static final String INH_ALU =
+            "LDA #$01\n" +
+            "INCA          ; $0002\n" +
+            "ASLA\n" +
+            "ROLB\n" +
+            "COMA\n" +
+            "NEGB\n" +
+            "LSRA\n" +
+            "RORB\n" +
+            "TSTA\n" +
+            "DECA\n" +
+            "CLRB\n" +
+            "BRA $0002\n";
+
+    static final String BRANCH_LOOP =
+            "LDA #$10\n" +
+            "DECA          ; $0002\n" +
+            "BNE $0002\n" +
+            "BRA $0000\n";
+
+    // Les offsets non nuls évitent que l'octet d'offset soit interprété comme HALT
+    static final String INDEXED =
+            "LDX #$2000\n" +
+            "LDY #$3000\n" +
+            "LDA 1,X       ; $0007\n" +
+            "STA 2,Y\n" +
+            "LDD 3,X\n" +
+            "STD 4,Y\n" +
+            "LDB 5,X\n" +
+            "STB 6,Y\n" +
+            "BRA $0007\n";
+
+    private Programs() {
+    }
+
+    static String byName(String name) {
+        switch (name) {
+            case "loadStore": return LOAD_STORE;
+            case "inhAlu": return INH_ALU;
+            case "branchLoop": return BRANCH_LOOP;
+            case "indexed": return INDEXED;
+            default: throw new IllegalArgumentException(name);
+        }
+    }
+}
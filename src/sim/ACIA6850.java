@@ -0,0 +1,205 @@
+package sim;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Liaison série 6850 (page $D2 par défaut), reliée à des flux locaux (fichiers, tubes).
+ * <pre>
+ * $00 lecture : STATUS   bit 0 RDRF (octet reçu), bit 1 TDRE (émission libre), bit 5 OVRN (octet perdu),
+ *                        bit 7 IRQ
+ *     écriture : CONTROL bits 0-1 diviseur (1, 16, 64 ; 11 = reset maître), bits 2-4 format,
+ *                        bits 5-6 émission (01 = interruption sur TDRE), bit 7 interruption en réception
+ * $01 lecture : RDR (efface RDRF et OVRN)  écriture : TDR
+ * </pre>
+ * La durée d'un caractère vaut bits de trame x diviseur x {@code clockCycles} cycles CPU.
+ * L'émission et la réception sont des échéances de la roue temporelle, une par caractère :
+ * l'octet émis est écrit dans le flux de sortie à la fin de sa trame ; le flux d'entrée est
+ * consulté à chaque durée de caractère, sans blocage ({@link InputStream#available()}), et plus
+ * rarement ({@link #IDLE_POLL} caractères) tant qu'il est vide. La fin du flux arrête la réception.
+ */
+public class ACIA6850 extends Peripheral {
+    public static final int BASE = 0xD200;
+    public static final int STATUS = 0x00, DATA = 0x01;
+    public static final int RDRF = 0x01, TDRE = 0x02, OVRN = 0x20, IRQ = 0x80;
+    public static final int MASTER_RESET = 0x03, TX_IRQ = 0x20, TX_MASK = 0x60, RX_IRQ = 0x80;
+    static final int IDLE_POLL = 16;
+    // Bits par trame selon les bits 2-4 (départ + données + parité + arrêt)
+    private static final int[] FRAME_BITS = {11, 11, 10, 10, 11, 10, 11, 11};
+    private static final int[] DIVIDERS = {1, 16, 64, 1};
+
+    private final InputStream in;
+    private final OutputStream out;
+    private final int clockCycles;
+    private final TimingWheel.Timer transmitted = newTimer(this::transmitted);
+    private final TimingWheel.Timer receive = newTimer(this::receive);
+    private int control = MASTER_RESET, status, rdr, tdr, shifter;
+    private boolean inputEnded;
+    private IOException error;
+
+    /**
+     * @param in flux reçu par le programme (null = aucune réception)
+     * @param out flux émis par le programme (null = émission perdue)
+     * @param clockCycles cycles CPU par période de l'horloge série (avant diviseur)
+     */
+    public ACIA6850(CPU6809_V6 cpu, InputStream in, OutputStream out, int clockCycles) {
+        super(cpu);
+        if (clockCycles < 1) throw new IllegalArgumentException("Horloge série invalide : " + clockCycles);
+        this.in = in;
+        this.out = out;
+        this.clockCycles = clockCycles;
+        reset();
+    }
+
+    /** Durée d'un caractère en cycles CPU selon le registre de contrôle. */
+    public long characterCycles() {
+        return (long) FRAME_BITS[(control >> 2) & 7] * DIVIDERS[control & 3] * clockCycles;
+    }
+
+    /** Première erreur d'entrée/sortie rencontrée sur les flux, null sinon. */
+    public IOException getError() {
+        return error;
+    }
+
+    @Override
+    public int read(int addr) {
+        if ((addr & 1) == STATUS) return status;
+        status &= ~(RDRF | OVRN);
+        updateInterrupt();
+        return rdr;
+    }
+
+    // STATUS ne change qu'aux échéances d'émission et de réception ; lire DATA efface RDRF et OVRN
+    @Override
+    public boolean isIdleSafe(int addr) {
+        return (addr & 1) == STATUS;
+    }
+
+    @Override
+    public void write(int addr, int value) {
+        if ((addr & 1) == STATUS) {
+            if ((value & MASTER_RESET) == MASTER_RESET) {
+                reset();
+                return;
+            }
+            boolean wasReset = (control & MASTER_RESET) == MASTER_RESET;
+            control = value;
+            if (wasReset && in != null && !inputEnded) receive.scheduleIn(characterCycles());
+            updateInterrupt();
+            return;
+        }
+        if ((control & MASTER_RESET) == MASTER_RESET) return;
+        if (!transmitted.isScheduled()) {
+            // Registre à décalage libre : l'octet y passe aussitôt, TDRE reste à 1
+            shifter = value;
+            transmitted.scheduleIn(characterCycles());
+        } else {
+            tdr = value;
+            status &= ~TDRE;
+            updateInterrupt();
+        }
+    }
+
+    // Fin de trame : l'octet part dans le flux, le suivant passe dans le registre à décalage
+    private void transmitted(long cycle) {
+        if (out != null && error == null) {
+            try {
+                out.write(dataBits(shifter));
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if ((status & TDRE) == 0) {
+            shifter = tdr;
+            status |= TDRE;
+            transmitted.schedule(cycle + characterCycles());
+            updateInterrupt();
+        }
+    }
+
+    private void receive(long cycle) {
+        int value;
+        try {
+            if (in.available() == 0) {
+                receive.schedule(cycle + IDLE_POLL * characterCycles());
+                return;
+            }
+            value = in.read();
+        } catch (IOException e) {
+            error = e;
+            value = -1;
+        }
+        if (value < 0) {
+            inputEnded = true;
+            return;
+        }
+        if ((status & RDRF) != 0) {
+            status |= OVRN;
+        } else {
+            rdr = dataBits(value);
+            status |= RDRF;
+        }
+        updateInterrupt();
+        receive.schedule(cycle + characterCycles());
+    }
+
+    // Formats 7 bits (bits 2-4 de 000 à 011) : le bit de poids fort n'est pas transmis
+    private int dataBits(int value) {
+        return (control & 0x10) == 0 ? value & 0x7F : value & 0xFF;
+    }
+
+    private void updateInterrupt() {
+        boolean requested = (control & RX_IRQ) != 0 && (status & (RDRF | OVRN)) != 0
+                || (control & TX_MASK) == TX_IRQ && (status & TDRE) != 0;
+        if ((control & MASTER_RESET) == MASTER_RESET) requested = false;
+        status = requested ? status | IRQ : status & ~IRQ;
+        setInterrupt(requested);
+    }
+
+    /** Écrit sur le flux de sortie ce qui est en tampon. */
+    public void flush() throws IOException {
+        if (out != null) out.flush();
+    }
+
+    /** Reset maître : émission et réception vidées, puis attente d'un registre de contrôle. */
+    @Override
+    public void reset() {
+        transmitted.cancel();
+        receive.cancel();
+        control = MASTER_RESET;
+        status = TDRE;
+        rdr = tdr = shifter = 0;
+        updateInterrupt();
+    }
+
+    // État : registres et cycles restants des deux échéances (-1 si absente) ; la position des flux n'est pas restaurée
+    @Override
+    public byte[] saveState() {
+        return ByteBuffer.allocate(21).put((byte) control).put((byte) status).put((byte) rdr).put((byte) tdr)
+                .put((byte) shifter).putLong(remaining(transmitted)).putLong(remaining(receive)).array();
+    }
+
+    @Override
+    public void restoreState(byte[] state) {
+        ByteBuffer buffer = ByteBuffer.wrap(state);
+        control = buffer.get() & 0xFF;
+        status = buffer.get() & 0xFF;
+        rdr = buffer.get() & 0xFF;
+        tdr = buffer.get() & 0xFF;
+        shifter = buffer.get() & 0xFF;
+        resume(transmitted, buffer.getLong());
+        resume(receive, buffer.getLong());
+        updateInterrupt();
+    }
+
+    private long remaining(TimingWheel.Timer timer) {
+        return timer.isScheduled() ? timer.due() - cpu.cycles : -1;
+    }
+
+    private static void resume(TimingWheel.Timer timer, long remaining) {
+        if (remaining >= 0) timer.scheduleIn(remaining);
+        else timer.cancel();
+    }
+}
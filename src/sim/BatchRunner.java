@@ -0,0 +1,493 @@
+package sim;
+
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.function.IntConsumer;
+
+/**
+ * Exécution sans interface graphique d'un programme .asm, sans temporisation.
+ * Usage : java -cp src sim.BatchRunner prog.asm|etat.snap [--max-instructions N] [--max-cycles N]
+ *         [--clock HZ] [--break "0010,w:0200-020F,0030 if A==$7F"] [--terminal fichier|-]
+ *         [--flush char|line|buffer] [--save etat.snap] [--trace trace.bin] [--profile N]
+ *         [--org HHHH] [--export image.s19|.hex|.bin] [--range 0000-00FF]
+ *         [--devices] [--serial-in fichier|-] [--serial-out fichier|-] [--no-idle-skip] [--jit]
+ * Un fichier .s19/.srec/.hex/.bin/.rom est chargé comme image binaire (brute : à l'adresse --org).
+ * --devices projette la PIA ($D100), l'ACIA ($D200) et le temporisateur ($D300) ; --serial-in
+ * et --serial-out relient l'ACIA à un fichier, un tube nommé ou l'entrée/sortie standard (-).
+ * Les boucles d'attente sont avancées jusqu'à la prochaine échéance ; sans échéance, l'exécution
+ * s'arrête (HUNG). --no-idle-skip les interprète comme le reste du code.
+ * --jit exécute les blocs chauds en code compilé ({@link JitTier}) ; sous breakpoints, seuls les blocs
+ * qui n'en portent aucun sont exécutés d'un seul tenant, les autres pas à pas.
+ */
+public class BatchRunner {
+    public static final long DEFAULT_MAX_INSTRUCTIONS = 100_000_000L;
+    private static final long CYCLE_SLICE = 1_000_000L;
+    // Caractères du terminal conservés en mémoire quand la sortie n'est pas redirigée (les derniers)
+    public static final int TERMINAL_CAPTURE_LIMIT = 1 << 16;
+
+    /** Raison de l'arrêt de l'exécution. */
+    public enum StopReason { HALT, BREAKPOINT, WATCHPOINT, BUDGET, HUNG, ERROR }
+
+    private final CPU6809_V6 cpu = new CPU6809_V6();
+    private final InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+    private final StringBuilder terminal = new StringBuilder();
+    private long terminalDropped;
+    private IntConsumer terminalSink = this::capture;
+    private TerminalStream terminalStream;
+    private BreakpointEngine breakpoints = new BreakpointEngine();
+    // Dernier programme assemblé, pour rattacher le profil aux lignes source
+    private final MiniAssembler_V6 assembler = new MiniAssembler_V6();
+    private boolean assembled;
+    private Profiler profiler;
+    // Niveau JIT (null = interpréteur par blocs)
+    private JitTier jit;
+    // Périphériques optionnels (voir attachDevices)
+    private PIA6821 pia;
+    private ACIA6850 acia;
+    private IntervalTimer timer;
+    private InputStream serialIn;
+    private OutputStream serialOut;
+
+    private StopReason stopReason;
+    private String stopMessage;
+    private long elapsedNanos;
+
+    public BatchRunner() {
+        cpu.setLazyFlags(true);
+        decoder.setIdleSkip(true);
+        cpu.bus.mapDevice(TerminalDevice.BASE, new TerminalDevice(c -> terminalSink.accept(c)));
+    }
+
+    /** Envoie la sortie du terminal vers un flux au lieu de la conserver en mémoire. */
+    public void streamTerminal(TerminalStream stream) {
+        terminalStream = stream;
+        terminalSink = stream;
+    }
+
+    // Capture bornée : au-delà de deux fois la limite, seuls les derniers caractères sont gardés
+    private void capture(int c) {
+        terminal.append((char) c);
+        if (terminal.length() >= 2 * TERMINAL_CAPTURE_LIMIT) {
+            int excess = terminal.length() - TERMINAL_CAPTURE_LIMIT;
+            terminal.delete(0, excess);
+            terminalDropped += excess;
+        }
+    }
+
+    public void load(String source) throws Exception {
+        cpu.reset();
+        assembler.assemble(source, cpu);
+        assembled = true;
+        decoder.invalidateCode();
+    }
+
+    /** Assemble un fichier source sans passer par une chaîne (voir {@link MiniAssembler_V6#assembleFile}). */
+    public void load(Path path) throws Exception {
+        cpu.reset();
+        assembler.assembleFile(path, cpu);
+        assembled = true;
+        decoder.invalidateCode();
+    }
+
+    /**
+     * Charge une image binaire (S-record, Intel HEX ou brute, voir {@link ImageLoader}) dans une
+     * machine remise à zéro ; PC est pris dans l'image, sinon vaut {@code origin}.
+     */
+    public ImageLoader.Result loadImage(Path path, int origin) throws IOException {
+        cpu.reset();
+        assembled = false;
+        ImageLoader.Result result = ImageLoader.load(path, cpu, decoder, origin);
+        decoder.invalidateCode();
+        return result;
+    }
+
+    /**
+     * Projette la PIA, l'ACIA et le temporisateur à leurs adresses par défaut. L'ACIA lit
+     * {@code serialIn} et écrit dans {@code serialOut} (null : pas de flux), fermés par {@link #closeDevices}.
+     */
+    public void attachDevices(InputStream serialIn, OutputStream serialOut) {
+        this.serialIn = serialIn;
+        this.serialOut = serialOut;
+        pia = new PIA6821(cpu);
+        pia.attach(PIA6821.BASE);
+        acia = new ACIA6850(cpu, serialIn, serialOut, 1);
+        acia.attach(ACIA6850.BASE);
+        timer = new IntervalTimer(cpu);
+        timer.attach(IntervalTimer.BASE);
+    }
+
+    public PIA6821 getPIA() {
+        return pia;
+    }
+
+    public ACIA6850 getACIA() {
+        return acia;
+    }
+
+    public IntervalTimer getTimer() {
+        return timer;
+    }
+
+    public void closeDevices() throws IOException {
+        if (serialOut != null && serialOut != System.out) serialOut.close();
+        else if (serialOut != null) serialOut.flush();
+        if (serialIn != null && serialIn != System.in) serialIn.close();
+    }
+
+    /** Reprend l'exécution depuis un instantané (voir {@link MachineSnapshot}). */
+    public void load(MachineSnapshot snapshot) {
+        snapshot.restore(cpu, decoder);
+    }
+
+    public void addBreakpoint(int addr) {
+        breakpoints.addBreakpoint(addr);
+    }
+
+    /** Remplace les breakpoints et watchpoints (voir {@link BreakpointEngine#parse}). */
+    public void setBreakpoints(BreakpointEngine engine) {
+        breakpoints = engine;
+        decoder.setWatchpoints(engine);
+    }
+
+    /** Exécute les blocs chauds en code compilé (voir {@link JitTier}). */
+    public JitTier enableJit() {
+        jit = new JitTier(cpu, decoder);
+        return jit;
+    }
+
+    /** Active le profileur (compteurs remis à zéro) ; voir {@link #profileReport}. */
+    public Profiler enableProfiler() {
+        profiler = new Profiler(cpu, decoder);
+        decoder.setProfiler(profiler);
+        return profiler;
+    }
+
+    /** Rapport du profileur, rattaché aux lignes du dernier source assemblé. */
+    public String profileReport(int top) {
+        return profiler == null ? "" : profiler.report(top, assembled ? assembler : null);
+    }
+
+    /**
+     * Exécute jusqu'à HALT, un breakpoint ou l'épuisement du budget de cycles, cadencé à {@code hz}
+     * (0 = sans temporisation). Avec des breakpoints ou watchpoints, l'exécution se fait pas à pas
+     * comme dans {@link #run}.
+     */
+    public StopReason runCycles(long maxCycles, long hz) {
+        ClockPacer pacer = new ClockPacer(cpu, decoder, jit, hz);
+        long limit = cpu.cycles + maxCycles;
+        long start = System.nanoTime();
+        try {
+            stopReason = StopReason.BUDGET;
+            if (!breakpoints.isEmpty()) {
+                long first = decoder.getInstructionCount();
+                while (cpu.cycles < limit) {
+                    if (jit != null && jit.canRunBlock(breakpoints, limit - cpu.cycles)) {
+                        if (runBlock()) break;
+                    } else if (stepChecked(first)) {
+                        break;
+                    }
+                    pacer.pace();
+                }
+            } else {
+                while (cpu.cycles < limit) {
+                    pacer.runSlice(Math.min(limit - cpu.cycles, CYCLE_SLICE));
+                    if (decoder.isHung()) {
+                        recordHung();
+                        break;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            recordError(e);
+        }
+        elapsedNanos = System.nanoTime() - start;
+        return stopReason;
+    }
+
+    /**
+     * Exécute jusqu'à HALT, un breakpoint ou l'épuisement du budget d'instructions.
+     */
+    public StopReason run(long maxInstructions) {
+        long first = decoder.getInstructionCount();
+        long limit = first + maxInstructions;
+        long start = System.nanoTime();
+        try {
+            stopReason = StopReason.BUDGET;
+            boolean stepMode = !breakpoints.isEmpty();
+            while (decoder.getInstructionCount() < limit) {
+                boolean blockFits = limit - decoder.getInstructionCount() >= BlockCache.MAX_BLOCK_LENGTH;
+                if (stepMode) {
+                    if (blockFits && jit != null && jit.canRunBlock(breakpoints, Long.MAX_VALUE)) {
+                        if (runBlock()) break;
+                    } else if (stepChecked(first)) {
+                        break;
+                    }
+                } else if (blockFits) {
+                    if (runBlock()) break;
+                } else {
+                    decoder.executeNext();
+                }
+            }
+        } catch (Exception e) {
+            recordError(e);
+        }
+        elapsedNanos = System.nanoTime() - start;
+        return stopReason;
+    }
+
+    /**
+     * Une instruction sous breakpoints et watchpoints ; vrai (raison d'arrêt renseignée) si l'exécution
+     * doit s'arrêter. Pas d'arrêt sur la première instruction : permet de repartir d'un breakpoint.
+     */
+    private boolean stepChecked(long first) throws Exception {
+        int pc = cpu.PC & 0xFFFF;
+        if (decoder.getInstructionCount() != first && breakpoints.shouldBreak(cpu, pc)) {
+            stopReason = StopReason.BREAKPOINT;
+            return true;
+        }
+        decoder.executeNext();
+        if (breakpoints.takeHit()) {
+            stopReason = StopReason.WATCHPOINT;
+            stopMessage = breakpoints.describeHit() + String.format(" (instruction à %04X)", pc);
+            return true;
+        }
+        return false;
+    }
+
+    // Un bloc, compilé si le JIT est actif ; vrai (raison d'arrêt renseignée) sur une boucle d'attente sans issue
+    private boolean runBlock() throws Exception {
+        if (jit != null) jit.executeBlock();
+        else decoder.executeBlock();
+        if (!decoder.isHung()) return false;
+        recordHung();
+        return true;
+    }
+
+    // Boucle d'attente sans échéance planifiée : rien dans la machine ne peut plus la terminer
+    private void recordHung() {
+        stopReason = StopReason.HUNG;
+        stopMessage = String.format("boucle d'attente à %04X sans échéance planifiée", cpu.PC);
+    }
+
+    private void recordError(Exception e) {
+        boolean halt = e.getMessage() != null && e.getMessage().startsWith("HALT");
+        stopReason = halt ? StopReason.HALT : StopReason.ERROR;
+        stopMessage = e.getMessage();
+    }
+
+    public StopReason getStopReason() {
+        return stopReason;
+    }
+
+    public CPU6809_V6 getCpu() {
+        return cpu;
+    }
+
+    public InstructionDecoder_V6 getDecoder() {
+        return decoder;
+    }
+
+    /** Sortie capturée (au plus les {@link #TERMINAL_CAPTURE_LIMIT} derniers caractères). */
+    public String getTerminalOutput() {
+        int from = Math.max(0, terminal.length() - TERMINAL_CAPTURE_LIMIT);
+        return terminal.substring(from);
+    }
+
+    public void closeTerminal() throws IOException {
+        if (terminalStream != null) terminalStream.close();
+    }
+
+    public String report() {
+        long executed = decoder.getInstructionCount();
+        double seconds = elapsedNanos / 1e9;
+        StringBuilder sb = new StringBuilder();
+        sb.append("Arrêt : ").append(stopReason == StopReason.ERROR || stopReason == StopReason.WATCHPOINT
+                || stopReason == StopReason.HUNG ? stopReason + " (" + stopMessage + ")" : stopReason);
+        sb.append('\n');
+        sb.append(String.format("PC=%04X A=%02X B=%02X D=%04X DP=%02X X=%04X Y=%04X U=%04X S=%04X CC=%s%n",
+                cpu.PC, cpu.A, cpu.B, cpu.getD(), cpu.DP, cpu.X, cpu.Y, cpu.U, cpu.S,
+                String.format("%8s", Integer.toBinaryString(cpu.getCC())).replace(' ', '0')));
+        sb.append(String.format("Instructions : %d en %.3f ms (%.0f instr/s)%n",
+                executed, seconds * 1000, seconds > 0 ? executed / seconds : 0));
+        sb.append(String.format("Cycles : %d (%.2f MHz émulés)%n",
+                cpu.cycles, seconds > 0 ? cpu.cycles / seconds / 1e6 : 0));
+        if (jit != null) {
+            sb.append(String.format("JIT : %d blocs compilés, %d désoptimisations%n", jit.getCompiledBlocks(), jit.getDeopts()));
+        }
+        if (decoder.getIdleSkippedCycles() > 0) {
+            sb.append(String.format("Boucles d'attente : %d cycles avancés sans interprétation%n", decoder.getIdleSkippedCycles()));
+        }
+        if (terminalStream != null) {
+            sb.append("Terminal ($D000) : redirigé");
+        } else {
+            long dropped = terminalDropped + Math.max(0, terminal.length() - TERMINAL_CAPTURE_LIMIT);
+            sb.append("Terminal ($D000) : ");
+            if (dropped > 0) sb.append("[").append(dropped).append(" caractères plus anciens omis] ");
+            sb.append(getTerminalOutput());
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage : java sim.BatchRunner prog.asm|etat.snap [--max-instructions N] [--max-cycles N]"
+                    + " [--clock HZ] [--break \"0010,w:0200-020F,0030 if A==$7F\"] [--terminal fichier|-] [--flush char|line|buffer]"
+                    + " [--save etat.snap] [--trace trace.bin] [--profile N] [--org HHHH] [--export image.s19|.hex|.bin]"
+                    + " [--range 0000-00FF] [--devices] [--serial-in fichier|-] [--serial-out fichier|-] [--no-idle-skip] [--jit]");
+            return;
+        }
+        BatchRunner runner = new BatchRunner();
+        long maxInstructions = DEFAULT_MAX_INSTRUCTIONS;
+        long maxCycles = -1;
+        long hz = ClockPacer.UNTHROTTLED;
+        String terminalTarget = null;
+        String saveTarget = null;
+        String traceTarget = null;
+        int profileTop = 0;
+        int origin = 0;
+        String exportTarget = null;
+        int[] exportRange = null;
+        boolean devices = false;
+        String serialInTarget = null, serialOutTarget = null;
+        TerminalStream.FlushPolicy flush = TerminalStream.FlushPolicy.LINE;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--max-instructions":
+                    maxInstructions = Long.parseLong(args[++i]);
+                    break;
+                case "--max-cycles":
+                    maxCycles = Long.parseLong(args[++i]);
+                    break;
+                case "--clock":
+                    hz = Long.parseLong(args[++i]);
+                    break;
+                case "--break":
+                    try {
+                        runner.setBreakpoints(BreakpointEngine.parse(args[++i]));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println(e.getMessage());
+                        return;
+                    }
+                    break;
+                case "--terminal":
+                    terminalTarget = args[++i];
+                    break;
+                case "--flush":
+                    flush = TerminalStream.FlushPolicy.valueOf(args[++i].toUpperCase());
+                    break;
+                case "--save":
+                    saveTarget = args[++i];
+                    break;
+                case "--trace":
+                    traceTarget = args[++i];
+                    break;
+                case "--profile":
+                    profileTop = Integer.parseInt(args[++i]);
+                    break;
+                case "--org":
+                    origin = Integer.parseInt(args[++i].replace("$", ""), 16) & 0xFFFF;
+                    break;
+                case "--export":
+                    exportTarget = args[++i];
+                    break;
+                case "--range": {
+                    String range = args[++i];
+                    int dash = range.indexOf('-');
+                    if (dash < 0) {
+                        System.err.println("Plage attendue : DEBUT-FIN en hexadécimal");
+                        return;
+                    }
+                    exportRange = new int[]{Integer.parseInt(range.substring(0, dash).trim(), 16),
+                            Integer.parseInt(range.substring(dash + 1).trim(), 16)};
+                    break;
+                }
+                case "--no-idle-skip":
+                    runner.decoder.setIdleSkip(false);
+                    break;
+                case "--jit":
+                    runner.enableJit();
+                    break;
+                case "--devices":
+                    devices = true;
+                    break;
+                case "--serial-in":
+                    serialInTarget = args[++i];
+                    devices = true;
+                    break;
+                case "--serial-out":
+                    serialOutTarget = args[++i];
+                    devices = true;
+                    break;
+                default:
+                    System.err.println("Option inconnue : " + args[i]);
+                    return;
+            }
+        }
+        if (terminalTarget != null) {
+            runner.streamTerminal(terminalTarget.equals("-")
+                    ? new TerminalStream(System.out, flush, false)
+                    : new TerminalStream(new FileOutputStream(terminalTarget), flush, true));
+        }
+        if (devices) {
+            InputStream in = serialInTarget == null ? null
+                    : serialInTarget.equals("-") ? System.in : new FileInputStream(serialInTarget);
+            OutputStream out = serialOutTarget == null ? null
+                    : serialOutTarget.equals("-") ? System.out : new BufferedOutputStream(new FileOutputStream(serialOutTarget));
+            runner.attachDevices(in, out);
+        }
+        Path input = Paths.get(args[0]);
+        if (args[0].endsWith(".snap")) {
+            runner.load(MachineSnapshot.readFrom(input));
+        } else if (ImageLoader.isImage(input)) {
+            ImageLoader.Result image = runner.loadImage(input, origin);
+            System.out.println("Image " + image);
+            if (exportRange == null && image.bytes > 0) exportRange = new int[]{image.low, image.high};
+        } else {
+            try {
+                runner.load(input);
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                System.err.println(e.getMessage());
+                return;
+            }
+        }
+        int entry = runner.cpu.PC & 0xFFFF;
+        if (profileTop > 0) runner.enableProfiler();
+        TraceRecorder trace = traceTarget != null ? new TraceRecorder(Paths.get(traceTarget), runner.cpu) : null;
+        runner.decoder.setTrace(trace);
+        try {
+            if (maxCycles >= 0 || hz > 0) {
+                runner.runCycles(maxCycles >= 0 ? maxCycles : Long.MAX_VALUE / 2, hz);
+            } else {
+                runner.run(maxInstructions);
+            }
+        } finally {
+            runner.closeTerminal();
+            runner.closeDevices();
+            if (trace != null) trace.close();
+        }
+        if ("-".equals(terminalTarget)) System.out.println();
+        System.out.println(runner.report());
+        if (profileTop > 0) System.out.print("\n" + runner.profileReport(profileTop));
+        if (trace != null) {
+            System.out.println("Trace : " + trace.getRecords() + " instructions dans " + traceTarget);
+        }
+        if (saveTarget != null) {
+            MachineSnapshot.capture(runner.cpu).writeTo(Paths.get(saveTarget));
+            System.out.println("État enregistré : " + saveTarget);
+        }
+        if (exportTarget != null) {
+            // Adresse de départ de l'image exportée : PC au chargement, pas celui de l'arrêt
+            int[] range = exportRange != null ? exportRange : new int[]{0, 0xFFFF};
+            ImageLoader.save(Paths.get(exportTarget), runner.cpu.memory, range[0], range[1], entry);
+            System.out.printf("Mémoire %04X-%04X exportée : %s%n", range[0], range[1], exportTarget);
+        }
+    }
+}
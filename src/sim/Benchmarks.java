@@ -0,0 +1,664 @@
+package sim;
+
+import java.lang.ref.Reference;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Mesures de débit du simulateur (sans interface graphique).
+ * Usage : java -cp src sim.Benchmarks [dispatch|blocks|jit|flags|memory|snapshot|journal|breakpoints|trace|profile|assembler|images|interrupts|devices|idle|disasm]
+ */
+public class Benchmarks {
+    // Boucle infinie mêlant chargements/stockages, INH, indexé et branchements
+    static final String LOOP_PROGRAM =
+            "LDX #$1000\n" +
+            "LDD #$0000\n" +
+            "ADDD #$0001   ; $0006 : début de boucle\n" +
+            "STD $0200\n" +
+            "LDA 2,X\n" +
+            "INCA\n" +
+            "STA 2,X\n" +
+            "DECA\n" +
+            "TSTA\n" +
+            "ASLA\n" +
+            "RORB\n" +
+            "LDB <$10\n" +
+            "STB $0201\n" +
+            "BNE $0006\n" +
+            "BRA $0006\n";
+
+    private static final long INSTRUCTIONS = 20_000_000L;
+    private static final int ROUNDS = 5;
+
+    public static void main(String[] args) throws Exception {
+        String which = args.length > 0 ? args[0] : "all";
+        if (which.equals("all") || which.equals("dispatch")) dispatch();
+        if (which.equals("all") || which.equals("blocks")) blocks();
+        if (which.equals("all") || which.equals("jit")) jit();
+        if (which.equals("all") || which.equals("flags")) flags();
+        if (which.equals("all") || which.equals("memory")) memory();
+        if (which.equals("all") || which.equals("snapshot")) snapshot();
+        if (which.equals("all") || which.equals("journal")) journal();
+        if (which.equals("all") || which.equals("breakpoints")) breakpoints();
+        if (which.equals("all") || which.equals("trace")) trace();
+        if (which.equals("all") || which.equals("profile")) profile();
+        if (which.equals("all") || which.equals("assembler")) assembler();
+        if (which.equals("all") || which.equals("images")) images();
+        if (which.equals("all") || which.equals("interrupts")) interrupts();
+        if (which.equals("all") || which.equals("devices")) devices();
+        if (which.equals("all") || which.equals("idle")) idle();
+        if (which.equals("all") || which.equals("disasm")) disasm();
+    }
+
+    /**
+     * Compare le switch fusionné (pas à pas par défaut) aux seules tables de dispatch.
+     */
+    static void dispatch() throws Exception {
+        System.out.println("== Dispatch : switch fusionné vs tables ==");
+        for (int round = 0; round < ROUNDS; round++) {
+            double inline = mips(false);
+            double table = mips(true);
+            System.out.printf("round %d : switch %.1f MIPS | tables %.1f MIPS | x%.2f%n",
+                    round, inline, table, table / inline);
+        }
+    }
+
+    private static double mips(boolean tablesOnly) throws Exception {
+        CPU6809_V6 cpu = new CPU6809_V6();
+        new MiniAssembler_V6().assemble(LOOP_PROGRAM, cpu);
+        InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+        decoder.setTablesOnly(tablesOnly);
+
+        long start = System.nanoTime();
+        for (long i = 0; i < INSTRUCTIONS; i++) decoder.executeNext();
+        return mipsOf(INSTRUCTIONS, System.nanoTime() - start);
+    }
+
+    /**
+     * Compare le décodage à chaque pas au cache de blocs prédécodés.
+     */
+    static void blocks() throws Exception {
+        System.out.println("== Cache de blocs : executeNext vs executeBlock ==");
+        for (int round = 0; round < ROUNDS; round++) {
+            CPU6809_V6 cpu = new CPU6809_V6();
+            new MiniAssembler_V6().assemble(LOOP_PROGRAM, cpu);
+            InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+            long start = System.nanoTime();
+            for (long i = 0; i < INSTRUCTIONS; i++) decoder.executeNext();
+            double step = mipsOf(INSTRUCTIONS, System.nanoTime() - start);
+
+            cpu = new CPU6809_V6();
+            new MiniAssembler_V6().assemble(LOOP_PROGRAM, cpu);
+            decoder = new InstructionDecoder_V6(cpu);
+            long executed = 0;
+            start = System.nanoTime();
+            while (executed < INSTRUCTIONS) executed += decoder.executeBlock();
+            double block = mipsOf(executed, System.nanoTime() - start);
+
+            System.out.printf("round %d : pas à pas %.1f MIPS | blocs %.1f MIPS | x%.2f%n",
+                    round, step, block, block / step);
+        }
+    }
+
+    /**
+     * Compare l'interpréteur par blocs au niveau JIT (classes cachées).
+     */
+    static void jit() throws Exception {
+        System.out.println("== JIT : interpréteur par blocs vs blocs compilés ==");
+        for (int round = 0; round < ROUNDS; round++) {
+            CPU6809_V6 cpu = new CPU6809_V6();
+            new MiniAssembler_V6().assemble(LOOP_PROGRAM, cpu);
+            InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+            long executed = 0;
+            long start = System.nanoTime();
+            while (executed < INSTRUCTIONS) executed += decoder.executeBlock();
+            double interp = mipsOf(executed, System.nanoTime() - start);
+
+            cpu = new CPU6809_V6();
+            new MiniAssembler_V6().assemble(LOOP_PROGRAM, cpu);
+            decoder = new InstructionDecoder_V6(cpu);
+            JitTier tier = new JitTier(cpu, decoder);
+            executed = 0;
+            start = System.nanoTime();
+            while (executed < INSTRUCTIONS) executed += tier.executeBlock();
+            double compiled = mipsOf(executed, System.nanoTime() - start);
+
+            System.out.printf("round %d : blocs %.1f MIPS | JIT %.1f MIPS | x%.2f (%d blocs compilés)%n",
+                    round, interp, compiled, compiled / interp, tier.getCompiledBlocks());
+        }
+    }
+
+    /**
+     * Flags paresseux : nombre de calculs de flags par instruction et débit (l'équivalence avec le
+     * calcul immédiat est vérifiée par LazyFlagsTest).
+     */
+    static void flags() throws Exception {
+        System.out.println("== Flags : calcul immédiat vs paresseux ==");
+        for (int round = 0; round < ROUNDS; round++) {
+            double[] eager = flagsRun(false);
+            double[] lazy = flagsRun(true);
+            System.out.printf("round %d : immédiat %.1f MIPS (%.2f calculs/instr) | paresseux %.1f MIPS (%.2f calculs/instr)%n",
+                    round, eager[0], eager[1], lazy[0], lazy[1]);
+        }
+    }
+
+    private static double[] flagsRun(boolean lazyFlags) throws Exception {
+        CPU6809_V6 cpu = new CPU6809_V6();
+        cpu.setLazyFlags(lazyFlags);
+        new MiniAssembler_V6().assemble(LOOP_PROGRAM, cpu);
+        InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+        long executed = 0;
+        long start = System.nanoTime();
+        while (executed < INSTRUCTIONS) executed += decoder.executeBlock();
+        long nanos = System.nanoTime() - start;
+        return new double[]{mipsOf(executed, nanos), (double) cpu.flagEvaluations / executed};
+    }
+
+    /**
+     * Mémoire : empreinte par instance et débit de la boucle chaude selon le stockage
+     * (octets, tampon direct, ancien tableau d'int) et le suivi des cases révélées.
+     * Les trois stockages partagent ici la même JVM ; MemoryBench (JMH) les isole par fork.
+     */
+    static void memory() throws Exception {
+        System.out.println("== Mémoire : empreinte et débit selon le stockage ==");
+        System.out.printf("ancienne disposition (int[65536] + boolean[65536]) : %d Ko%n",
+                (Memory.SIZE * 4L + Memory.SIZE) / 1024);
+        String[] kinds = {"int", "byte", "direct"};
+        for (String kind : kinds) {
+            for (boolean tracking : new boolean[]{true, false}) {
+                long heap = heapPerInstance(kind, tracking);
+                System.out.printf("%-6s suivi %-3s : stockage %d Ko, tas mesuré %d Ko/instance%n",
+                        kind, tracking ? "oui" : "non",
+                        (Memory.create(kind).footprint() + (tracking ? Memory.SIZE / 8 : 0)) / 1024,
+                        heap / 1024);
+            }
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            StringBuilder line = new StringBuilder("round " + round + " :");
+            for (String kind : kinds) {
+                for (boolean tracking : new boolean[]{true, false}) {
+                    line.append(String.format(" %s%s %.1f", kind, tracking ? "+suivi" : "",
+                            memoryRun(kind, tracking)));
+                }
+                line.append(" |");
+            }
+            System.out.println(line.append(" MIPS"));
+        }
+    }
+
+    // Octets de tas retenus par un CPU (mémoire comprise), moyennés sur un lot d'instances
+    private static long heapPerInstance(String kind, boolean tracking) {
+        final int count = 64;
+        Runtime rt = Runtime.getRuntime();
+        System.gc();
+        long before = rt.totalMemory() - rt.freeMemory();
+        CPU6809_V6[] cpus = new CPU6809_V6[count];
+        for (int i = 0; i < count; i++) {
+            cpus[i] = new CPU6809_V6(Memory.create(kind));
+            cpus[i].setRevealTracking(tracking);
+        }
+        System.gc();
+        long after = rt.totalMemory() - rt.freeMemory();
+        Reference.reachabilityFence(cpus);
+        return Math.max(0, after - before) / count;
+    }
+
+    private static double memoryRun(String kind, boolean tracking) throws Exception {
+        CPU6809_V6 cpu = new CPU6809_V6(Memory.create(kind));
+        cpu.setRevealTracking(tracking);
+        new MiniAssembler_V6().assemble(LOOP_PROGRAM, cpu);
+        InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+        long executed = 0;
+        long start = System.nanoTime();
+        while (executed < INSTRUCTIONS) executed += decoder.executeBlock();
+        return mipsOf(executed, System.nanoTime() - start);
+    }
+
+    /**
+     * Instantanés : coût d'une capture et d'une restauration après une courte exécution
+     * (seules les pages écrites sont recopiées), comparé au reset + réassemblage qui
+     * permettait jusqu'ici de repartir du programme chargé.
+     */
+    static void snapshot() throws Exception {
+        System.out.println("== Instantanés : restauration vs reset + assemblage ==");
+        final int forks = 20_000;
+        final int steps = 1000;
+        for (int round = 0; round < ROUNDS; round++) {
+            CPU6809_V6 cpu = new CPU6809_V6();
+            InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+            MiniAssembler_V6 assembler = new MiniAssembler_V6();
+            long reassemble = 0;
+            for (int i = 0; i < forks; i++) {
+                long t = System.nanoTime();
+                cpu.reset();
+                assembler.assemble(LOOP_PROGRAM, cpu);
+                decoder.invalidateCode();
+                reassemble += System.nanoTime() - t;
+                for (int n = 0; n < steps; ) n += decoder.executeBlock();
+            }
+
+            cpu = new CPU6809_V6();
+            decoder = new InstructionDecoder_V6(cpu);
+            assembler.assemble(LOOP_PROGRAM, cpu);
+            MachineSnapshot image = MachineSnapshot.capture(cpu);
+            long copied = 0, restore = 0, capture = 0;
+            for (int i = 0; i < forks; i++) {
+                long t = System.nanoTime();
+                copied += image.restore(cpu, decoder);
+                restore += System.nanoTime() - t;
+                for (int n = 0; n < steps; ) n += decoder.executeBlock();
+                t = System.nanoTime();
+                MachineSnapshot.capture(cpu);
+                capture += System.nanoTime() - t;
+            }
+
+            System.out.printf("round %d : reset+assemblage %.2f µs | restauration %.2f µs (%.1f pages) | x%.0f"
+                            + " | capture incrémentale %.2f µs%n",
+                    round, reassemble / 1000.0 / forks, restore / 1000.0 / forks, copied / (double) forks,
+                    (double) reassemble / restore, capture / 1000.0 / forks);
+        }
+    }
+
+    /**
+     * Journal de retour arrière : débit avec et sans journalisation (blocs et pas à pas),
+     * puis coût d'un retour de 100 000 instructions.
+     */
+    static void journal() throws Exception {
+        System.out.println("== Journal : exécution sans / avec retour arrière ==");
+        for (int round = 0; round < ROUNDS; round++) {
+            double[] off = journalRun(false);
+            double[] on = journalRun(true);
+            System.out.printf("round %d : blocs %.1f -> %.1f MIPS (x%.2f) | pas à pas %.1f -> %.1f MIPS (x%.2f)%n",
+                    round, off[0], on[0], on[0] / off[0], off[1], on[1], on[1] / off[1]);
+        }
+        CPU6809_V6 cpu = new CPU6809_V6();
+        new MiniAssembler_V6().assemble(LOOP_PROGRAM, cpu);
+        InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+        ExecutionJournal journal = new ExecutionJournal(cpu, decoder);
+        decoder.setJournal(journal);
+        long undo = 0, replay = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            for (int i = 0; i < 1_000_000; i++) decoder.executeNext();
+            if (round == ROUNDS - 1) {
+                System.out.printf("anneau %d Ko, %d instructions retenues, %d instantanés%n",
+                        journal.footprint() / 1024, journal.getRetained(), journal.getKeyframeCount());
+            }
+            long start = System.nanoTime();
+            journal.stepBack(100_000);
+            undo = System.nanoTime() - start;
+            start = System.nanoTime();
+            journal.stepBack(450_000);
+            replay = System.nanoTime() - start;
+        }
+        System.out.printf("retour de 100 000 instructions (annulation) : %.2f ms"
+                + " | de 450 000 de plus (instantané + ré-exécution) : %.2f ms%n", undo / 1e6, replay / 1e6);
+    }
+
+    private static double[] journalRun(boolean enabled) throws Exception {
+        double[] mips = new double[2];
+        for (int mode = 0; mode < 2; mode++) {
+            CPU6809_V6 cpu = new CPU6809_V6();
+            cpu.setLazyFlags(true);
+            new MiniAssembler_V6().assemble(LOOP_PROGRAM, cpu);
+            InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+            if (enabled) decoder.setJournal(new ExecutionJournal(cpu, decoder));
+            long executed = 0;
+            long start = System.nanoTime();
+            if (mode == 0) {
+                while (executed < INSTRUCTIONS) executed += decoder.executeBlock();
+            } else {
+                for (; executed < INSTRUCTIONS; executed++) decoder.executeNext();
+            }
+            mips[mode] = mipsOf(executed, System.nanoTime() - start);
+        }
+        return mips;
+    }
+
+    /**
+     * Breakpoints : débit de la boucle de BatchRunner sans breakpoint (blocs), avec un breakpoint
+     * jamais atteint (pas à pas + bitmap), un breakpoint conditionnel évalué à chaque tour,
+     * et un watchpoint d'écriture sur une adresse jamais écrite.
+     */
+    static void breakpoints() throws Exception {
+        System.out.println("== Breakpoints : coût selon le type ==");
+        String[] specs = {"", "0100", "0006 if A==$FF && (CC&Z)", "w:3000-30FF"};
+        String[] names = {"aucun", "adresse", "condition", "watchpoint"};
+        for (int round = 0; round < ROUNDS; round++) {
+            StringBuilder line = new StringBuilder("round " + round + " :");
+            for (int i = 0; i < specs.length; i++) {
+                BatchRunner runner = new BatchRunner();
+                runner.load(LOOP_PROGRAM);
+                runner.setBreakpoints(BreakpointEngine.parse(specs[i]));
+                long start = System.nanoTime();
+                runner.run(INSTRUCTIONS);
+                line.append(String.format(" %s %.1f", names[i],
+                        mipsOf(runner.getDecoder().getInstructionCount(), System.nanoTime() - start)));
+            }
+            System.out.println(line.append(" MIPS"));
+        }
+    }
+
+    /**
+     * Trace binaire : débit de l'exécution par blocs sans et avec enregistrement,
+     * puis vitesse de relecture de la trace produite.
+     */
+    static void trace() throws Exception {
+        System.out.println("== Trace : exécution sans / avec enregistrement ==");
+        Path file = Files.createTempFile("bench", ".trace");
+        try {
+            long traced = INSTRUCTIONS / 4;
+            for (int round = 0; round < ROUNDS; round++) {
+                double off = traceRun(null, traced);
+                double on = traceRun(file, traced);
+                long start = System.nanoTime();
+                long read = 0, cycles = 0;
+                try (TraceReader reader = new TraceReader(file)) {
+                    while (reader.next()) {
+                        cycles += reader.cycles();
+                        read++;
+                    }
+                }
+                double perSecond = read * 1e9 / (System.nanoTime() - start);
+                System.out.printf("round %d : %.1f -> %.1f MIPS (x%.2f) | fichier %d Mo | relecture %.1f M enr./s (%d cycles)%n",
+                        round, off, on, on / off, Files.size(file) >> 20, perSecond / 1e6, cycles);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static double traceRun(Path file, long instructions) throws Exception {
+        CPU6809_V6 cpu = new CPU6809_V6();
+        cpu.setLazyFlags(true);
+        new MiniAssembler_V6().assemble(LOOP_PROGRAM, cpu);
+        InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+        TraceRecorder recorder = file != null ? new TraceRecorder(file, cpu) : null;
+        decoder.setTrace(recorder);
+        long executed = 0;
+        long start = System.nanoTime();
+        while (executed < instructions) executed += decoder.executeBlock();
+        if (recorder != null) recorder.close();
+        return mipsOf(executed, System.nanoTime() - start);
+    }
+
+    /**
+     * Profileur : débit de l'exécution par blocs sans et avec comptage par adresse et par opcode.
+     */
+    static void profile() throws Exception {
+        System.out.println("== Profileur : exécution sans / avec comptage ==");
+        for (int round = 0; round < ROUNDS; round++) {
+            double off = profileRun(false);
+            double on = profileRun(true);
+            System.out.printf("round %d : %.1f -> %.1f MIPS (x%.2f)%n", round, off, on, on / off);
+        }
+    }
+
+    private static double profileRun(boolean enabled) throws Exception {
+        CPU6809_V6 cpu = new CPU6809_V6();
+        cpu.setLazyFlags(true);
+        new MiniAssembler_V6().assemble(LOOP_PROGRAM, cpu);
+        InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+        if (enabled) decoder.setProfiler(new Profiler(cpu, decoder));
+        long executed = 0;
+        long start = System.nanoTime();
+        while (executed < INSTRUCTIONS) executed += decoder.executeBlock();
+        return mipsOf(executed, System.nanoTime() - start);
+    }
+
+    /**
+     * Assembleur : lignes par seconde sur un source synthétique de 100 000 lignes, assembleur
+     * d'origine ({@link LegacyAssembler}) contre l'analyse par octets, depuis une chaîne et depuis un fichier.
+     */
+    static void assembler() throws Exception {
+        System.out.println("== Assembleur : lignes/s (100 000 lignes) ==");
+        int lines = 100_000;
+        String source = RandomPrograms.generate(new java.util.Random(6809), lines);
+        Path file = Files.createTempFile("bench", ".asm");
+        try {
+            Files.write(file, source.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            CPU6809_V6 cpu = new CPU6809_V6();
+            LegacyAssembler legacy = new LegacyAssembler();
+            MiniAssembler_V6 assembler = new MiniAssembler_V6();
+            for (int round = 0; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                legacy.assemble(source, cpu);
+                double before = lines * 1e9 / (System.nanoTime() - start);
+                start = System.nanoTime();
+                assembler.assemble(source, cpu);
+                double text = lines * 1e9 / (System.nanoTime() - start);
+                start = System.nanoTime();
+                assembler.assembleFile(file, cpu);
+                double fromFile = lines * 1e9 / (System.nanoTime() - start);
+                System.out.printf("round %d : origine %.2f M lignes/s | chaîne %.2f M lignes/s (x%.2f) | fichier %.2f M lignes/s (x%.2f)%n",
+                        round, before / 1e6, text / 1e6, text / before, fromFile / 1e6, fromFile / before);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Images binaires : temps de chargement d'une image pleine (64 Ko) dans chaque format.
+     */
+    static void images() throws Exception {
+        System.out.println("== Images : chargement de 64 Ko ==");
+        CPU6809_V6 cpu = new CPU6809_V6();
+        for (int addr = 0; addr < Memory.SIZE; addr++) cpu.memory.write(addr, addr * 7 + (addr >> 8));
+        String[] extensions = {".s19", ".hex", ".bin"};
+        Path[] files = new Path[extensions.length];
+        try {
+            for (int i = 0; i < files.length; i++) {
+                files[i] = Files.createTempFile("bench", extensions[i]);
+                ImageLoader.save(files[i], cpu.memory, 0, 0xFFFF, 0);
+            }
+            InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+            for (int round = 0; round < ROUNDS; round++) {
+                StringBuilder line = new StringBuilder("round " + round + " :");
+                for (int i = 0; i < files.length; i++) {
+                    int loads = 20;
+                    long start = System.nanoTime();
+                    for (int k = 0; k < loads; k++) ImageLoader.load(files[i], cpu, decoder, 0);
+                    line.append(String.format(" %s %.2f ms", extensions[i], (System.nanoTime() - start) / 1e6 / loads));
+                }
+                System.out.println(line);
+            }
+        } finally {
+            for (Path file : files) if (file != null) Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Interruptions : débit par blocs sans événement planifié, puis avec une IRQ toutes les
+     * 1000 cycles (handler de 10 NOP et RTI), en interprété et en JIT.
+     */
+    static void interrupts() throws Exception {
+        System.out.println("== Interruptions : sans / avec IRQ périodique ==");
+        for (int round = 0; round < ROUNDS; round++) {
+            double idle = interruptRun(false, false);
+            double interp = interruptRun(true, false);
+            double compiled = interruptRun(true, true);
+            System.out.printf("round %d : sans IRQ %.1f MIPS | IRQ blocs %.1f MIPS | IRQ JIT %.1f MIPS%n",
+                    round, idle, interp, compiled);
+        }
+    }
+
+    private static double interruptRun(boolean periodic, boolean jit) throws Exception {
+        CPU6809_V6 cpu = new CPU6809_V6();
+        new MiniAssembler_V6().assemble(LOOP_PROGRAM, cpu);
+        // Handler en $3000 : 10 NOP puis RTI ; pile en $8000
+        for (int i = 0; i < 10; i++) cpu.memory.write(0x3000 + i, 0x12);
+        cpu.memory.write(0x300A, 0x3B);
+        cpu.memory.write(CPU6809_V6.VECTOR_IRQ, 0x30);
+        cpu.memory.write(CPU6809_V6.VECTOR_IRQ + 1, 0x00);
+        cpu.S = 0x8000;
+        InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+        JitTier tier = jit ? new JitTier(cpu, decoder) : null;
+        InterruptController interrupts = cpu.interrupts;
+        if (periodic) {
+            int source = interrupts.newSource();
+            InterruptController.Event release = cycle -> interrupts.setIRQ(source, false);
+            InterruptController.Event[] tick = new InterruptController.Event[1];
+            tick[0] = cycle -> {
+                interrupts.setIRQ(source, true);
+                interrupts.schedule(cycle + 25, release);
+                interrupts.schedule(cycle + 1000, tick[0]);
+            };
+            interrupts.schedule(1000, tick[0]);
+        }
+        long executed = 0;
+        long start = System.nanoTime();
+        while (executed < INSTRUCTIONS) executed += jit ? tier.executeBlock() : decoder.executeBlock();
+        return mipsOf(executed, System.nanoTime() - start);
+    }
+
+    /**
+     * Périphériques : débit par blocs sans périphérique, puis avec le temporisateur (IRQ toutes les
+     * 500 cycles) et l'ACIA (un caractère émis par interruption) ; ensuite, débit d'échéances de
+     * 1000 minuteries périodiques sur la roue temporelle et sur la file du contrôleur.
+     */
+    static void devices() throws Exception {
+        System.out.println("== Périphériques : sans / avec temporisateur et ACIA ==");
+        for (int round = 0; round < ROUNDS; round++) {
+            double none = deviceRun(false);
+            double busy = deviceRun(true);
+            System.out.printf("round %d : sans %.1f MIPS | temporisateur + ACIA %.1f MIPS | x%.2f%n",
+                    round, none, busy, busy / none);
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            double wheel = timerRun(true);
+            double heap = timerRun(false);
+            System.out.printf("round %d : roue %.1f M échéances/s | tas %.1f M échéances/s%n", round, wheel, heap);
+        }
+    }
+
+    private static double deviceRun(boolean attached) throws Exception {
+        CPU6809_V6 cpu = new CPU6809_V6();
+        new MiniAssembler_V6().assemble(LOOP_PROGRAM, cpu);
+        if (attached) {
+            new IntervalTimer(cpu).attach(IntervalTimer.BASE);
+            new ACIA6850(cpu, null, java.io.OutputStream.nullOutputStream(), 1).attach(ACIA6850.BASE);
+            // Handler en $3000 : acquitte le temporisateur, émet un caractère, RTI
+            byte[] handler = {(byte) 0xB7, (byte) 0xD3, 0x01, (byte) 0xB7, (byte) 0xD2, 0x01, 0x3B};
+            for (int i = 0; i < handler.length; i++) cpu.memory.write(0x3000 + i, handler[i]);
+            cpu.memory.write(CPU6809_V6.VECTOR_IRQ, 0x30);
+            cpu.memory.write(CPU6809_V6.VECTOR_IRQ + 1, 0x00);
+            cpu.S = 0x8000;
+            cpu.bus.write(ACIA6850.BASE, 0x15);
+            cpu.bus.write(IntervalTimer.BASE + IntervalTimer.LATCH_HI, 0x01);
+            cpu.bus.write(IntervalTimer.BASE + IntervalTimer.LATCH_LO, 0xF4);
+            cpu.bus.write(IntervalTimer.BASE, IntervalTimer.CTRL_RUN | IntervalTimer.CTRL_RELOAD | IntervalTimer.CTRL_IRQ);
+        }
+        InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+        long executed = 0;
+        long start = System.nanoTime();
+        while (executed < INSTRUCTIONS) executed += decoder.executeBlock();
+        return mipsOf(executed, System.nanoTime() - start);
+    }
+
+    // Attente active du temporisateur (période de 4096 cycles), puis comptage en $0200
+    private static final String IDLE_PROGRAM =
+            "W LDA $D301\n BEQ W\n STA $D301\n LDD $0200\n ADDD #$0001\n STD $0200\n BRA W\n";
+    private static final long IDLE_CYCLES = 200_000_000L;
+
+    /**
+     * Boucles d'attente : un programme qui scrute le registre d'état du temporisateur,
+     * interprété puis avancé jusqu'à chaque échéance (même compteur final, voir IdleSkipTest).
+     */
+    static void idle() throws Exception {
+        System.out.println("== Boucles d'attente : interprétées / avancées ==");
+        for (int round = 0; round < ROUNDS; round++) {
+            long[] plain = idleRun(false);
+            long[] skipped = idleRun(true);
+            System.out.printf("round %d : interprétées %.1f MHz | avancées %.1f MHz | x%.1f (%d échéances)%n",
+                    round, IDLE_CYCLES * 1000.0 / plain[0], IDLE_CYCLES * 1000.0 / skipped[0],
+                    (double) plain[0] / skipped[0], skipped[1]);
+        }
+    }
+
+    // Durée en nanosecondes et valeur finale du compteur
+    private static long[] idleRun(boolean idleSkip) throws Exception {
+        CPU6809_V6 cpu = new CPU6809_V6();
+        new MiniAssembler_V6().assemble(IDLE_PROGRAM, cpu);
+        new IntervalTimer(cpu).attach(IntervalTimer.BASE);
+        cpu.bus.write(IntervalTimer.BASE + IntervalTimer.LATCH_HI, 0x10);
+        cpu.bus.write(IntervalTimer.BASE, IntervalTimer.CTRL_RUN | IntervalTimer.CTRL_RELOAD);
+        InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+        decoder.setIdleSkip(idleSkip);
+        long start = System.nanoTime();
+        while (cpu.cycles < IDLE_CYCLES) decoder.executeBlock();
+        long nanos = System.nanoTime() - start;
+        return new long[] {nanos, cpu.memory.read(0x0200) << 8 | cpu.memory.read(0x0201)};
+    }
+
+    private static final int DISASM_ROWS = 40;
+    private static final int DISASM_FRAMES = 20_000;
+
+    /**
+     * Désassemblage : coût d'une image de {@value #DISASM_ROWS} lignes de listing, avec le cache
+     * du désassembleur, puis en le vidant à chaque image (tout est reformaté).
+     */
+    static void disasm() throws Exception {
+        System.out.println("== Désassemblage : image de " + DISASM_ROWS + " lignes, cache / sans cache ==");
+        CPU6809_V6 cpu = new CPU6809_V6();
+        new MiniAssembler_V6().assemble(LOOP_PROGRAM, cpu);
+        Disassembler disassembler = new Disassembler(new InstructionDecoder_V6(cpu));
+        for (int round = 0; round < ROUNDS; round++) {
+            double cached = disasmRun(cpu, disassembler, false);
+            double formatted = disasmRun(cpu, disassembler, true);
+            System.out.printf("round %d : cache %.1f µs/image | sans cache %.1f µs/image | x%.1f%n",
+                    round, cached, formatted, formatted / cached);
+        }
+    }
+
+    // Microsecondes par image
+    private static double disasmRun(CPU6809_V6 cpu, Disassembler disassembler, boolean invalidate) {
+        long chars = 0;
+        long start = System.nanoTime();
+        for (int frame = 0; frame < DISASM_FRAMES; frame++) {
+            if (invalidate) disassembler.invalidateAll();
+            int addr = 0;
+            for (int row = 0; row < DISASM_ROWS; row++) {
+                chars += disassembler.listing(cpu.memory, addr).length();
+                addr = (addr + disassembler.length(cpu.memory, addr)) & 0xFFFF;
+            }
+        }
+        if (chars == 0) throw new IllegalStateException();
+        return (System.nanoTime() - start) / 1000.0 / DISASM_FRAMES;
+    }
+
+    // Millions d'échéances par seconde, le temps avançant de 4 cycles par « instruction »
+    private static double timerRun(boolean wheel) {
+        CPU6809_V6 cpu = new CPU6809_V6();
+        InterruptController interrupts = cpu.interrupts;
+        java.util.Random random = new java.util.Random(6809);
+        long[] fired = new long[1];
+        for (int i = 0; i < 1000; i++) {
+            int period = 100 + random.nextInt(10_000);
+            if (wheel) {
+                TimingWheel.Timer[] timer = new TimingWheel.Timer[1];
+                timer[0] = cpu.timers.newTimer(cycle -> {
+                    fired[0]++;
+                    timer[0].schedule(cycle + period);
+                });
+                timer[0].schedule(period);
+            } else {
+                InterruptController.Event[] event = new InterruptController.Event[1];
+                event[0] = cycle -> {
+                    fired[0]++;
+                    interrupts.schedule(cycle + period, event[0]);
+                };
+                interrupts.schedule(period, event[0]);
+            }
+        }
+        long start = System.nanoTime();
+        while (cpu.cycles < 100_000_000L) {
+            cpu.cycles += 4;
+            if (cpu.cycles >= interrupts.nextEvent) interrupts.fireDue(cpu.cycles);
+        }
+        return fired[0] * 1000.0 / (System.nanoTime() - start);
+    }
+
+    static double mipsOf(long instructions, long nanos) {
+        return instructions * 1000.0 / nanos;
+    }
+}
@@ -0,0 +1,201 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cache d'instructions prédécodées, organisé en blocs de base indexés par adresse de départ.
+ * Un bloc est une suite linéaire d'instructions terminée par un saut (BRA/BEQ/BNE/JMP), un HALT
+ * ou une instruction liée aux interruptions (SWI, RTI, CWAI, SYNC, ANDCC).
+ * Les blocs sont invalidés par page de 256 octets dès qu'une écriture touche un octet de code
+ * (les données qui partagent une page avec du code ne provoquent pas d'invalidation).
+ */
+class BlockCache {
+    static final int MAX_BLOCK_LENGTH = 64;
+
+    /**
+     * Bloc de base prédécodé, une entrée par instruction. Ce que lit l'exécution (cycles, PC suivant,
+     * mode, opérande) est rangé côte à côte dans {@link #code}, {@link #STRIDE} entiers par instruction :
+     * une instruction tient dans une ligne de cache au lieu de quatre.
+     * Pour IDX, l'opérande contient le registre (bits 16-17) et l'offset signé (bits 0-15).
+     */
+    static final class Block {
+        static final int STRIDE = 4;
+        static final int CYCLES = 0, NEXT_PC = 1, MODE = 2, OPERAND = 3;
+
+        final int start;
+        int end;
+        int count;
+        int totalCycles;
+        final int[] code = new int[MAX_BLOCK_LENGTH * STRIDE];
+        final int[] pc = new int[MAX_BLOCK_LENGTH];
+        // page * 256 + opcode, pour le profileur
+        final int[] opcode = new int[MAX_BLOCK_LENGTH];
+        final InstructionDecoder_V6.OpHandler[] handler = new InstructionDecoder_V6.OpHandler[MAX_BLOCK_LENGTH];
+        boolean valid = true;
+        // Reboucle sur son propre début sans écrire en mémoire : candidate à l'avance rapide
+        boolean selfLoop;
+
+        Block(int start) {
+            this.start = start;
+        }
+
+        int cycles(int i) {
+            return code[i * STRIDE + CYCLES];
+        }
+
+        int nextPc(int i) {
+            return code[i * STRIDE + NEXT_PC];
+        }
+
+        int mode(int i) {
+            return code[i * STRIDE + MODE];
+        }
+
+        int operand(int i) {
+            return code[i * STRIDE + OPERAND];
+        }
+    }
+
+    private final CPU6809_V6 cpu;
+    private final InstructionDecoder_V6 decoder;
+
+    private final Block[] blocks = new Block[65536];
+    // Pages (256 octets) contenant du code en cache : 256 bits
+    private final long[] codePages = new long[4];
+    // Octets appartenant à un bloc en cache : 64K bits
+    private final long[] codeBytes = new long[1024];
+    private final List<List<Block>> pageBlocks = new ArrayList<>(256);
+
+    BlockCache(CPU6809_V6 cpu, InstructionDecoder_V6 decoder) {
+        this.cpu = cpu;
+        this.decoder = decoder;
+        for (int i = 0; i < 256; i++) pageBlocks.add(new ArrayList<>());
+    }
+
+    Block lookup(int start) {
+        Block block = blocks[start];
+        if (block == null) {
+            block = build(start);
+            blocks[start] = block;
+            registerPages(block);
+        }
+        return block;
+    }
+
+    /**
+     * Appelé à chaque écriture mémoire : invalide la page si l'octet écrit fait partie d'un bloc.
+     */
+    void onWrite(int addr) {
+        addr &= 0xFFFF;
+        if ((codeBytes[addr >> 6] & (1L << addr)) != 0) invalidatePage(addr >> 8);
+    }
+
+    void invalidatePage(int page) {
+        for (Block block : pageBlocks.get(page)) {
+            block.valid = false;
+            if (blocks[block.start] == block) blocks[block.start] = null;
+        }
+        pageBlocks.get(page).clear();
+        codePages[page >> 6] &= ~(1L << page);
+        for (int i = 0; i < 4; i++) codeBytes[(page << 2) + i] = 0;
+    }
+
+    void invalidateAll() {
+        for (int page = 0; page < 256; page++) {
+            if ((codePages[page >> 6] & (1L << page)) != 0) invalidatePage(page);
+        }
+    }
+
+    private void registerPages(Block block) {
+        for (int addr = block.start; addr != block.end; addr = (addr + 1) & 0xFFFF) {
+            codeBytes[addr >> 6] |= 1L << addr;
+        }
+        int first = block.start >> 8;
+        int last = ((block.end - 1) & 0xFFFF) >> 8;
+        for (int page = first; ; page = (page + 1) & 0xFF) {
+            pageBlocks.get(page).add(block);
+            codePages[page >> 6] |= 1L << page;
+            if (page == last) break;
+        }
+    }
+
+    private Block build(int start) {
+        Block block = new Block(start);
+        int addr = start;
+        boolean writes = false;
+        while (block.count < MAX_BLOCK_LENGTH) {
+            int i = block.count++;
+            block.pc[i] = addr;
+
+            int opcode = peek(addr++);
+            int page = InstructionDecoder_V6.PAGE_0;
+            if (opcode == 0x10) {
+                page = InstructionDecoder_V6.PAGE_2;
+                opcode = peek(addr++);
+            } else if (opcode == 0x11) {
+                page = InstructionDecoder_V6.PAGE_3;
+                opcode = peek(addr++);
+            }
+
+            int mode = decoder.modes[page][opcode];
+            int cost = decoder.cycles[page][opcode];
+            int operand = 0;
+            switch (mode) {
+                case InstructionDecoder_V6.M_IMM8:
+                case InstructionDecoder_V6.M_DIR:
+                    operand = peek(addr++);
+                    break;
+                case InstructionDecoder_V6.M_IMM16:
+                case InstructionDecoder_V6.M_EXT:
+                    operand = (peek(addr) << 8) | peek(addr + 1);
+                    addr += 2;
+                    break;
+                case InstructionDecoder_V6.M_IDX: {
+                    int postByte = peek(addr++);
+                    cost += InstructionDecoder_V6.INDEXED_EXTRA_CYCLES[postByte];
+                    int offset = 0;
+                    if ((postByte & 0x80) == 0) offset = (byte) peek(addr++);
+                    operand = ((postByte & 0x03) << 16) | (offset & 0xFFFF);
+                    break;
+                }
+                case InstructionDecoder_V6.M_REL:
+                    operand = (byte) peek(addr++);
+                    break;
+                default:
+                    break;
+            }
+
+            int k = i * Block.STRIDE;
+            block.code[k + Block.CYCLES] = cost;
+            block.code[k + Block.NEXT_PC] = addr & 0xFFFF;
+            block.code[k + Block.MODE] = mode;
+            block.code[k + Block.OPERAND] = operand;
+            block.totalCycles += cost;
+            block.handler[i] = decoder.handlers[page][opcode];
+            block.opcode[i] = page << 8 | opcode;
+            writes |= decoder.writesMemory(page, opcode);
+
+            if (endsBlock(page, opcode, mode) || addr > 0xFFFF) break;
+        }
+        int last = block.count - 1;
+        block.end = block.nextPc(last);
+        int target = block.mode(last) == InstructionDecoder_V6.M_REL ? (block.end + block.operand(last)) & 0xFFFF
+                : block.opcode[last] == 0x7E ? block.operand(last) : -1;
+        block.selfLoop = target == start && !writes;
+        return block;
+    }
+
+    private static boolean endsBlock(int page, int opcode, int mode) {
+        if (mode == InstructionDecoder_V6.M_REL) return true;
+        // SWI/SWI2/SWI3 (toutes pages)
+        if (opcode == 0x3F) return true;
+        // JMP, HALT, RTI, CWAI, SYNC, et ANDCC qui peut démasquer une interruption en attente
+        return page == InstructionDecoder_V6.PAGE_0 && (opcode == 0x7E || opcode == 0x00
+                || opcode == 0x3B || opcode == 0x3C || opcode == 0x13 || opcode == 0x1C);
+    }
+
+    private int peek(int addr) {
+        return cpu.memory.read(addr);
+    }
+}
@@ -0,0 +1,406 @@
+package sim;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Breakpoints d'exécution, watchpoints mémoire et conditions.
+ * Les adresses d'arrêt sont un bitmap de 64K bits ; les watchpoints (lecture, écriture ou accès
+ * sur une plage) un bitmap par type, consulté par le décodeur à chaque accès de donnée
+ * (les lectures d'opcodes et d'opérandes immédiats ne comptent pas).
+ * Les conditions sont compilées une fois en prédicats ({@link Condition}) : aucune
+ * interprétation de texte ni allocation pendant l'exécution.
+ *
+ * Syntaxe (entrées séparées par des virgules) :
+ * {@code 0010}, {@code 0010 if A==$7F && (CC&Z)}, {@code w:0200}, {@code r:0200-020F},
+ * {@code rw:D000 if X>$1000}.
+ */
+public final class BreakpointEngine {
+    public static final int READ = 1, WRITE = 2, ACCESS = READ | WRITE;
+
+    /** Prédicat compilé sur l'état du CPU. */
+    public interface Condition {
+        boolean test(CPU6809_V6 cpu);
+    }
+
+    // Expression entière compilée (registres, mémoire, constantes, opérateurs)
+    private interface Expr {
+        int eval(CPU6809_V6 cpu);
+    }
+
+    private static final class Watch {
+        final int from, to, kind;
+        final Condition condition;
+
+        Watch(int from, int to, int kind, Condition condition) {
+            this.from = from;
+            this.to = to;
+            this.kind = kind;
+            this.condition = condition;
+        }
+    }
+
+    private final long[] exec = new long[1024];
+    // Conditions des breakpoints d'exécution (alloué au premier breakpoint conditionnel)
+    private Condition[] execConditions;
+    private final long[] readWatch = new long[1024];
+    private final long[] writeWatch = new long[1024];
+    private final List<Watch> watches = new ArrayList<>();
+    private int execCount;
+
+    // Dernier watchpoint déclenché, en attente d'être consulté par la boucle d'exécution
+    private boolean hit;
+    private int hitKind, hitAddr, hitValue;
+
+    public void addBreakpoint(int addr) {
+        addBreakpoint(addr, null);
+    }
+
+    public void addBreakpoint(int addr, Condition condition) {
+        addr &= 0xFFFF;
+        if ((exec[addr >> 6] & (1L << addr)) == 0) execCount++;
+        exec[addr >> 6] |= 1L << addr;
+        if (condition != null) {
+            if (execConditions == null) execConditions = new Condition[0x10000];
+            execConditions[addr] = condition;
+        } else if (execConditions != null) {
+            execConditions[addr] = null;
+        }
+    }
+
+    /** Watchpoint sur [from, to] (bornes incluses), {@code kind} = READ, WRITE ou ACCESS. */
+    public void addWatchpoint(int from, int to, int kind, Condition condition) {
+        from &= 0xFFFF;
+        to &= 0xFFFF;
+        if (to < from) throw new IllegalArgumentException(String.format("Plage vide : %04X-%04X", from, to));
+        watches.add(new Watch(from, to, kind, condition));
+        for (int addr = from; addr <= to; addr++) {
+            if ((kind & READ) != 0) readWatch[addr >> 6] |= 1L << addr;
+            if ((kind & WRITE) != 0) writeWatch[addr >> 6] |= 1L << addr;
+        }
+    }
+
+    public boolean isEmpty() {
+        return execCount == 0 && watches.isEmpty();
+    }
+
+    public boolean hasWatchpoints() {
+        return !watches.isEmpty();
+    }
+
+    /** Vrai si un breakpoint d'exécution (conditionnel ou non) est posé en {@code addr}. */
+    public boolean isBreakpoint(int addr) {
+        addr &= 0xFFFF;
+        return (exec[addr >> 6] & (1L << addr)) != 0;
+    }
+
+    /** Vrai si l'exécution doit s'arrêter avant l'instruction à {@code pc}. */
+    public boolean shouldBreak(CPU6809_V6 cpu, int pc) {
+        if ((exec[pc >> 6] & (1L << pc)) == 0) return false;
+        Condition condition = execConditions == null ? null : execConditions[pc];
+        return condition == null || condition.test(cpu);
+    }
+
+    // Appelés par le décodeur sur chaque accès de donnée (seulement si des watchpoints existent)
+    void onRead(CPU6809_V6 cpu, int addr, int value) {
+        if ((readWatch[addr >> 6] & (1L << addr)) != 0) check(cpu, READ, addr, value);
+    }
+
+    void onWrite(CPU6809_V6 cpu, int addr, int value) {
+        if ((writeWatch[addr >> 6] & (1L << addr)) != 0) check(cpu, WRITE, addr, value);
+    }
+
+    private void check(CPU6809_V6 cpu, int kind, int addr, int value) {
+        for (Watch w : watches) {
+            if ((w.kind & kind) != 0 && addr >= w.from && addr <= w.to
+                    && (w.condition == null || w.condition.test(cpu))) {
+                hit = true;
+                hitKind = kind;
+                hitAddr = addr;
+                hitValue = value & 0xFF;
+                return;
+            }
+        }
+    }
+
+    /** Consomme le déclenchement d'un watchpoint depuis le dernier appel. */
+    public boolean takeHit() {
+        boolean h = hit;
+        hit = false;
+        return h;
+    }
+
+    /** Description du dernier watchpoint déclenché. */
+    public String describeHit() {
+        return String.format("Watchpoint %s %04X = %02X", hitKind == READ ? "lecture" : "écriture", hitAddr, hitValue);
+    }
+
+    /**
+     * Construit un moteur à partir du texte saisi (voir la syntaxe en tête de classe).
+     * @throws IllegalArgumentException si une entrée ou une condition est invalide
+     */
+    public static BreakpointEngine parse(String spec) {
+        BreakpointEngine engine = new BreakpointEngine();
+        for (String entry : spec.split(",")) {
+            entry = entry.trim();
+            if (entry.isEmpty()) continue;
+            Condition condition = null;
+            int cut = entry.toLowerCase().indexOf(" if ");
+            if (cut >= 0) {
+                condition = compile(entry.substring(cut + 4));
+                entry = entry.substring(0, cut).trim();
+            }
+            int kind = 0;
+            int colon = entry.indexOf(':');
+            if (colon >= 0) {
+                switch (entry.substring(0, colon).trim().toLowerCase()) {
+                    case "r": kind = READ; break;
+                    case "w": kind = WRITE; break;
+                    case "rw": kind = ACCESS; break;
+                    default: throw new IllegalArgumentException("Type de watchpoint inconnu : " + entry);
+                }
+                entry = entry.substring(colon + 1).trim();
+            }
+            try {
+                if (kind == 0) {
+                    engine.addBreakpoint(Integer.parseInt(entry, 16), condition);
+                } else {
+                    int dash = entry.indexOf('-');
+                    int from = Integer.parseInt((dash < 0 ? entry : entry.substring(0, dash)).trim(), 16);
+                    int to = dash < 0 ? from : Integer.parseInt(entry.substring(dash + 1).trim(), 16);
+                    engine.addWatchpoint(from, to, kind, condition);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Adresse invalide : " + entry);
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Compile une condition : registres (A B D DP X Y U S PC CC), masques des flags
+     * (C V Z N I H F E), octets mémoire {@code [adresse]}, nombres ($hex, %binaire, décimal),
+     * opérateurs {@code + - & | ^ == != < <= > >= && || !} et parenthèses.
+     * Une valeur non nulle est vraie. La mémoire est lue sans passer par les périphériques.
+     */
+    public static Condition compile(String text) {
+        Parser parser = new Parser(text);
+        Expr expr = parser.or();
+        parser.skipSpaces();
+        if (parser.pos < text.length()) throw parser.error("caractère inattendu");
+        if (expr instanceof Const) {
+            boolean value = ((Const) expr).value != 0;
+            return cpu -> value;
+        }
+        return cpu -> expr.eval(cpu) != 0;
+    }
+
+    // Constante repérable pour le pré-calcul des sous-expressions sans registre
+    private static final class Const implements Expr {
+        final int value;
+
+        Const(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public int eval(CPU6809_V6 cpu) {
+            return value;
+        }
+    }
+
+    // Opérateur binaire : calculé à la compilation si ses deux opérandes sont constants
+    private interface BinOp {
+        int apply(int a, int b);
+    }
+
+    private static Expr binary(Expr left, Expr right, BinOp op) {
+        if (left instanceof Const && right instanceof Const) {
+            return new Const(op.apply(((Const) left).value, ((Const) right).value));
+        }
+        return cpu -> op.apply(left.eval(cpu), right.eval(cpu));
+    }
+
+    /** Analyse descendante récursive, une méthode par niveau de priorité. */
+    private static final class Parser {
+        final String text;
+        int pos;
+
+        Parser(String text) {
+            this.text = text;
+        }
+
+        IllegalArgumentException error(String message) {
+            return new IllegalArgumentException("Condition invalide (" + message + ", colonne " + (pos + 1) + ") : " + text);
+        }
+
+        void skipSpaces() {
+            while (pos < text.length() && text.charAt(pos) == ' ') pos++;
+        }
+
+        boolean accept(String token) {
+            skipSpaces();
+            if (text.startsWith(token, pos)) {
+                pos += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        Expr or() {
+            Expr left = and();
+            while (accept("||")) {
+                Expr l = left, r = and();
+                left = l instanceof Const && r instanceof Const
+                        ? new Const((((Const) l).value != 0 || ((Const) r).value != 0) ? 1 : 0)
+                        : cpu -> (l.eval(cpu) != 0 || r.eval(cpu) != 0) ? 1 : 0;
+            }
+            return left;
+        }
+
+        Expr and() {
+            Expr left = bitOr();
+            while (accept("&&")) {
+                Expr l = left, r = bitOr();
+                left = l instanceof Const && r instanceof Const
+                        ? new Const((((Const) l).value != 0 && ((Const) r).value != 0) ? 1 : 0)
+                        : cpu -> (l.eval(cpu) != 0 && r.eval(cpu) != 0) ? 1 : 0;
+            }
+            return left;
+        }
+
+        Expr bitOr() {
+            Expr left = bitXor();
+            while (true) {
+                skipSpaces();
+                if (text.startsWith("||", pos) || !accept("|")) return left;
+                left = binary(left, bitXor(), (a, b) -> a | b);
+            }
+        }
+
+        Expr bitXor() {
+            Expr left = bitAnd();
+            while (accept("^")) left = binary(left, bitAnd(), (a, b) -> a ^ b);
+            return left;
+        }
+
+        Expr bitAnd() {
+            Expr left = equality();
+            while (true) {
+                skipSpaces();
+                if (text.startsWith("&&", pos) || !accept("&")) return left;
+                left = binary(left, equality(), (a, b) -> a & b);
+            }
+        }
+
+        Expr equality() {
+            Expr left = comparison();
+            while (true) {
+                if (accept("==")) left = binary(left, comparison(), (a, b) -> a == b ? 1 : 0);
+                else if (accept("!=")) left = binary(left, comparison(), (a, b) -> a != b ? 1 : 0);
+                else return left;
+            }
+        }
+
+        Expr comparison() {
+            Expr left = additive();
+            while (true) {
+                if (accept("<=")) left = binary(left, additive(), (a, b) -> a <= b ? 1 : 0);
+                else if (accept(">=")) left = binary(left, additive(), (a, b) -> a >= b ? 1 : 0);
+                else if (accept("<")) left = binary(left, additive(), (a, b) -> a < b ? 1 : 0);
+                else if (accept(">")) left = binary(left, additive(), (a, b) -> a > b ? 1 : 0);
+                else return left;
+            }
+        }
+
+        Expr additive() {
+            Expr left = unary();
+            while (true) {
+                if (accept("+")) left = binary(left, unary(), (a, b) -> a + b);
+                else if (accept("-")) left = binary(left, unary(), (a, b) -> a - b);
+                else return left;
+            }
+        }
+
+        Expr unary() {
+            skipSpaces();
+            if (text.startsWith("!=", pos)) throw error("opérande attendu");
+            if (accept("!")) {
+                Expr e = unary();
+                return binary(e, new Const(0), (a, b) -> a == 0 ? 1 : 0);
+            }
+            if (accept("-")) {
+                Expr e = unary();
+                return binary(new Const(0), e, (a, b) -> a - b);
+            }
+            return primary();
+        }
+
+        Expr primary() {
+            skipSpaces();
+            if (accept("(")) {
+                Expr e = or();
+                if (!accept(")")) throw error("')' attendue");
+                return e;
+            }
+            if (accept("[")) {
+                Expr address = or();
+                if (!accept("]")) throw error("']' attendu");
+                if (address instanceof Const) {
+                    int addr = ((Const) address).value & 0xFFFF;
+                    return cpu -> cpu.memory.read(addr);
+                }
+                return cpu -> cpu.memory.read(address.eval(cpu) & 0xFFFF);
+            }
+            if (pos >= text.length()) throw error("fin inattendue");
+            char c = text.charAt(pos);
+            if (c == '$' || c == '%' || Character.isDigit(c)) return number();
+            if (Character.isLetter(c)) return name();
+            throw error("opérande attendu");
+        }
+
+        Expr number() {
+            int radix = 10;
+            if (text.charAt(pos) == '$') {
+                radix = 16;
+                pos++;
+            } else if (text.charAt(pos) == '%') {
+                radix = 2;
+                pos++;
+            }
+            int start = pos;
+            while (pos < text.length() && Character.digit(text.charAt(pos), radix) >= 0) pos++;
+            if (start == pos) throw error("nombre attendu");
+            return new Const(Integer.parseInt(text.substring(start, pos), radix));
+        }
+
+        Expr name() {
+            int start = pos;
+            while (pos < text.length() && Character.isLetter(text.charAt(pos))) pos++;
+            String name = text.substring(start, pos).toUpperCase();
+            switch (name) {
+                case "A": return cpu -> cpu.A;
+                case "B": return cpu -> cpu.B;
+                case "D": return CPU6809_V6::getD;
+                case "DP": return cpu -> cpu.DP;
+                case "X": return cpu -> cpu.X;
+                case "Y": return cpu -> cpu.Y;
+                case "U": return cpu -> cpu.U;
+                case "S": return cpu -> cpu.S;
+                case "PC": return cpu -> cpu.PC;
+                case "CC": return CPU6809_V6::getCC;
+                case "C": return new Const(CPU6809_V6.FLAG_C);
+                case "V": return new Const(CPU6809_V6.FLAG_V);
+                case "Z": return new Const(CPU6809_V6.FLAG_Z);
+                case "N": return new Const(CPU6809_V6.FLAG_N);
+                case "I": return new Const(CPU6809_V6.FLAG_I);
+                case "H": return new Const(CPU6809_V6.FLAG_H);
+                case "F": return new Const(CPU6809_V6.FLAG_F);
+                case "E": return new Const(CPU6809_V6.FLAG_E);
+                default:
+                    pos = start;
+                    throw error("nom inconnu « " + name + " »");
+            }
+        }
+    }
+}
@@ -6,11 +6,15 @@ import java.util.Arrays;
  * Modèle complet du CPU Motorola 6809 avec gestion mémoire et flags.
  */
 public class CPU6809_V6 {
-    // Registres 8 bits
-    public int A = 0, B = 0, DP = 0, CC = 0;
+    // Registres 8 bits (CC est accessible via getCC()/setCC())
+    public int A = 0, B = 0, DP = 0;
+    private int cc = 0;
     // Registres 16 bits
     public int X = 0, Y = 0, U = 0, S = 0, PC = 0;
 
+    // Compteur de cycles d'horloge depuis le dernier reset
+    public long cycles = 0;
+
     // Constantes pour les flags du registre CC
     public static final int FLAG_C = 0x01; // Carry
     public static final int FLAG_V = 0x02; // Overflow
@@ -21,28 +25,79 @@ public class CPU6809_V6 {
     public static final int FLAG_F = 0x40; // Fast interrupt mask
     public static final int FLAG_E = 0x80; // Entire state on stack
 
+    // Vecteurs d'interruption (adresse de l'octet de poids fort)
+    public static final int VECTOR_SWI3 = 0xFFF2, VECTOR_SWI2 = 0xFFF4, VECTOR_FIRQ = 0xFFF6, VECTOR_IRQ = 0xFFF8,
+            VECTOR_SWI = 0xFFFA, VECTOR_NMI = 0xFFFC, VECTOR_RESET = 0xFFFE;
+
+    // Flags paresseux : type de la dernière opération en attente, opérandes et résultat
+    static final int LAZY_NONE = 0, LAZY_NZ8 = 1, LAZY_NZ16 = 2, LAZY_ADD8 = 3, LAZY_ADD16 = 4,
+            LAZY_INC8 = 5, LAZY_DEC8 = 6, LAZY_NEG8 = 7, LAZY_COM8 = 8, LAZY_LSR8 = 9,
+            LAZY_ROR8 = 10, LAZY_ASL8 = 11, LAZY_ROL8 = 12, LAZY_CLR8 = 13;
+
+    private static final int NZ = FLAG_N | FLAG_Z;
+    // Bits que chaque opération peut modifier / bits qu'elle détermine entièrement
+    private static final int[] LAZY_TOUCHED = {0, NZ, NZ, NZ | FLAG_V | FLAG_C | FLAG_H, NZ | FLAG_V | FLAG_C,
+            NZ | FLAG_V, NZ | FLAG_V, NZ | FLAG_V | FLAG_C, NZ | FLAG_C, NZ | FLAG_C,
+            NZ | FLAG_C, NZ | FLAG_V | FLAG_C, NZ | FLAG_C, NZ | FLAG_V | FLAG_C};
+    private static final int[] LAZY_OVERWRITTEN = {0, NZ, NZ, NZ | FLAG_V | FLAG_C | FLAG_H, NZ | FLAG_V | FLAG_C,
+            NZ | FLAG_V, NZ | FLAG_V, NZ | FLAG_C, NZ | FLAG_C, NZ | FLAG_C,
+            NZ | FLAG_C, NZ | FLAG_V | FLAG_C, NZ | FLAG_C, NZ | FLAG_V | FLAG_C};
+
+    private boolean lazyFlags = false;
+    private int lazyKind = LAZY_NONE, lazyOp1, lazyOp2, lazyResult;
+
+    // Nombre de calculs de flags effectués (mesure du gain du mode paresseux)
+    public long flagEvaluations;
+
     // Mémoire 64KB
-    public int[] memory = new int[65536];
-    public boolean[] memoryRevealed = new boolean[65536];
+    public final Memory memory;
+    // Cases déjà lues ou écrites (affichage), un bit par adresse ; null si le suivi est désactivé
+    private long[] revealed;
+    // Pages de 256 octets écrites ou nouvellement révélées depuis le dernier affichage (suivi actif)
+    private final long[] dirtyPages = new long[4];
 
-    // Interface pour les Périphériques (I/O)
-    public interface IOMonitor {
-        void onWrite(int address, int value);
-    }
+    // Bus vu par les instructions : pages RAM, ROM ou périphériques (I/O)
+    public final MemoryBus bus;
 
-    public IOMonitor ioMonitor;
+    // Lignes d'interruption et échéances des périphériques
+    public final InterruptController interrupts;
+    public final TimingWheel timers;
+
+    // Dernier instantané capturé ou restauré : référence des pages modifiées (voir MachineSnapshot)
+    MachineSnapshot snapshotBase;
 
     public CPU6809_V6() {
+        this(new Memory.ByteArray());
+    }
+
+    public CPU6809_V6(Memory memory) {
+        this.memory = memory;
+        this.bus = new MemoryBus(memory);
+        this.interrupts = new InterruptController(this);
+        this.timers = new TimingWheel(this);
         reset();
     }
 
     public void reset() {
-        Arrays.fill(memory, 0);
-        Arrays.fill(memoryRevealed, false);
-        A = B = DP = CC = 0;
+        memory.clear();
+        if (revealed != null) Arrays.fill(revealed, 0L);
+        Arrays.fill(dirtyPages, -1L);
+        A = B = DP = cc = 0;
+        lazyKind = LAZY_NONE;
         X = Y = U = 0;
         S = 0x0100; // Pile standard
         PC = 0x0000;
+        interrupts.reset(cycles);
+        timers.rebase(cycles);
+        cycles = 0;
+        bus.resetDevices();
+    }
+
+    /** Remet le compteur de cycles à {@code value} en gardant le délai des échéances planifiées. */
+    void setCycles(long value) {
+        interrupts.shift(cycles - value);
+        timers.rebase(cycles - value);
+        cycles = value;
     }
 
     // Gestion 16 bits (D est virtuel : concaténation A:B)
@@ -55,6 +110,133 @@ public class CPU6809_V6 {
         B = value & 0xFF;
     }
 
+    /**
+     * Lecture de CC : en mode paresseux, les flags en attente sont matérialisés
+     * et le résultat est identique bit à bit au calcul immédiat.
+     */
+    public int getCC() {
+        if (lazyKind != LAZY_NONE) materialize();
+        return cc;
+    }
+
+    public void setCC(int value) {
+        lazyKind = LAZY_NONE;
+        int changed = cc ^ value;
+        cc = value & 0xFF;
+        if ((changed & (FLAG_I | FLAG_F)) != 0) interrupts.update();
+    }
+
+    // I et F ne sont jamais différés par les flags paresseux : lecture directe
+    int interruptMask() {
+        return cc & (FLAG_I | FLAG_F);
+    }
+
+    /**
+     * Test d'un seul flag. Z se déduit directement du résultat en attente sans matérialiser CC.
+     */
+    public boolean testFlag(int flag) {
+        if (lazyKind != LAZY_NONE) {
+            if (flag != FLAG_Z) return (getCC() & flag) != 0;
+            if ((LAZY_TOUCHED[lazyKind] & FLAG_Z) != 0) {
+                int mask = (lazyKind == LAZY_NZ16 || lazyKind == LAZY_ADD16) ? 0xFFFF : 0xFF;
+                return (lazyResult & mask) == 0;
+            }
+        }
+        return (cc & flag) != 0;
+    }
+
+    // État brut des flags (CC de base + opération en attente), pour le journal d'exécution
+    int rawCC() {
+        return cc;
+    }
+
+    int lazyKind() {
+        return lazyKind;
+    }
+
+    int lazyOp1() {
+        return lazyOp1;
+    }
+
+    int lazyOp2() {
+        return lazyOp2;
+    }
+
+    int lazyResult() {
+        return lazyResult;
+    }
+
+    void restoreFlags(int rawCC, int kind, int op1, int op2, int result) {
+        int changed = cc ^ rawCC;
+        cc = rawCC;
+        if ((changed & (FLAG_I | FLAG_F)) != 0) interrupts.update();
+        lazyKind = kind;
+        lazyOp1 = op1;
+        lazyOp2 = op2;
+        lazyResult = result;
+    }
+
+    public boolean isLazyFlags() {
+        return lazyFlags;
+    }
+
+    public void setLazyFlags(boolean enabled) {
+        if (lazyKind != LAZY_NONE) materialize();
+        lazyFlags = enabled;
+    }
+
+    // Mémorise l'opération au lieu de calculer les flags
+    private void defer(int kind, int op1, int op2, int result) {
+        // Les bits encore en attente qui ne seront pas écrasés doivent être calculés d'abord
+        if (lazyKind != LAZY_NONE && (LAZY_TOUCHED[lazyKind] & ~LAZY_OVERWRITTEN[kind]) != 0) materialize();
+        lazyKind = kind;
+        lazyOp1 = op1;
+        lazyOp2 = op2;
+        lazyResult = result;
+    }
+
+    private void materialize() {
+        flagEvaluations++;
+        cc = evaluateFlags(lazyKind, cc, lazyOp1, lazyOp2, lazyResult);
+        lazyKind = LAZY_NONE;
+    }
+
+    /**
+     * Calcule le nouveau CC pour une opération différée à partir du CC de base.
+     */
+    static int evaluateFlags(int kind, int base, int op1, int op2, int result) {
+        int mask = (kind == LAZY_NZ16 || kind == LAZY_ADD16) ? 0xFFFF : 0xFF;
+        int msb = (mask == 0xFFFF) ? 0x8000 : 0x80;
+        int r = result & mask;
+        int flags = (r == 0 ? FLAG_Z : 0) | ((r & msb) != 0 ? FLAG_N : 0);
+        int out = base & ~LAZY_OVERWRITTEN[kind];
+
+        switch (kind) {
+            case LAZY_ADD8:
+            case LAZY_ADD16:
+                if ((op1 & mask) + (op2 & mask) > mask) flags |= FLAG_C;
+                if (kind == LAZY_ADD8 && ((op1 & 0x0F) + (op2 & 0x0F)) > 0x0F) flags |= FLAG_H;
+                if ((op1 & msb) == (op2 & msb) && (op1 & msb) != (r & msb)) flags |= FLAG_V;
+                break;
+            case LAZY_INC8: if (op1 == 0x7F) flags |= FLAG_V; break;
+            case LAZY_DEC8: if (op1 == 0x80) flags |= FLAG_V; break;
+            case LAZY_NEG8:
+                flags |= FLAG_C;
+                if (op1 == 0x80) flags |= FLAG_V;
+                break;
+            case LAZY_COM8: flags |= FLAG_C; break;
+            case LAZY_LSR8:
+            case LAZY_ROR8: if ((op1 & 0x01) != 0) flags |= FLAG_C; break;
+            case LAZY_ASL8:
+                if ((op1 & 0x80) != 0) flags |= FLAG_C;
+                if (((r >> 6) & 1) != ((r >> 7) & 1)) flags |= FLAG_V;
+                break;
+            case LAZY_ROL8: if ((op1 & 0x80) != 0) flags |= FLAG_C; break;
+            default: break;
+        }
+        return out | flags;
+    }
+
     // Méthode générale pour les chargements (N, Z seulement)
     public void updateFlags(int value, boolean is16Bit) {
         updateFlagsNZ(value, is16Bit);
@@ -62,49 +244,53 @@ public class CPU6809_V6 {
 
     // Mise à jour des flags N et Z (utilisé pour les chargements)
     public void updateFlagsNZ(int value, boolean is16Bit) {
+        if (lazyFlags) { defer(is16Bit ? LAZY_NZ16 : LAZY_NZ8, 0, 0, value); return; }
+        flagEvaluations++;
         // Reset N, Z
-        CC &= ~(FLAG_N | FLAG_Z);
+        cc &= ~(FLAG_N | FLAG_Z);
 
         // Test Zero
         int mask = is16Bit ? 0xFFFF : 0xFF;
         if ((value & mask) == 0) {
-            CC |= FLAG_Z;
+            cc |= FLAG_Z;
         }
 
         // Test Negative (bit de poids fort)
         int msb = is16Bit ? 0x8000 : 0x80;
         if ((value & msb) != 0) {
-            CC |= FLAG_N;
+            cc |= FLAG_N;
         }
     }
 
     // Mise à jour des flags pour l'addition 8 bits (N, Z, V, C, H)
     public void updateFlagsAdd8(int operand1, int operand2, int result) {
+        if (lazyFlags) { defer(LAZY_ADD8, operand1, operand2, result); return; }
+        flagEvaluations++;
         // Reset N, Z, V, C, H
-        CC &= ~(FLAG_N | FLAG_Z | FLAG_V | FLAG_C | FLAG_H);
+        cc &= ~(FLAG_N | FLAG_Z | FLAG_V | FLAG_C | FLAG_H);
 
         // Calcul du résultat sur 8 bits
         result &= 0xFF;
 
         // Test Zero
         if (result == 0) {
-            CC |= FLAG_Z;
+            cc |= FLAG_Z;
         }
 
         // Test Negative (bit 7)
         if ((result & 0x80) != 0) {
-            CC |= FLAG_N;
+            cc |= FLAG_N;
         }
 
         // Test Carry (bit 8)
         int sum = (operand1 & 0xFF) + (operand2 & 0xFF);
         if (sum > 0xFF) {
-            CC |= FLAG_C;
+            cc |= FLAG_C;
         }
 
         // Test Half Carry (bit 4)
         if (((operand1 & 0x0F) + (operand2 & 0x0F)) > 0x0F) {
-            CC |= FLAG_H;
+            cc |= FLAG_H;
         }
 
         // Test Overflow (V)
@@ -112,32 +298,34 @@ public class CPU6809_V6 {
         boolean op2_neg = (operand2 & 0x80) != 0;
         boolean res_neg = (result & 0x80) != 0;
         if (op1_neg == op2_neg && op1_neg != res_neg) {
-            CC |= FLAG_V;
+            cc |= FLAG_V;
         }
     }
 
     // Mise à jour des flags pour l'addition 16 bits (N, Z, V, C)
     public void updateFlagsAdd16(int operand1, int operand2, int result) {
+        if (lazyFlags) { defer(LAZY_ADD16, operand1, operand2, result); return; }
+        flagEvaluations++;
         // Reset N, Z, V, C
-        CC &= ~(FLAG_N | FLAG_Z | FLAG_V | FLAG_C);
+        cc &= ~(FLAG_N | FLAG_Z | FLAG_V | FLAG_C);
 
         // Calcul du résultat sur 16 bits
         result &= 0xFFFF;
 
         // Test Zero
         if (result == 0) {
-            CC |= FLAG_Z;
+            cc |= FLAG_Z;
         }
 
         // Test Negative (bit 15)
         if ((result & 0x8000) != 0) {
-            CC |= FLAG_N;
+            cc |= FLAG_N;
         }
 
         // Test Carry (bit 16)
         long sum = (operand1 & 0xFFFFL) + (operand2 & 0xFFFFL);
         if (sum > 0xFFFFL) {
-            CC |= FLAG_C;
+            cc |= FLAG_C;
         }
 
         // Test Overflow (V)
@@ -145,65 +333,162 @@ public class CPU6809_V6 {
         boolean op2_neg = (operand2 & 0x8000) != 0;
         boolean res_neg = (result & 0x8000) != 0;
         if (op1_neg == op2_neg && op1_neg != res_neg) {
-            CC |= FLAG_V;
+            cc |= FLAG_V;
         }
     }
 
     // Mise à jour des flags pour la décrémentation 8 bits (N, Z, V)
     public void updateFlagsDec8(int original, int result) {
+        if (lazyFlags) { defer(LAZY_DEC8, original, 0, result); return; }
+        flagEvaluations++;
         // Reset N, Z, V
-        CC &= ~(FLAG_N | FLAG_Z | FLAG_V);
+        cc &= ~(FLAG_N | FLAG_Z | FLAG_V);
 
         result &= 0xFF;
 
         // Test Zero
         if (result == 0) {
-            CC |= FLAG_Z;
+            cc |= FLAG_Z;
         }
 
         // Test Negative (bit 7)
         if ((result & 0x80) != 0) {
-            CC |= FLAG_N;
+            cc |= FLAG_N;
         }
 
         // Test Overflow : V = 1 si décrémentation de 0x80
         if (original == 0x80) {
-            CC |= FLAG_V;
+            cc |= FLAG_V;
         }
     }
 
     // Mise à jour des flags pour l'incrémentation 8 bits (N, Z, V)
     public void updateFlagsInc8(int original, int result) {
+        if (lazyFlags) { defer(LAZY_INC8, original, 0, result); return; }
+        flagEvaluations++;
         // Reset N, Z, V
-        CC &= ~(FLAG_N | FLAG_Z | FLAG_V);
+        cc &= ~(FLAG_N | FLAG_Z | FLAG_V);
 
         result &= 0xFF;
 
         // Test Zero
         if (result == 0) {
-            CC |= FLAG_Z;
+            cc |= FLAG_Z;
         }
 
         // Test Negative (bit 7)
         if ((result & 0x80) != 0) {
-            CC |= FLAG_N;
+            cc |= FLAG_N;
         }
 
         // Test Overflow : V = 1 si incrémentation de 0x7F
         if (original == 0x7F) {
-            CC |= FLAG_V;
+            cc |= FLAG_V;
         }
     }
 
-    // Interruption Matérielle (Simulation C.1)
+    // Flags des instructions INH sur accumulateur (valeur d'origine, résultat)
+
+    public void updateFlagsNeg8(int original, int result) {
+        if (lazyFlags) { defer(LAZY_NEG8, original, 0, result); return; }
+        updateFlagsNZ(result, false);
+        cc |= FLAG_C;
+        if (original == 0x80) cc |= FLAG_V;
+    }
+
+    public void updateFlagsCom8(int original, int result) {
+        if (lazyFlags) { defer(LAZY_COM8, original, 0, result); return; }
+        updateFlagsNZ(result, false);
+        cc |= FLAG_C;
+    }
+
+    // LSR et ROR : C = bit 0 de la valeur d'origine
+    public void updateFlagsShiftRight8(int original, int result, boolean rotate) {
+        if (lazyFlags) { defer(rotate ? LAZY_ROR8 : LAZY_LSR8, original, 0, result); return; }
+        updateFlagsNZ(result, false);
+        setFlag(FLAG_C, (original & 0x01) != 0);
+    }
+
+    // ASL : C = bit 7 d'origine, V = bit 6 XOR bit 7 du résultat ; ROL : C seulement
+    public void updateFlagsShiftLeft8(int original, int result, boolean rotate) {
+        if (lazyFlags) { defer(rotate ? LAZY_ROL8 : LAZY_ASL8, original, 0, result); return; }
+        updateFlagsNZ(result, false);
+        setFlag(FLAG_C, (original & 0x80) != 0);
+        if (!rotate) setFlag(FLAG_V, ((result >> 6) & 1) != ((result >> 7) & 1));
+    }
+
+    public void updateFlagsClr() {
+        if (lazyFlags) { defer(LAZY_CLR8, 0, 0, 0); return; }
+        updateFlagsNZ(0, false);
+        cc &= ~(FLAG_V | FLAG_C);
+    }
+
+    private void setFlag(int flag, boolean set) {
+        if (set) cc |= flag;
+        else cc &= ~flag;
+    }
+
+    /**
+     * Demande une NMI : prise avant la prochaine instruction exécutée par le décodeur
+     * (empilement complet, I et F masqués, saut au vecteur $FFFC).
+     */
     public void triggerNMI() {
-        int vector = (memory[0xFFFC] << 8) | memory[0xFFFD];
-        if (vector == 0) vector = 0x1000; // Fallback si non défini
-        PC = vector;
+        interrupts.raiseNMI();
+    }
+
+    /**
+     * Active le suivi des cases révélées et des pages modifiées (utile seulement pour l'affichage).
+     * Désactivé, revealAddress se réduit à un test de null.
+     */
+    public void setRevealTracking(boolean enabled) {
+        if (!enabled) revealed = null;
+        else if (revealed == null) revealed = new long[Memory.SIZE / 64];
+    }
+
+    public boolean isRevealTracking() {
+        return revealed != null;
     }
 
     public void revealAddress(int addr) {
-        memoryRevealed[addr & 0xFFFF] = true;
+        long[] bits = revealed;
+        if (bits == null) return;
+        // Le bit est presque toujours déjà posé : on évite l'écriture
+        int word = (addr & 0xFFFF) >>> 6;
+        long mask = 1L << addr;
+        if ((bits[word] & mask) == 0) {
+            bits[word] |= mask;
+            markDirty(addr);
+        }
+    }
+
+    /** Signale à l'affichage que la page de {@code addr} a changé (sans effet si le suivi est désactivé). */
+    public void markDirty(int addr) {
+        if (revealed != null) dirtyPages[(addr & 0xFFFF) >>> 14] |= 1L << (addr >>> 8);
+    }
+
+    /**
+     * Copie dans {@code into} (4 mots, un bit par page) les pages changées depuis l'appel précédent
+     * et les oublie. À appeler depuis le thread qui exécute le CPU.
+     * @return true si au moins une page a changé
+     */
+    public boolean takeDirtyPages(long[] into) {
+        long any = 0;
+        for (int i = 0; i < dirtyPages.length; i++) {
+            into[i] = dirtyPages[i];
+            any |= dirtyPages[i];
+            dirtyPages[i] = 0;
+        }
+        return any != 0;
+    }
+
+    public boolean isRevealed(int addr) {
+        long[] bits = revealed;
+        return bits != null && (bits[(addr & 0xFFFF) >>> 6] & (1L << addr)) != 0;
+    }
+
+    // Comparaison de l'état de suivi (vérification différentielle)
+    boolean sameReveals(CPU6809_V6 other) {
+        return Arrays.equals(revealed, other.revealed);
     }
 }
 
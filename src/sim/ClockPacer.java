@@ -0,0 +1,88 @@
+package sim;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Cadencement de l'émulation sur l'horloge murale : exécute des tranches de cycles
+ * via {@link InstructionDecoder_V6#runCycles(long)} (ou {@link JitTier#runCycles(long)}) puis attend la fin de la tranche.
+ * Une fréquence nulle ou négative désactive la temporisation (vitesse maximale).
+ */
+public class ClockPacer {
+    public static final long MHZ_1 = 1_000_000L;
+    public static final long MHZ_1_79 = 1_789_773L;
+    public static final long UNTHROTTLED = 0;
+
+    // Durée d'une tranche d'exécution
+    public static final long SLICE_NANOS = 1_000_000L;
+
+    private final CPU6809_V6 cpu;
+    private final InstructionDecoder_V6 decoder;
+    // Niveau JIT facultatif (null = interpréteur par blocs)
+    private final JitTier jit;
+    private final long hz;
+    // Cycles d'une tranche cadencée : au moins un, même sous 1 kHz où SLICE_NANOS vaut moins d'un cycle
+    private final long sliceCycles;
+
+    private long originNanos;
+    private long originCycles;
+    // Cycle à partir duquel pace() attend de nouveau l'horloge murale
+    private long nextSync;
+
+    public ClockPacer(CPU6809_V6 cpu, InstructionDecoder_V6 decoder, long hz) {
+        this(cpu, decoder, null, hz);
+    }
+
+    public ClockPacer(CPU6809_V6 cpu, InstructionDecoder_V6 decoder, JitTier jit, long hz) {
+        this.cpu = cpu;
+        this.decoder = decoder;
+        this.jit = jit;
+        this.hz = hz;
+        sliceCycles = hz > 0 ? Math.max(1, hz * SLICE_NANOS / 1_000_000_000L) : 0;
+        restart();
+    }
+
+    /** Réaligne la référence temps/cycles (après une pause par exemple). */
+    public void restart() {
+        originNanos = System.nanoTime();
+        originCycles = cpu.cycles;
+        nextSync = cpu.cycles + sliceCycles;
+    }
+
+    /**
+     * Exécute une tranche d'au plus {@code maxCycles} cycles. En mode cadencé, la tranche
+     * est aussi limitée à {@link #SLICE_NANOS} de temps émulé (un cycle au moins) et l'on
+     * attend ensuite que l'horloge murale la rattrape.
+     * @return les cycles consommés
+     */
+    public long runSlice(long maxCycles) throws Exception {
+        if (hz <= 0) return runCycles(maxCycles);
+
+        long consumed = runCycles(Math.min(maxCycles, sliceCycles));
+        waitForWallClock();
+        return consumed;
+    }
+
+    /**
+     * Cadencement d'une exécution pas à pas menée par l'appelant (breakpoints) : à appeler après
+     * chaque instruction ; attend l'horloge murale une fois par tranche. Sans effet hors mode cadencé.
+     */
+    public void pace() {
+        if (hz <= 0 || cpu.cycles < nextSync) return;
+        nextSync = cpu.cycles + sliceCycles;
+        waitForWallClock();
+    }
+
+    private long runCycles(long budget) throws Exception {
+        return jit != null ? jit.runCycles(budget) : decoder.runCycles(budget);
+    }
+
+    private void waitForWallClock() {
+        long due = originNanos + (cpu.cycles - originCycles) * 1_000_000_000L / hz;
+        long wait = due - System.nanoTime();
+        if (wait > 0) LockSupport.parkNanos(wait);
+    }
+
+    public long getHz() {
+        return hz;
+    }
+}
@@ -0,0 +1,36 @@
+package sim;
+
+/**
+ * Périphérique projeté en mémoire : reçoit les lectures et écritures du CPU
+ * sur les pages qui lui sont attribuées (voir {@link MemoryBus#mapDevice}).
+ */
+public interface Device {
+    /** Octet (0..255) lu à l'adresse complète {@code addr}. */
+    int read(int addr);
+
+    /** Écriture d'un octet (0..255) à l'adresse complète {@code addr}. */
+    void write(int addr, int value);
+
+    /** Ligne RESET du CPU : retour à l'état de mise sous tension. */
+    default void reset() {
+    }
+
+    /**
+     * Vrai si la lecture à {@code addr} est sans effet de bord et que sa valeur ne change qu'aux
+     * échéances planifiées : une boucle qui ne fait que la relire peut alors être avancée jusqu'à la
+     * prochaine échéance (voir {@link InstructionDecoder_V6#setIdleSkip}). Faux par défaut : chaque
+     * périphérique désigne ses registres sûrs.
+     */
+    default boolean isIdleSafe(int addr) {
+        return false;
+    }
+
+    /** État interne à conserver dans un instantané (null = aucun état). */
+    default byte[] saveState() {
+        return null;
+    }
+
+    /** Rétablit un état produit par {@link #saveState()}. */
+    default void restoreState(byte[] state) {
+    }
+}
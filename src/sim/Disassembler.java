@@ -0,0 +1,166 @@
+package sim;
+
+import java.util.Arrays;
+
+/**
+ * Désassembleur : relit les tables du décodeur (mnémoniques, modes d'adressage, cycles et cycles
+ * du postbyte indexé), sans table propre. Une instruction fait au plus 4 octets ; ils sont passés
+ * groupés dans un int, le premier octet en poids fort, ce qui évite toute allocation pour le calcul
+ * de longueur.
+ *
+ * Les lignes de listing ({@link #listing}) sont gardées par adresse, une page de 256 entrées allouée
+ * à la première demande, jusqu'à ce qu'une écriture touche la page ({@link #invalidatePages}) :
+ * une vue rafraîchie à chaque image ne formate que les lignes dont le code a changé.
+ * Le cache n'est pas synchronisé : à utiliser depuis un seul thread (l'affichage).
+ */
+public final class Disassembler {
+    private final InstructionDecoder_V6 decoder;
+    private final String[][] lines = new String[Memory.PAGES][];
+
+    public Disassembler(InstructionDecoder_V6 decoder) {
+        this.decoder = decoder;
+    }
+
+    /** Les 4 octets à partir de {@code pc}, groupés pour {@link #length} et {@link #format}. */
+    public static int fetch(Memory memory, int pc) {
+        return memory.read(pc) << 24 | memory.read(pc + 1) << 16 | memory.read(pc + 2) << 8 | memory.read(pc + 3);
+    }
+
+    /** Longueur en octets de l'instruction (préfixe et opérandes compris). */
+    public int length(int bytes) {
+        int first = bytes >>> 24;
+        int page = pageOf(first);
+        int prefix = page == InstructionDecoder_V6.PAGE_0 ? 0 : 1;
+        int opcode = byteAt(bytes, prefix);
+        switch (decoder.modes[page][opcode]) {
+            case InstructionDecoder_V6.M_IMM8:
+            case InstructionDecoder_V6.M_DIR:
+            case InstructionDecoder_V6.M_REL:
+                return prefix + 2;
+            case InstructionDecoder_V6.M_IMM16:
+            case InstructionDecoder_V6.M_EXT:
+                return prefix + 3;
+            case InstructionDecoder_V6.M_IDX:
+                return prefix + ((byteAt(bytes, prefix + 1) & 0x80) == 0 ? 3 : 2);
+            default:
+                return prefix + 1;
+        }
+    }
+
+    /** Texte de l'instruction située en {@code pc} (les branchements affichent l'adresse cible). */
+    public String format(int pc, int bytes) {
+        int page = pageOf(bytes >>> 24);
+        int prefix = page == InstructionDecoder_V6.PAGE_0 ? 0 : 1;
+        int opcode = byteAt(bytes, prefix);
+        String mnemonic = decoder.mnemonics[page][opcode];
+        if (mnemonic == null) return String.format("FCB $%02X", bytes >>> 24);
+        int b1 = byteAt(bytes, prefix + 1);
+        int b2 = byteAt(bytes, prefix + 2);
+        switch (decoder.modes[page][opcode]) {
+            case InstructionDecoder_V6.M_IMM8: return String.format("%s #$%02X", mnemonic, b1);
+            case InstructionDecoder_V6.M_IMM16: return String.format("%s #$%04X", mnemonic, b1 << 8 | b2);
+            case InstructionDecoder_V6.M_DIR: return String.format("%s <$%02X", mnemonic, b1);
+            case InstructionDecoder_V6.M_EXT: return String.format("%s $%04X", mnemonic, b1 << 8 | b2);
+            case InstructionDecoder_V6.M_IDX: {
+                String register = "XYUS".substring(b1 & 0x03, (b1 & 0x03) + 1);
+                if ((b1 & 0x80) != 0) return mnemonic + " ," + register;
+                return String.format("%s %d,%s", mnemonic, (byte) b2, register);
+            }
+            case InstructionDecoder_V6.M_REL:
+                return String.format("%s $%04X", mnemonic, (pc + prefix + 2 + (byte) b1) & 0xFFFF);
+            default:
+                return mnemonic;
+        }
+    }
+
+    public String format(Memory memory, int pc) {
+        return format(pc & 0xFFFF, fetch(memory, pc));
+    }
+
+    /** Cycles de l'instruction, cycles supplémentaires du postbyte indexé compris (branchements : non pris). */
+    public int cycles(int bytes) {
+        int page = pageOf(bytes >>> 24);
+        int prefix = page == InstructionDecoder_V6.PAGE_0 ? 0 : 1;
+        int opcode = byteAt(bytes, prefix);
+        int cycles = decoder.cycles[page][opcode];
+        if (decoder.modes[page][opcode] == InstructionDecoder_V6.M_IDX) {
+            cycles += InstructionDecoder_V6.INDEXED_EXTRA_CYCLES[byteAt(bytes, prefix + 1)];
+        }
+        return cycles;
+    }
+
+    /** Longueur de l'instruction située en {@code pc}. */
+    public int length(Memory memory, int pc) {
+        return length(fetch(memory, pc));
+    }
+
+    /**
+     * Ligne de listing de l'instruction en {@code pc} : adresse, octets, texte et cycles.
+     * Formatée une seule fois tant que la page n'est pas invalidée.
+     */
+    public String listing(Memory memory, int pc) {
+        pc &= 0xFFFF;
+        String[] page = lines[pc >>> 8];
+        if (page == null) page = lines[pc >>> 8] = new String[Memory.PAGE_SIZE];
+        String line = page[pc & 0xFF];
+        if (line == null) {
+            int bytes = fetch(memory, pc);
+            int length = length(bytes);
+            StringBuilder hex = new StringBuilder(12);
+            for (int i = 0; i < length; i++) hex.append(String.format("%02X ", byteAt(bytes, i)));
+            line = String.format("%04X  %-12s%-14s%2d", pc, hex, format(pc, bytes), cycles(bytes));
+            page[pc & 0xFF] = line;
+        }
+        return line;
+    }
+
+    /**
+     * Oublie les lignes des pages marquées dans {@code pages} (4 mots, un bit par page, comme
+     * {@link CPU6809_V6#takeDirtyPages}), ainsi que les 3 dernières de la page précédente,
+     * dont l'instruction peut déborder sur la page écrite.
+     */
+    public void invalidatePages(long[] pages) {
+        for (int page = 0; page < Memory.PAGES; page++) {
+            if ((pages[page >>> 6] & (1L << page)) == 0) continue;
+            lines[page] = null;
+            String[] previous = lines[(page - 1) & 0xFF];
+            if (previous != null) previous[253] = previous[254] = previous[255] = null;
+        }
+    }
+
+    /** Oublie toutes les lignes (mémoire remplacée hors du décodeur : reset, assemblage, image). */
+    public void invalidateAll() {
+        Arrays.fill(lines, null);
+    }
+
+    /**
+     * Adresse de l'instruction située {@code count} lignes avant {@code pc}. Le code ne se décode
+     * pas à rebours : on décode en avant depuis plus bas et on garde le départ le plus lointain qui
+     * retombe exactement sur {@code pc}. Retourne {@code pc} si aucun départ ne s'y aligne.
+     */
+    public int back(Memory memory, int pc, int count) {
+        pc &= 0xFFFF;
+        if (count <= 0) return pc;
+        int[] recent = new int[count];
+        for (int distance = count * 4; distance >= count; distance--) {
+            int addr = (pc - distance) & 0xFFFF;
+            int seen = 0;
+            while (addr != pc && ((pc - addr) & 0xFFFF) <= distance) {
+                recent[seen++ % count] = addr;
+                addr = (addr + length(memory, addr)) & 0xFFFF;
+            }
+            if (addr == pc && seen >= count) return recent[seen % count];
+        }
+        return pc;
+    }
+
+    private static int pageOf(int first) {
+        if (first == 0x10) return InstructionDecoder_V6.PAGE_2;
+        if (first == 0x11) return InstructionDecoder_V6.PAGE_3;
+        return InstructionDecoder_V6.PAGE_0;
+    }
+
+    private static int byteAt(int bytes, int index) {
+        return index > 3 ? 0 : (bytes >>> (24 - 8 * index)) & 0xFF;
+    }
+}
@@ -0,0 +1,147 @@
+package sim;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.MouseWheelEvent;
+
+/**
+ * Désassemblage défilant de la mémoire : une ligne par instruction, la ligne de PC surlignée,
+ * les breakpoints d'exécution marqués dans la marge. Tant que « Suivre PC » est coché, la fenêtre
+ * ne bouge que lorsque PC en sort, et repart alors quelques lignes au-dessus de PC. La molette
+ * et la barre de défilement parcourent les 64 Ko et décochent le suivi.
+ *
+ * Comme {@link MemoryTableModel}, la vue lit directement le stockage du CPU (jamais le bus) ;
+ * les lignes viennent du cache du {@link Disassembler}, invalidé par les pages modifiées
+ * de chaque instantané ({@link #refresh}).
+ */
+public class DisassemblyView extends JPanel {
+    private static final long serialVersionUID = 1L;
+    // Lignes gardées au-dessus de PC quand la fenêtre se recale
+    private static final int CONTEXT_LINES = 4;
+    private static final Color PC_BACKGROUND = new Color(255, 240, 150);
+    private static final Color BREAK_MARK = new Color(200, 30, 30);
+
+    private final CPU6809_V6 cpu;
+    private final Disassembler disassembler;
+    private final Lines lines = new Lines();
+    private final JScrollBar scrollBar = new JScrollBar(JScrollBar.VERTICAL, 0, 16, 0, Memory.SIZE);
+    private final JCheckBox chkFollow = new JCheckBox("Suivre PC", true);
+    // Adresse de la première ligne, PC affiché, adresses des lignes visibles (recalculées à chaque image)
+    private int top;
+    private int pc;
+    private int[] rows = new int[0];
+    private BreakpointEngine breakpoints;
+    private boolean scrolling;
+
+    public DisassemblyView(CPU6809_V6 cpu, Disassembler disassembler) {
+        super(new BorderLayout());
+        this.cpu = cpu;
+        this.disassembler = disassembler;
+        lines.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        lines.setBackground(Color.WHITE);
+        lines.setOpaque(true);
+        lines.addMouseWheelListener(this::wheel);
+        scrollBar.addAdjustmentListener(e -> {
+            if (scrolling) return;
+            chkFollow.setSelected(false);
+            top = e.getValue();
+            lines.repaint();
+        });
+        chkFollow.addActionListener(e -> {
+            if (chkFollow.isSelected()) follow(true);
+            lines.repaint();
+        });
+        add(chkFollow, BorderLayout.NORTH);
+        add(lines, BorderLayout.CENTER);
+        add(scrollBar, BorderLayout.EAST);
+    }
+
+    /** Breakpoints à marquer (null = aucun). */
+    public void setBreakpoints(BreakpointEngine breakpoints) {
+        this.breakpoints = breakpoints;
+        lines.repaint();
+    }
+
+    /**
+     * Nouvel état à afficher : oublie les lignes des pages modifiées depuis l'instantané précédent
+     * et recale la fenêtre sur PC si le suivi est actif.
+     */
+    public void refresh(int pc, long[] dirtyPages) {
+        disassembler.invalidatePages(dirtyPages);
+        this.pc = pc & 0xFFFF;
+        if (chkFollow.isSelected()) follow(false);
+        lines.repaint();
+    }
+
+    // Recale seulement si PC n'est pas déjà sur une ligne visible (sauf demande explicite)
+    private void follow(boolean force) {
+        layoutRows();
+        if (!force) {
+            for (int addr : rows) if (addr == pc) return;
+        }
+        setTop(disassembler.back(cpu.memory, pc, CONTEXT_LINES));
+    }
+
+    private void wheel(MouseWheelEvent e) {
+        chkFollow.setSelected(false);
+        int steps = e.getWheelRotation();
+        int addr = top;
+        if (steps > 0) {
+            for (int i = 0; i < steps; i++) addr = (addr + disassembler.length(cpu.memory, addr)) & 0xFFFF;
+        } else if (steps < 0) {
+            addr = disassembler.back(cpu.memory, addr, -steps);
+            // Aucun départ ne s'aligne (données) : recul d'un octet par cran
+            if (addr == top) addr = (top + steps) & 0xFFFF;
+        }
+        setTop(addr);
+        lines.repaint();
+    }
+
+    private void setTop(int addr) {
+        top = addr & 0xFFFF;
+        scrolling = true;
+        scrollBar.setValue(top);
+        scrolling = false;
+    }
+
+    // Adresses des lignes qui tiennent dans la hauteur de la vue, à partir de top
+    private void layoutRows() {
+        int height = lines.getFontMetrics(lines.getFont()).getHeight();
+        int count = Math.max(1, lines.getHeight() / height);
+        if (rows.length != count) rows = new int[count];
+        int addr = top;
+        for (int i = 0; i < count; i++) {
+            rows[i] = addr;
+            addr = (addr + disassembler.length(cpu.memory, addr)) & 0xFFFF;
+        }
+    }
+
+    private final class Lines extends JComponent {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            g.setColor(getBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+            layoutRows();
+            FontMetrics metrics = g.getFontMetrics(getFont());
+            int height = metrics.getHeight();
+            int margin = height;
+            g.setFont(getFont());
+            for (int i = 0; i < rows.length; i++) {
+                int addr = rows[i];
+                int y = i * height;
+                if (addr == pc) {
+                    g.setColor(PC_BACKGROUND);
+                    g.fillRect(0, y, getWidth(), height);
+                }
+                if (breakpoints != null && breakpoints.isBreakpoint(addr)) {
+                    g.setColor(BREAK_MARK);
+                    g.fillOval(3, y + 3, height - 6, height - 6);
+                }
+                g.setColor(Color.BLACK);
+                g.drawString(disassembler.listing(cpu.memory, addr), margin, y + metrics.getAscent());
+            }
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package sim;
+
+/**
+ * Journal d'exécution pour le retour arrière (débogage « à rebours »).
+ * Pour chaque instruction, le décodeur enregistre l'état des registres avant exécution et
+ * l'ancienne valeur de chaque octet écrit, dans un anneau de {@code long} préalloué
+ * (aucune allocation par instruction). Quand l'anneau est plein, les instructions les plus
+ * anciennes sont oubliées. Des instantanés périodiques ({@link MachineSnapshot}, pages partagées)
+ * permettent de revenir plus loin que l'anneau : restauration puis ré-exécution d'au plus
+ * {@code keyframeInterval} instructions.
+ *
+ * Disposition d'un enregistrement : un en-tête de {@link #HEADER} mots (registres, état des flags
+ * paresseux, attente CWAI/SYNC et NMI en attente, cycles, nombre d'écritures), les écritures (adresse << 8 | ancien octet), puis
+ * de nouveau le nombre d'écritures. Le retour arrière lit ce dernier mot depuis la fin,
+ * l'oubli des plus anciens enregistrements avance depuis l'en-tête.
+ * Les effets sur les périphériques ne sont pas annulés (les lignes IRQ/FIRQ qu'ils tiennent restent
+ * levées) ; une ré-exécution depuis un instantané réémet leurs sorties.
+ */
+public final class ExecutionJournal {
+    public static final int DEFAULT_CAPACITY_BYTES = 8 << 20;
+    public static final long DEFAULT_KEYFRAME_INTERVAL = 100_000;
+    public static final int KEYFRAMES = 16;
+    static final int HEADER = 5;
+    // Au-delà, les écritures d'une instruction ne tiennent plus dans le champ de l'en-tête
+    private static final int MAX_WRITES = 0xFFF;
+    private static final int MIN_WORDS = 1 << 13;
+
+    private final CPU6809_V6 cpu;
+    private final InstructionDecoder_V6 decoder;
+    private final long[] ring;
+    private final int mask;
+
+    // Positions absolues dans l'anneau : fin du dernier enregistrement, début du plus ancien
+    private long head, tail;
+    // Instructions exécutées depuis l'attachement (recule lors d'un retour arrière)
+    private long time;
+    // Instructions dont l'enregistrement est encore dans l'anneau
+    private int retained;
+
+    // Instruction en cours : état avant exécution, en attente de son en-tête
+    private boolean open;
+    private long start;
+    private int writes;
+
+    private final long keyframeInterval;
+    private final MachineSnapshot[] keyframes = new MachineSnapshot[KEYFRAMES];
+    private final long[] keyframeTimes = new long[KEYFRAMES];
+    private int keyframeCount;
+    // Écart entre instantanés : doublé chaque fois que la table est pleine
+    private long keyframeSpacing;
+    private long nextKeyframe;
+
+    public ExecutionJournal(CPU6809_V6 cpu, InstructionDecoder_V6 decoder) {
+        this(cpu, decoder, DEFAULT_CAPACITY_BYTES, DEFAULT_KEYFRAME_INTERVAL);
+    }
+
+    /**
+     * @param capacityBytes taille maximale de l'anneau (arrondie à la puissance de 2 inférieure)
+     * @param keyframeInterval instructions entre deux instantanés (0 = pas d'instantané)
+     */
+    public ExecutionJournal(CPU6809_V6 cpu, InstructionDecoder_V6 decoder, int capacityBytes, long keyframeInterval) {
+        int words = Integer.highestOneBit(Math.max(capacityBytes / 8, MIN_WORDS));
+        this.cpu = cpu;
+        this.decoder = decoder;
+        this.ring = new long[words];
+        this.mask = words - 1;
+        this.keyframeInterval = keyframeInterval;
+        this.keyframeSpacing = keyframeInterval;
+    }
+
+    /** Appelé par le décodeur avant chaque instruction. */
+    void begin() {
+        if (open) seal();
+        if (keyframeInterval > 0 && time >= nextKeyframe) takeKeyframe();
+        reserve(HEADER + 1);
+        long[] r = ring;
+        long h = head;
+        r[(int) h & mask] = (long) (cpu.A & 0xFF) << 56 | (long) (cpu.B & 0xFF) << 48 | (long) (cpu.DP & 0xFF) << 40
+                | (long) cpu.rawCC() << 32 | (long) (cpu.X & 0xFFFF) << 16 | (cpu.Y & 0xFFFF);
+        r[(int) (h + 1) & mask] = (long) (cpu.U & 0xFFFF) << 48 | (long) (cpu.S & 0xFFFF) << 32
+                | (long) (cpu.PC & 0xFFFF) << 16 | (long) cpu.lazyKind() << 12;
+        r[(int) (h + 2) & mask] = (long) cpu.lazyOp1() << 32 | (cpu.lazyOp2() & 0xFFFFFFFFL);
+        InterruptController interrupts = cpu.interrupts;
+        r[(int) (h + 3) & mask] = (long) interrupts.waitState << 40 | (interrupts.isNMIPending() ? 1L << 32 : 0)
+                | (cpu.lazyResult() & 0xFFFFFFFFL);
+        r[(int) (h + 4) & mask] = cpu.cycles;
+        start = h;
+        head = h + HEADER;
+        writes = 0;
+        open = true;
+        time++;
+    }
+
+    /** Appelé par le décodeur avant chaque écriture mémoire, avec l'octet qui va être remplacé. */
+    void recordWrite(int addr, int old) {
+        if (!open || writes == MAX_WRITES) return;
+        reserve(2);
+        ring[(int) head++ & mask] = (long) addr << 8 | old;
+        writes++;
+    }
+
+    /** Appelé par le décodeur après chaque instruction. */
+    void end() {
+        if (open) seal();
+    }
+
+    // Clôt l'instruction en cours ; une instruction interrompue (HALT) est aussi conservée
+    private void seal() {
+        ring[(int) (start + 1) & mask] |= writes;
+        ring[(int) head++ & mask] = writes;
+        open = false;
+        retained++;
+    }
+
+    // Garantit {@code words} cases libres en fin d'anneau, quitte à oublier les instructions les plus anciennes
+    private void reserve(int words) {
+        while (head + words - tail > ring.length) {
+            tail += HEADER + (ring[(int) (tail + 1) & mask] & MAX_WRITES) + 1;
+            retained--;
+        }
+    }
+
+    /**
+     * Annule les {@code n} dernières instructions.
+     * Au-delà de ce que retient l'anneau, repart de l'instantané le plus proche et ré-exécute.
+     * @return le nombre d'instructions effectivement annulées
+     */
+    public long stepBack(long n) throws Exception {
+        if (open) seal();
+        n = Math.min(n, time);
+        if (n <= retained) {
+            for (long i = 0; i < n; i++) undo();
+        } else {
+            goTo(time - n);
+        }
+        dropKeyframesAfter(time);
+        return n;
+    }
+
+    /**
+     * Recule jusqu'à la dernière instruction qui a écrit à {@code addr} : la machine est remise
+     * dans l'état qui précède cette écriture (PC sur l'instruction fautive).
+     * @return le nombre d'instructions annulées, -1 si aucune écriture n'est dans le journal
+     */
+    public long backToLastWrite(int addr) {
+        if (open) seal();
+        addr &= 0xFFFF;
+        long pos = head;
+        for (int k = 1; k <= retained; k++) {
+            int count = (int) ring[(int) (pos - 1) & mask];
+            long first = pos - 1 - count;
+            for (long w = first; w < first + count; w++) {
+                if ((int) (ring[(int) w & mask] >>> 8) == addr) {
+                    for (int i = 0; i < k; i++) undo();
+                    dropKeyframesAfter(time);
+                    return k;
+                }
+            }
+            pos = first - HEADER;
+        }
+        return -1;
+    }
+
+    // Annule la dernière instruction de l'anneau
+    private void undo() {
+        long[] r = ring;
+        int count = (int) r[(int) (head - 1) & mask];
+        long first = head - 1 - count;
+        // Ordre inverse : une adresse écrite deux fois retrouve sa toute première valeur
+        for (long w = first + count - 1; w >= first; w--) {
+            long entry = r[(int) w & mask];
+            int addr = (int) (entry >>> 8) & 0xFFFF;
+            cpu.memory.write(addr, (int) entry & 0xFF);
+            decoder.invalidateCode(addr);
+            cpu.markDirty(addr);
+        }
+        head = first - HEADER;
+        long h0 = r[(int) head & mask];
+        long h1 = r[(int) (head + 1) & mask];
+        long h2 = r[(int) (head + 2) & mask];
+        long h3 = r[(int) (head + 3) & mask];
+        long h4 = r[(int) (head + 4) & mask];
+        cpu.A = (int) (h0 >>> 56) & 0xFF;
+        cpu.B = (int) (h0 >>> 48) & 0xFF;
+        cpu.DP = (int) (h0 >>> 40) & 0xFF;
+        cpu.X = (int) (h0 >>> 16) & 0xFFFF;
+        cpu.Y = (int) h0 & 0xFFFF;
+        cpu.U = (int) (h1 >>> 48) & 0xFFFF;
+        cpu.S = (int) (h1 >>> 32) & 0xFFFF;
+        cpu.PC = (int) (h1 >>> 16) & 0xFFFF;
+        cpu.restoreFlags((int) (h0 >>> 32) & 0xFF, (int) (h1 >>> 12) & 0xF, (int) (h2 >>> 32), (int) h2, (int) h3);
+        // Une entrée d'interruption annulée retrouve sa NMI, une instruction CWAI/SYNC annulée n'attend plus
+        InterruptController interrupts = cpu.interrupts;
+        interrupts.restoreState((int) (h3 >>> 40) & 0xFF, (h3 & 1L << 32) != 0,
+                interrupts.getIRQLines(), interrupts.getFIRQLines());
+        cpu.setCycles(h4);
+        retained--;
+        time--;
+    }
+
+    // Revient à l'instant {@code target} par l'instantané le plus proche, puis ré-exécute
+    private void goTo(long target) throws Exception {
+        int best = -1;
+        for (int i = 0; i < keyframeCount; i++) {
+            if (keyframeTimes[i] <= target && (best < 0 || keyframeTimes[i] > keyframeTimes[best])) best = i;
+        }
+        if (best < 0) {
+            // Trop ancien : on s'arrête à l'instruction la plus ancienne encore disponible
+            while (retained > 0) undo();
+            return;
+        }
+        keyframes[best].restore(cpu, decoder);
+        time = keyframeTimes[best];
+        // L'anneau ne décrit plus le passé de cet état : il repart vide
+        tail = head;
+        retained = 0;
+        while (time < target) decoder.executeNext();
+        end();
+    }
+
+    private void takeKeyframe() {
+        if (keyframeCount == KEYFRAMES) {
+            // Table pleine : on garde un instantané sur deux, et on espace les suivants d'autant
+            int kept = 0;
+            for (int i = 0; i < KEYFRAMES; i += 2) {
+                keyframes[kept] = keyframes[i];
+                keyframeTimes[kept++] = keyframeTimes[i];
+            }
+            for (int i = kept; i < KEYFRAMES; i++) keyframes[i] = null;
+            keyframeCount = kept;
+            keyframeSpacing *= 2;
+        }
+        keyframes[keyframeCount] = MachineSnapshot.capture(cpu);
+        keyframeTimes[keyframeCount++] = time;
+        nextKeyframe = time + keyframeSpacing;
+    }
+
+    // Après un retour arrière, les instantanés du futur abandonné ne servent plus
+    private void dropKeyframesAfter(long t) {
+        while (keyframeCount > 0 && keyframeTimes[keyframeCount - 1] > t) keyframes[--keyframeCount] = null;
+        nextKeyframe = keyframeCount > 0 ? keyframeTimes[keyframeCount - 1] + keyframeSpacing : 0;
+    }
+
+    /** Oublie tout l'historique : l'état courant devient l'instant 0. */
+    public void clear() {
+        head = tail = 0;
+        time = 0;
+        retained = 0;
+        open = false;
+        for (int i = 0; i < keyframeCount; i++) keyframes[i] = null;
+        keyframeCount = 0;
+        keyframeSpacing = keyframeInterval;
+        nextKeyframe = 0;
+    }
+
+    /** Instructions exécutées depuis l'attachement du journal (diminue en marche arrière). */
+    public long getTime() {
+        return time;
+    }
+
+    /** Instructions que l'anneau permet d'annuler sans ré-exécution. */
+    public int getRetained() {
+        return retained;
+    }
+
+    public int getKeyframeCount() {
+        return keyframeCount;
+    }
+
+    /** Mémoire occupée par l'anneau, en octets (les instantanés partagent leurs pages). */
+    public long footprint() {
+        return ring.length * 8L;
+    }
+}
@@ -0,0 +1,361 @@
+package sim;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Chargement et écriture d'images binaires : Motorola S-record (S19), Intel HEX et image brute.
+ * Le fichier est projeté en mémoire en lecture seule et analysé sur place ; les octets d'adresses
+ * consécutives sont regroupés et écrits en bloc ({@link Memory#writeBlock}), pas octet par octet.
+ * L'adresse de départ (S9/S8/S7, ou enregistrement 03/05 en Intel HEX) devient PC ; à défaut,
+ * le vecteur de reset ($FFFE) s'il fait partie de l'image, puis l'origine pour une image brute.
+ */
+public final class ImageLoader {
+    public enum Format { SREC, IHEX, RAW }
+
+    // Octets de données par enregistrement écrit
+    private static final int RECORD_BYTES = 32;
+    private static final int RESET_VECTOR = 0xFFFE;
+
+    /** Bilan d'un chargement. */
+    public static final class Result {
+        public final Format format;
+        public final int bytes;
+        // Plus basse et plus haute adresse écrites (-1 si l'image est vide)
+        public final int low, high;
+        // Adresse de départ donnée par le fichier, -1 s'il n'en contient pas
+        public final int start;
+
+        Result(Format format, int bytes, int low, int high, int start) {
+            this.format = format;
+            this.bytes = bytes;
+            this.low = low;
+            this.high = high;
+            this.start = start;
+        }
+
+        @Override
+        public String toString() {
+            if (bytes == 0) return format + " : image vide";
+            return String.format("%s : %d octets en %04X-%04X%s", format, bytes, low, high,
+                    start >= 0 ? String.format(", départ %04X", start) : "");
+        }
+    }
+
+    private ImageLoader() {
+    }
+
+    /** Format déduit de l'extension : .s19/.s28/.s37/.srec/.mot, .hex/.ihx, sinon image brute. */
+    public static Format formatOf(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        if (name.endsWith(".s19") || name.endsWith(".s28") || name.endsWith(".s37")
+                || name.endsWith(".srec") || name.endsWith(".mot")) {
+            return Format.SREC;
+        }
+        if (name.endsWith(".hex") || name.endsWith(".ihx")) return Format.IHEX;
+        return Format.RAW;
+    }
+
+    /** Vrai pour les extensions reconnues comme image binaire (y compris .bin/.rom). */
+    public static boolean isImage(Path path) {
+        String name = path.getFileName().toString().toLowerCase();
+        return formatOf(path) != Format.RAW || name.endsWith(".bin") || name.endsWith(".rom");
+    }
+
+    /**
+     * Charge une image dans la mémoire de {@code cpu} sans l'effacer au préalable, puis place PC.
+     * Le code prédécodé des pages écrites est invalidé ({@code decoder} peut être nul).
+     * @param origin adresse de chargement d'une image brute (ignorée pour les autres formats)
+     * @throws IOException fichier illisible, enregistrement mal formé ou somme de contrôle incorrecte
+     */
+    public static Result load(Path path, Format format, CPU6809_V6 cpu, InstructionDecoder_V6 decoder, int origin)
+            throws IOException {
+        Sink sink = new Sink(cpu.memory);
+        int start;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("Fichier trop volumineux : " + path);
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            switch (format) {
+                case SREC: start = readSRecords(in, sink); break;
+                case IHEX: start = readIntelHex(in, sink); break;
+                default: start = readRaw(in, sink, origin & 0xFFFF);
+            }
+        }
+        sink.flush();
+
+        for (int page = 0; page < Memory.PAGES; page++) {
+            if ((sink.pages[page >>> 6] & (1L << page)) == 0) continue;
+            cpu.markDirty(page << 8);
+            if (decoder != null) decoder.invalidateCodePage(page);
+        }
+        if (start >= 0) {
+            cpu.PC = start;
+        } else if (sink.covers(RESET_VECTOR) && sink.covers(RESET_VECTOR + 1)) {
+            cpu.PC = cpu.memory.read(RESET_VECTOR) << 8 | cpu.memory.read(RESET_VECTOR + 1);
+        } else if (format == Format.RAW) {
+            cpu.PC = origin & 0xFFFF;
+        }
+        return new Result(format, sink.total, sink.total > 0 ? sink.low : -1, sink.total > 0 ? sink.high : -1, start);
+    }
+
+    public static Result load(Path path, CPU6809_V6 cpu, InstructionDecoder_V6 decoder, int origin) throws IOException {
+        return load(path, formatOf(path), cpu, decoder, origin);
+    }
+
+    /**
+     * Écrit les adresses [{@code from}, {@code to}] de la mémoire dans le format demandé.
+     * @param start adresse de départ enregistrée (S9, ou 05 en Intel HEX), -1 pour n'en écrire aucune
+     */
+    public static void save(Path path, Format format, Memory memory, int from, int to, int start) throws IOException {
+        if (from < 0 || to > 0xFFFF || from > to) {
+            throw new IllegalArgumentException(String.format("Plage invalide : %X-%X", from, to));
+        }
+        byte[] data = new byte[to - from + 1];
+        memory.readBlock(from, data, 0, data.length);
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path))) {
+            switch (format) {
+                case SREC: writeSRecords(out, data, from, start); break;
+                case IHEX: writeIntelHex(out, data, from, start); break;
+                default: out.write(data);
+            }
+        }
+    }
+
+    public static void save(Path path, Memory memory, int from, int to, int start) throws IOException {
+        save(path, formatOf(path), memory, from, to, start);
+    }
+
+    /**
+     * Regroupe les octets chargés en suites d'adresses consécutives, écrites en bloc.
+     * Tient aussi le compte des pages touchées pour l'invalidation du code prédécodé.
+     */
+    private static final class Sink {
+        final Memory memory;
+        final byte[] run = new byte[Memory.SIZE];
+        final long[] pages = new long[Memory.PAGES / 64];
+        final long[] written = new long[Memory.SIZE / 64];
+        int runStart, runLength;
+        int total, low = Memory.SIZE, high = -1;
+
+        Sink(Memory memory) {
+            this.memory = memory;
+        }
+
+        void put(int addr, int value) {
+            if (runLength == 0 || addr != runStart + runLength || runLength == run.length) {
+                flush();
+                runStart = addr;
+            }
+            run[runLength++] = (byte) value;
+        }
+
+        void put(int addr, byte[] bytes, int length) {
+            flush();
+            memory.writeBlock(addr, bytes, 0, length);
+            mark(addr, length);
+        }
+
+        void flush() {
+            if (runLength == 0) return;
+            memory.writeBlock(runStart, run, 0, runLength);
+            mark(runStart, runLength);
+            runLength = 0;
+        }
+
+        private void mark(int addr, int length) {
+            if (length == 0) return;
+            total += length;
+            low = Math.min(low, addr);
+            high = Math.max(high, addr + length - 1);
+            for (int page = addr >>> 8; page <= (addr + length - 1) >>> 8; page++) pages[page >>> 6] |= 1L << page;
+            for (int a = addr; a < addr + length; a++) written[a >>> 6] |= 1L << a;
+        }
+
+        boolean covers(int addr) {
+            return (written[addr >>> 6] & (1L << addr)) != 0;
+        }
+    }
+
+    // S0 en-tête, S1/S2/S3 données (adresse sur 2, 3 ou 4 octets), S5/S6 compte, S9/S8/S7 départ
+    private static int readSRecords(MappedByteBuffer in, Sink sink) throws IOException {
+        int start = -1;
+        int limit = in.limit();
+        int line = 0;
+        for (int i = 0; i < limit; ) {
+            int end = i;
+            while (end < limit && in.get(end) != '\n' && in.get(end) != '\r') end++;
+            if (end > i) line++;
+            int n = end - i;
+            if (n > 0) {
+                if (in.get(i) != 'S' || n < 4) throw new IOException("Ligne " + line + " : enregistrement S invalide");
+                int type = in.get(i + 1) - '0';
+                int count = hexByte(in, i + 2, line);
+                if (n != 4 + 2 * count) throw new IOException("Ligne " + line + " : longueur incorrecte");
+                int addressBytes = type == 2 || type == 6 || type == 8 ? 3 : type == 3 || type == 7 ? 4 : 2;
+                if (type < 0 || type > 9 || type == 4 || count < addressBytes + 1) {
+                    throw new IOException("Ligne " + line + " : enregistrement S" + (char) in.get(i + 1) + " non supporté");
+                }
+                int sum = count;
+                long address = 0;
+                for (int k = 0; k < addressBytes; k++) {
+                    int b = hexByte(in, i + 4 + 2 * k, line);
+                    sum += b;
+                    address = address << 8 | b;
+                }
+                int data = i + 4 + 2 * addressBytes;
+                int dataBytes = count - addressBytes - 1;
+                boolean isData = type >= 1 && type <= 3;
+                if ((isData || type >= 7) && address + Math.max(0, dataBytes - 1) > 0xFFFF) {
+                    throw new IOException(String.format("Ligne %d : adresse hors des 64 Ko : $%X", line, address));
+                }
+                for (int k = 0; k < dataBytes; k++) {
+                    int b = hexByte(in, data + 2 * k, line);
+                    sum += b;
+                    if (isData) sink.put((int) address + k, b);
+                }
+                if (((~sum) & 0xFF) != hexByte(in, end - 2, line)) {
+                    throw new IOException("Ligne " + line + " : somme de contrôle incorrecte");
+                }
+                if (type >= 7) start = (int) address;
+            }
+            i = end + 1;
+        }
+        return start;
+    }
+
+    // Enregistrements : 00 données, 01 fin, 02/04 adresse étendue, 03/05 adresse de départ
+    private static int readIntelHex(MappedByteBuffer in, Sink sink) throws IOException {
+        int start = -1;
+        long base = 0;
+        int limit = in.limit();
+        int line = 0;
+        for (int i = 0; i < limit; ) {
+            int end = i;
+            while (end < limit && in.get(end) != '\n' && in.get(end) != '\r') end++;
+            if (end > i) line++;
+            int n = end - i;
+            if (n > 0) {
+                if (in.get(i) != ':' || n < 11) throw new IOException("Ligne " + line + " : enregistrement Intel HEX invalide");
+                int count = hexByte(in, i + 1, line);
+                if (n != 11 + 2 * count) throw new IOException("Ligne " + line + " : longueur incorrecte");
+                int offset = hexByte(in, i + 3, line) << 8 | hexByte(in, i + 5, line);
+                int type = hexByte(in, i + 7, line);
+                int sum = count + (offset >> 8) + (offset & 0xFF) + type;
+                long value = 0;
+                for (int k = 0; k < count; k++) {
+                    int b = hexByte(in, i + 9 + 2 * k, line);
+                    sum += b;
+                    if (type == 0) {
+                        long address = base + offset + k;
+                        if (address > 0xFFFF) {
+                            throw new IOException(String.format("Ligne %d : adresse hors des 64 Ko : $%X", line, address));
+                        }
+                        sink.put((int) address, b);
+                    } else {
+                        value = value << 8 | b;
+                    }
+                }
+                if (((sum + hexByte(in, end - 2, line)) & 0xFF) != 0) {
+                    throw new IOException("Ligne " + line + " : somme de contrôle incorrecte");
+                }
+                switch (type) {
+                    case 0: break;
+                    case 1: return start;
+                    case 2: base = value << 4; break;
+                    case 3: start = (int) ((value >> 16 << 4) + (value & 0xFFFF)) & 0xFFFF; break;
+                    case 4: base = value << 16; break;
+                    case 5: start = (int) value & 0xFFFF; break;
+                    default: throw new IOException("Ligne " + line + " : type d'enregistrement " + type + " non supporté");
+                }
+            }
+            i = end + 1;
+        }
+        return start;
+    }
+
+    private static int readRaw(MappedByteBuffer in, Sink sink, int origin) throws IOException {
+        int length = in.remaining();
+        if (origin + length > Memory.SIZE) {
+            throw new IOException(String.format("Image de %d octets trop grande pour l'origine %04X", length, origin));
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        sink.put(origin, bytes, length);
+        return -1;
+    }
+
+    private static int hexByte(MappedByteBuffer in, int at, int line) throws IOException {
+        int high = Character.digit(in.get(at), 16);
+        int low = Character.digit(in.get(at + 1), 16);
+        if (high < 0 || low < 0) throw new IOException("Ligne " + line + " : chiffre hexadécimal invalide");
+        return high << 4 | low;
+    }
+
+    private static void writeSRecords(OutputStream out, byte[] data, int from, int start) throws IOException {
+        byte[] header = "6809".getBytes(StandardCharsets.US_ASCII);
+        writeSRecord(out, 0, 0, header, 0, header.length);
+        int records = 0;
+        for (int k = 0; k < data.length; k += RECORD_BYTES, records++) {
+            writeSRecord(out, 1, from + k, data, k, Math.min(RECORD_BYTES, data.length - k));
+        }
+        if (records <= 0xFFFF) writeSRecord(out, 5, records, data, 0, 0);
+        writeSRecord(out, 9, Math.max(0, start), data, 0, 0);
+    }
+
+    private static void writeSRecord(OutputStream out, int type, int address, byte[] data, int offset, int length)
+            throws IOException {
+        StringBuilder sb = new StringBuilder(12 + 2 * length);
+        int count = length + 3;
+        sb.append('S').append(type);
+        int sum = count + (address >> 8) + (address & 0xFF);
+        hex(sb, count);
+        hex(sb, address >> 8);
+        hex(sb, address);
+        for (int k = 0; k < length; k++) {
+            int b = data[offset + k] & 0xFF;
+            sum += b;
+            hex(sb, b);
+        }
+        hex(sb, ~sum);
+        out.write(sb.append('\n').toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void writeIntelHex(OutputStream out, byte[] data, int from, int start) throws IOException {
+        for (int k = 0; k < data.length; k += RECORD_BYTES) {
+            writeHexRecord(out, 0, from + k, data, k, Math.min(RECORD_BYTES, data.length - k));
+        }
+        if (start >= 0) writeHexRecord(out, 5, 0, new byte[]{0, 0, (byte) (start >> 8), (byte) start}, 0, 4);
+        writeHexRecord(out, 1, 0, data, 0, 0);
+    }
+
+    private static void writeHexRecord(OutputStream out, int type, int address, byte[] data, int offset, int length)
+            throws IOException {
+        StringBuilder sb = new StringBuilder(12 + 2 * length);
+        int sum = length + (address >> 8) + (address & 0xFF) + type;
+        sb.append(':');
+        hex(sb, length);
+        hex(sb, address >> 8);
+        hex(sb, address);
+        hex(sb, type);
+        for (int k = 0; k < length; k++) {
+            int b = data[offset + k] & 0xFF;
+            sum += b;
+            hex(sb, b);
+        }
+        hex(sb, -sum);
+        out.write(sb.append('\n').toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void hex(StringBuilder sb, int value) {
+        sb.append(Character.toUpperCase(Character.forDigit((value >> 4) & 0xF, 16)))
+                .append(Character.toUpperCase(Character.forDigit(value & 0xF, 16)));
+    }
+}
@@ -1,74 +1,772 @@
 package sim;
 
+import java.io.IOException;
+import java.util.Arrays;
+
 /**
  * Décodeur / exécuteur d'instructions pour le CPU 6809.
  */
 public class InstructionDecoder_V6 {
+    // Modes d'adressage : ils déterminent comment l'opérande est décodé avant l'appel du handler
+    static final int M_INH = 0, M_IMM8 = 1, M_IMM16 = 2, M_DIR = 3, M_IDX = 4, M_EXT = 5, M_REL = 6;
+
+    // Pages d'opcodes : page 0 (sans préfixe), page 2 (préfixe $10), page 3 (préfixe $11)
+    static final int PAGE_0 = 0, PAGE_2 = 1, PAGE_3 = 2;
+
+    /**
+     * Traitement d'un opcode. Le handler reçoit l'opérande déjà décodé :
+     * valeur immédiate (IMM), adresse effective (DIR/IDX/EXT) ou offset signé (REL).
+     */
+    interface OpHandler {
+        void exec(int operand) throws Exception;
+    }
+
+    private static final OpHandler NOP = operand -> { };
+
     private final CPU6809_V6 cpu;
+    private final InterruptController interrupts;
+
+    // Tables de dispatch précalculées : 256 entrées par page
+    final OpHandler[][] handlers = new OpHandler[3][256];
+    final int[][] modes = new int[3][256];
+    final String[][] mnemonics = new String[3][256];
+    // Cycles 6809 par opcode (préfixe compris), hors cycles supplémentaires du mode indexé
+    final int[][] cycles = new int[3][256];
+    // Opcodes qui écrivent en mémoire (stockages, empilements)
+    final boolean[][] writes = new boolean[3][256];
+
+    /**
+     * Cycles supplémentaires du mode indexé selon le postbyte (fiche technique 6809).
+     */
+    static final int[] INDEXED_EXTRA_CYCLES = new int[256];
+
+    static {
+        // bit 7 = 1 : mode selon les bits 0-3, bit 4 = indirect
+        int[] direct = {2, 3, 2, 3, 0, 1, 1, 0, 1, 4, 0, 4, 1, 5, 0, 0};
+        int[] indirect = {0, 6, 0, 6, 3, 4, 4, 0, 4, 7, 0, 7, 4, 8, 0, 5};
+        for (int postByte = 0; postByte < 256; postByte++) {
+            if ((postByte & 0x80) == 0) {
+                INDEXED_EXTRA_CYCLES[postByte] = 1; // offset court
+            } else {
+                int type = postByte & 0x0F;
+                INDEXED_EXTRA_CYCLES[postByte] = (postByte & 0x10) != 0 ? indirect[type] : direct[type];
+            }
+        }
+    }
+
+    static final int DEFAULT_CYCLES = 2;
+    // Cycles d'entrée en interruption (empilement et lecture du vecteur)
+    static final int ENTIRE_STACKING_CYCLES = 19, FAST_STACKING_CYCLES = 10;
+    // En attente (CWAI/SYNC) sans échéance proche : cycles sautés par appel
+    static final int WAIT_SLICE = 1000;
+
+    private final BlockCache blockCache;
+
+    // Nombre d'instructions exécutées (HALT compris)
+    long instructionCount;
+
+    // Observateurs facultatifs : journal de retour arrière, trace binaire, watchpoints (null = absent).
+    // Un seul test de {@code observed} sur le chemin rapide quand aucun n'est branché.
+    private ExecutionJournal journal;
+    private TraceRecorder trace;
+    private BreakpointEngine watchpoints;
+    private boolean observed;
+    // Profileur (null = désactivé) : compteurs seuls, sans passer par les observateurs
+    private Profiler profiler;
+    // Condition du dernier branchement relatif exécuté (voir relativeBranch)
+    private boolean branchTaken;
+    // Pas à pas par le switch fusionné (executeInline), plus rapide que l'appel de handler ;
+    // faux sous le profileur ou quand les tables sont imposées (comparaison de débit)
+    private boolean inlineDispatch = true;
+    private boolean tablesOnly;
+
+    // Boucles d'attente : avance rapide jusqu'à la prochaine échéance (voir idleLoop)
+    private boolean idleSkip;
+    private boolean hung;
+    private long idleSkippedCycles;
+    private BlockCache.Block idleBlock;
+    private long idleCycles, idleCount;
+    private final int[] idleState = new int[8];
 
     public InstructionDecoder_V6(CPU6809_V6 cpu) {
         this.cpu = cpu;
+        this.interrupts = cpu.interrupts;
+        for (int page = 0; page < 3; page++) {
+            Arrays.fill(handlers[page], NOP);
+            Arrays.fill(cycles[page], DEFAULT_CYCLES);
+        }
+        buildTables();
+        blockCache = new BlockCache(cpu, this);
     }
 
+    /**
+     * Exécute l'instruction suivante : switch fusionné pour les opcodes courants, tables de dispatch
+     * pour les autres (et toujours sous le profileur).
+     * Une interruption prise (ou un pas d'attente après CWAI/SYNC) compte pour une instruction.
+     */
     public void executeNext() throws Exception {
+        if (cpu.cycles >= interrupts.nextEvent && serviceEvents()) return;
+        if (observed) beforeInstruction();
+        instructionCount++;
+        int pc = cpu.PC & 0xFFFF;
+        long start = cpu.cycles;
         int opcode = fetchByte();
+        int page = PAGE_0;
 
-        // Gestion Préfixe (Page 2)
+        // Gestion Préfixes (Page 2 / Page 3)
         if (opcode == 0x10) {
-            opcode = (opcode << 8) | fetchByte();
+            page = PAGE_2;
+            opcode = fetchByte();
+        } else if (opcode == 0x11) {
+            page = PAGE_3;
+            opcode = fetchByte();
+        }
+
+        cpu.cycles += cycles[page][opcode];
+        if (inlineDispatch && executeInline(page, opcode)) {
+            if (observed) afterInstruction();
+            return;
+        }
+        int mode = modes[page][opcode];
+        int operand = decodeOperand(mode);
+        if (profiler != null) {
+            // Compté après exécution : cycles ajoutés par le handler (RTI complet) et HALT compris
+            try {
+                handlers[page][opcode].exec(operand);
+            } finally {
+                profiler.count(pc, page << 8 | opcode, (int) (cpu.cycles - start));
+            }
+            if (mode == M_REL) profiler.branch(pc, branchTaken);
+        } else {
+            handlers[page][opcode].exec(operand);
+        }
+        if (observed) afterInstruction();
+    }
+
+    /**
+     * Exécute le bloc de base qui commence à PC, décodé une seule fois puis conservé en cache.
+     * S'arrête après le saut final, ou plus tôt si le bloc vient d'être invalidé par une écriture.
+     * @return le nombre d'instructions exécutées
+     */
+    public int executeBlock() throws Exception {
+        return runBlock(blockCache.lookup(cpu.PC & 0xFFFF));
+    }
+
+    /**
+     * Exécute des instructions jusqu'à consommer au moins {@code budget} cycles.
+     * Les blocs entiers sont utilisés tant qu'ils tiennent dans le budget, puis on termine pas à pas.
+     * @return le nombre de cycles réellement consommés
+     */
+    public long runCycles(long budget) throws Exception {
+        long start = cpu.cycles;
+        long target = start + budget;
+        while (cpu.cycles < target) {
+            BlockCache.Block block = blockCache.lookup(cpu.PC & 0xFFFF);
+            if (cpu.cycles + block.totalCycles <= target) {
+                runBlock(block);
+                if (hung) break;
+            } else {
+                executeNext();
+            }
+        }
+        return cpu.cycles - start;
+    }
+
+    private int runBlock(BlockCache.Block block) throws Exception {
+        hung = false;
+        if (isInstrumented() || cpu.isRevealTracking()) return runBlockObserved(block);
+        // Chemin sans observateur : rien d'autre par instruction que l'échéance, les compteurs et le handler
+        int[] code = block.code;
+        OpHandler[] handler = block.handler;
+        int count = block.count;
+        for (int i = 0, k = 0; i < count; i++, k += BlockCache.Block.STRIDE) {
+            // PC vaut ici block.pc[i] : une interruption prise interrompt le bloc
+            if (cpu.cycles >= interrupts.nextEvent && serviceEvents()) return i + 1;
+            instructionCount++;
+            cpu.cycles += code[k + BlockCache.Block.CYCLES];
+            cpu.PC = code[k + BlockCache.Block.NEXT_PC];
+            handler[i].exec(resolveOperand(code[k + BlockCache.Block.MODE], code[k + BlockCache.Block.OPERAND]));
+            if (!block.valid) return i + 1;
+        }
+        if (block.selfLoop && idleSkip && cpu.PC == block.start) idleLoop(block);
+        return count;
+    }
+
+    // Comme runBlock, avec observateurs, profileur et suivi des octets révélés
+    private int runBlockObserved(BlockCache.Block block) throws Exception {
+        for (int i = 0; i < block.count; i++) {
+            // PC vaut ici block.pc[i] : une interruption prise interrompt le bloc
+            if (cpu.cycles >= interrupts.nextEvent && serviceEvents()) return i + 1;
+            if (observed) beforeInstruction();
+            instructionCount++;
+            long before = cpu.cycles;
+            cpu.cycles += block.cycles(i);
+            int pc = block.pc[i];
+            cpu.PC = block.nextPc(i);
+            revealRange(pc, cpu.PC);
+            try {
+                block.handler[i].exec(resolveOperand(block.mode(i), block.operand(i)));
+            } finally {
+                if (profiler != null) profiler.count(pc, block.opcode[i], (int) (cpu.cycles - before));
+            }
+            if (observed) afterInstruction();
+            if (!block.valid) return i + 1;
+        }
+        // Seule la dernière instruction d'un bloc peut être un branchement
+        if (profiler != null && block.mode(block.count - 1) == M_REL) {
+            profiler.branch(block.pc[block.count - 1], branchTaken);
+        }
+        if (block.selfLoop && idleSkip && cpu.PC == block.start && !isInstrumented()) idleLoop(block);
+        return block.count;
+    }
+
+    /**
+     * Appelé quand un bloc sans écriture mémoire vient de reboucler sur lui-même. Si l'itération
+     * précédente était ce même bloc, sans échéance déclenchée depuis son début, et a laissé les registres
+     * identiques, chaque itération suivante refera exactement la même chose tant que la mémoire lue
+     * ne change pas : ni la RAM (aucune écriture dans la boucle), ni les registres de périphérique lus,
+     * qui ne bougent qu'aux échéances planifiées ({@link Device#isIdleSafe}). Le compteur de cycles
+     * avance alors d'un nombre entier d'itérations jusqu'à la prochaine échéance ; sans échéance,
+     * la boucle ne peut plus sortir d'elle-même et {@link #isHung()} devient vrai.
+     */
+    private void idleLoop(BlockCache.Block block) {
+        int[] state = idleState;
+        boolean same = block == idleBlock && cpu.cycles - idleCycles == block.totalCycles
+                && instructionCount - idleCount == block.count
+                && state[0] == cpu.A && state[1] == cpu.B && state[2] == cpu.DP && state[3] == cpu.getCC()
+                && state[4] == cpu.X && state[5] == cpu.Y && state[6] == cpu.U && state[7] == cpu.S;
+        idleBlock = block;
+        idleCycles = cpu.cycles;
+        idleCount = instructionCount;
+        if (!same) {
+            state[0] = cpu.A; state[1] = cpu.B; state[2] = cpu.DP; state[3] = cpu.getCC();
+            state[4] = cpu.X; state[5] = cpu.Y; state[6] = cpu.U; state[7] = cpu.S;
+            return;
+        }
+        if (interrupts.nextEvent <= cpu.cycles || !devicesIdleSafe(block)) return;
+        long next = interrupts.nextScheduled();
+        if (next == Long.MAX_VALUE) {
+            hung = true;
+            return;
+        }
+        // Itérations entières qui se terminent au plus tard à l'échéance : celle-ci est ensuite vue
+        // à la même frontière d'instruction que sans avance rapide
+        long iterations = (next - cpu.cycles) / block.totalCycles;
+        cpu.cycles += iterations * block.totalCycles;
+        instructionCount += iterations * block.count;
+        idleSkippedCycles += iterations * block.totalCycles;
+        idleCycles = cpu.cycles;
+        idleCount = instructionCount;
+    }
+
+    // Les adresses lues par la boucle (identiques à chaque itération) ne changent qu'aux échéances
+    private boolean devicesIdleSafe(BlockCache.Block block) {
+        for (int i = 0; i < block.count; i++) {
+            int mode = block.mode(i);
+            if (mode != M_DIR && mode != M_IDX && mode != M_EXT) continue;
+            int ea = resolveOperand(mode, block.operand(i));
+            for (int addr = ea; addr <= ea + 1; addr++) {
+                Device device = cpu.bus.deviceAt(addr);
+                if (device != null && !device.isIdleSafe(addr & 0xFFFF)) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Active l'avance rapide des boucles d'attente (par exemple {@code BRA *}, ou {@code LDA $D200}
+     * / {@code BEQ} sur un indicateur de périphérique) : les itérations jusqu'à la prochaine échéance
+     * sont comptées (cycles et instructions) sans être interprétées. Sans effet en pas à pas et quand
+     * un observateur ou le profileur est branché.
+     */
+    public void setIdleSkip(boolean enabled) {
+        idleSkip = enabled;
+        idleBlock = null;
+    }
+
+    public boolean isIdleSkip() {
+        return idleSkip;
+    }
+
+    /**
+     * Vrai si le dernier bloc exécuté est une boucle d'attente qu'aucune échéance planifiée ne peut
+     * terminer : seul un autre thread (NMI) peut encore la débloquer.
+     */
+    public boolean isHung() {
+        return hung;
+    }
+
+    /** Cycles sautés par l'avance rapide des boucles d'attente. */
+    public long getIdleSkippedCycles() {
+        return idleSkippedCycles;
+    }
+
+    // Une boucle qui écrit en mémoire n'est pas une boucle d'attente ; un opcode inconnu est supposé écrire
+    boolean writesMemory(int page, int opcode) {
+        return mnemonics[page][opcode] == null || writes[page][opcode];
+    }
+
+    /**
+     * Déclenche les échéances atteintes puis prend l'interruption la plus prioritaire non masquée.
+     * En attente (CWAI/SYNC) sans interruption à prendre, avance le compteur de cycles jusqu'à la
+     * prochaine échéance (au plus {@link #WAIT_SLICE} cycles).
+     * @return vrai si l'appel a tenu lieu d'instruction (interruption prise ou pas d'attente)
+     */
+    private boolean serviceEvents() throws Exception {
+        interrupts.fireDue(cpu.cycles);
+        // Une échéance a pu changer ce que lit une boucle d'attente : son itération de référence est perdue
+        idleBlock = null;
+        int source = interrupts.pending();
+        if (source == InterruptController.NONE) {
+            if (interrupts.waitState == InterruptController.RUNNING) return false;
+            if (interrupts.waitState == InterruptController.SYNC && interrupts.anyLine()) {
+                // SYNC se termine sur une ligne masquée : reprise à l'instruction suivante
+                interrupts.acknowledge(InterruptController.NONE);
+                return false;
+            }
+            instructionCount++;
+            cpu.cycles = Math.max(cpu.cycles + 1, Math.min(interrupts.nextScheduled(), cpu.cycles + WAIT_SLICE));
+            return true;
+        }
+        if (observed) beforeInstruction();
+        instructionCount++;
+        boolean entire = source != InterruptController.FIRQ;
+        if (interrupts.waitState != InterruptController.CWAI) {
+            // Après CWAI l'état complet est déjà sur la pile
+            pushState(entire);
+            cpu.cycles += entire ? ENTIRE_STACKING_CYCLES : FAST_STACKING_CYCLES;
+        }
+        int mask = source == InterruptController.IRQ ? CPU6809_V6.FLAG_I : CPU6809_V6.FLAG_I | CPU6809_V6.FLAG_F;
+        cpu.setCC(cpu.getCC() | mask);
+        int vector = source == InterruptController.NMI ? CPU6809_V6.VECTOR_NMI
+                : source == InterruptController.FIRQ ? CPU6809_V6.VECTOR_FIRQ : CPU6809_V6.VECTOR_IRQ;
+        cpu.PC = readWord(vector);
+        interrupts.acknowledge(source);
+        if (observed) afterInstruction();
+        return true;
+    }
+
+    /**
+     * Empile PC, puis U, Y, X, DP, B, A si {@code entire}, puis CC (E indique ce qui a été empilé),
+     * sur la pile système S.
+     */
+    private void pushState(boolean entire) {
+        int cc = cpu.getCC();
+        cc = entire ? cc | CPU6809_V6.FLAG_E : cc & ~CPU6809_V6.FLAG_E;
+        cpu.setCC(cc);
+        push16(cpu.PC);
+        if (entire) {
+            push16(cpu.U);
+            push16(cpu.Y);
+            push16(cpu.X);
+            push8(cpu.DP);
+            push8(cpu.B);
+            push8(cpu.A);
+        }
+        push8(cc);
+    }
+
+    private void push8(int value) {
+        cpu.S = (cpu.S - 1) & 0xFFFF;
+        writeMem(cpu.S, value & 0xFF);
+    }
+
+    private void push16(int value) {
+        push8(value);
+        push8(value >> 8);
+    }
+
+    private int pull8() {
+        int value = readMem(cpu.S);
+        cpu.S = (cpu.S + 1) & 0xFFFF;
+        return value;
+    }
+
+    private int pull16() {
+        return pull8() << 8 | pull8();
+    }
+
+    // Interruptions logicielles : état complet empilé ; SWI masque aussi I et F
+    private void softwareInterrupt(int vector, int mask) {
+        pushState(true);
+        cpu.setCC(cpu.getCC() | mask);
+        cpu.PC = readWord(vector);
+    }
+
+    /**
+     * Active le journal de retour arrière ({@code null} pour le désactiver).
+     */
+    public void setJournal(ExecutionJournal journal) {
+        this.journal = journal;
+        updateObserved();
+    }
+
+    public ExecutionJournal getJournal() {
+        return journal;
+    }
+
+    /** Branche les watchpoints du moteur sur les accès mémoire (null ou moteur sans watchpoint : aucun). */
+    public void setWatchpoints(BreakpointEngine engine) {
+        watchpoints = engine != null && engine.hasWatchpoints() ? engine : null;
+        updateObserved();
+    }
+
+    /** Enregistre chaque instruction dans une trace binaire ({@code null} pour arrêter). */
+    public void setTrace(TraceRecorder trace) {
+        this.trace = trace;
+        updateObserved();
+    }
+
+    public TraceRecorder getTrace() {
+        return trace;
+    }
+
+    /** Compte les exécutions par adresse et par opcode ({@code null} pour arrêter). */
+    public void setProfiler(Profiler profiler) {
+        this.profiler = profiler;
+        inlineDispatch = !tablesOnly && profiler == null;
+    }
+
+    /** Pas à pas par les seules tables de dispatch, sans le switch fusionné (comparaison de débit). */
+    void setTablesOnly(boolean enabled) {
+        tablesOnly = enabled;
+        inlineDispatch = !tablesOnly && profiler == null;
+    }
+
+    public Profiler getProfiler() {
+        return profiler;
+    }
+
+    /** Vrai si un observateur ou le profileur est branché (le code compilé est alors évité). */
+    boolean isInstrumented() {
+        return observed || profiler != null;
+    }
+
+    private void updateObserved() {
+        observed = journal != null || trace != null || watchpoints != null;
+    }
+
+    private void beforeInstruction() throws IOException {
+        if (journal != null) journal.begin();
+        if (trace != null) trace.begin();
+    }
+
+    private void afterInstruction() throws IOException {
+        if (journal != null) journal.end();
+        if (trace != null) trace.end();
+    }
+
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    /**
+     * À appeler après une modification de la mémoire faite hors du décodeur
+     * (assemblage, édition manuelle, reset) pour oublier le code prédécodé.
+     */
+    public void invalidateCode() {
+        blockCache.invalidateAll();
+    }
+
+    public void invalidateCode(int addr) {
+        blockCache.onWrite(addr);
+    }
+
+    /** Oublie le code prédécodé de la page {@code page} (256 octets), remplacée en bloc. */
+    public void invalidateCodePage(int page) {
+        blockCache.invalidatePage(page & 0xFF);
+    }
+
+    BlockCache.Block blockAt(int pc) {
+        return blockCache.lookup(pc & 0xFFFF);
+    }
+
+    // Complète un opérande prédécodé avec l'état courant des registres (DP, index)
+    private int resolveOperand(int mode, int operand) {
+        switch (mode) {
+            case M_DIR: return getDirectAddr(operand);
+            case M_IDX: return (indexRegister(operand >> 16) + (short) operand) & 0xFFFF;
+            default: return operand;
+        }
+    }
+
+    void revealRange(int from, int to) {
+        if (!cpu.isRevealTracking()) return;
+        for (int addr = from; addr != to; addr = (addr + 1) & 0xFFFF) {
+            cpu.revealAddress(addr);
         }
+    }
 
-        switch (opcode) {
+    private int decodeOperand(int mode) {
+        switch (mode) {
+            case M_IMM8: return fetchByte();
+            case M_IMM16:
+            case M_EXT: return fetchWord();
+            case M_DIR: return getDirectAddr(fetchByte());
+            case M_IDX: return getIndexedAddr(fetchByte());
+            case M_REL: return (byte) fetchByte();
+            default: return 0;
+        }
+    }
+
+    private void def(int page, int opcode, int mode, int cycles, String mnemonic, OpHandler handler) {
+        handlers[page][opcode] = handler;
+        modes[page][opcode] = mode;
+        this.cycles[page][opcode] = cycles;
+        mnemonics[page][opcode] = mnemonic;
+    }
+
+    // Comme def, pour un opcode qui écrit en mémoire
+    private void defWrite(int page, int opcode, int mode, int cycles, String mnemonic, OpHandler handler) {
+        def(page, opcode, mode, cycles, mnemonic, handler);
+        writes[page][opcode] = true;
+    }
+
+    private void buildTables() {
+        // --- Load ---
+        OpHandler lda = ea -> { cpu.A = readMem(ea); cpu.updateFlags(cpu.A, false); };
+        def(PAGE_0, 0x86, M_IMM8, 2, "LDA", v -> { cpu.A = v; cpu.updateFlags(cpu.A, false); });
+        def(PAGE_0, 0x96, M_DIR, 4, "LDA", lda);
+        def(PAGE_0, 0xA6, M_IDX, 4, "LDA", lda);
+        def(PAGE_0, 0xB6, M_EXT, 5, "LDA", lda);
+
+        OpHandler ldb = ea -> { cpu.B = readMem(ea); cpu.updateFlags(cpu.B, false); };
+        def(PAGE_0, 0xC6, M_IMM8, 2, "LDB", v -> { cpu.B = v; cpu.updateFlags(cpu.B, false); });
+        def(PAGE_0, 0xD6, M_DIR, 4, "LDB", ldb);
+        def(PAGE_0, 0xE6, M_IDX, 4, "LDB", ldb);
+        def(PAGE_0, 0xF6, M_EXT, 5, "LDB", ldb);
+
+        OpHandler ldd = ea -> { cpu.setD(readWord(ea)); cpu.updateFlags(cpu.getD(), true); };
+        def(PAGE_0, 0xCC, M_IMM16, 3, "LDD", v -> { cpu.setD(v); cpu.updateFlags(cpu.getD(), true); });
+        def(PAGE_0, 0xDC, M_DIR, 5, "LDD", ldd);
+        def(PAGE_0, 0xEC, M_IDX, 5, "LDD", ldd);
+        def(PAGE_0, 0xFC, M_EXT, 6, "LDD", ldd);
+
+        OpHandler ldx = ea -> { cpu.X = readWord(ea); cpu.updateFlags(cpu.X, true); };
+        def(PAGE_0, 0x8E, M_IMM16, 3, "LDX", v -> { cpu.X = v; cpu.updateFlags(cpu.X, true); });
+        def(PAGE_0, 0x9E, M_DIR, 5, "LDX", ldx);
+        def(PAGE_0, 0xAE, M_IDX, 5, "LDX", ldx);
+        def(PAGE_0, 0xBE, M_EXT, 6, "LDX", ldx);
+
+        OpHandler ldy = ea -> { cpu.Y = readWord(ea); cpu.updateFlags(cpu.Y, true); };
+        def(PAGE_2, 0x8E, M_IMM16, 4, "LDY", v -> { cpu.Y = v; cpu.updateFlags(cpu.Y, true); });
+        def(PAGE_2, 0x9E, M_DIR, 6, "LDY", ldy);
+        def(PAGE_2, 0xAE, M_IDX, 6, "LDY", ldy);
+        def(PAGE_2, 0xBE, M_EXT, 7, "LDY", ldy);
+
+        OpHandler ldu = ea -> { cpu.U = readWord(ea); cpu.updateFlags(cpu.U, true); };
+        def(PAGE_0, 0xCE, M_IMM16, 3, "LDU", v -> { cpu.U = v; cpu.updateFlags(cpu.U, true); });
+        def(PAGE_0, 0xDE, M_DIR, 5, "LDU", ldu);
+        def(PAGE_0, 0xEE, M_IDX, 5, "LDU", ldu);
+
+        OpHandler lds = ea -> { cpu.S = readWord(ea); cpu.updateFlags(cpu.S, true); };
+        def(PAGE_2, 0xCE, M_IMM16, 4, "LDS", v -> { cpu.S = v; cpu.updateFlags(cpu.S, true); });
+        def(PAGE_2, 0xDE, M_DIR, 6, "LDS", lds);
+        def(PAGE_2, 0xEE, M_IDX, 6, "LDS", lds);
+
+        // --- Store ---
+        OpHandler sta = ea -> { writeMem(ea, cpu.A); cpu.updateFlags(cpu.A, false); };
+        defWrite(PAGE_0, 0x97, M_DIR, 4, "STA", sta);
+        defWrite(PAGE_0, 0xA7, M_IDX, 4, "STA", sta);
+        defWrite(PAGE_0, 0xB7, M_EXT, 5, "STA", sta);
+
+        OpHandler stb = ea -> { writeMem(ea, cpu.B); cpu.updateFlags(cpu.B, false); };
+        defWrite(PAGE_0, 0xD7, M_DIR, 4, "STB", stb);
+        defWrite(PAGE_0, 0xE7, M_IDX, 4, "STB", stb);
+        defWrite(PAGE_0, 0xF7, M_EXT, 5, "STB", stb);
+
+        OpHandler std = ea -> { writeWord(ea, cpu.getD()); cpu.updateFlags(cpu.getD(), true); };
+        defWrite(PAGE_0, 0xDD, M_DIR, 5, "STD", std);
+        defWrite(PAGE_0, 0xED, M_IDX, 5, "STD", std);
+        defWrite(PAGE_0, 0xFD, M_EXT, 6, "STD", std);
+
+        OpHandler stx = ea -> { writeWord(ea, cpu.X); cpu.updateFlags(cpu.X, true); };
+        defWrite(PAGE_0, 0x9F, M_DIR, 5, "STX", stx);
+        defWrite(PAGE_0, 0xAF, M_IDX, 5, "STX", stx);
+        defWrite(PAGE_0, 0xBF, M_EXT, 6, "STX", stx);
+
+        // --- Arithmétique ---
+        def(PAGE_0, 0xC3, M_IMM16, 4, "ADDD", v -> {
+            int original = cpu.getD();
+            int r = original + v;
+            cpu.setD(r);
+            cpu.updateFlagsAdd16(original, v, r);
+        });
+        def(PAGE_0, 0x4C, M_INH, 2, "INCA", v -> {
+            int original = cpu.A;
+            cpu.A = (cpu.A + 1) & 0xFF;
+            cpu.updateFlagsInc8(original, cpu.A);
+        });
+        def(PAGE_0, 0x4A, M_INH, 2, "DECA", v -> {
+            int original = cpu.A;
+            cpu.A = (cpu.A - 1) & 0xFF;
+            cpu.updateFlagsDec8(original, cpu.A);
+        });
+
+        // --- INH A ---
+        def(PAGE_0, 0x40, M_INH, 2, "NEGA", v -> cpu.A = neg(cpu.A));
+        def(PAGE_0, 0x43, M_INH, 2, "COMA", v -> cpu.A = com(cpu.A));
+        def(PAGE_0, 0x44, M_INH, 2, "LSRA", v -> cpu.A = lsr(cpu.A));
+        def(PAGE_0, 0x46, M_INH, 2, "RORA", v -> cpu.A = ror(cpu.A));
+        def(PAGE_0, 0x48, M_INH, 2, "ASLA", v -> cpu.A = asl(cpu.A));
+        def(PAGE_0, 0x49, M_INH, 2, "ROLA", v -> cpu.A = rol(cpu.A));
+        def(PAGE_0, 0x4D, M_INH, 2, "TSTA", v -> cpu.updateFlagsNZ(cpu.A, false));
+        def(PAGE_0, 0x4F, M_INH, 2, "CLRA", v -> cpu.A = clr());
+
+        // --- INH B ---
+        def(PAGE_0, 0x50, M_INH, 2, "NEGB", v -> cpu.B = neg(cpu.B));
+        def(PAGE_0, 0x53, M_INH, 2, "COMB", v -> cpu.B = com(cpu.B));
+        def(PAGE_0, 0x54, M_INH, 2, "LSRB", v -> cpu.B = lsr(cpu.B));
+        def(PAGE_0, 0x56, M_INH, 2, "RORB", v -> cpu.B = ror(cpu.B));
+        def(PAGE_0, 0x58, M_INH, 2, "ASLB", v -> cpu.B = asl(cpu.B));
+        def(PAGE_0, 0x59, M_INH, 2, "ROLB", v -> cpu.B = rol(cpu.B));
+        def(PAGE_0, 0x5D, M_INH, 2, "TSTB", v -> cpu.updateFlagsNZ(cpu.B, false));
+        def(PAGE_0, 0x5F, M_INH, 2, "CLRB", v -> cpu.B = clr());
+
+        // --- Branch ---
+        def(PAGE_0, 0x7E, M_EXT, 4, "JMP", ea -> cpu.PC = ea);
+        def(PAGE_0, 0x20, M_REL, 3, "BRA", off -> relativeBranch(true, off));
+        def(PAGE_0, 0x27, M_REL, 3, "BEQ", off -> relativeBranch(cpu.testFlag(CPU6809_V6.FLAG_Z), off));
+        def(PAGE_0, 0x26, M_REL, 3, "BNE", off -> relativeBranch(!cpu.testFlag(CPU6809_V6.FLAG_Z), off));
+
+        // --- Interruptions ---
+        def(PAGE_0, 0x3B, M_INH, 6, "RTI", v -> {
+            cpu.setCC(pull8());
+            if (cpu.testFlag(CPU6809_V6.FLAG_E)) {
+                cpu.A = pull8();
+                cpu.B = pull8();
+                cpu.DP = pull8();
+                cpu.X = pull16();
+                cpu.Y = pull16();
+                cpu.U = pull16();
+                cpu.cycles += 9;
+            }
+            cpu.PC = pull16();
+        });
+        defWrite(PAGE_0, 0x3F, M_INH, 19, "SWI", v -> softwareInterrupt(CPU6809_V6.VECTOR_SWI, CPU6809_V6.FLAG_I | CPU6809_V6.FLAG_F));
+        defWrite(PAGE_2, 0x3F, M_INH, 20, "SWI2", v -> softwareInterrupt(CPU6809_V6.VECTOR_SWI2, 0));
+        defWrite(PAGE_3, 0x3F, M_INH, 20, "SWI3", v -> softwareInterrupt(CPU6809_V6.VECTOR_SWI3, 0));
+        def(PAGE_0, 0x1C, M_IMM8, 3, "ANDCC", v -> cpu.setCC(cpu.getCC() & v));
+        def(PAGE_0, 0x1A, M_IMM8, 3, "ORCC", v -> cpu.setCC(cpu.getCC() | v));
+        defWrite(PAGE_0, 0x3C, M_IMM8, 20, "CWAI", v -> {
+            cpu.setCC(cpu.getCC() & v);
+            pushState(true);
+            interrupts.waitState = InterruptController.CWAI;
+            interrupts.update();
+        });
+        def(PAGE_0, 0x13, M_INH, 4, "SYNC", v -> {
+            interrupts.waitState = InterruptController.SYNC;
+            interrupts.update();
+        });
+
+        // --- Divers ---
+        def(PAGE_0, 0x1F, M_IMM8, 6, "TFR", v -> cpu.B = cpu.A);
+        def(PAGE_0, 0x12, M_INH, 2, "NOP", NOP);
+        def(PAGE_0, 0x00, M_INH, 2, "HALT", v -> { throw new Exception("HALT (Opcode 00)"); });
+    }
+
+    // --- Opérations INH partagées entre A et B (retournent la nouvelle valeur) ---
+
+    private int neg(int original) {
+        int r = ((~original) + 1) & 0xFF;
+        cpu.updateFlagsNeg8(original, r);
+        return r;
+    }
+
+    private int com(int value) {
+        int r = (~value) & 0xFF;
+        cpu.updateFlagsCom8(value, r);
+        return r;
+    }
+
+    private int lsr(int value) {
+        int r = (value >> 1) & 0x7F;
+        cpu.updateFlagsShiftRight8(value, r, false);
+        return r;
+    }
+
+    private int ror(int value) {
+        int oldCarry = cpu.testFlag(CPU6809_V6.FLAG_C) ? 0x80 : 0;
+        int r = ((value >> 1) | oldCarry) & 0xFF;
+        cpu.updateFlagsShiftRight8(value, r, true);
+        return r;
+    }
+
+    private int asl(int value) {
+        int r = (value << 1) & 0xFF;
+        cpu.updateFlagsShiftLeft8(value, r, false);
+        return r;
+    }
+
+    private int rol(int value) {
+        int oldCarry = cpu.testFlag(CPU6809_V6.FLAG_C) ? 1 : 0;
+        int r = ((value << 1) | oldCarry) & 0xFF;
+        cpu.updateFlagsShiftLeft8(value, r, true);
+        return r;
+    }
+
+    private int clr() {
+        cpu.updateFlagsClr();
+        return 0;
+    }
+
+    /**
+     * Décodage et exécution fusionnés dans un seul switch, pour les opcodes courants : chaque cas lit
+     * lui-même son opérande. Sémantique identique aux handlers des tables (mêmes opérations partagées).
+     * @return faux si l'opcode n'est pas traité ici (rien n'a été lu après l'opcode)
+     */
+    private boolean executeInline(int page, int opcode) throws Exception {
+        switch (page << 8 | opcode) {
             // --- Load ---
-            case 0x86: cpu.A = fetchByte(); cpu.updateFlags(cpu.A, false); break;
-            case 0x96: cpu.A = readMem(getDirectAddr(fetchByte())); cpu.updateFlags(cpu.A, false); break;
-            case 0xA6: cpu.A = readMem(getIndexedAddr(fetchByte())); cpu.updateFlags(cpu.A, false); break;
-            case 0xB6: cpu.A = readMem(fetchWord()); cpu.updateFlags(cpu.A, false); break;
-
-            case 0xC6: cpu.B = fetchByte(); cpu.updateFlags(cpu.B, false); break;
-            case 0xD6: cpu.B = readMem(getDirectAddr(fetchByte())); cpu.updateFlags(cpu.B, false); break;
-            case 0xE6: cpu.B = readMem(getIndexedAddr(fetchByte())); cpu.updateFlags(cpu.B, false); break;
-            case 0xF6: cpu.B = readMem(fetchWord()); cpu.updateFlags(cpu.B, false); break;
-
-            case 0xCC: cpu.setD(fetchWord()); cpu.updateFlags(cpu.getD(), true); break;
-            case 0xDC: cpu.setD(readWord(getDirectAddr(fetchByte()))); cpu.updateFlags(cpu.getD(), true); break;
-            case 0xEC: cpu.setD(readWord(getIndexedAddr(fetchByte()))); cpu.updateFlags(cpu.getD(), true); break;
-            case 0xFC: cpu.setD(readWord(fetchWord())); cpu.updateFlags(cpu.getD(), true); break;
-
-            case 0x8E: cpu.X = fetchWord(); cpu.updateFlags(cpu.X, true); break;
-            case 0x9E: cpu.X = readWord(getDirectAddr(fetchByte())); cpu.updateFlags(cpu.X, true); break;
-            case 0xAE: cpu.X = readWord(getIndexedAddr(fetchByte())); cpu.updateFlags(cpu.X, true); break;
-            case 0xBE: cpu.X = readWord(fetchWord()); cpu.updateFlags(cpu.X, true); break;
-
-            case 0x108E: cpu.Y = fetchWord(); cpu.updateFlags(cpu.Y, true); break;
-            case 0x109E: cpu.Y = readWord(getDirectAddr(fetchByte())); cpu.updateFlags(cpu.Y, true); break;
-            case 0x10AE: cpu.Y = readWord(getIndexedAddr(fetchByte())); cpu.updateFlags(cpu.Y, true); break;
-            case 0x10BE: cpu.Y = readWord(fetchWord()); cpu.updateFlags(cpu.Y, true); break;
-
-            case 0xCE: cpu.U = fetchWord(); cpu.updateFlags(cpu.U, true); break;
-            case 0xDE: cpu.U = readWord(getDirectAddr(fetchByte())); cpu.updateFlags(cpu.U, true); break;
-            case 0xEE: cpu.U = readWord(getIndexedAddr(fetchByte())); cpu.updateFlags(cpu.U, true); break;
-
-            case 0x10CE: cpu.S = fetchWord(); cpu.updateFlags(cpu.S, true); break;
-            case 0x10DE: cpu.S = readWord(getDirectAddr(fetchByte())); cpu.updateFlags(cpu.S, true); break;
-            case 0x10EE: cpu.S = readWord(getIndexedAddr(fetchByte())); cpu.updateFlags(cpu.S, true); break;
+            case 0x86: cpu.A = fetchByte(); cpu.updateFlags(cpu.A, false); return true;
+            case 0x96: cpu.A = readMem(getDirectAddr(fetchByte())); cpu.updateFlags(cpu.A, false); return true;
+            case 0xA6: cpu.A = readMem(getIndexedAddr(fetchByte())); cpu.updateFlags(cpu.A, false); return true;
+            case 0xB6: cpu.A = readMem(fetchWord()); cpu.updateFlags(cpu.A, false); return true;
+
+            case 0xC6: cpu.B = fetchByte(); cpu.updateFlags(cpu.B, false); return true;
+            case 0xD6: cpu.B = readMem(getDirectAddr(fetchByte())); cpu.updateFlags(cpu.B, false); return true;
+            case 0xE6: cpu.B = readMem(getIndexedAddr(fetchByte())); cpu.updateFlags(cpu.B, false); return true;
+            case 0xF6: cpu.B = readMem(fetchWord()); cpu.updateFlags(cpu.B, false); return true;
+
+            case 0xCC: cpu.setD(fetchWord()); cpu.updateFlags(cpu.getD(), true); return true;
+            case 0xDC: cpu.setD(readWord(getDirectAddr(fetchByte()))); cpu.updateFlags(cpu.getD(), true); return true;
+            case 0xEC: cpu.setD(readWord(getIndexedAddr(fetchByte()))); cpu.updateFlags(cpu.getD(), true); return true;
+            case 0xFC: cpu.setD(readWord(fetchWord())); cpu.updateFlags(cpu.getD(), true); return true;
+
+            case 0x8E: cpu.X = fetchWord(); cpu.updateFlags(cpu.X, true); return true;
+            case 0x9E: cpu.X = readWord(getDirectAddr(fetchByte())); cpu.updateFlags(cpu.X, true); return true;
+            case 0xAE: cpu.X = readWord(getIndexedAddr(fetchByte())); cpu.updateFlags(cpu.X, true); return true;
+            case 0xBE: cpu.X = readWord(fetchWord()); cpu.updateFlags(cpu.X, true); return true;
+
+            case PAGE_2 << 8 | 0x8E: cpu.Y = fetchWord(); cpu.updateFlags(cpu.Y, true); return true;
+            case PAGE_2 << 8 | 0x9E: cpu.Y = readWord(getDirectAddr(fetchByte())); cpu.updateFlags(cpu.Y, true); return true;
+            case PAGE_2 << 8 | 0xAE: cpu.Y = readWord(getIndexedAddr(fetchByte())); cpu.updateFlags(cpu.Y, true); return true;
+            case PAGE_2 << 8 | 0xBE: cpu.Y = readWord(fetchWord()); cpu.updateFlags(cpu.Y, true); return true;
+
+            case 0xCE: cpu.U = fetchWord(); cpu.updateFlags(cpu.U, true); return true;
+            case 0xDE: cpu.U = readWord(getDirectAddr(fetchByte())); cpu.updateFlags(cpu.U, true); return true;
+            case 0xEE: cpu.U = readWord(getIndexedAddr(fetchByte())); cpu.updateFlags(cpu.U, true); return true;
+
+            case PAGE_2 << 8 | 0xCE: cpu.S = fetchWord(); cpu.updateFlags(cpu.S, true); return true;
+            case PAGE_2 << 8 | 0xDE: cpu.S = readWord(getDirectAddr(fetchByte())); cpu.updateFlags(cpu.S, true); return true;
+            case PAGE_2 << 8 | 0xEE: cpu.S = readWord(getIndexedAddr(fetchByte())); cpu.updateFlags(cpu.S, true); return true;
 
             // --- Store ---
-            case 0xA7: writeMem(getIndexedAddr(fetchByte()), cpu.A); cpu.updateFlags(cpu.A, false); break;
-            case 0x97: writeMem(getDirectAddr(fetchByte()), cpu.A); cpu.updateFlags(cpu.A, false); break;
-            case 0xB7: writeMem(fetchWord(), cpu.A); cpu.updateFlags(cpu.A, false); break;
+            case 0x97: writeMem(getDirectAddr(fetchByte()), cpu.A); cpu.updateFlags(cpu.A, false); return true;
+            case 0xA7: writeMem(getIndexedAddr(fetchByte()), cpu.A); cpu.updateFlags(cpu.A, false); return true;
+            case 0xB7: writeMem(fetchWord(), cpu.A); cpu.updateFlags(cpu.A, false); return true;
 
-            case 0xE7: writeMem(getIndexedAddr(fetchByte()), cpu.B); cpu.updateFlags(cpu.B, false); break;
-            case 0xD7: writeMem(getDirectAddr(fetchByte()), cpu.B); cpu.updateFlags(cpu.B, false); break;
-            case 0xF7: writeMem(fetchWord(), cpu.B); cpu.updateFlags(cpu.B, false); break;
+            case 0xD7: writeMem(getDirectAddr(fetchByte()), cpu.B); cpu.updateFlags(cpu.B, false); return true;
+            case 0xE7: writeMem(getIndexedAddr(fetchByte()), cpu.B); cpu.updateFlags(cpu.B, false); return true;
+            case 0xF7: writeMem(fetchWord(), cpu.B); cpu.updateFlags(cpu.B, false); return true;
 
-            case 0xED: writeWord(getIndexedAddr(fetchByte()), cpu.getD()); cpu.updateFlags(cpu.getD(), true); break;
-            case 0xDD: writeWord(getDirectAddr(fetchByte()), cpu.getD()); cpu.updateFlags(cpu.getD(), true); break;
-            case 0xFD: writeWord(fetchWord(), cpu.getD()); cpu.updateFlags(cpu.getD(), true); break;
+            case 0xDD: writeWord(getDirectAddr(fetchByte()), cpu.getD()); cpu.updateFlags(cpu.getD(), true); return true;
+            case 0xED: writeWord(getIndexedAddr(fetchByte()), cpu.getD()); cpu.updateFlags(cpu.getD(), true); return true;
+            case 0xFD: writeWord(fetchWord(), cpu.getD()); cpu.updateFlags(cpu.getD(), true); return true;
 
-            case 0xAF: writeWord(getIndexedAddr(fetchByte()), cpu.X); cpu.updateFlags(cpu.X, true); break;
-            case 0x9F: writeWord(getDirectAddr(fetchByte()), cpu.X); cpu.updateFlags(cpu.X, true); break;
-            case 0xBF: writeWord(fetchWord(), cpu.X); cpu.updateFlags(cpu.X, true); break;
+            case 0x9F: writeWord(getDirectAddr(fetchByte()), cpu.X); cpu.updateFlags(cpu.X, true); return true;
+            case 0xAF: writeWord(getIndexedAddr(fetchByte()), cpu.X); cpu.updateFlags(cpu.X, true); return true;
+            case 0xBF: writeWord(fetchWord(), cpu.X); cpu.updateFlags(cpu.X, true); return true;
 
             // --- Arithmétique ---
             case 0xC3: {
@@ -77,69 +775,61 @@ public class InstructionDecoder_V6 {
                 int r = original + operand;
                 cpu.setD(r);
                 cpu.updateFlagsAdd16(original, operand, r);
-                break;
+                return true;
             }
             case 0x4C: {
                 int original = cpu.A;
                 cpu.A = (cpu.A + 1) & 0xFF;
                 cpu.updateFlagsInc8(original, cpu.A);
-                break;
+                return true;
             }
             case 0x4A: {
                 int original = cpu.A;
                 cpu.A = (cpu.A - 1) & 0xFF;
                 cpu.updateFlagsDec8(original, cpu.A);
-                break;
+                return true;
             }
 
             // --- INH A ---
-            case 0x40: {
-                int original = cpu.A;
-                cpu.A = ((~original) + 1) & 0xFF;
-                cpu.updateFlagsNZ(cpu.A, false);
-                cpu.CC |= CPU6809_V6.FLAG_C;
-                if (original == 0x80) cpu.CC |= CPU6809_V6.FLAG_V;
-                break;
-            }
-            case 0x43: cpu.A = (~cpu.A) & 0xFF; cpu.updateFlagsNZ(cpu.A, false); cpu.CC |= CPU6809_V6.FLAG_C; break;
-            case 0x44: { int carry = cpu.A & 0x01; cpu.A = (cpu.A >> 1) & 0x7F; cpu.updateFlagsNZ(cpu.A, false); updateCarry(carry); break; }
-            case 0x46: { int carry = cpu.A & 0x01; int oldCarry = (cpu.CC & CPU6809_V6.FLAG_C) != 0 ? 0x80 : 0; cpu.A = ((cpu.A >> 1) | oldCarry) & 0xFF; cpu.updateFlagsNZ(cpu.A, false); updateCarry(carry); break; }
-            case 0x48: { int carry = (cpu.A & 0x80) != 0 ? 1 : 0; cpu.A = (cpu.A << 1) & 0xFF; cpu.updateFlagsNZ(cpu.A, false); updateCarry(carry); updateOverflowShift(cpu.A); break; }
-            case 0x49: { int oldCarry = (cpu.CC & CPU6809_V6.FLAG_C) != 0 ? 1 : 0; int newCarry = (cpu.A & 0x80) != 0 ? CPU6809_V6.FLAG_C : 0; cpu.A = ((cpu.A << 1) | oldCarry) & 0xFF; cpu.updateFlagsNZ(cpu.A, false); cpu.CC = (cpu.CC & ~CPU6809_V6.FLAG_C) | newCarry; break; }
-            case 0x4D: cpu.updateFlagsNZ(cpu.A, false); break;
-            case 0x4F: cpu.A = 0; cpu.updateFlagsNZ(cpu.A, false); cpu.CC &= ~(CPU6809_V6.FLAG_V | CPU6809_V6.FLAG_C); break;
+            case 0x40: cpu.A = neg(cpu.A); return true;
+            case 0x43: cpu.A = com(cpu.A); return true;
+            case 0x44: cpu.A = lsr(cpu.A); return true;
+            case 0x46: cpu.A = ror(cpu.A); return true;
+            case 0x48: cpu.A = asl(cpu.A); return true;
+            case 0x49: cpu.A = rol(cpu.A); return true;
+            case 0x4D: cpu.updateFlagsNZ(cpu.A, false); return true;
+            case 0x4F: cpu.A = clr(); return true;
 
             // --- INH B ---
-            case 0x50: {
-                int original = cpu.B;
-                cpu.B = ((~original) + 1) & 0xFF;
-                cpu.updateFlagsNZ(cpu.B, false);
-                cpu.CC |= CPU6809_V6.FLAG_C;
-                if (original == 0x80) cpu.CC |= CPU6809_V6.FLAG_V;
-                break;
-            }
-            case 0x53: cpu.B = (~cpu.B) & 0xFF; cpu.updateFlagsNZ(cpu.B, false); cpu.CC |= CPU6809_V6.FLAG_C; break;
-            case 0x54: { int carry = cpu.B & 0x01; cpu.B = (cpu.B >> 1) & 0x7F; cpu.updateFlagsNZ(cpu.B, false); updateCarry(carry); break; }
-            case 0x56: { int carry = cpu.B & 0x01; int oldCarry = (cpu.CC & CPU6809_V6.FLAG_C) != 0 ? 0x80 : 0; cpu.B = ((cpu.B >> 1) | oldCarry) & 0xFF; cpu.updateFlagsNZ(cpu.B, false); updateCarry(carry); break; }
-            case 0x58: { int carry = (cpu.B & 0x80) != 0 ? 1 : 0; cpu.B = (cpu.B << 1) & 0xFF; cpu.updateFlagsNZ(cpu.B, false); updateCarry(carry); updateOverflowShift(cpu.B); break; }
-            case 0x59: { int oldCarry = (cpu.CC & CPU6809_V6.FLAG_C) != 0 ? 1 : 0; int newCarry = (cpu.B & 0x80) != 0 ? CPU6809_V6.FLAG_C : 0; cpu.B = ((cpu.B << 1) | oldCarry) & 0xFF; cpu.updateFlagsNZ(cpu.B, false); cpu.CC = (cpu.CC & ~CPU6809_V6.FLAG_C) | newCarry; break; }
-            case 0x5D: cpu.updateFlagsNZ(cpu.B, false); break;
-            case 0x5F: cpu.B = 0; cpu.updateFlagsNZ(cpu.B, false); cpu.CC &= ~(CPU6809_V6.FLAG_V | CPU6809_V6.FLAG_C); break;
+            case 0x50: cpu.B = neg(cpu.B); return true;
+            case 0x53: cpu.B = com(cpu.B); return true;
+            case 0x54: cpu.B = lsr(cpu.B); return true;
+            case 0x56: cpu.B = ror(cpu.B); return true;
+            case 0x58: cpu.B = asl(cpu.B); return true;
+            case 0x59: cpu.B = rol(cpu.B); return true;
+            case 0x5D: cpu.updateFlagsNZ(cpu.B, false); return true;
+            case 0x5F: cpu.B = clr(); return true;
 
             // --- Branch ---
-            case 0x7E: cpu.PC = fetchWord(); break;
-            case 0x20: branch(true); break;
-            case 0x27: branch((cpu.CC & CPU6809_V6.FLAG_Z) != 0); break;
-            case 0x26: branch((cpu.CC & CPU6809_V6.FLAG_Z) == 0); break;
+            case 0x7E: cpu.PC = fetchWord(); return true;
+            case 0x20: branch(true); return true;
+            case 0x27: branch(cpu.testFlag(CPU6809_V6.FLAG_Z)); return true;
+            case 0x26: branch(!cpu.testFlag(CPU6809_V6.FLAG_Z)); return true;
 
-            case 0x1F: fetchByte(); cpu.B = cpu.A; break;
-            case 0x12: break;
+            case 0x1F: fetchByte(); cpu.B = cpu.A; return true;
+            case 0x12: return true;
             case 0x00: throw new Exception("HALT (Opcode 00)");
 
-            default: break;
+            default: return false;
         }
     }
 
+    // Branchement relatif des tables ; la condition est retenue pour le profileur (un saut de 0 est pris)
+    private void relativeBranch(boolean condition, int offset) {
+        branchTaken = condition;
+        if (condition) cpu.PC = (cpu.PC + offset) & 0xFFFF;
+    }
+
     private void branch(boolean condition) {
         byte offset = (byte) fetchByte();
         if (condition) {
@@ -150,7 +840,8 @@ public class InstructionDecoder_V6 {
     private int fetchByte() {
         int addr = cpu.PC & 0xFFFF;
         cpu.revealAddress(addr);
-        return cpu.memory[cpu.PC++] & 0xFF;
+        cpu.PC = (addr + 1) & 0xFFFF;
+        return cpu.memory.read(addr);
     }
 
     private int fetchWord() {
@@ -161,16 +852,19 @@ public class InstructionDecoder_V6 {
         return ((cpu.DP & 0xFF) << 8) | (offset8 & 0xFF);
     }
 
-    private int getIndexedAddr(int postByte) {
-        int regNum = postByte & 0x03;
-        int regValue;
+    private int indexRegister(int regNum) {
         switch (regNum) {
-            case 0: regValue = cpu.X; break;
-            case 1: regValue = cpu.Y; break;
-            case 2: regValue = cpu.U; break;
-            case 3: regValue = cpu.S; break;
-            default: regValue = 0; break;
+            case 0: return cpu.X;
+            case 1: return cpu.Y;
+            case 2: return cpu.U;
+            case 3: return cpu.S;
+            default: return 0;
         }
+    }
+
+    private int getIndexedAddr(int postByte) {
+        int regValue = indexRegister(postByte & 0x03);
+        cpu.cycles += INDEXED_EXTRA_CYCLES[postByte];
 
         if ((postByte & 0x80) == 0) {
             int offset8 = fetchByte();
@@ -180,38 +874,37 @@ public class InstructionDecoder_V6 {
         return regValue & 0xFFFF;
     }
 
-    private int readMem(int addr) {
+    int readMem(int addr) {
         addr &= 0xFFFF;
         cpu.revealAddress(addr);
-        return cpu.memory[addr] & 0xFF;
+        int value = cpu.bus.read(addr);
+        if (observed) {
+            if (watchpoints != null) watchpoints.onRead(cpu, addr, value);
+            if (trace != null) trace.recordRead(addr, value);
+        }
+        return value;
     }
 
-    private int readWord(int addr) {
+    int readWord(int addr) {
         return (readMem(addr) << 8) | readMem(addr + 1);
     }
 
-    private void writeMem(int addr, int val) {
+    void writeMem(int addr, int val) {
         addr &= 0xFFFF;
-        cpu.memory[addr] = val & 0xFF;
         cpu.revealAddress(addr);
-        if (cpu.ioMonitor != null) cpu.ioMonitor.onWrite(addr, val);
+        if (observed) {
+            if (journal != null) journal.recordWrite(addr, cpu.memory.read(addr));
+            if (watchpoints != null) watchpoints.onWrite(cpu, addr, val);
+            if (trace != null) trace.recordWrite(addr, val);
+        }
+        if (cpu.bus.write(addr, val)) {
+            blockCache.onWrite(addr);
+            cpu.markDirty(addr);
+        }
     }
 
-    private void writeWord(int addr, int val) {
+    void writeWord(int addr, int val) {
         writeMem(addr, val >> 8);
         writeMem(addr + 1, val);
     }
-
-    private void updateCarry(int carry) {
-        if (carry != 0) cpu.CC |= CPU6809_V6.FLAG_C;
-        else cpu.CC &= ~CPU6809_V6.FLAG_C;
-    }
-
-    private void updateOverflowShift(int value) {
-        int bit6 = (value & 0x40) != 0 ? 1 : 0;
-        int bit7 = (value & 0x80) != 0 ? 1 : 0;
-        if (bit6 != bit7) cpu.CC |= CPU6809_V6.FLAG_V;
-        else cpu.CC &= ~CPU6809_V6.FLAG_V;
-    }
 }
-
@@ -0,0 +1,247 @@
+package sim;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lignes d'interruption du 6809 (NMI, FIRQ, IRQ) et file d'événements ordonnée par cycle.
+ * Les périphériques ne sont pas interrogés à chaque instruction : ils planifient leurs échéances
+ * ({@link #schedule}) et lèvent ou baissent leurs lignes. Le décodeur ne fait qu'une comparaison
+ * par instruction ({@code cpu.cycles >= nextEvent}) ; {@link #nextEvent} vaut le cycle du prochain
+ * événement, ou {@code Long.MIN_VALUE} quand une interruption peut être prise tout de suite.
+ * Priorités : NMI (front, non masquable), puis FIRQ (masquée par F), puis IRQ (masquée par I) ;
+ * FIRQ et IRQ sont des niveaux, maintenus tant qu'une source les lève.
+ *
+ * Toutes les méthodes sont à appeler depuis le thread qui exécute le CPU, sauf {@link #raiseNMI}.
+ * Les NMI sont comptées (demandes / servie) plutôt que portées par un booléen : une demande
+ * arrivée entre {@link #pending} et {@link #acknowledge} reste en attente au lieu d'être effacée.
+ * Le journal de retour arrière enregistre l'attente et la NMI en attente, pas les lignes IRQ/FIRQ
+ * ni la file d'événements.
+ */
+public final class InterruptController {
+    public static final int NONE = -1, NMI = 0, FIRQ = 1, IRQ = 2;
+    // Attente : CWAI (état déjà empilé) ou SYNC (reprise sur n'importe quelle ligne levée)
+    static final int RUNNING = 0, CWAI = 1, SYNC = 2;
+
+    /** Échéance planifiée ; {@code cycle} est le cycle demandé (il peut être dépassé de quelques cycles). */
+    public interface Event {
+        void fire(long cycle);
+    }
+
+    private final CPU6809_V6 cpu;
+
+    // Lu par le décodeur avant chaque instruction
+    volatile long nextEvent = Long.MAX_VALUE;
+    // Demandes de NMI (tous threads) ; numéro de la demande vue par pending() et de la dernière servie
+    private final AtomicInteger nmiRequests = new AtomicInteger();
+    private int nmiSeen;
+    private volatile int nmiServiced;
+    private int irqLines, firqLines;
+    private int sources;
+    int waitState = RUNNING;
+
+    // Tas binaire indexé par cycle ; à cycle égal, ordre de planification
+    private long[] when = new long[16];
+    private long[] order = new long[16];
+    private Event[] events = new Event[16];
+    private int size;
+    private long scheduled;
+
+    InterruptController(CPU6809_V6 cpu) {
+        this.cpu = cpu;
+    }
+
+    /** Attribue un bit de source pour {@link #setIRQ} / {@link #setFIRQ} (32 sources au plus). */
+    public int newSource() {
+        if (sources == 32) throw new IllegalStateException("Trop de sources d'interruption");
+        return 1 << sources++;
+    }
+
+    /** Demande une NMI (front) ; utilisable depuis un autre thread que celui du CPU. */
+    public void raiseNMI() {
+        nmiRequests.incrementAndGet();
+        nextEvent = Long.MIN_VALUE;
+    }
+
+    public void setIRQ(int source, boolean asserted) {
+        irqLines = asserted ? irqLines | source : irqLines & ~source;
+        update();
+    }
+
+    public void setFIRQ(int source, boolean asserted) {
+        firqLines = asserted ? firqLines | source : firqLines & ~source;
+        update();
+    }
+
+    public boolean isNMIPending() {
+        return nmiRequests.get() != nmiServiced;
+    }
+
+    public int getIRQLines() {
+        return irqLines;
+    }
+
+    public int getFIRQLines() {
+        return firqLines;
+    }
+
+    /** Vrai si le CPU attend une interruption (CWAI ou SYNC). */
+    public boolean isWaiting() {
+        return waitState != RUNNING;
+    }
+
+    /** Planifie {@code event} au cycle absolu {@code cycle} (voir {@code cpu.cycles}). */
+    public void schedule(long cycle, Event event) {
+        if (size == when.length) {
+            when = Arrays.copyOf(when, size * 2);
+            order = Arrays.copyOf(order, size * 2);
+            events = Arrays.copyOf(events, size * 2);
+        }
+        int i = size++;
+        when[i] = cycle;
+        order[i] = scheduled++;
+        events[i] = event;
+        siftUp(i);
+        update();
+    }
+
+    /** Retire toutes les échéances de {@code event} ; vrai s'il y en avait. */
+    public boolean cancel(Event event) {
+        boolean found = false;
+        for (int i = size - 1; i >= 0; i--) {
+            if (events[i] != event) continue;
+            removeAt(i);
+            found = true;
+        }
+        if (found) update();
+        return found;
+    }
+
+    /** Cycle de la prochaine échéance, {@code Long.MAX_VALUE} si la file est vide. */
+    public long nextScheduled() {
+        return size > 0 ? when[0] : Long.MAX_VALUE;
+    }
+
+    public int pendingEvents() {
+        return size;
+    }
+
+    /** Déclenche, dans l'ordre, les échéances atteintes au cycle {@code now}. */
+    void fireDue(long now) {
+        while (size > 0 && when[0] <= now) {
+            long cycle = when[0];
+            Event event = events[0];
+            removeAt(0);
+            event.fire(cycle);
+        }
+        update();
+    }
+
+    /** Interruption à prendre maintenant selon les masques de CC, ou {@link #NONE}. */
+    int pending() {
+        int requests = nmiRequests.get();
+        if (requests != nmiServiced) {
+            nmiSeen = requests;
+            return NMI;
+        }
+        int mask = cpu.interruptMask();
+        if (firqLines != 0 && (mask & CPU6809_V6.FLAG_F) == 0) return FIRQ;
+        if (irqLines != 0 && (mask & CPU6809_V6.FLAG_I) == 0) return IRQ;
+        return NONE;
+    }
+
+    boolean anyLine() {
+        return isNMIPending() || irqLines != 0 || firqLines != 0;
+    }
+
+    /** Interruption prise ({@code source} rendu par {@link #pending}) ou fin d'attente ({@link #NONE}). */
+    void acknowledge(int source) {
+        // Seules les demandes vues par pending() sont servies : une NMI arrivée depuis reste en attente
+        if (source == NMI) nmiServiced = nmiSeen;
+        waitState = RUNNING;
+        update();
+    }
+
+    /** Recalcule {@link #nextEvent} ; à appeler quand les lignes, la file ou les masques I/F changent. */
+    void update() {
+        nextEvent = waitState != RUNNING || pending() != NONE ? Long.MIN_VALUE : nextScheduled();
+        // Une NMI demandée par un autre thread pendant le calcul n'est pas perdue
+        if (isNMIPending()) nextEvent = Long.MIN_VALUE;
+    }
+
+    /**
+     * Reset du CPU : NMI et attente oubliées, échéances décalées pour garder leur délai
+     * par rapport au compteur de cycles remis à zéro. Les lignes restent levées par leurs sources.
+     */
+    void reset(long elapsed) {
+        nmiServiced = nmiRequests.get();
+        waitState = RUNNING;
+        shift(elapsed);
+    }
+
+    /**
+     * Remet attente et lignes dans un état enregistré ({@link MachineSnapshot}, {@link ExecutionJournal}) ;
+     * une NMI en attente à l'enregistrement le redevient, celles demandées depuis sont oubliées.
+     */
+    void restoreState(int waitState, boolean nmi, int irqLines, int firqLines) {
+        nmiServiced = nmiRequests.get() - (nmi ? 1 : 0);
+        this.waitState = waitState;
+        this.irqLines = irqLines;
+        this.firqLines = firqLines;
+        update();
+    }
+
+    /** Décale les échéances quand le compteur de cycles recule de {@code elapsed} (l'ordre du tas est inchangé). */
+    void shift(long elapsed) {
+        for (int i = 0; i < size; i++) when[i] -= elapsed;
+        update();
+    }
+
+    private void removeAt(int i) {
+        size--;
+        if (i != size) {
+            when[i] = when[size];
+            order[i] = order[size];
+            events[i] = events[size];
+            siftDown(i);
+            siftUp(i);
+        }
+        events[size] = null;
+    }
+
+    private boolean before(int a, int b) {
+        return when[a] < when[b] || (when[a] == when[b] && order[a] < order[b]);
+    }
+
+    private void siftUp(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >> 1;
+            if (!before(i, parent)) break;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void siftDown(int i) {
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) break;
+            if (child + 1 < size && before(child + 1, child)) child++;
+            if (!before(child, i)) break;
+            swap(i, child);
+            i = child;
+        }
+    }
+
+    private void swap(int a, int b) {
+        long w = when[a];
+        when[a] = when[b];
+        when[b] = w;
+        long o = order[a];
+        order[a] = order[b];
+        order[b] = o;
+        Event e = events[a];
+        events[a] = events[b];
+        events[b] = e;
+    }
+}
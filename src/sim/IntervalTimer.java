@@ -0,0 +1,142 @@
+package sim;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Temporisateur programmable (page $D3 par défaut). Le compte à rebours n'est pas décrémenté
+ * à chaque cycle : une seule échéance est planifiée sur la roue temporelle, et la valeur courante
+ * du compteur se déduit de cette échéance à la lecture.
+ * <pre>
+ * $00 CTRL      bit 0 marche, bit 1 rechargement automatique, bit 7 interruption autorisée
+ *               (écrire avec le bit 0 à 1 relance le décompte depuis la période)
+ * $01 STATUS    bit 0 expiré, bit 7 interruption demandée ; une écriture acquitte (efface les deux)
+ * $02-$03 LATCH période en pas (poids fort, poids faible), 0 vaut 65536
+ * $04-$05 COUNT pas restants (lecture ; lire le poids fort fige le poids faible)
+ * $06 PRESCALE  cycles par pas - 1
+ * </pre>
+ */
+public class IntervalTimer extends Peripheral {
+    public static final int BASE = 0xD300;
+    public static final int CTRL = 0x00, STATUS = 0x01, LATCH_HI = 0x02, LATCH_LO = 0x03,
+            COUNT_HI = 0x04, COUNT_LO = 0x05, PRESCALE = 0x06;
+    public static final int CTRL_RUN = 0x01, CTRL_RELOAD = 0x02, CTRL_IRQ = 0x80;
+    public static final int STATUS_EXPIRED = 0x01, STATUS_IRQ = 0x80;
+
+    private final TimingWheel.Timer expiry = newTimer(this::expire);
+    private int control, status, latch, prescale, countLow;
+    private long expirations;
+
+    public IntervalTimer(CPU6809_V6 cpu) {
+        super(cpu);
+    }
+
+    /** Période en cycles. */
+    public long period() {
+        return (latch == 0 ? 0x10000L : latch) * (prescale + 1);
+    }
+
+    /** Nombre d'expirations depuis la création (mesures). */
+    public long getExpirations() {
+        return expirations;
+    }
+
+    @Override
+    public int read(int addr) {
+        switch (addr & 0xFF) {
+            case CTRL: return control;
+            case STATUS: return status;
+            case LATCH_HI: return latch >> 8;
+            case LATCH_LO: return latch & 0xFF;
+            case COUNT_HI: {
+                int count = remainingSteps();
+                countLow = count & 0xFF;
+                return count >> 8 & 0xFF;
+            }
+            case COUNT_LO: return countLow;
+            case PRESCALE: return prescale;
+            default: return 0;
+        }
+    }
+
+    @Override
+    public void write(int addr, int value) {
+        switch (addr & 0xFF) {
+            case CTRL:
+                control = value;
+                if ((value & CTRL_RUN) != 0) expiry.scheduleIn(period());
+                else expiry.cancel();
+                updateInterrupt();
+                break;
+            case STATUS:
+                status = 0;
+                updateInterrupt();
+                break;
+            case LATCH_HI:
+                latch = value << 8 | latch & 0xFF;
+                break;
+            case LATCH_LO:
+                latch = latch & 0xFF00 | value;
+                break;
+            case PRESCALE:
+                prescale = value;
+                break;
+            default:
+                break;
+        }
+    }
+
+    // Le compte à rebours se déduit du cycle courant : il change à chaque lecture
+    @Override
+    public boolean isIdleSafe(int addr) {
+        int register = addr & 0xFF;
+        return register != COUNT_HI && register != COUNT_LO;
+    }
+
+    // Rechargement à partir de l'échéance prévue : pas de dérive même si l'instruction en cours l'a dépassée
+    private void expire(long cycle) {
+        expirations++;
+        status |= STATUS_EXPIRED;
+        if ((control & CTRL_RELOAD) != 0) expiry.schedule(cycle + period());
+        else control &= ~CTRL_RUN;
+        updateInterrupt();
+    }
+
+    private int remainingSteps() {
+        if (!expiry.isScheduled()) return 0;
+        long cycles = Math.max(0, expiry.due() - cpu.cycles);
+        return (int) Math.min(0xFFFF, (cycles + prescale) / (prescale + 1));
+    }
+
+    private void updateInterrupt() {
+        boolean requested = (control & CTRL_IRQ) != 0 && (status & STATUS_EXPIRED) != 0;
+        status = requested ? status | STATUS_IRQ : status & ~STATUS_IRQ;
+        setInterrupt(requested);
+    }
+
+    @Override
+    public void reset() {
+        expiry.cancel();
+        control = status = latch = prescale = countLow = 0;
+        updateInterrupt();
+    }
+
+    // État : registres puis cycles restants avant l'échéance (-1 si arrêté)
+    @Override
+    public byte[] saveState() {
+        return ByteBuffer.allocate(13).put((byte) control).put((byte) status).putShort((short) latch)
+                .put((byte) prescale).putLong(expiry.isScheduled() ? expiry.due() - cpu.cycles : -1).array();
+    }
+
+    @Override
+    public void restoreState(byte[] state) {
+        ByteBuffer in = ByteBuffer.wrap(state);
+        control = in.get() & 0xFF;
+        status = in.get() & 0xFF;
+        latch = in.getShort() & 0xFFFF;
+        prescale = in.get() & 0xFF;
+        long remaining = in.getLong();
+        if (remaining >= 0) expiry.scheduleIn(remaining);
+        else expiry.cancel();
+        updateInterrupt();
+    }
+}
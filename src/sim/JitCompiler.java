@@ -0,0 +1,489 @@
+package sim;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Traduit un bloc de base prédécodé en classe JVM cachée (Lookup.defineHiddenClass).
+ * Les chargements, stockages, ADDD, opérations inhérentes sur A et B, JMP et branchements relatifs
+ * sont traduits en bytecode sur les champs de {@link CPU6809_V6} : calcul des registres en ligne,
+ * flags par les mêmes méthodes que l'interpréteur (paresseuses si activées), adresse effective en ligne.
+ * Les autres instructions appellent directement le handler de l'interpréteur (un seul par site d'appel).
+ * Cycles, compteur d'instructions, PC et octets révélés sont cumulés et reportés en une fois avant
+ * chaque accès mémoire, chaque handler et en fin de bloc : un périphérique lit toujours le cycle exact.
+ * Le code généré ne contient aucun branchement (pas de StackMapTable à produire) : BEQ/BNE calculent
+ * PC arithmétiquement, la sortie anticipée passe par l'exception {@link JitTier.Deopt}.
+ */
+class JitCompiler {
+    private static final String CLASS_NAME = "sim/JitBlock";
+    private static final String CPU = "sim/CPU6809_V6";
+    private static final String DECODER = "sim/InstructionDecoder_V6";
+    private static final String HANDLER = "sim/InstructionDecoder_V6$OpHandler";
+    private static final String BLOCK = "sim/BlockCache$Block";
+    private static final String TIER = "sim/JitTier";
+    private static final String CTOR_DESC = "([L" + HANDLER + ";L" + DECODER + ";L" + CPU + ";L" + BLOCK + ";)V";
+
+    private static final String[] INDEX_REGISTERS = {"X", "Y", "U", "S"};
+
+    // Variables locales de run() : this, cpu, décodeur, deux entiers de travail
+    private static final int L_CPU = 1, L_DECODER = 2, L_ORIGINAL = 3, L_RESULT = 4;
+
+    private final MethodHandles.Lookup lookup;
+
+    JitCompiler(MethodHandles.Lookup lookup) {
+        this.lookup = lookup;
+    }
+
+    JitTier.CompiledBlock compile(BlockCache.Block block, InstructionDecoder_V6 decoder, CPU6809_V6 cpu) throws Exception {
+        byte[] bytes = generate(block, decoder);
+        Class<?> cls = lookup.defineHiddenClass(bytes, true).lookupClass();
+        MethodHandle ctor = lookup.findConstructor(cls, MethodType.methodType(void.class,
+                InstructionDecoder_V6.OpHandler[].class, InstructionDecoder_V6.class, CPU6809_V6.class, BlockCache.Block.class));
+        try {
+            return (JitTier.CompiledBlock) ctor.invoke(block.handler.clone(), decoder, cpu, block);
+        } catch (Throwable t) {
+            throw new Exception("Compilation JIT impossible pour le bloc " + String.format("%04X", block.start), t);
+        }
+    }
+
+    byte[] generate(BlockCache.Block block, InstructionDecoder_V6 decoder) throws IOException {
+        ConstantPool cp = new ConstantPool();
+        int thisClass = cp.classRef(CLASS_NAME);
+        int superClass = cp.classRef("java/lang/Object");
+        int iface = cp.classRef("sim/JitTier$CompiledBlock");
+        int fH = cp.fieldRef(CLASS_NAME, "h", "[L" + HANDLER + ";");
+        int fD = cp.fieldRef(CLASS_NAME, "d", "L" + DECODER + ";");
+        int fCpu = cp.fieldRef(CLASS_NAME, "cpu", "L" + CPU + ";");
+        int fBlk = cp.fieldRef(CLASS_NAME, "blk", "L" + BLOCK + ";");
+        int mObjectInit = cp.methodRef("java/lang/Object", "<init>", "()V", false);
+
+        // --- Constructeur : stocke les handlers, le décodeur, le CPU et le bloc source ---
+        Code init = new Code();
+        init.op(0x2A).op(0xB7).u2(mObjectInit);                   // aload_0; invokespecial Object.<init>
+        init.op(0x2A).op(0x2B).op(0xB5).u2(fH);                   // this.h = arg1
+        init.op(0x2A).op(0x2C).op(0xB5).u2(fD);                   // this.d = arg2
+        init.op(0x2A).op(0x2D).op(0xB5).u2(fCpu);                 // this.cpu = arg3
+        init.op(0x2A).op(0x19).op(4).op(0xB5).u2(fBlk);           // this.blk = arg4
+        init.op(0xB1);                                            // return
+
+        // --- run() : cpu et décodeur en variables locales, puis une séquence linéaire par instruction ---
+        Translator run = new Translator(cp, block, fH, fBlk);
+        run.code.op(0x2A).op(0xB4).u2(fCpu).op(0x4C);              // cpu = this.cpu
+        run.code.op(0x2A).op(0xB4).u2(fD).op(0x4D);                // d = this.d
+        for (int i = 0; i < block.count; i++) {
+            int page = block.opcode[i] >> 8;
+            run.translate(i, decoder.mnemonics[page][block.opcode[i] & 0xFF], decoder.writes[page][block.opcode[i] & 0xFF]);
+        }
+        run.flush(block.count - 1);
+        run.code.ldc(cp.integer(block.count)).op(0xAC);           // ireturn
+
+        int nInit = cp.utf8("<init>");
+        int dInit = cp.utf8(CTOR_DESC);
+        int nRun = cp.utf8("run");
+        int dRun = cp.utf8("()I");
+        int aCode = cp.utf8("Code");
+        int[][] fields = {
+                {cp.utf8("h"), cp.utf8("[L" + HANDLER + ";")},
+                {cp.utf8("d"), cp.utf8("L" + DECODER + ";")},
+                {cp.utf8("cpu"), cp.utf8("L" + CPU + ";")},
+                {cp.utf8("blk"), cp.utf8("L" + BLOCK + ";")},
+        };
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0xCAFEBABE);
+        out.writeShort(0);
+        out.writeShort(61);                                       // Java 17
+        cp.write(out);
+        out.writeShort(0x0030);                                   // ACC_FINAL | ACC_SUPER
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(iface);
+
+        out.writeShort(fields.length);
+        for (int[] field : fields) {
+            out.writeShort(0x0012);                               // ACC_PRIVATE | ACC_FINAL
+            out.writeShort(field[0]);
+            out.writeShort(field[1]);
+            out.writeShort(0);
+        }
+
+        out.writeShort(2);
+        writeMethod(out, 0x0001, nInit, dInit, aCode, init, 2, 5);
+        writeMethod(out, 0x0001, nRun, dRun, aCode, run.code, 8, 5);
+        out.writeShort(0);                                        // pas d'attribut de classe
+        return bytes.toByteArray();
+    }
+
+    /** Traduction des instructions d'un bloc dans le corps de run(). */
+    private static final class Translator {
+        final Code code = new Code();
+        private final ConstantPool cp;
+        private final BlockCache.Block block;
+        private final int fH, fBlk;
+        private final int fA, fB, fDP, fPC, fCycles, fCount;
+        private final int[] fIndex = new int[4];
+        private final int mReadMem, mReadWord, mWriteMem, mWriteWord, mReveal, mExec, mGuard;
+        private final int mGetD, mSetD, mTestFlag, mFlags, mFlagsNZ, mFlagsAdd16, mFlagsInc8, mFlagsDec8,
+                mFlagsNeg8, mFlagsCom8, mFlagsShiftRight8, mFlagsShiftLeft8, mFlagsClr;
+
+        // Instructions traduites dont cycles, compteur, PC et révélation ne sont pas encore reportés
+        private int pendingCount, pendingCycles, pendingFrom;
+
+        Translator(ConstantPool cp, BlockCache.Block block, int fH, int fBlk) {
+            this.cp = cp;
+            this.block = block;
+            this.fH = fH;
+            this.fBlk = fBlk;
+            fA = cp.fieldRef(CPU, "A", "I");
+            fB = cp.fieldRef(CPU, "B", "I");
+            fDP = cp.fieldRef(CPU, "DP", "I");
+            fPC = cp.fieldRef(CPU, "PC", "I");
+            fCycles = cp.fieldRef(CPU, "cycles", "J");
+            fCount = cp.fieldRef(DECODER, "instructionCount", "J");
+            for (int r = 0; r < 4; r++) fIndex[r] = cp.fieldRef(CPU, INDEX_REGISTERS[r], "I");
+            mReadMem = cp.methodRef(DECODER, "readMem", "(I)I", false);
+            mReadWord = cp.methodRef(DECODER, "readWord", "(I)I", false);
+            mWriteMem = cp.methodRef(DECODER, "writeMem", "(II)V", false);
+            mWriteWord = cp.methodRef(DECODER, "writeWord", "(II)V", false);
+            mReveal = cp.methodRef(DECODER, "revealRange", "(II)V", false);
+            mExec = cp.methodRef(HANDLER, "exec", "(I)V", true);
+            mGuard = cp.methodRef(TIER, "guard", "(L" + BLOCK + ";L" + CPU + ";I)V", false);
+            mGetD = cp.methodRef(CPU, "getD", "()I", false);
+            mSetD = cp.methodRef(CPU, "setD", "(I)V", false);
+            mTestFlag = cp.methodRef(CPU, "testFlag", "(I)Z", false);
+            mFlags = cp.methodRef(CPU, "updateFlags", "(IZ)V", false);
+            mFlagsNZ = cp.methodRef(CPU, "updateFlagsNZ", "(IZ)V", false);
+            mFlagsAdd16 = cp.methodRef(CPU, "updateFlagsAdd16", "(III)V", false);
+            mFlagsInc8 = cp.methodRef(CPU, "updateFlagsInc8", "(II)V", false);
+            mFlagsDec8 = cp.methodRef(CPU, "updateFlagsDec8", "(II)V", false);
+            mFlagsNeg8 = cp.methodRef(CPU, "updateFlagsNeg8", "(II)V", false);
+            mFlagsCom8 = cp.methodRef(CPU, "updateFlagsCom8", "(II)V", false);
+            mFlagsShiftRight8 = cp.methodRef(CPU, "updateFlagsShiftRight8", "(IIZ)V", false);
+            mFlagsShiftLeft8 = cp.methodRef(CPU, "updateFlagsShiftLeft8", "(IIZ)V", false);
+            mFlagsClr = cp.methodRef(CPU, "updateFlagsClr", "()V", false);
+        }
+
+        void translate(int i, String mnemonic, boolean writes) {
+            if (pendingCount == 0) pendingFrom = block.pc[i];
+            pendingCount++;
+            pendingCycles += block.cycles(i);
+            int mode = block.mode(i);
+            int operand = block.operand(i);
+            boolean memory = mode == InstructionDecoder_V6.M_DIR || mode == InstructionDecoder_V6.M_IDX
+                    || mode == InstructionDecoder_V6.M_EXT;
+            boolean last = i == block.count - 1;
+            if (!inline(mnemonic, mode, operand, memory, i, last)) {
+                // Handler de l'interpréteur : il voit PC, les cycles et la mémoire comme en interprétation
+                flush(i);
+                code.op(0x2A).op(0xB4).u2(fH).ldc(cp.integer(i)).op(0x32);   // this.h[i]
+                operand(mode, operand);
+                code.op(0xB9).u2(mExec).op(2).op(0);
+                writes = true;
+            }
+            // Retour à l'interpréteur si une écriture a invalidé ce bloc ou avancé une échéance
+            if (writes && !last) {
+                code.op(0x2A).op(0xB4).u2(fBlk).op(0x2B).ldc(cp.integer(i + 1)).op(0xB8).u2(mGuard);
+            }
+        }
+
+        // Vrai si l'instruction a été traduite en ligne
+        private boolean inline(String mnemonic, int mode, int operand, boolean memory, int i, boolean last) {
+            if (mnemonic == null) return false;
+            boolean immediate = mode == InstructionDecoder_V6.M_IMM8 || mode == InstructionDecoder_V6.M_IMM16;
+            switch (mnemonic) {
+                case "LDA": case "LDB": case "LDD": case "LDX": case "LDY": case "LDU": case "LDS": {
+                    if (!immediate && !memory) return false;
+                    String register = mnemonic.substring(2);
+                    boolean wide = !register.equals("A") && !register.equals("B");
+                    if (memory || last) flush(i);
+                    if (memory) {
+                        code.op(0x2C);                                          // d
+                        operand(mode, operand);
+                        code.op(0xB6).u2(wide ? mReadWord : mReadMem);
+                    } else {
+                        code.ldc(cp.integer(operand));
+                    }
+                    code.op(0x3E);                                              // istore_3
+                    if (register.equals("D")) {
+                        code.op(0x2B).op(0x1D).op(0xB6).u2(mSetD);              // cpu.setD(v)
+                    } else {
+                        code.op(0x2B).op(0x1D).op(0xB5).u2(registerField(register));
+                    }
+                    flags(register, wide);
+                    return true;
+                }
+                case "STA": case "STB": case "STD": case "STX": {
+                    if (!memory) return false;
+                    String register = mnemonic.substring(2);
+                    boolean wide = !register.equals("A") && !register.equals("B");
+                    flush(i);
+                    code.op(0x2C);                                              // d
+                    operand(mode, operand);
+                    value(register);
+                    code.op(0xB6).u2(wide ? mWriteWord : mWriteMem);
+                    flags(register, wide);
+                    return true;
+                }
+                case "ADDD": {
+                    if (mode != InstructionDecoder_V6.M_IMM16) return false;
+                    if (last) flush(i);
+                    code.op(0x2B).op(0xB6).u2(mGetD).op(0x3E);                  // original = cpu.getD()
+                    code.op(0x1D).ldc(cp.integer(operand)).op(0x60).op(0x36).op(L_RESULT);
+                    code.op(0x2B).op(0x15).op(L_RESULT).op(0xB6).u2(mSetD);
+                    code.op(0x2B).op(0x1D).ldc(cp.integer(operand)).op(0x15).op(L_RESULT).op(0xB6).u2(mFlagsAdd16);
+                    return true;
+                }
+                case "TSTA": case "TSTB":
+                    if (last) flush(i);
+                    code.op(0x2B);
+                    value(mnemonic.substring(3));
+                    code.op(0x03).op(0xB6).u2(mFlagsNZ);
+                    return true;
+                case "CLRA": case "CLRB":
+                    if (last) flush(i);
+                    code.op(0x2B).op(0xB6).u2(mFlagsClr);
+                    code.op(0x2B).op(0x03).op(0xB5).u2(registerField(mnemonic.substring(3)));
+                    return true;
+                case "INCA": case "DECA": case "NEGA": case "COMA": case "LSRA": case "RORA": case "ASLA": case "ROLA":
+                case "NEGB": case "COMB": case "LSRB": case "RORB": case "ASLB": case "ROLB":
+                    if (last) flush(i);
+                    unary(mnemonic.substring(0, 3), registerField(mnemonic.substring(3)));
+                    return true;
+                case "NOP":
+                    if (last) flush(i);
+                    return true;
+                case "JMP":
+                    if (mode != InstructionDecoder_V6.M_EXT) return false;
+                    flush(i);
+                    code.op(0x2B).ldc(cp.integer(operand)).op(0xB5).u2(fPC);
+                    return true;
+                case "BRA": case "BEQ": case "BNE": {
+                    flush(i);
+                    int next = block.nextPc(i);
+                    int target = (next + operand) & 0xFFFF;
+                    code.op(0x2B);
+                    if (mnemonic.equals("BRA")) {
+                        code.ldc(cp.integer(target));
+                    } else {
+                        // Z vaut 0 ou 1 : PC = pris + Z * (autre - pris), sans branchement dans le bytecode
+                        int zero = mnemonic.equals("BEQ") ? target : next;
+                        int other = mnemonic.equals("BEQ") ? next : target;
+                        code.op(0x2B).ldc(cp.integer(CPU6809_V6.FLAG_Z)).op(0xB6).u2(mTestFlag);
+                        code.ldc(cp.integer(zero - other)).op(0x68).ldc(cp.integer(other)).op(0x60);
+                    }
+                    code.op(0xB5).u2(fPC);
+                    return true;
+                }
+                default:
+                    return false;
+            }
+        }
+
+        // Opérations inhérentes 8 bits : original en local 3, résultat en local 4, flags comme l'interpréteur
+        private void unary(String operation, int field) {
+            code.op(0x2B).op(0xB4).u2(field).op(0x3E);                      // original = cpu.R
+            code.op(0x1D);
+            int flags;
+            switch (operation) {
+                case "INC": code.op(0x04).op(0x60); flags = mFlagsInc8; break;
+                case "DEC": code.op(0x04).op(0x64); flags = mFlagsDec8; break;
+                case "NEG": code.op(0x02).op(0x82).op(0x04).op(0x60); flags = mFlagsNeg8; break;
+                case "COM": code.op(0x02).op(0x82); flags = mFlagsCom8; break;
+                case "LSR": code.op(0x04).op(0x7A).ldc(cp.integer(0x7F)).op(0x7E); flags = mFlagsShiftRight8; break;
+                case "ROR":
+                    code.op(0x04).op(0x7A);
+                    code.op(0x2B).ldc(cp.integer(CPU6809_V6.FLAG_C)).op(0xB6).u2(mTestFlag).ldc(cp.integer(7)).op(0x78).op(0x80);
+                    flags = mFlagsShiftRight8;
+                    break;
+                case "ASL": code.op(0x04).op(0x78); flags = mFlagsShiftLeft8; break;
+                case "ROL":
+                    code.op(0x04).op(0x78);
+                    code.op(0x2B).ldc(cp.integer(CPU6809_V6.FLAG_C)).op(0xB6).u2(mTestFlag).op(0x80);
+                    flags = mFlagsShiftLeft8;
+                    break;
+                default: throw new IllegalArgumentException(operation);
+            }
+            code.ldc(cp.integer(0xFF)).op(0x7E).op(0x36).op(L_RESULT);     // résultat & 0xFF
+            code.op(0x2B).op(0x15).op(L_RESULT).op(0xB5).u2(field);         // cpu.R = résultat
+            code.op(0x2B).op(0x1D).op(0x15).op(L_RESULT);
+            if (flags == mFlagsShiftRight8 || flags == mFlagsShiftLeft8) {
+                code.op(operation.startsWith("RO") ? 0x04 : 0x03);            // rotation ?
+            }
+            code.op(0xB6).u2(flags);
+        }
+
+        // cpu.updateFlags(registre, wide)
+        private void flags(String register, boolean wide) {
+            code.op(0x2B);
+            value(register);
+            code.op(wide ? 0x04 : 0x03).op(0xB6).u2(mFlags);
+        }
+
+        // Valeur d'un registre sur la pile
+        private void value(String register) {
+            if (register.equals("D")) {
+                code.op(0x2B).op(0xB6).u2(mGetD);
+            } else {
+                code.op(0x2B).op(0xB4).u2(registerField(register));
+            }
+        }
+
+        private int registerField(String register) {
+            switch (register) {
+                case "A": return fA;
+                case "B": return fB;
+                case "X": return fIndex[0];
+                case "Y": return fIndex[1];
+                case "U": return fIndex[2];
+                case "S": return fIndex[3];
+                default: throw new IllegalArgumentException(register);
+            }
+        }
+
+        // Opérande sur la pile : adresse effective (DIR/IDX, selon DP et l'index courants) ou constante
+        private void operand(int mode, int operand) {
+            if (mode == InstructionDecoder_V6.M_DIR) {
+                // ((cpu.DP & 0xFF) << 8) | offset
+                code.op(0x2B).op(0xB4).u2(fDP)
+                        .ldc(cp.integer(0xFF)).op(0x7E).ldc(cp.integer(8)).op(0x78)
+                        .ldc(cp.integer(operand)).op(0x80);
+            } else if (mode == InstructionDecoder_V6.M_IDX) {
+                // (reg + offset) & 0xFFFF
+                code.op(0x2B).op(0xB4).u2(fIndex[(operand >> 16) & 0x03])
+                        .ldc(cp.integer((short) operand)).op(0x60)
+                        .ldc(cp.integer(0xFFFF)).op(0x7E);
+            } else {
+                code.ldc(cp.integer(operand));
+            }
+        }
+
+        /**
+         * Reporte les instructions en attente jusqu'à l'instruction {@code i} comprise : compteur
+         * d'instructions, cycles, PC (adresse suivante) et octets révélés, comme l'interpréteur
+         * avant d'exécuter le handler.
+         */
+        private void flush(int i) {
+            if (pendingCount == 0) return;
+            int next = block.nextPc(i);
+            // d.instructionCount += n ; cpu.cycles += cycles
+            code.op(0x2C).op(0x59).op(0xB4).u2(fCount).ldc(cp.integer(pendingCount)).op(0x85).op(0x61).op(0xB5).u2(fCount);
+            code.op(0x2B).op(0x59).op(0xB4).u2(fCycles).ldc(cp.integer(pendingCycles)).op(0x85).op(0x61).op(0xB5).u2(fCycles);
+            // cpu.PC = next ; d.revealRange(début, next)
+            code.op(0x2B).ldc(cp.integer(next)).op(0xB5).u2(fPC);
+            code.op(0x2C).ldc(cp.integer(pendingFrom)).ldc(cp.integer(next)).op(0xB6).u2(mReveal);
+            pendingCount = 0;
+            pendingCycles = 0;
+        }
+    }
+
+    private static void writeMethod(DataOutputStream out, int access, int name, int desc, int codeAttr,
+                                    Code code, int maxStack, int maxLocals) throws IOException {
+        byte[] body = code.toByteArray();
+        out.writeShort(access);
+        out.writeShort(name);
+        out.writeShort(desc);
+        out.writeShort(1);
+        out.writeShort(codeAttr);
+        out.writeInt(12 + body.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(body.length);
+        out.write(body);
+        out.writeShort(0);                                        // exception_table_length
+        out.writeShort(0);                                        // attributs du Code
+    }
+
+    /** Flux de bytecode. */
+    private static final class Code {
+        private final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+
+        Code op(int b) {
+            buf.write(b);
+            return this;
+        }
+
+        Code u2(int v) {
+            buf.write(v >> 8);
+            buf.write(v);
+            return this;
+        }
+
+        Code ldc(int index) {
+            return op(0x13).u2(index);                            // ldc_w
+        }
+
+        byte[] toByteArray() {
+            return buf.toByteArray();
+        }
+    }
+
+    /** Pool de constantes minimal, avec déduplication des entrées. */
+    private static final class ConstantPool {
+        private final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(buf);
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String s) {
+            return entry("U" + s, () -> { out.writeByte(1); out.writeUTF(s); });
+        }
+
+        int integer(int v) {
+            return entry("I" + v, () -> { out.writeByte(3); out.writeInt(v); });
+        }
+
+        int classRef(String name) {
+            int n = utf8(name);
+            return entry("C" + name, () -> { out.writeByte(7); out.writeShort(n); });
+        }
+
+        int nameAndType(String name, String desc) {
+            int n = utf8(name);
+            int d = utf8(desc);
+            return entry("N" + name + " " + desc, () -> { out.writeByte(12); out.writeShort(n); out.writeShort(d); });
+        }
+
+        int fieldRef(String owner, String name, String desc) {
+            int c = classRef(owner);
+            int nt = nameAndType(name, desc);
+            return entry("F" + owner + "." + name, () -> { out.writeByte(9); out.writeShort(c); out.writeShort(nt); });
+        }
+
+        int methodRef(String owner, String name, String desc, boolean isInterface) {
+            int c = classRef(owner);
+            int nt = nameAndType(name, desc);
+            int tag = isInterface ? 11 : 10;
+            return entry("M" + owner + "." + name + desc, () -> { out.writeByte(tag); out.writeShort(c); out.writeShort(nt); });
+        }
+
+        private int entry(String key, Writer writer) {
+            Integer index = entries.get(key);
+            if (index != null) return index;
+            try {
+                writer.write();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            entries.put(key, count);
+            return count++;
+        }
+
+        void write(DataOutputStream dest) throws IOException {
+            dest.writeShort(count);
+            out.flush();
+            buf.writeTo(dest);
+        }
+
+        private interface Writer {
+            void write() throws IOException;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package sim;
+
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Second niveau d'exécution : compte les entrées dans chaque bloc de base et, au-delà d'un seuil,
+ * le traduit en classe JVM (voir {@link JitCompiler}). Retour à l'interpréteur (désoptimisation)
+ * quand le code est modifié ; sortie anticipée vers l'interpréteur quand une écriture avance une
+ * échéance (interruption en attente). Un bloc qui franchirait une échéance du contrôleur
+ * d'interruptions, ou quand le décodeur est instrumenté (journal, trace, profil, watchpoints),
+ * est interprété ; sous breakpoints, voir {@link #canRunBlock}.
+ */
+public class JitTier {
+    public static final int DEFAULT_HOT_THRESHOLD = 100;
+    // Au-delà, un bloc trop souvent désoptimisé reste dans l'interpréteur
+    static final int MAX_DEOPTS = 4;
+
+    /** Bloc compilé : exécute le bloc entier et retourne le nombre d'instructions exécutées. */
+    interface CompiledBlock {
+        int run() throws Exception;
+    }
+
+    /**
+     * Levée par le code compilé quand une écriture invalide le bloc en cours d'exécution
+     * ou rend une échéance due : l'interpréteur reprend à l'instruction suivante.
+     */
+    static final class Deopt extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        final int executed;
+        // Bloc modifié : le code compilé est abandonné (sinon il reste valable)
+        final boolean invalidated;
+
+        Deopt(int executed, boolean invalidated) {
+            super(null, null, false, false);
+            this.executed = executed;
+            this.invalidated = invalidated;
+        }
+    }
+
+    private final CPU6809_V6 cpu;
+    private final InstructionDecoder_V6 decoder;
+    private final JitCompiler compiler = new JitCompiler(MethodHandles.lookup());
+    private final int hotThreshold;
+
+    private final CompiledBlock[] compiled = new CompiledBlock[65536];
+    private final BlockCache.Block[] compiledFrom = new BlockCache.Block[65536];
+    private final int[] entries = new int[65536];
+    private final byte[] deoptCounts = new byte[65536];
+
+    private long compiledBlocks, deopts;
+
+    public JitTier(CPU6809_V6 cpu, InstructionDecoder_V6 decoder) {
+        this(cpu, decoder, DEFAULT_HOT_THRESHOLD);
+    }
+
+    public JitTier(CPU6809_V6 cpu, InstructionDecoder_V6 decoder, int hotThreshold) {
+        this.cpu = cpu;
+        this.decoder = decoder;
+        this.hotThreshold = hotThreshold;
+    }
+
+    /**
+     * Exécute le bloc qui commence à PC : code compilé s'il existe, sinon interpréteur.
+     * @return le nombre d'instructions exécutées
+     */
+    public int executeBlock() throws Exception {
+        // Le code compilé ne journalise pas, ne profile pas et ignore les watchpoints : l'interpréteur par blocs prend le relais
+        if (decoder.isInstrumented()) return decoder.executeBlock();
+
+        int pc = cpu.PC & 0xFFFF;
+        if (compiled[pc] != null) {
+            // Le code compilé ne teste pas les échéances : un bloc qui en franchit une est interprété
+            if (cpu.cycles + compiledFrom[pc].totalCycles >= cpu.interrupts.nextEvent) return decoder.executeBlock();
+            if (compiledFrom[pc].selfLoop && decoder.isIdleSkip()) return decoder.executeBlock();
+            if (compiledFrom[pc].valid) return runCompiled(pc);
+            deoptimized(pc);
+        }
+
+        BlockCache.Block block = decoder.blockAt(pc);
+        // Une boucle d'attente reste interprétée : c'est l'interpréteur qui la détecte et l'avance
+        if (block.selfLoop && decoder.isIdleSkip()) return decoder.executeBlock();
+        if (++entries[pc] >= hotThreshold && deoptCounts[pc] < MAX_DEOPTS) {
+            compiled[pc] = compiler.compile(block, decoder, cpu);
+            compiledFrom[pc] = block;
+            compiledBlocks++;
+            // Le bloc qui vient d'être compilé s'exécute tout de suite en version compilée
+            if (cpu.cycles + block.totalCycles < cpu.interrupts.nextEvent) return runCompiled(pc);
+        }
+        return decoder.executeBlock();
+    }
+
+    /**
+     * Exécute des blocs jusqu'à consommer au moins {@code budget} cycles, comme
+     * {@link InstructionDecoder_V6#runCycles} : blocs entiers tant qu'ils tiennent dans le budget,
+     * puis pas à pas. S'arrête sur une boucle d'attente sans échéance ({@link InstructionDecoder_V6#isHung}).
+     * @return le nombre de cycles réellement consommés
+     */
+    public long runCycles(long budget) throws Exception {
+        long start = cpu.cycles;
+        long target = start + budget;
+        while (cpu.cycles < target) {
+            if (cpu.cycles + decoder.blockAt(cpu.PC).totalCycles <= target) {
+                executeBlock();
+                if (decoder.isHung()) break;
+            } else {
+                decoder.executeNext();
+            }
+        }
+        return cpu.cycles - start;
+    }
+
+    /**
+     * Vrai si le bloc à PC peut s'exécuter d'un seul tenant sous {@code breakpoints} : aucun watchpoint,
+     * aucun breakpoint d'exécution sur ses instructions et au plus {@code maxCycles} cycles.
+     * Sinon l'appelant exécute pas à pas et vérifie les breakpoints avant chaque instruction.
+     */
+    public boolean canRunBlock(BreakpointEngine breakpoints, long maxCycles) {
+        if (breakpoints.hasWatchpoints()) return false;
+        BlockCache.Block block = decoder.blockAt(cpu.PC);
+        if (block.totalCycles > maxCycles) return false;
+        for (int i = 0; i < block.count; i++) {
+            if (breakpoints.isBreakpoint(block.pc[i])) return false;
+        }
+        return true;
+    }
+
+    private int runCompiled(int pc) throws Exception {
+        try {
+            return compiled[pc].run();
+        } catch (Deopt d) {
+            if (d.invalidated) deoptimized(pc);
+            return d.executed;
+        }
+    }
+
+    /** Appelé par le code compilé après chaque écriture (sauf en fin de bloc). */
+    static void guard(BlockCache.Block block, CPU6809_V6 cpu, int executed) throws Deopt {
+        if (!block.valid || cpu.cycles >= cpu.interrupts.nextEvent) throw new Deopt(executed, !block.valid);
+    }
+
+    private void deoptimized(int pc) {
+        deopts++;
+        if (deoptCounts[pc] < MAX_DEOPTS) deoptCounts[pc]++;
+        discard(pc);
+    }
+
+    private void discard(int pc) {
+        compiled[pc] = null;
+        compiledFrom[pc] = null;
+        entries[pc] = 0;
+    }
+
+    public long getCompiledBlocks() {
+        return compiledBlocks;
+    }
+
+    public long getDeopts() {
+        return deopts;
+    }
+
+    /**
+     * Mode de vérification différentielle : exécute le même programme avec le JIT (seuil 1)
+     * et avec l'interpréteur pas à pas, et compare l'état complet après chaque bloc.
+     * @return null si aucune divergence, sinon une description de la première divergence
+     */
+    public static String differentialCheck(String source, long maxInstructions) throws Exception {
+        CPU6809_V6 jitCpu = new CPU6809_V6();
+        CPU6809_V6 refCpu = new CPU6809_V6();
+        jitCpu.setRevealTracking(true);
+        refCpu.setRevealTracking(true);
+        new MiniAssembler_V6().assemble(source, jitCpu);
+        new MiniAssembler_V6().assemble(source, refCpu);
+        InstructionDecoder_V6 jitDecoder = new InstructionDecoder_V6(jitCpu);
+        InstructionDecoder_V6 refDecoder = new InstructionDecoder_V6(refCpu);
+        JitTier tier = new JitTier(jitCpu, jitDecoder, 1);
+
+        long executed = 0;
+        while (executed < maxInstructions) {
+            int blockStart = jitCpu.PC;
+            String jitError = null, refError = null;
+            int n;
+            try {
+                n = tier.executeBlock();
+            } catch (Exception e) {
+                jitError = e.getMessage();
+                n = -1;
+            }
+            // Référence : autant d'instructions que le bloc (ou jusqu'à l'erreur)
+            for (int i = 0; n < 0 || i < n; i++) {
+                try {
+                    refDecoder.executeNext();
+                } catch (Exception e) {
+                    refError = e.getMessage();
+                    break;
+                }
+            }
+            String diff = compareState(jitCpu, refCpu);
+            if (diff == null && (jitError == null) != (refError == null)) diff = "erreur " + jitError + " / " + refError;
+            if (diff != null) return String.format("Bloc %04X : %s", blockStart, diff);
+            if (jitError != null) break;
+            executed += n;
+        }
+        return null;
+    }
+
+    private static String compareState(CPU6809_V6 a, CPU6809_V6 b) {
+        int[] ra = {a.PC, a.A, a.B, a.DP, a.getCC(), a.X, a.Y, a.U, a.S};
+        int[] rb = {b.PC, b.A, b.B, b.DP, b.getCC(), b.X, b.Y, b.U, b.S};
+        String[] names = {"PC", "A", "B", "DP", "CC", "X", "Y", "U", "S"};
+        for (int i = 0; i < ra.length; i++) {
+            if (ra[i] != rb[i]) return String.format("%s JIT=%04X interp=%04X", names[i], ra[i], rb[i]);
+        }
+        if (a.cycles != b.cycles) return String.format("cycles JIT=%d interp=%d", a.cycles, b.cycles);
+        if (!a.memory.contentEquals(b.memory)) return "mémoire différente";
+        if (!a.sameReveals(b)) return "suivi mémoire différent";
+        return null;
+    }
+
+    /**
+     * Usage : java -cp src sim.JitTier fichier.asm [instructions]
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage : java sim.JitTier fichier.asm [instructions]");
+            return;
+        }
+        long max = args.length > 1 ? Long.parseLong(args[1]) : 1_000_000L;
+        for (String file : args[0].split(",")) {
+            String source = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8);
+            String diff = differentialCheck(source, max);
+            System.out.println(file + " : " + (diff == null ? "OK" : "DIVERGENCE " + diff));
+        }
+    }
+}
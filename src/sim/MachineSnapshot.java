@@ -0,0 +1,217 @@
+package sim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Instantané complet de la machine : registres, attente CWAI/SYNC, lignes d'interruption (NMI en
+ * attente, IRQ, FIRQ), 64 Ko de mémoire et état des périphériques.
+ * La mémoire est découpée en 256 pages de 256 octets immuables, partagées entre instantanés
+ * (copie à l'écriture) : une capture ne recopie que les pages écrites depuis l'instantané
+ * précédent, et une restauration ne recopie que les pages qui diffèrent de la mémoire actuelle.
+ * Les pages nulles partagent toutes le même tableau.
+ */
+public final class MachineSnapshot {
+    private static final int MAGIC = 0x4D303953; // "M09S"
+    private static final int VERSION = 2;
+    private static final byte[] ZERO_PAGE = new byte[Memory.PAGE_SIZE];
+
+    public final int A, B, DP, CC, X, Y, U, S, PC;
+    public final long cycles;
+    // État de l'InterruptController : attente, NMI en attente (0/1), lignes IRQ et FIRQ
+    private final int waitState, nmiPending, irqLines, firqLines;
+
+    // Jamais modifiées après construction : deux instantanés peuvent partager une page
+    private final byte[][] pages;
+    // Nombre de pages recopiées par la capture (les autres sont partagées)
+    private final int copiedPages;
+    // Premier numéro de page de chaque périphérique ayant un état, et l'état correspondant
+    private final int[] devicePages;
+    private final byte[][] deviceStates;
+
+    private MachineSnapshot(int[] regs, long cycles, int[] interrupts, byte[][] pages, int copiedPages,
+                            int[] devicePages, byte[][] deviceStates) {
+        A = regs[0]; B = regs[1]; DP = regs[2]; CC = regs[3];
+        X = regs[4]; Y = regs[5]; U = regs[6]; S = regs[7]; PC = regs[8];
+        this.cycles = cycles;
+        waitState = interrupts[0]; nmiPending = interrupts[1]; irqLines = interrupts[2]; firqLines = interrupts[3];
+        this.pages = pages;
+        this.copiedPages = copiedPages;
+        this.devicePages = devicePages;
+        this.deviceStates = deviceStates;
+    }
+
+    /**
+     * Capture l'état courant. Les pages non écrites depuis le dernier instantané capturé
+     * ou restauré sur ce CPU sont reprises telles quelles de celui-ci.
+     */
+    public static MachineSnapshot capture(CPU6809_V6 cpu) {
+        MachineSnapshot base = cpu.snapshotBase;
+        Memory memory = cpu.memory;
+        byte[][] pages = new byte[Memory.PAGES][];
+        byte[] buffer = new byte[Memory.PAGE_SIZE];
+        int copied = 0;
+        for (int page = 0; page < Memory.PAGES; page++) {
+            if (base != null && !memory.isPageModified(page)) {
+                pages[page] = base.pages[page];
+                continue;
+            }
+            memory.readPage(page, buffer);
+            if (Arrays.equals(buffer, ZERO_PAGE)) {
+                pages[page] = ZERO_PAGE;
+            } else if (base != null && Arrays.equals(buffer, base.pages[page])) {
+                pages[page] = base.pages[page];
+            } else {
+                pages[page] = buffer;
+                buffer = new byte[Memory.PAGE_SIZE];
+                copied++;
+            }
+        }
+
+        int[] devicePages = new int[Memory.PAGES];
+        byte[][] deviceStates = new byte[Memory.PAGES][];
+        int devices = 0;
+        Device previous = null;
+        for (int page = 0; page < Memory.PAGES; page++) {
+            Device device = cpu.bus.deviceAt(page << 8);
+            if (device != null && device != previous) {
+                byte[] state = device.saveState();
+                if (state != null) {
+                    devicePages[devices] = page;
+                    deviceStates[devices++] = state;
+                }
+            }
+            previous = device;
+        }
+
+        int[] regs = {cpu.A, cpu.B, cpu.DP, cpu.getCC(), cpu.X, cpu.Y, cpu.U, cpu.S, cpu.PC};
+        InterruptController interrupts = cpu.interrupts;
+        int[] lines = {interrupts.waitState, interrupts.isNMIPending() ? 1 : 0,
+                interrupts.getIRQLines(), interrupts.getFIRQLines()};
+        MachineSnapshot snapshot = new MachineSnapshot(regs, cpu.cycles, lines, pages, copied,
+                Arrays.copyOf(devicePages, devices), Arrays.copyOf(deviceStates, devices));
+        memory.clearModifiedPages();
+        cpu.snapshotBase = snapshot;
+        return snapshot;
+    }
+
+    /**
+     * Remet la machine dans l'état capturé. Seules les pages écrites depuis le dernier
+     * instantané, ou différentes dans celui-ci, sont recopiées ; le code prédécodé de ces
+     * pages est oublié ({@code decoder} peut être null si aucun décodeur n'est associé).
+     * @return le nombre de pages recopiées
+     */
+    public int restore(CPU6809_V6 cpu, InstructionDecoder_V6 decoder) {
+        MachineSnapshot base = cpu.snapshotBase;
+        Memory memory = cpu.memory;
+        int copied = 0;
+        for (int page = 0; page < Memory.PAGES; page++) {
+            if (base != null && base.pages[page] == pages[page] && !memory.isPageModified(page)) continue;
+            memory.loadPage(page, pages[page]);
+            if (decoder != null) decoder.invalidateCodePage(page);
+            cpu.markDirty(page << 8);
+            copied++;
+        }
+        memory.clearModifiedPages();
+        cpu.snapshotBase = this;
+        // Avant les périphériques : ils replanifient leurs échéances par rapport au cycle restauré
+        cpu.setCycles(cycles);
+
+        for (int i = 0; i < devicePages.length; i++) {
+            Device device = cpu.bus.deviceAt(devicePages[i] << 8);
+            if (device != null) device.restoreState(deviceStates[i]);
+        }
+
+        cpu.A = A; cpu.B = B; cpu.DP = DP;
+        cpu.setCC(CC);
+        cpu.X = X; cpu.Y = Y; cpu.U = U; cpu.S = S; cpu.PC = PC;
+        // Après les périphériques et CC : les lignes capturées priment sur celles qu'ils ont relevées
+        cpu.interrupts.restoreState(waitState, nmiPending != 0, irqLines, firqLines);
+        return copied;
+    }
+
+    /** Octet (0..255) à l'adresse donnée dans la mémoire capturée. */
+    public int read(int addr) {
+        addr &= 0xFFFF;
+        return pages[addr >>> 8][addr & 0xFF] & 0xFF;
+    }
+
+    /** Pages recopiées par la capture (hors pages nulles et pages partagées). */
+    public int getCopiedPages() {
+        return copiedPages;
+    }
+
+    /**
+     * Écrit l'instantané dans un fichier binaire : en-tête, registres, interruptions, pages non nulles
+     * (numéro + 256 octets) puis état des périphériques.
+     */
+    public void writeTo(Path path) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeByte(A); out.writeByte(B); out.writeByte(DP); out.writeByte(CC);
+            out.writeShort(X); out.writeShort(Y); out.writeShort(U); out.writeShort(S); out.writeShort(PC);
+            out.writeLong(cycles);
+            out.writeByte(waitState); out.writeByte(nmiPending);
+            out.writeInt(irqLines); out.writeInt(firqLines);
+            int nonZero = 0;
+            for (byte[] page : pages) if (page != ZERO_PAGE) nonZero++;
+            out.writeShort(nonZero);
+            for (int page = 0; page < Memory.PAGES; page++) {
+                if (pages[page] == ZERO_PAGE) continue;
+                out.writeByte(page);
+                out.write(pages[page]);
+            }
+            out.writeShort(devicePages.length);
+            for (int i = 0; i < devicePages.length; i++) {
+                out.writeByte(devicePages[i]);
+                out.writeInt(deviceStates[i].length);
+                out.write(deviceStates[i]);
+            }
+        }
+    }
+
+    public static MachineSnapshot readFrom(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Pas un instantané 6809 : " + path);
+            int version = in.readUnsignedShort();
+            if (version < 1 || version > VERSION) throw new IOException("Version d'instantané non supportée : " + version);
+            int[] regs = new int[9];
+            for (int i = 0; i < 4; i++) regs[i] = in.readUnsignedByte();
+            for (int i = 4; i < 9; i++) regs[i] = in.readUnsignedShort();
+            long cycles = in.readLong();
+            // Version 1 : pas d'état d'interruption (CPU en marche, aucune ligne levée)
+            int[] interrupts = new int[4];
+            if (version >= 2) {
+                interrupts[0] = in.readUnsignedByte();
+                interrupts[1] = in.readUnsignedByte();
+                interrupts[2] = in.readInt();
+                interrupts[3] = in.readInt();
+            }
+            byte[][] pages = new byte[Memory.PAGES][];
+            Arrays.fill(pages, ZERO_PAGE);
+            int nonZero = in.readUnsignedShort();
+            for (int i = 0; i < nonZero; i++) {
+                byte[] page = new byte[Memory.PAGE_SIZE];
+                int number = in.readUnsignedByte();
+                in.readFully(page);
+                pages[number] = page;
+            }
+            int devices = in.readUnsignedShort();
+            int[] devicePages = new int[devices];
+            byte[][] deviceStates = new byte[devices][];
+            for (int i = 0; i < devices; i++) {
+                devicePages[i] = in.readUnsignedByte();
+                deviceStates[i] = new byte[in.readInt()];
+                in.readFully(deviceStates[i]);
+            }
+            return new MachineSnapshot(regs, cycles, interrupts, pages, nonZero, devicePages, deviceStates);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package sim;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Stockage des 64 Ko adressables par le CPU.
+ * Les adresses sont prises modulo 64 Ko et les valeurs tronquées à 8 bits.
+ * Trois implémentations interchangeables : tableau d'octets (défaut), tampon direct
+ * hors tas, et tableau d'int (ancienne disposition, conservée pour les mesures).
+ */
+public abstract class Memory {
+    public static final int SIZE = 0x10000;
+    public static final int PAGE_SIZE = 256;
+    public static final int PAGES = SIZE / PAGE_SIZE;
+
+    // Pages écrites depuis la dernière capture ou restauration d'instantané (voir MachineSnapshot)
+    protected final long[] modifiedPages = new long[PAGES / 64];
+
+    /** Octet (0..255) à l'adresse donnée. */
+    public abstract int read(int addr);
+
+    public abstract void write(int addr, int value);
+
+    /** Remet à zéro les adresses [from, to[. */
+    public abstract void clear(int from, int to);
+
+    public void clear() {
+        clear(0, SIZE);
+    }
+
+    /** Taille du stockage en octets (hors en-tête d'objet). */
+    public abstract long footprint();
+
+    public abstract String name();
+
+    /** Copie la page {@code page} (256 octets) dans {@code dst}. */
+    public void readPage(int page, byte[] dst) {
+        int base = page * PAGE_SIZE;
+        for (int i = 0; i < PAGE_SIZE; i++) dst[i] = (byte) read(base + i);
+    }
+
+    /** Remplace le contenu de la page sans la marquer comme modifiée (restauration). */
+    public void loadPage(int page, byte[] src) {
+        int base = page * PAGE_SIZE;
+        for (int i = 0; i < PAGE_SIZE; i++) write(base + i, src[i]);
+        modifiedPages[page >>> 6] &= ~(1L << page);
+    }
+
+    /**
+     * Écrit {@code length} octets de {@code src} à partir de {@code addr} (chargement d'image).
+     * L'adresse reboucle après $FFFF ; les pages touchées sont marquées comme modifiées.
+     */
+    public void writeBlock(int addr, byte[] src, int offset, int length) {
+        for (int i = 0; i < length; i++) write(addr + i, src[offset + i]);
+    }
+
+    /** Copie {@code length} octets à partir de {@code addr} dans {@code dst} (l'adresse reboucle après $FFFF). */
+    public void readBlock(int addr, byte[] dst, int offset, int length) {
+        for (int i = 0; i < length; i++) dst[offset + i] = (byte) read(addr + i);
+    }
+
+    public boolean isPageModified(int page) {
+        return (modifiedPages[page >>> 6] & (1L << page)) != 0;
+    }
+
+    void clearModifiedPages() {
+        Arrays.fill(modifiedPages, 0L);
+    }
+
+    protected final void touch(int addr) {
+        modifiedPages[(addr & 0xFFFF) >>> 14] |= 1L << (addr >>> 8);
+    }
+
+    protected final void touchRange(int from, int to) {
+        for (int page = from >>> 8; page <= (to - 1) >>> 8 && from < to; page++) {
+            modifiedPages[page >>> 6] |= 1L << page;
+        }
+    }
+
+    public boolean contentEquals(Memory other) {
+        for (int addr = 0; addr < SIZE; addr++) {
+            if (read(addr) != other.read(addr)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Crée un stockage par son nom : "byte", "direct" ou "int".
+     */
+    public static Memory create(String kind) {
+        switch (kind) {
+            case "byte": return new ByteArray();
+            case "direct": return new Direct();
+            case "int": return new IntArray();
+            default: throw new IllegalArgumentException("Mémoire inconnue : " + kind);
+        }
+    }
+
+    /** Un octet par case dans le tas : 64 Ko. */
+    public static final class ByteArray extends Memory {
+        private final byte[] data = new byte[SIZE];
+
+        @Override
+        public int read(int addr) {
+            return data[addr & 0xFFFF] & 0xFF;
+        }
+
+        @Override
+        public void write(int addr, int value) {
+            data[addr & 0xFFFF] = (byte) value;
+            touch(addr);
+        }
+
+        @Override
+        public void clear(int from, int to) {
+            Arrays.fill(data, from, to, (byte) 0);
+            touchRange(from, to);
+        }
+
+        @Override
+        public void readPage(int page, byte[] dst) {
+            System.arraycopy(data, page * PAGE_SIZE, dst, 0, PAGE_SIZE);
+        }
+
+        @Override
+        public void loadPage(int page, byte[] src) {
+            System.arraycopy(src, 0, data, page * PAGE_SIZE, PAGE_SIZE);
+            modifiedPages[page >>> 6] &= ~(1L << page);
+        }
+
+        @Override
+        public void writeBlock(int addr, byte[] src, int offset, int length) {
+            while (length > 0) {
+                int at = addr & 0xFFFF;
+                int n = Math.min(length, SIZE - at);
+                System.arraycopy(src, offset, data, at, n);
+                touchRange(at, at + n);
+                addr = 0;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public void readBlock(int addr, byte[] dst, int offset, int length) {
+            while (length > 0) {
+                int at = addr & 0xFFFF;
+                int n = Math.min(length, SIZE - at);
+                System.arraycopy(data, at, dst, offset, n);
+                addr = 0;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public long footprint() {
+            return SIZE;
+        }
+
+        @Override
+        public String name() {
+            return "byte";
+        }
+
+        @Override
+        public boolean contentEquals(Memory other) {
+            if (other instanceof ByteArray) return Arrays.equals(data, ((ByteArray) other).data);
+            return super.contentEquals(other);
+        }
+    }
+
+    /** Tampon direct alloué hors du tas : 64 Ko natifs, invisibles pour le GC. */
+    public static final class Direct extends Memory {
+        private final ByteBuffer data = ByteBuffer.allocateDirect(SIZE);
+
+        @Override
+        public int read(int addr) {
+            return data.get(addr & 0xFFFF) & 0xFF;
+        }
+
+        @Override
+        public void write(int addr, int value) {
+            data.put(addr & 0xFFFF, (byte) value);
+            touch(addr);
+        }
+
+        @Override
+        public void clear(int from, int to) {
+            for (int addr = from; addr < to; addr++) data.put(addr, (byte) 0);
+            touchRange(from, to);
+        }
+
+        @Override
+        public void readPage(int page, byte[] dst) {
+            data.get(page * PAGE_SIZE, dst, 0, PAGE_SIZE);
+        }
+
+        @Override
+        public void loadPage(int page, byte[] src) {
+            data.put(page * PAGE_SIZE, src, 0, PAGE_SIZE);
+            modifiedPages[page >>> 6] &= ~(1L << page);
+        }
+
+        @Override
+        public void writeBlock(int addr, byte[] src, int offset, int length) {
+            while (length > 0) {
+                int at = addr & 0xFFFF;
+                int n = Math.min(length, SIZE - at);
+                data.put(at, src, offset, n);
+                touchRange(at, at + n);
+                addr = 0;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public void readBlock(int addr, byte[] dst, int offset, int length) {
+            while (length > 0) {
+                int at = addr & 0xFFFF;
+                int n = Math.min(length, SIZE - at);
+                data.get(at, dst, offset, n);
+                addr = 0;
+                offset += n;
+                length -= n;
+            }
+        }
+
+        @Override
+        public long footprint() {
+            return SIZE;
+        }
+
+        @Override
+        public String name() {
+            return "direct";
+        }
+    }
+
+    /** Ancienne disposition : un int par case, 256 Ko. */
+    public static final class IntArray extends Memory {
+        private final int[] data = new int[SIZE];
+
+        @Override
+        public int read(int addr) {
+            return data[addr & 0xFFFF] & 0xFF;
+        }
+
+        @Override
+        public void write(int addr, int value) {
+            data[addr & 0xFFFF] = value & 0xFF;
+            touch(addr);
+        }
+
+        @Override
+        public void clear(int from, int to) {
+            Arrays.fill(data, from, to, 0);
+            touchRange(from, to);
+        }
+
+        @Override
+        public long footprint() {
+            return SIZE * 4L;
+        }
+
+        @Override
+        public String name() {
+            return "int";
+        }
+    }
+}
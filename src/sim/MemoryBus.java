@@ -0,0 +1,104 @@
+package sim;
+
+/**
+ * Bus mémoire du CPU : une table de 256 pages de 256 octets, chacune en RAM, en ROM
+ * ou attribuée à un périphérique. La RAM est servie par le {@link Memory} du CPU sans aucun
+ * rappel (une lecture de table et un test de null) ; la ROM et les périphériques passent par un {@link Device}.
+ * Le code est toujours lu directement dans le stockage (pas de code dans un périphérique).
+ */
+public class MemoryBus {
+    public static final int PAGE_RAM = 0, PAGE_ROM = 1, PAGE_DEVICE = 2;
+    public static final int PAGES = 256;
+
+    private final Memory memory;
+    private final byte[] types = new byte[PAGES];
+    // Périphérique de chaque page ; null pour la RAM (chemin rapide), rom pour la ROM
+    private final Device[] devices = new Device[PAGES];
+    private final Device rom;
+
+    public MemoryBus(Memory memory) {
+        this.memory = memory;
+        this.rom = new Device() {
+            @Override
+            public int read(int addr) {
+                return memory.read(addr);
+            }
+
+            @Override
+            public void write(int addr, int value) {
+                // lecture seule
+            }
+        };
+    }
+
+    public int read(int addr) {
+        addr &= 0xFFFF;
+        Device device = devices[addr >>> 8];
+        return device == null ? memory.read(addr) : device.read(addr);
+    }
+
+    /**
+     * Écrit un octet selon la page : stocké en RAM, ignoré en ROM, transmis au périphérique sinon.
+     * @return true si le stockage a été modifié (le cache de code doit en être informé)
+     */
+    public boolean write(int addr, int value) {
+        addr &= 0xFFFF;
+        Device device = devices[addr >>> 8];
+        if (device == null) {
+            memory.write(addr, value);
+            return true;
+        }
+        device.write(addr, value & 0xFF);
+        return false;
+    }
+
+    /** Pages [start, end] en RAM ; bornes alignées sur des pages. */
+    public void mapRam(int start, int end) {
+        map(start, end, PAGE_RAM, null);
+    }
+
+    /** Pages [start, end] en lecture seule ; le contenu se charge directement dans le {@link Memory}. */
+    public void mapRom(int start, int end) {
+        map(start, end, PAGE_ROM, rom);
+    }
+
+    /** Attribue la page contenant {@code addr} au périphérique. */
+    public void mapDevice(int addr, Device device) {
+        int start = addr & 0xFF00;
+        mapDevice(start, start | 0xFF, device);
+    }
+
+    public void mapDevice(int start, int end, Device device) {
+        if (device == null) throw new IllegalArgumentException("Périphérique manquant");
+        map(start, end, PAGE_DEVICE, device);
+    }
+
+    /** Remet à zéro chaque périphérique projeté (une fois, même s'il occupe plusieurs pages). */
+    public void resetDevices() {
+        for (int page = 0; page < PAGES; page++) {
+            Device device = devices[page];
+            if (device == null || device == rom || (page > 0 && devices[page - 1] == device)) continue;
+            device.reset();
+        }
+    }
+
+    public int pageType(int addr) {
+        return types[(addr & 0xFFFF) >>> 8];
+    }
+
+    /** Périphérique de la page contenant {@code addr}, null pour la RAM et la ROM. */
+    public Device deviceAt(int addr) {
+        Device device = devices[(addr & 0xFFFF) >>> 8];
+        return device == rom ? null : device;
+    }
+
+    private void map(int start, int end, int type, Device device) {
+        if ((start & 0xFF) != 0 || (end & 0xFF) != 0xFF || start > end || end > 0xFFFF) {
+            throw new IllegalArgumentException(String.format("Plage non alignée sur des pages : %04X-%04X", start, end));
+        }
+        for (int page = start >>> 8; page <= end >>> 8; page++) {
+            types[page] = (byte) type;
+            devices[page] = device;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package sim;
+
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Vue hexadécimale des 64 Ko : 4096 lignes de 16 octets plus une colonne ASCII.
+ * Rien n'est stocké ni préformaté : JTable ne demande que les cellules visibles, lues
+ * directement dans le stockage du CPU (jamais via le bus, pour ne pas déclencher les périphériques).
+ * Les rafraîchissements sont pilotés par les pages modifiées ({@link CPU6809_V6#takeDirtyPages}).
+ */
+public class MemoryTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    public static final int BYTES_PER_ROW = 16;
+    public static final int ROWS = Memory.SIZE / BYTES_PER_ROW;
+    private static final int ROWS_PER_PAGE = 256 / BYTES_PER_ROW;
+    private static final int ASCII_COLUMN = BYTES_PER_ROW + 1;
+
+    private static final String[] HEX = new String[256];
+
+    static {
+        for (int i = 0; i < 256; i++) HEX[i] = String.format("%02X", i);
+    }
+
+    private final CPU6809_V6 cpu;
+    private final InstructionDecoder_V6 decoder;
+
+    public MemoryTableModel(CPU6809_V6 cpu, InstructionDecoder_V6 decoder) {
+        this.cpu = cpu;
+        this.decoder = decoder;
+    }
+
+    @Override
+    public int getRowCount() {
+        return ROWS;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return BYTES_PER_ROW + 2;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        if (column == 0) return "Addr";
+        if (column == ASCII_COLUMN) return "ASCII";
+        return Integer.toHexString(column - 1).toUpperCase();
+    }
+
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return column > 0 && column < ASCII_COLUMN;
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int base = row * BYTES_PER_ROW;
+        if (column == 0) return HEX[base >>> 8] + HEX[base & 0xFF];
+        if (column == ASCII_COLUMN) {
+            char[] text = new char[BYTES_PER_ROW];
+            for (int i = 0; i < BYTES_PER_ROW; i++) {
+                int val = cpu.memory.read(base + i);
+                text[i] = cpu.isRevealed(base + i) && val >= 0x20 && val < 0x7F ? (char) val : '.';
+            }
+            return new String(text);
+        }
+        int addr = base + column - 1;
+        return cpu.isRevealed(addr) ? HEX[cpu.memory.read(addr)] : "--";
+    }
+
+    /** Édition d'une cellule : l'octet est écrit, révélé, sa page signalée et le code décodé à cette adresse invalidé. */
+    @Override
+    public void setValueAt(Object value, int row, int column) {
+        int addr = row * BYTES_PER_ROW + column - 1;
+        try {
+            int val = Integer.parseInt(value.toString().trim(), 16);
+            cpu.memory.write(addr, val);
+            cpu.revealAddress(addr);
+            cpu.markDirty(addr);
+            decoder.invalidateCode(addr);
+        } catch (NumberFormatException ignored) {
+            return;
+        }
+        fireTableRowsUpdated(row, row);
+    }
+
+    /**
+     * Signale les lignes visibles [firstRow, lastRow] appartenant à une page modifiée.
+     * Les lignes hors écran seront relues par JTable quand elles deviendront visibles.
+     */
+    public void pagesChanged(long[] dirtyPages, int firstRow, int lastRow) {
+        if (firstRow < 0) return;
+        for (int page = firstRow / ROWS_PER_PAGE; page <= lastRow / ROWS_PER_PAGE; page++) {
+            if ((dirtyPages[page >>> 6] & (1L << page)) == 0) continue;
+            int from = Math.max(firstRow, page * ROWS_PER_PAGE);
+            int to = Math.min(lastRow, page * ROWS_PER_PAGE + ROWS_PER_PAGE - 1);
+            fireTableRowsUpdated(from, to);
+        }
+    }
+
+    public static int rowOf(int addr) {
+        return (addr & 0xFFFF) / BYTES_PER_ROW;
+    }
+}
@@ -1,11 +1,26 @@
 package sim;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 /**
- * Assembleur minimal pour convertir du code 6809 en code machine.
+ * Assembleur 6809 en deux passes : étiquettes (références en avant comprises), directives
+ * ORG/FCB/FDB/RMB/EQU, correspondance ligne source ↔ adresse, et réassemblage incrémental
+ * qui ne réécrit en mémoire que les octets modifiés.
+ * L'analyse travaille directement sur les octets du source (un fichier est lu d'un bloc par
+ * {@link FileChannel}) : ni chaîne, ni expression régulière, ni HashMap par ligne. Les lignes
+ * analysées sont rangées dans des tableaux parallèles et les mnémoniques reconnues par hachage parfait.
  */
 public class MiniAssembler_V6 {
     private static final Map<String, Integer> OPCODES = new HashMap<>();
@@ -60,109 +75,728 @@ public class MiniAssembler_V6 {
         // Divers
         OPCODES.put("TFR_INH", 0x1F);
         OPCODES.put("NOP_INH", 0x12);
+        OPCODES.put("HALT_INH", 0x00);
+
+        // Interruptions
+        OPCODES.put("SWI_INH", 0x3F); OPCODES.put("SWI2_INH", 0x103F); OPCODES.put("SWI3_INH", 0x113F);
+        OPCODES.put("RTI_INH", 0x3B);
+        OPCODES.put("CWAI_IMM", 0x3C);
+        OPCODES.put("SYNC_INH", 0x13);
+        OPCODES.put("ANDCC_IMM", 0x1C); OPCODES.put("ORCC_IMM", 0x1A);
     }
 
-    public boolean assemble(String sourceCode, CPU6809_V6 cpu) throws Exception {
-        Arrays.fill(cpu.memory, 0, 1000, 0);
-
-        String[] lines = sourceCode.split("\n");
-        int addr = 0x0000;
-
-        for (String line : lines) {
-            line = line.trim().toUpperCase();
-            if (line.isEmpty() || line.startsWith(";")) continue;
-            if (line.contains(";")) line = line.substring(0, line.indexOf(";")).trim();
-
-            String[] parts = line.split("\\s+", 2);
-            String mnemonic = parts[0];
-            String operand = (parts.length > 1) ? parts[1] : "";
-
-            String mode = "EXT";
-            int val = 0;
-
-            if (OPCODES.containsKey(mnemonic + "_INH")) {
-                mode = "INH";
-            } else if (operand.startsWith("#")) {
-                mode = "IMM";
-                val = parseHex(operand.substring(1));
-            } else if (OPCODES.containsKey(mnemonic + "_REL")) {
-                mode = "REL";
-                val = parseHex(operand);
-            } else if (operand.startsWith("<") && OPCODES.containsKey(mnemonic + "_DIR")) {
-                mode = "DIR";
-                val = parseHex(operand.substring(1));
-                if (val > 0xFF) throw new Exception("Adresse directe > 255 : " + operand);
-            } else if (operand.contains(",") && operand.matches(".*,[XYUS]$")) {
-                mode = "IDX";
-                val = 0;
-            } else if (!operand.isEmpty() && OPCODES.containsKey(mnemonic + "_DIR")) {
-                int parsedAddr = parseHex(operand);
-                if (parsedAddr <= 0xFF && !OPCODES.containsKey(mnemonic + "_EXT")) {
-                    mode = "DIR";
-                    val = parsedAddr;
-                } else {
-                    mode = "EXT";
-                    val = parsedAddr;
+    // Modes syntaxiques (colonnes de OPCODE_TABLE) ; AUTO = direct ou étendu selon la valeur
+    private static final int S_INH = 0, S_IMM = 1, S_REL = 2, S_DIR = 3, S_IDX = 4, S_EXT = 5, S_AUTO = 6;
+    private static final String[] MODE_NAMES = {"INH", "IMM", "REL", "DIR", "IDX", "EXT"};
+    private static final int K_NONE = 0, K_INSTR = 1, K_ORG = 2, K_FCB = 3, K_FDB = 4, K_RMB = 5, K_EQU = 6;
+    private static final String[] DIRECTIVES = {"ORG", "FCB", "FDB", "RMB", "EQU"};
+
+    // Mnémoniques et directives : nom regroupé dans un long (8 lettres au plus), placé par hachage parfait
+    private static final int HASH_BITS = 8;
+    private static final long[] HASH_KEYS = new long[1 << HASH_BITS];
+    private static final int[] HASH_IDS = new int[1 << HASH_BITS];
+    private static final long HASH_MULTIPLIER;
+    private static final String[] NAMES;
+    private static final int[] KINDS;
+    // [identifiant][mode] -> opcode (préfixe compris), -1 si la combinaison n'existe pas
+    private static final int[][] OPCODE_TABLE;
+    private static final boolean[] WIDE_IMMEDIATE;
+
+    static {
+        Set<String> names = new LinkedHashSet<>();
+        for (String key : OPCODES.keySet()) names.add(key.substring(0, key.indexOf('_')));
+        names.addAll(Arrays.asList(DIRECTIVES));
+        NAMES = names.toArray(new String[0]);
+        KINDS = new int[NAMES.length];
+        OPCODE_TABLE = new int[NAMES.length][MODE_NAMES.length];
+        WIDE_IMMEDIATE = new boolean[NAMES.length];
+        long[] keys = new long[NAMES.length];
+        for (int id = 0; id < NAMES.length; id++) {
+            String name = NAMES[id];
+            keys[id] = pack(name);
+            int directive = Arrays.asList(DIRECTIVES).indexOf(name);
+            KINDS[id] = directive >= 0 ? K_ORG + directive : K_INSTR;
+            for (int mode = 0; mode < MODE_NAMES.length; mode++) {
+                Integer opcode = OPCODES.get(name + "_" + MODE_NAMES[mode]);
+                OPCODE_TABLE[id][mode] = opcode != null ? opcode : -1;
+            }
+            WIDE_IMMEDIATE[id] = name.endsWith("X") || name.endsWith("Y") || name.endsWith("U")
+                    || name.endsWith("S") || name.endsWith("D");
+        }
+        // Premier multiplicateur impair sans collision : une seule comparaison par recherche
+        long multiplier = 0x9E3779B97F4A7C15L;
+        while (!place(keys, multiplier)) multiplier += 2;
+        HASH_MULTIPLIER = multiplier;
+    }
+
+    private static boolean place(long[] keys, long multiplier) {
+        Arrays.fill(HASH_KEYS, 0);
+        for (int id = 0; id < keys.length; id++) {
+            int slot = (int) ((keys[id] * multiplier) >>> (64 - HASH_BITS));
+            if (HASH_KEYS[slot] != 0) return false;
+            HASH_KEYS[slot] = keys[id];
+            HASH_IDS[slot] = id;
+        }
+        return true;
+    }
+
+    private static long pack(String name) {
+        long key = 0;
+        for (int i = 0; i < name.length(); i++) key = key << 8 | name.charAt(i);
+        return key;
+    }
+
+    /**
+     * Un assemblage : octets du source, une entrée par ligne dans des tableaux parallèles,
+     * octets émis (toutes lignes confondues) et table des symboles.
+     */
+    private static final class Program {
+        final byte[] src;
+        int count;
+        int[] lineStart, lineEnd;
+        // Étiquette et opérande : positions dans src ; labelStart = -1 sans étiquette
+        int[] labelStart, labelEnd, operandStart, operandEnd;
+        // Mnémonique ou directive (-1 : ligne vide), nature, mode syntaxique
+        int[] op, kind, syntax;
+        // L'opérande contient un nom ou '*' : il dépend des symboles ou de l'adresse
+        boolean[] symbolic;
+        // Résultat des passes
+        int[] address, mode, size, codeStart;
+        byte[] code = new byte[256];
+        int codeLength;
+        final Symbols symbols = new Symbols();
+        // Correspondance adresse -> ligne (1 = première ligne), triée par adresse
+        int[] mapAddresses, mapEnds, mapLines;
+
+        Program(byte[] src) {
+            this.src = src;
+            int lines = 1;
+            for (byte b : src) if (b == '\n') lines++;
+            lineStart = new int[lines];
+            lineEnd = new int[lines];
+            int start = 0;
+            for (int i = 0; i < src.length; i++) {
+                if (src[i] == '\n') {
+                    lineStart[count] = start;
+                    lineEnd[count++] = i;
+                    start = i + 1;
                 }
-            } else if (!operand.isEmpty()) {
-                mode = "EXT";
-                val = parseHex(operand);
             }
+            if (start < src.length) {
+                lineStart[count] = start;
+                lineEnd[count++] = src.length;
+            }
+            labelStart = new int[count];
+            labelEnd = new int[count];
+            operandStart = new int[count];
+            operandEnd = new int[count];
+            op = new int[count];
+            kind = new int[count];
+            syntax = new int[count];
+            symbolic = new boolean[count];
+            address = new int[count];
+            mode = new int[count];
+            size = new int[count];
+            codeStart = new int[count];
+        }
+
+        boolean sameLine(int n, Program other, int o) {
+            return Arrays.equals(src, lineStart[n], lineEnd[n], other.src, other.lineStart[o], other.lineEnd[o]);
+        }
+
+        // Reprend l'analyse de la ligne o d'un assemblage précédent (positions décalées dans le nouveau source)
+        void copyParse(int n, Program other, int o) {
+            int shift = lineStart[n] - other.lineStart[o];
+            labelStart[n] = other.labelStart[o] < 0 ? -1 : other.labelStart[o] + shift;
+            labelEnd[n] = other.labelEnd[o] + shift;
+            operandStart[n] = other.operandStart[o] + shift;
+            operandEnd[n] = other.operandEnd[o] + shift;
+            op[n] = other.op[o];
+            kind[n] = other.kind[o];
+            syntax[n] = other.syntax[o];
+            symbolic[n] = other.symbolic[o];
+        }
+
+        int emit(int n, int bytes) {
+            codeStart[n] = codeLength;
+            if (codeLength + bytes > code.length) code = Arrays.copyOf(code, Math.max(code.length * 2, codeLength + bytes));
+            codeLength += bytes;
+            return codeStart[n];
+        }
+
+        String text(int from, int to) {
+            return new String(src, from, to - from, StandardCharsets.ISO_8859_1).toUpperCase();
+        }
+    }
+
+    /** Table des symboles : adressage ouvert, recherche directement sur les octets du source. */
+    private static final class Symbols {
+        private String[] names = new String[64];
+        private int[] values = new int[64];
+        private int size;
+
+        int find(byte[] s, int from, int to) {
+            int mask = names.length - 1;
+            for (int slot = hash(s, from, to) & mask; names[slot] != null; slot = (slot + 1) & mask) {
+                if (matches(names[slot], s, from, to)) return slot;
+            }
+            return -1;
+        }
+
+        int value(int slot) {
+            return values[slot];
+        }
+
+        /** @return faux si le nom est déjà défini */
+        boolean define(String name, int value) {
+            if (size * 2 >= names.length) grow();
+            int mask = names.length - 1;
+            int slot = hash(name) & mask;
+            for (; names[slot] != null; slot = (slot + 1) & mask) {
+                if (names[slot].equals(name)) return false;
+            }
+            names[slot] = name;
+            values[slot] = value;
+            size++;
+            return true;
+        }
+
+        Integer get(String name) {
+            int mask = names.length - 1;
+            for (int slot = hash(name) & mask; names[slot] != null; slot = (slot + 1) & mask) {
+                if (names[slot].equals(name)) return values[slot];
+            }
+            return null;
+        }
+
+        boolean sameAs(Symbols other) {
+            if (size != other.size) return false;
+            for (int slot = 0; slot < names.length; slot++) {
+                if (names[slot] != null && !Integer.valueOf(values[slot]).equals(other.get(names[slot]))) return false;
+            }
+            return true;
+        }
+
+        Map<String, Integer> toMap() {
+            Map<String, Integer> map = new TreeMap<>();
+            for (int slot = 0; slot < names.length; slot++) if (names[slot] != null) map.put(names[slot], values[slot]);
+            return map;
+        }
+
+        private void grow() {
+            String[] oldNames = names;
+            int[] oldValues = values;
+            names = new String[oldNames.length * 2];
+            values = new int[oldNames.length * 2];
+            size = 0;
+            for (int i = 0; i < oldNames.length; i++) if (oldNames[i] != null) define(oldNames[i], oldValues[i]);
+        }
+
+        private static int hash(byte[] s, int from, int to) {
+            int h = 0;
+            for (int i = from; i < to; i++) h = 31 * h + upper(s[i]);
+            return h ^ (h >>> 16);
+        }
+
+        private static int hash(String name) {
+            int h = 0;
+            for (int i = 0; i < name.length(); i++) h = 31 * h + name.charAt(i);
+            return h ^ (h >>> 16);
+        }
+
+        private static boolean matches(String name, byte[] s, int from, int to) {
+            if (name.length() != to - from) return false;
+            for (int i = 0; i < name.length(); i++) if (name.charAt(i) != upper(s[from + i])) return false;
+            return true;
+        }
+    }
+
+    private Program program;
 
-            String key = mnemonic + "_" + mode;
-            if (!OPCODES.containsKey(key)) continue;
+    /**
+     * Assemble le programme en deux passes (adresses et symboles, puis encodage) et l'écrit en mémoire,
+     * entièrement effacée au préalable.
+     * @throws Exception erreur d'assemblage, préfixée du numéro de ligne
+     */
+    public boolean assemble(String sourceCode, CPU6809_V6 cpu) throws Exception {
+        return assemble(sourceCode.getBytes(StandardCharsets.UTF_8), cpu);
+    }
+
+    /** Assemble un fichier source, lu d'un seul bloc par un {@link FileChannel}. */
+    public boolean assembleFile(Path path, CPU6809_V6 cpu) throws Exception {
+        byte[] bytes;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE - 8) throw new IOException("Source trop volumineux : " + path);
+            bytes = new byte[(int) length];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) { }
+        }
+        return assemble(bytes, cpu);
+    }
 
-            int opcode = OPCODES.get(key);
+    private boolean assemble(byte[] source, CPU6809_V6 cpu) throws Exception {
+        Program p = new Program(source);
+        for (int n = 0; n < p.count; n++) parse(p, n);
+        locate(p);
+        for (int n = 0; n < p.count; n++) encode(p, n);
 
-            if (opcode > 0xFF) {
-                cpu.memory[addr++] = (opcode >> 8) & 0xFF;
-                cpu.memory[addr++] = opcode & 0xFF;
+        cpu.memory.clear();
+        for (int n = 0; n < p.count; n++) {
+            if (p.kind[n] == K_RMB) continue;
+            int at = p.codeStart[n];
+            for (int i = 0; i < p.size[n]; i++) cpu.memory.write((p.address[n] + i) & 0xFFFF, p.code[at + i] & 0xFF);
+        }
+        commit(p);
+        return true;
+    }
+
+    /** Vrai si un programme a été assemblé et peut être modifié par {@link #reassemble}. */
+    public boolean hasProgram() {
+        return program != null;
+    }
+
+    /** Oublie le programme courant (après un reset de la machine) : le prochain assemblage sera complet. */
+    public void invalidate() {
+        program = null;
+    }
+
+    /**
+     * Réassemblage incrémental : seules les lignes modifiées sont réanalysées, et seules les lignes
+     * modifiées, déplacées ou dépendant d'un symbole dont la valeur a changé sont réencodées.
+     * Les octets qui diffèrent de l'image précédente sont écrits en mémoire (le code prédécodé
+     * correspondant est invalidé) ; registres, pile et données écrites par le programme sont conservés.
+     * Si PC est au début d'une ligne inchangée qui a été déplacée, il suit cette ligne.
+     * En cas d'erreur, ni la mémoire ni le programme courant ne sont modifiés.
+     * @return le nombre d'octets modifiés en mémoire
+     */
+    public int reassemble(String sourceCode, CPU6809_V6 cpu, InstructionDecoder_V6 decoder) throws Exception {
+        if (program == null) throw new IllegalStateException("Aucun programme à réassembler");
+        Program old = program;
+        Program p = new Program(sourceCode.getBytes(StandardCharsets.UTF_8));
+
+        // Lignes identiques en tête et en queue : leur analyse est reprise
+        int max = Math.min(p.count, old.count);
+        int prefix = 0;
+        while (prefix < max && p.sameLine(prefix, old, prefix)) prefix++;
+        int suffix = 0;
+        while (suffix < max - prefix && p.sameLine(p.count - 1 - suffix, old, old.count - 1 - suffix)) suffix++;
+        int[] previous = new int[p.count];
+        for (int n = 0; n < p.count; n++) {
+            int o = n < prefix ? n : n >= p.count - suffix ? n - p.count + old.count : -1;
+            previous[n] = o;
+            if (o >= 0) {
+                p.copyParse(n, old, o);
             } else {
-                cpu.memory[addr++] = opcode;
-            }
-
-            if (mode.equals("IDX")) {
-                if (operand.contains(",X")) {
-                    cpu.memory[addr++] = 0x84;
-                } else if (operand.contains(",Y")) {
-                    cpu.memory[addr++] = 0xA4;
-                } else if (operand.contains(",U")) {
-                    cpu.memory[addr++] = 0xC4;
-                } else if (operand.contains(",S")) {
-                    cpu.memory[addr++] = 0xE4;
+                parse(p, n);
+            }
+        }
+        locate(p);
+        boolean symbolsChanged = !p.symbols.sameAs(old.symbols);
+        for (int n = 0; n < p.count; n++) {
+            int o = previous[n];
+            if (o < 0 || p.address[n] != old.address[o] || p.mode[n] != old.mode[o] || p.size[n] != old.size[o]
+                    || (symbolsChanged && p.symbolic[n])) {
+                encode(p, n);
+            } else if (p.kind[n] != K_RMB && p.size[n] > 0) {
+                System.arraycopy(old.code, old.codeStart[o], p.code, p.emit(n, p.size[n]), p.size[n]);
+            }
+        }
+
+        // Différence entre l'ancienne et la nouvelle image ; -1 = octet non émis
+        int[] before = image(old);
+        int[] after = image(p);
+        int patched = 0;
+        for (int addr = 0; addr < 0x10000; addr++) {
+            if (before[addr] == after[addr]) continue;
+            cpu.memory.write(addr, Math.max(0, after[addr]));
+            decoder.invalidateCode(addr);
+            cpu.markDirty(addr);
+            patched++;
+        }
+        int pc = cpu.PC & 0xFFFF;
+        for (int n = 0; n < p.count; n++) {
+            int o = previous[n];
+            if (o >= 0 && old.size[o] > 0 && old.kind[o] == K_INSTR && old.address[o] == pc) {
+                cpu.PC = p.address[n];
+                break;
+            }
+        }
+        commit(p);
+        return patched;
+    }
+
+    private void commit(Program p) {
+        buildLineMap(p);
+        program = p;
+    }
+
+    /**
+     * Découpe une ligne : étiquette facultative (suivie de « : », ou suivie d'une mnémonique
+     * ou directive, ou seule sur la ligne), mnémonique, opérande (commentaire « ; » retiré).
+     */
+    private static void parse(Program p, int n) throws Exception {
+        byte[] s = p.src;
+        p.labelStart[n] = -1;
+        p.op[n] = -1;
+        p.kind[n] = K_NONE;
+        int end = p.lineStart[n];
+        while (end < p.lineEnd[n] && s[end] != ';') end++;
+        while (end > p.lineStart[n] && isSpace(s[end - 1])) end--;
+        int i = skipSpace(s, p.lineStart[n], end);
+        if (i >= end) return;
+
+        int wordStart = i;
+        int wordEnd = skipWord(s, i, end);
+        boolean colon = s[wordEnd - 1] == ':';
+        int rest = skipSpace(s, wordEnd, end);
+        int nextEnd = skipWord(s, rest, end);
+        int id = colon ? -1 : mnemonicId(s, wordStart, wordEnd);
+        if (colon || (id < 0 && (rest >= end || mnemonicId(s, rest, nextEnd) >= 0))) {
+            int labelEnd = colon ? wordEnd - 1 : wordEnd;
+            if (!isLabel(s, wordStart, labelEnd)) throw error(n, "Étiquette invalide : " + p.text(wordStart, labelEnd));
+            p.labelStart[n] = wordStart;
+            p.labelEnd[n] = labelEnd;
+            if (rest >= end) return;
+            wordStart = rest;
+            wordEnd = nextEnd;
+            id = mnemonicId(s, wordStart, wordEnd);
+            rest = skipSpace(s, wordEnd, end);
+        }
+        if (id < 0) throw error(n, "Instruction inconnue : " + p.text(wordStart, wordEnd));
+        p.op[n] = id;
+        p.kind[n] = KINDS[id];
+        p.operandStart[n] = rest;
+        p.operandEnd[n] = end;
+        if (p.kind[n] == K_EQU && p.labelStart[n] < 0) throw error(n, "EQU sans étiquette");
+        if (p.kind[n] == K_INSTR) {
+            p.syntax[n] = syntaxOf(id, s, rest, end);
+            if (p.syntax[n] == S_INH) return;
+        }
+        for (int k = rest; k < end; k++) {
+            if (s[k] == '*' || (isNameStart(s[k]) && (k == rest || !isNamePart(s[k - 1])))) {
+                p.symbolic[n] = true;
+                break;
+            }
+        }
+    }
+
+    // Mode d'adressage déduit de la seule forme de l'opérande (même ordre de priorité que l'assembleur d'origine)
+    private static int syntaxOf(int id, byte[] s, int from, int to) {
+        int[] modes = OPCODE_TABLE[id];
+        if (modes[S_INH] >= 0) return S_INH;
+        if (from < to && s[from] == '#') return S_IMM;
+        if (modes[S_REL] >= 0) return S_REL;
+        if (from < to && s[from] == '<' && modes[S_DIR] >= 0) return S_DIR;
+        if (to - from >= 2 && s[to - 2] == ',' && isIndexRegister(s[to - 1])) return S_IDX;
+        if (from < to && modes[S_DIR] >= 0) return modes[S_EXT] >= 0 ? S_EXT : S_AUTO;
+        return S_EXT;
+    }
+
+    // Première passe : adresse, mode définitif et taille de chaque ligne, table des symboles
+    private static void locate(Program p) throws Exception {
+        int addr = 0;
+        for (int n = 0; n < p.count; n++) {
+            int from = p.operandStart[n], to = p.operandEnd[n];
+            int kind = p.kind[n];
+            try {
+                if (kind == K_ORG) addr = evaluate(p, from, to, addr) & 0xFFFF;
+                p.address[n] = addr;
+                if (p.labelStart[n] >= 0) {
+                    int value = kind == K_EQU ? evaluate(p, from, to, addr) : addr;
+                    String name = p.text(p.labelStart[n], p.labelEnd[n]);
+                    if (!p.symbols.define(name, value & 0xFFFF)) throw new Exception("Étiquette déjà définie : " + name);
+                }
+                switch (kind) {
+                    case K_INSTR: p.size[n] = sizeOf(p, n, addr); break;
+                    case K_FCB: p.size[n] = items(p.src, from, to); break;
+                    case K_FDB: p.size[n] = 2 * items(p.src, from, to); break;
+                    case K_RMB: p.size[n] = evaluate(p, from, to, addr); break;
+                    default: p.size[n] = 0;
                 }
-                String offsetStr = operand.substring(0, operand.indexOf(','));
-                int offset = parseHex(offsetStr);
-                cpu.memory[addr++] = offset & 0xFF;
-            } else if (mode.equals("DIR")) {
-                cpu.memory[addr++] = val & 0xFF;
-            } else if (mode.equals("EXT") || (mode.equals("IMM") && is16Bit(mnemonic))) {
-                cpu.memory[addr++] = (val >> 8) & 0xFF;
-                cpu.memory[addr++] = val & 0xFF;
-            } else if (mode.equals("IMM")) {
-                cpu.memory[addr++] = val & 0xFF;
-            } else if (mode.equals("REL")) {
-                int offset = val - (addr + 1);
-                cpu.memory[addr++] = offset & 0xFF;
-            } else if (mnemonic.equals("TFR")) {
-                cpu.memory[addr++] = 0x8B;
+            } catch (Exception e) {
+                throw error(n, e.getMessage());
             }
+            addr = (addr + p.size[n]) & 0xFFFF;
         }
-        return true;
     }
 
-    private boolean is16Bit(String mnemo) {
-        return mnemo.endsWith("X") || mnemo.endsWith("Y") || mnemo.endsWith("U") ||
-               mnemo.endsWith("S") || mnemo.endsWith("D") || mnemo.equals("ADDD");
+    private static int sizeOf(Program p, int n, int addr) throws Exception {
+        int id = p.op[n];
+        int mode = p.syntax[n];
+        if (mode == S_AUTO) {
+            // Sans mode étendu : direct, sauf valeur déjà connue au-delà de $FF (erreur ci-dessous)
+            mode = S_DIR;
+            int from = p.operandStart[n];
+            if (p.symbols.find(p.src, from, p.operandEnd[n]) >= 0 || !p.symbolic[n]) {
+                if (evaluate(p, from, p.operandEnd[n], addr) > 0xFF) mode = S_EXT;
+            }
+        }
+        p.mode[n] = mode;
+        int opcode = OPCODE_TABLE[id][mode];
+        if (opcode < 0) throw new Exception("Mode " + MODE_NAMES[mode] + " non supporté par " + NAMES[id]);
+        int size = opcode > 0xFF ? 2 : 1;
+        switch (mode) {
+            case S_IDX:
+            case S_EXT: return size + 2;
+            case S_DIR:
+            case S_REL: return size + 1;
+            case S_IMM: return size + (WIDE_IMMEDIATE[id] ? 2 : 1);
+            default: return size + (NAMES[id].equals("TFR") ? 1 : 0);
+        }
     }
 
-    private int parseHex(String s) {
-        s = s.replace("$", "").trim();
+    // Seconde passe : octets d'une ligne, tous les symboles étant connus
+    private static void encode(Program p, int n) throws Exception {
+        int kind = p.kind[n];
+        if (p.size[n] == 0 || kind == K_RMB || (kind != K_INSTR && kind != K_FCB && kind != K_FDB)) return;
+        byte[] s = p.src;
+        int from = p.operandStart[n], to = p.operandEnd[n];
+        int here = p.address[n];
+        int at = p.emit(n, p.size[n]);
+        byte[] code = p.code;
         try {
-            return Integer.parseInt(s, 16);
+            if (kind != K_INSTR) {
+                int start = from;
+                for (int k = from; k <= to; k++) {
+                    if (k < to && s[k] != ',') continue;
+                    int value = evaluate(p, start, k, here);
+                    if (kind == K_FDB) code[at++] = (byte) (value >> 8);
+                    code[at++] = (byte) value;
+                    start = k + 1;
+                }
+                return;
+            }
+            int id = p.op[n];
+            int opcode = OPCODE_TABLE[id][p.mode[n]];
+            if (opcode > 0xFF) code[at++] = (byte) (opcode >> 8);
+            code[at++] = (byte) opcode;
+            switch (p.mode[n]) {
+                case S_IDX: {
+                    byte register = upper(s[to - 1]);
+                    code[at++] = (byte) (register == 'X' ? 0x84 : register == 'Y' ? 0xA4 : register == 'U' ? 0xC4 : 0xE4);
+                    int comma = to - 2;
+                    code[at] = (byte) (skipSpace(s, from, comma) == comma ? 0 : evaluate(p, from, comma, here));
+                    break;
+                }
+                case S_DIR: {
+                    int value = evaluate(p, s[from] == '<' ? from + 1 : from, to, here);
+                    if (value > 0xFF) throw new Exception("Adresse directe > 255 : " + p.text(from, to));
+                    code[at] = (byte) value;
+                    break;
+                }
+                case S_EXT: {
+                    int value = from == to ? 0 : evaluate(p, from, to, here);
+                    code[at++] = (byte) (value >> 8);
+                    code[at] = (byte) value;
+                    break;
+                }
+                case S_IMM: {
+                    int value = evaluate(p, from + 1, to, here);
+                    if (WIDE_IMMEDIATE[id]) code[at++] = (byte) (value >> 8);
+                    code[at] = (byte) value;
+                    break;
+                }
+                case S_REL: {
+                    // L'opérande est l'adresse cible ; le déplacement part de l'instruction suivante
+                    int offset = evaluate(p, from, to, here) - (here + p.size[n]);
+                    if (offset < -128 || offset > 127) throw new Exception("Branchement hors de portée : " + p.text(from, to));
+                    code[at] = (byte) offset;
+                    break;
+                }
+                default:
+                    if (NAMES[id].equals("TFR")) code[at] = (byte) 0x8B;
+            }
         } catch (Exception e) {
-            return 0;
+            throw error(n, e.getMessage());
         }
     }
-}
 
+    /**
+     * Expression : termes séparés par + ou -. Un terme est {@code *} (adresse courante), une
+     * étiquette, {@code $hex}, {@code %binaire} ou un nombre hexadécimal sans préfixe.
+     */
+    private static int evaluate(Program p, int from, int to, int here) throws Exception {
+        byte[] s = p.src;
+        int total = 0;
+        int sign = 1;
+        boolean expectTerm = true;
+        int i = skipSpace(s, from, to);
+        if (i >= to) throw new Exception("Opérande manquant");
+        while (i < to) {
+            byte c = s[i];
+            if (expectTerm) {
+                if (c == '-' || c == '+') {
+                    if (c == '-') sign = -sign;
+                    i = skipSpace(s, i + 1, to);
+                    continue;
+                }
+                int start = i;
+                while (i < to && !isSpace(s[i]) && s[i] != '+' && s[i] != '-') i++;
+                total += sign * term(p, start, i, here);
+                expectTerm = false;
+            } else if (c == '+' || c == '-') {
+                sign = c == '-' ? -1 : 1;
+                expectTerm = true;
+                i++;
+            } else {
+                throw new Exception("Expression invalide : " + p.text(from, to));
+            }
+            i = skipSpace(s, i, to);
+        }
+        if (expectTerm) throw new Exception("Expression incomplète : " + p.text(from, to));
+        return total;
+    }
+
+    private static int term(Program p, int from, int to, int here) throws Exception {
+        byte[] s = p.src;
+        byte c = s[from];
+        if (c == '*' && to - from == 1) return here;
+        if (c == '$') return number(p, from + 1, to, 16);
+        if (c == '%') return number(p, from + 1, to, 2);
+        int slot = p.symbols.find(s, from, to);
+        if (slot >= 0) return p.symbols.value(slot);
+        for (int i = from; i < to; i++) {
+            if (Character.digit(s[i], 16) < 0) throw new Exception("Symbole non défini : " + p.text(from, to));
+        }
+        return number(p, from, to, 16);
+    }
+
+    private static int number(Program p, int from, int to, int radix) throws Exception {
+        if (from >= to || to - from > (radix == 16 ? 8 : 16)) throw new Exception("Nombre invalide : " + p.text(from, to));
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = Character.digit(p.src[i], radix);
+            if (digit < 0) throw new Exception("Nombre invalide : " + p.text(from, to));
+            value = value * radix + digit;
+        }
+        return value;
+    }
+
+    private static int mnemonicId(byte[] s, int from, int to) {
+        if (to - from < 1 || to - from > 8) return -1;
+        long key = 0;
+        for (int i = from; i < to; i++) key = key << 8 | upper(s[i]);
+        int slot = (int) ((key * HASH_MULTIPLIER) >>> (64 - HASH_BITS));
+        return HASH_KEYS[slot] == key ? HASH_IDS[slot] : -1;
+    }
+
+    private static int items(byte[] s, int from, int to) {
+        int count = 1;
+        for (int i = from; i < to; i++) if (s[i] == ',') count++;
+        return count;
+    }
+
+    private static boolean isLabel(byte[] s, int from, int to) {
+        if (from >= to || !isNameStart(s[from])) return false;
+        for (int i = from + 1; i < to; i++) if (!isNamePart(s[i])) return false;
+        return true;
+    }
+
+    private static boolean isNameStart(byte c) {
+        byte u = upper(c);
+        return (u >= 'A' && u <= 'Z') || c == '_' || c == '.';
+    }
+
+    private static boolean isNamePart(byte c) {
+        return isNameStart(c) || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isIndexRegister(byte c) {
+        byte u = upper(c);
+        return u == 'X' || u == 'Y' || u == 'U' || u == 'S';
+    }
+
+    private static boolean isSpace(byte c) {
+        return c == ' ' || c == '\t' || c == '\r' || c == '\f';
+    }
+
+    private static int skipSpace(byte[] s, int i, int end) {
+        while (i < end && isSpace(s[i])) i++;
+        return i;
+    }
+
+    private static int skipWord(byte[] s, int i, int end) {
+        while (i < end && !isSpace(s[i])) i++;
+        return i;
+    }
+
+    private static byte upper(byte c) {
+        return c >= 'a' && c <= 'z' ? (byte) (c - 32) : c;
+    }
+
+    private static Exception error(int n, String message) {
+        return new Exception(message != null && message.startsWith("Ligne ") ? message : "Ligne " + (n + 1) + " : " + message);
+    }
+
+    private static int[] image(Program p) {
+        int[] bytes = new int[0x10000];
+        Arrays.fill(bytes, -1);
+        for (int n = 0; n < p.count; n++) {
+            if (p.kind[n] == K_RMB) continue;
+            for (int i = 0; i < p.size[n]; i++) bytes[(p.address[n] + i) & 0xFFFF] = p.code[p.codeStart[n] + i] & 0xFF;
+        }
+        return bytes;
+    }
+
+    private static void buildLineMap(Program p) {
+        int count = 0;
+        for (int n = 0; n < p.count; n++) if (p.size[n] > 0 && p.kind[n] != K_RMB) count++;
+        long[] keys = new long[count];
+        count = 0;
+        for (int n = 0; n < p.count; n++) {
+            if (p.size[n] > 0 && p.kind[n] != K_RMB) keys[count++] = (long) p.address[n] << 32 | n;
+        }
+        Arrays.sort(keys);
+        p.mapAddresses = new int[count];
+        p.mapEnds = new int[count];
+        p.mapLines = new int[count];
+        for (int i = 0; i < count; i++) {
+            int n = (int) keys[i];
+            p.mapAddresses[i] = p.address[n];
+            p.mapEnds[i] = p.address[n] + p.size[n];
+            p.mapLines[i] = n + 1;
+        }
+    }
+
+    /**
+     * Ligne source (à partir de 1) de l'instruction qui contient {@code addr}, d'après le dernier
+     * assemblage ; 0 si aucune instruction assemblée ne couvre cette adresse.
+     */
+    public int lineAt(int addr) {
+        if (program == null) return 0;
+        int[] addresses = program.mapAddresses;
+        // Recherche dichotomique dans la table triée par adresse
+        int low = 0, high = addresses.length - 1, found = 0;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (addresses[mid] <= addr) {
+                found = addr < program.mapEnds[mid] ? program.mapLines[mid] : 0;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return found;
+    }
+
+    /** Adresse de la ligne {@code line} (à partir de 1), -1 si elle n'émet aucun octet. */
+    public int addressOf(int line) {
+        if (program == null || line < 1 || line > program.count) return -1;
+        int n = line - 1;
+        return program.size[n] > 0 && program.kind[n] != K_RMB ? program.address[n] : -1;
+    }
+
+    /** Texte de la ligne {@code line} (à partir de 1) du dernier source assemblé, sans espaces autour. */
+    public String getLine(int line) {
+        if (program == null || line < 1 || line > program.count) return "";
+        int n = line - 1;
+        return new String(program.src, program.lineStart[n], program.lineEnd[n] - program.lineStart[n],
+                StandardCharsets.UTF_8).trim();
+    }
+
+    /** Table des symboles du dernier assemblage (étiquettes et EQU), triée par nom. */
+    public Map<String, Integer> getSymbols() {
+        return program == null ? Collections.emptyMap() : Collections.unmodifiableMap(program.symbols.toMap());
+    }
+}
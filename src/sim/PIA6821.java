@@ -0,0 +1,151 @@
+package sim;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Interface parallèle 6821 (page $D1 par défaut) : deux ports de 8 bits A et B, chacun avec
+ * son registre de direction et ses lignes de contrôle C1 (entrée) et C2 (entrée ou sortie).
+ * <pre>
+ * $00 ORA / DDRA (selon le bit 2 de CRA)   $01 CRA
+ * $02 ORB / DDRB (selon le bit 2 de CRB)   $03 CRB
+ * </pre>
+ * Registre de contrôle : bit 0 interruption sur C1, bit 1 front actif de C1 (1 = montant),
+ * bit 2 accès au registre de données (0 = direction), bits 3-5 mode de C2 (bit 5 à 1 : sortie,
+ * niveau donné par le bit 3 quand le bit 4 est à 1), bit 6 front vu sur C2, bit 7 front vu sur C1.
+ * Les bits 6 et 7 sont en lecture seule et s'effacent à la lecture du registre de données.
+ * Les sorties IRQA et IRQB sont reliées ensemble à la ligne du périphérique.
+ * Le côté extérieur ({@link #setInput}, {@link #setC1}, {@link #setC2}) est à appeler depuis
+ * le thread du CPU, typiquement dans une échéance planifiée sur la roue temporelle.
+ */
+public class PIA6821 extends Peripheral {
+    public static final int BASE = 0xD100;
+    public static final int PORT_A = 0, PORT_B = 1;
+    public static final int CR_C1_IRQ = 0x01, CR_C1_RISING = 0x02, CR_DATA = 0x04, CR_C2_IRQ = 0x08,
+            CR_C2_RISING = 0x10, CR_C2_OUTPUT = 0x20, CR_C2_FLAG = 0x40, CR_C1_FLAG = 0x80;
+
+    private final int[] output = new int[2], direction = new int[2], control = new int[2], input = new int[2];
+    private final boolean[] c1 = new boolean[2], c2 = new boolean[2];
+    private final IntConsumer[] listeners = new IntConsumer[2];
+
+    public PIA6821(CPU6809_V6 cpu) {
+        super(cpu);
+    }
+
+    /** Appelé avec le niveau des broches du port à chaque écriture de son registre de données ou de direction. */
+    public void setOutputListener(int port, IntConsumer listener) {
+        listeners[port] = listener;
+    }
+
+    /** Niveau des broches du port : sorties selon DDR, entrées extérieures ailleurs. */
+    public int pins(int port) {
+        return (output[port] & direction[port] | input[port] & ~direction[port]) & 0xFF;
+    }
+
+    /** Niveau imposé de l'extérieur sur les broches en entrée du port. */
+    public void setInput(int port, int value) {
+        input[port] = value & 0xFF;
+    }
+
+    public void setC1(int port, boolean level) {
+        if (level == c1[port]) return;
+        c1[port] = level;
+        if (level == ((control[port] & CR_C1_RISING) != 0)) {
+            control[port] |= CR_C1_FLAG;
+            updateInterrupt();
+        }
+    }
+
+    /** Entrée C2 ; sans effet quand C2 est programmée en sortie. */
+    public void setC2(int port, boolean level) {
+        if ((control[port] & CR_C2_OUTPUT) != 0 || level == c2[port]) return;
+        c2[port] = level;
+        if (level == ((control[port] & CR_C2_RISING) != 0)) {
+            control[port] |= CR_C2_FLAG;
+            updateInterrupt();
+        }
+    }
+
+    /** Niveau de C2 (sortie programmée ou dernière entrée). */
+    public boolean getC2(int port) {
+        return c2[port];
+    }
+
+    @Override
+    public int read(int addr) {
+        int port = (addr >> 1) & 1;
+        if ((addr & 1) != 0) return control[port];
+        if ((control[port] & CR_DATA) == 0) return direction[port];
+        control[port] &= ~(CR_C1_FLAG | CR_C2_FLAG);
+        updateInterrupt();
+        return pins(port);
+    }
+
+    // Registres de contrôle seulement : lire les données efface les indicateurs de C1 et C2
+    @Override
+    public boolean isIdleSafe(int addr) {
+        return (addr & 1) != 0;
+    }
+
+    @Override
+    public void write(int addr, int value) {
+        int port = (addr >> 1) & 1;
+        if ((addr & 1) != 0) {
+            control[port] = control[port] & (CR_C1_FLAG | CR_C2_FLAG) | value & 0x3F;
+            if ((value & CR_C2_OUTPUT) != 0) {
+                control[port] &= ~CR_C2_FLAG;
+                // Mode manuel : C2 suit le bit 3 ; modes d'échange réduits à un niveau haut
+                c2[port] = (value & CR_C2_RISING) == 0 || (value & CR_C2_IRQ) != 0;
+            }
+            updateInterrupt();
+            return;
+        }
+        if ((control[port] & CR_DATA) != 0) output[port] = value;
+        else direction[port] = value;
+        if (listeners[port] != null) listeners[port].accept(pins(port));
+    }
+
+    private boolean requested(int port) {
+        int cr = control[port];
+        return (cr & CR_C1_FLAG) != 0 && (cr & CR_C1_IRQ) != 0
+                || (cr & CR_C2_FLAG) != 0 && (cr & CR_C2_IRQ) != 0 && (cr & CR_C2_OUTPUT) == 0;
+    }
+
+    private void updateInterrupt() {
+        setInterrupt(requested(PORT_A) || requested(PORT_B));
+    }
+
+    @Override
+    public void reset() {
+        for (int port = 0; port < 2; port++) output[port] = direction[port] = control[port] = 0;
+        updateInterrupt();
+    }
+
+    // État : par port, sortie, direction, contrôle, entrée et niveaux C1/C2
+    @Override
+    public byte[] saveState() {
+        byte[] state = new byte[10];
+        for (int port = 0; port < 2; port++) {
+            int o = port * 5;
+            state[o] = (byte) output[port];
+            state[o + 1] = (byte) direction[port];
+            state[o + 2] = (byte) control[port];
+            state[o + 3] = (byte) input[port];
+            state[o + 4] = (byte) ((c1[port] ? 1 : 0) | (c2[port] ? 2 : 0));
+        }
+        return state;
+    }
+
+    @Override
+    public void restoreState(byte[] state) {
+        for (int port = 0; port < 2; port++) {
+            int o = port * 5;
+            output[port] = state[o] & 0xFF;
+            direction[port] = state[o + 1] & 0xFF;
+            control[port] = state[o + 2] & 0xFF;
+            input[port] = state[o + 3] & 0xFF;
+            c1[port] = (state[o + 4] & 1) != 0;
+            c2[port] = (state[o + 4] & 2) != 0;
+        }
+        updateInterrupt();
+    }
+}
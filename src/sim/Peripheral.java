@@ -0,0 +1,49 @@
+package sim;
+
+/**
+ * Base des périphériques cadencés : projection sur le bus, ligne d'interruption propre
+ * (IRQ par défaut, FIRQ sur demande) et échéances sur la roue temporelle du CPU
+ * ({@link CPU6809_V6#timers}). Un périphérique ne travaille que dans ses accès registres
+ * et dans les rappels de ses {@link TimingWheel.Timer}.
+ */
+public abstract class Peripheral implements Device {
+    protected final CPU6809_V6 cpu;
+    private final int source;
+    private boolean fast;
+    private boolean asserted;
+
+    protected Peripheral(CPU6809_V6 cpu) {
+        this.cpu = cpu;
+        this.source = cpu.interrupts.newSource();
+    }
+
+    /** Projette le périphérique sur la page contenant {@code addr} ; retourne {@code this}. */
+    public Peripheral attach(int addr) {
+        cpu.bus.mapDevice(addr, this);
+        return this;
+    }
+
+    /** Relie la sortie d'interruption à FIRQ au lieu d'IRQ. */
+    public void useFIRQ(boolean enabled) {
+        boolean was = asserted;
+        setInterrupt(false);
+        fast = enabled;
+        setInterrupt(was);
+    }
+
+    public boolean isInterruptAsserted() {
+        return asserted;
+    }
+
+    protected TimingWheel.Timer newTimer(InterruptController.Event action) {
+        return cpu.timers.newTimer(action);
+    }
+
+    /** Lève ou baisse la ligne du périphérique (niveau, maintenu jusqu'à acquittement). */
+    protected void setInterrupt(boolean level) {
+        if (level == asserted) return;
+        asserted = level;
+        if (fast) cpu.interrupts.setFIRQ(source, level);
+        else cpu.interrupts.setIRQ(source, level);
+    }
+}
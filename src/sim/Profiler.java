@@ -0,0 +1,150 @@
+package sim;
+
+import java.util.Arrays;
+
+/**
+ * Profileur d'exécution exhaustif (sans échantillonnage), branché sur le décodeur.
+ * Chaque instruction exécutée incrémente des compteurs dans des tableaux primitifs indexés
+ * par adresse et par opcode : aucune allocation, quelques accès mémoire par instruction,
+ * ce qui permet de le laisser actif pendant une exécution batch à pleine vitesse.
+ * Pour les branchements relatifs (BRA/BEQ/BNE), les passages où la condition est vraie sont
+ * comptés comme pris, y compris un saut de déplacement nul.
+ */
+public final class Profiler {
+    // Opcode indexé par page * 256 + opcode (pages du décodeur)
+    static final int OPCODE_SLOTS = 3 * 256;
+
+    final long[] counts = new long[0x10000];
+    final long[] cycles = new long[0x10000];
+    final long[] taken = new long[0x10000];
+    final long[] opcodeCounts = new long[OPCODE_SLOTS];
+    final long[] opcodeCycles = new long[OPCODE_SLOTS];
+
+    private final CPU6809_V6 cpu;
+    private final InstructionDecoder_V6 decoder;
+
+    public Profiler(CPU6809_V6 cpu, InstructionDecoder_V6 decoder) {
+        this.cpu = cpu;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Appelé par le décodeur pour chaque instruction, après son exécution : {@code cost} comprend
+     * les cycles ajoutés par l'instruction elle-même (RTI avec état complet).
+     */
+    void count(int pc, int opcode, int cost) {
+        counts[pc]++;
+        cycles[pc] += cost;
+        opcodeCounts[opcode]++;
+        opcodeCycles[opcode] += cost;
+    }
+
+    /** Appelé après un branchement relatif, avec sa condition. */
+    void branch(int pc, boolean wasTaken) {
+        if (wasTaken) taken[pc]++;
+    }
+
+    public void clear() {
+        Arrays.fill(counts, 0);
+        Arrays.fill(cycles, 0);
+        Arrays.fill(taken, 0);
+        Arrays.fill(opcodeCounts, 0);
+        Arrays.fill(opcodeCycles, 0);
+    }
+
+    public long getCount(int addr) {
+        return counts[addr & 0xFFFF];
+    }
+
+    public long getCycles(int addr) {
+        return cycles[addr & 0xFFFF];
+    }
+
+    public long getTaken(int addr) {
+        return taken[addr & 0xFFFF];
+    }
+
+    public long getTotalInstructions() {
+        long total = 0;
+        for (long c : opcodeCounts) total += c;
+        return total;
+    }
+
+    public long getTotalCycles() {
+        long total = 0;
+        for (long c : opcodeCycles) total += c;
+        return total;
+    }
+
+    /**
+     * Rapport texte : points chauds classés par cycles (avec la ligne source quand
+     * {@code assembler} est fourni), fréquence des opcodes, puis
+     * taux de branchements pris.
+     * @param top nombre maximal de lignes par tableau
+     */
+    public String report(int top, MiniAssembler_V6 assembler) {
+        Disassembler disassembler = new Disassembler(decoder);
+        long instructions = getTotalInstructions();
+        long totalCycles = getTotalCycles();
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("Profil : %d instructions, %d cycles%n", instructions, totalCycles));
+        if (instructions == 0) return sb.toString();
+
+        sb.append(String.format("%nPoints chauds (par cycles)%n  %-6s %-5s %-16s %12s %7s %12s  %s%n",
+                "ligne", "adr", "instruction", "exécutions", "%", "cycles", "source"));
+        for (int pc : ranked(cycles, top)) {
+            int line = assembler != null ? assembler.lineAt(pc) : 0;
+            String text = line > 0 ? assembler.getLine(line) : "";
+            sb.append(String.format("  %-6s %04X  %-16s %12d %6.2f%% %12d  %s%n",
+                    line > 0 ? Integer.toString(line) : "-", pc, disassembler.format(cpu.memory, pc),
+                    counts[pc], 100.0 * cycles[pc] / totalCycles, cycles[pc], text));
+        }
+
+        sb.append(String.format("%nOpcodes (par exécutions)%n  %-8s %12s %7s %12s %8s%n",
+                "opcode", "exécutions", "%", "cycles", "moy."));
+        for (int op : ranked(opcodeCounts, top)) {
+            String mnemonic = decoder.mnemonics[op >> 8][op & 0xFF];
+            sb.append(String.format("  %-8s %12d %6.2f%% %12d %8.2f%n",
+                    mnemonic != null ? mnemonic : String.format("$%02X", op & 0xFF), opcodeCounts[op],
+                    100.0 * opcodeCounts[op] / instructions, opcodeCycles[op], (double) opcodeCycles[op] / opcodeCounts[op]));
+        }
+
+        // Branchements : totaux par opcode puis détail par site
+        long[] opcodeTaken = new long[256];
+        StringBuilder sites = new StringBuilder();
+        int shown = 0;
+        for (int pc : ranked(counts, Integer.MAX_VALUE)) {
+            int opcode = cpu.memory.read(pc);
+            if (decoder.modes[InstructionDecoder_V6.PAGE_0][opcode] != InstructionDecoder_V6.M_REL) continue;
+            opcodeTaken[opcode] += taken[pc];
+            if (shown++ >= top) continue;
+            int line = assembler != null ? assembler.lineAt(pc) : 0;
+            sites.append(String.format("  %-6s %04X  %-16s %12d %12d %6.2f%%%n",
+                    line > 0 ? Integer.toString(line) : "-", pc, disassembler.format(cpu.memory, pc),
+                    taken[pc], counts[pc] - taken[pc], 100.0 * taken[pc] / counts[pc]));
+        }
+        if (shown == 0) return sb.toString();
+        sb.append(String.format("%nBranchements%n  %-6s %-5s %-16s %12s %12s %7s%n",
+                "ligne", "adr", "instruction", "pris", "non pris", "% pris"));
+        for (int opcode = 0; opcode < 256; opcode++) {
+            long executed = opcodeCounts[opcode];
+            if (executed == 0 || decoder.modes[InstructionDecoder_V6.PAGE_0][opcode] != InstructionDecoder_V6.M_REL) continue;
+            sb.append(String.format("  %-6s %-5s %-16s %12d %12d %6.2f%%%n", "total", "", decoder.mnemonics[0][opcode],
+                    opcodeTaken[opcode], executed - opcodeTaken[opcode], 100.0 * opcodeTaken[opcode] / executed));
+        }
+        return sb.append(sites).toString();
+    }
+
+    // Indices des {@code limit} plus grandes valeurs non nulles, par ordre décroissant
+    private static int[] ranked(long[] values, int limit) {
+        int n = 0;
+        for (long v : values) if (v != 0) n++;
+        Integer[] order = new Integer[n];
+        n = 0;
+        for (int i = 0; i < values.length; i++) if (values[i] != 0) order[n++] = i;
+        Arrays.sort(order, (x, y) -> Long.compare(values[y], values[x]));
+        int[] result = new int[Math.min(limit, order.length)];
+        for (int i = 0; i < result.length; i++) result[i] = order[i];
+        return result;
+    }
+}
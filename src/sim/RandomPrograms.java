@@ -0,0 +1,92 @@
+package sim;
+
+import java.util.Random;
+
+/**
+ * Générateur de programmes assembleur aléatoires pour les vérifications d'équivalence entre
+ * chemins d'exécution. {@link #generate} produit du code linéaire, sans étiquette (lisible aussi
+ * par {@link LegacyAssembler}) ; {@link #generateWithBranches} y ajoute des boucles bornées et
+ * des sauts conditionnels en avant.
+ */
+class RandomPrograms {
+    private static final String[] INH = {
+            "INCA", "DECA", "NEGA", "COMA", "LSRA", "RORA", "ASLA", "ROLA", "TSTA", "CLRA",
+            "NEGB", "COMB", "LSRB", "RORB", "ASLB", "ROLB", "TSTB", "CLRB", "NOP"
+    };
+    private static final String[] LOAD8 = {"LDA", "LDB"};
+    private static final String[] LOAD16 = {"LDD", "LDX", "LDY", "LDU", "ADDD"};
+    private static final String[] STORE = {"STA", "STB", "STD", "STX"};
+    private static final String[] BRANCH = {"BEQ", "BNE"};
+    // Compteur des boucles, hors de la zone écrite par les stores aléatoires ($2000-$20EF)
+    private static final String COUNTER = "$20F0";
+
+    private RandomPrograms() {
+    }
+
+    static String generate(Random rnd, int instructions) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("LDX #$2000\n");
+        for (int i = 0; i < instructions; i++) {
+            appendInstruction(sb, rnd);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Comme {@link #generate}, avec des boucles (compteur en mémoire de 1 à 4 tours, DECA/BNE en
+     * arrière sur un corps de 1 à 8 instructions) et des BEQ/BNE en avant par-dessus 1 à 4
+     * instructions. Chaque instruction du source s'exécute au plus 4 fois : un budget de
+     * 10 instructions par ligne suffit pour atteindre le HALT final.
+     */
+    static String generateWithBranches(Random rnd, int instructions) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("LDX #$2000\n");
+        int labels = 0;
+        for (int i = 0; i < instructions; ) {
+            int kind = rnd.nextInt(10);
+            if (kind == 0) {
+                String label = "BOUCLE" + labels++;
+                sb.append(" LDA #$0").append(1 + rnd.nextInt(4)).append('\n');
+                sb.append(" STA ").append(COUNTER).append('\n');
+                sb.append(label).append('\n');
+                int body = 1 + rnd.nextInt(8);
+                for (int j = 0; j < body; j++) appendInstruction(sb, rnd);
+                sb.append(" LDA ").append(COUNTER).append('\n');
+                sb.append(" DECA\n");
+                sb.append(" STA ").append(COUNTER).append('\n');
+                sb.append(" BNE ").append(label).append('\n');
+                i += body + 6;
+            } else if (kind == 1) {
+                String label = "SAUT" + labels++;
+                sb.append(' ').append(BRANCH[rnd.nextInt(BRANCH.length)]).append(' ').append(label).append('\n');
+                int skipped = 1 + rnd.nextInt(4);
+                for (int j = 0; j < skipped; j++) appendInstruction(sb, rnd);
+                sb.append(label).append('\n');
+                i += skipped + 1;
+            } else {
+                appendInstruction(sb, rnd);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static void appendInstruction(StringBuilder sb, Random rnd) {
+        int kind = rnd.nextInt(10);
+        if (kind < 5) {
+            sb.append(INH[rnd.nextInt(INH.length)]);
+        } else if (kind < 7) {
+            sb.append(LOAD8[rnd.nextInt(LOAD8.length)]).append(" #$").append(hex(rnd.nextInt(256), 2));
+        } else if (kind < 8) {
+            sb.append(LOAD16[rnd.nextInt(LOAD16.length)]).append(" #$").append(hex(rnd.nextInt(65536), 4));
+        } else {
+            // Zone de données au-dessus du code : $2000-$20EF (STD/STX en $20EE au plus haut)
+            sb.append(STORE[rnd.nextInt(STORE.length)]).append(" $20").append(hex(rnd.nextInt(0xEF), 2));
+        }
+        sb.append('\n');
+    }
+
+    private static String hex(int value, int digits) {
+        return String.format("%0" + digits + "X", value);
+    }
+}
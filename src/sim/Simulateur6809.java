@@ -2,37 +2,70 @@ package sim;
 
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
-import javax.swing.event.TableModelEvent;
-import javax.swing.table.DefaultTableModel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.TableColumn;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
 import java.awt.*;
-import java.util.HashSet;
-import java.util.Set;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Interface graphique principale du simulateur 6809.
  */
 public class Simulateur6809 extends JFrame {
+    private static final long serialVersionUID = 1L;
+    // Fréquences de rafraîchissement proposées pendant RUN (images par seconde)
+    private static final Integer[] REFRESH_RATES = {30, 60};
+    // Blocs exécutés entre deux lectures de l'horloge pendant RUN
+    private static final int RUN_BATCH = 1000;
+    // Pause du thread d'exécution quand le programme attend sans échéance (NMI)
+    private static final long HUNG_PARK_NANOS = 1_000_000L;
+    // Historique du terminal conservé à l'écran (caractères)
+    private static final int SCROLLBACK_CHARS = 100_000;
+
     private final CPU6809_V6 cpu;
     private final MiniAssembler_V6 assembler;
     private final InstructionDecoder_V6 decoder;
+    private final Disassembler disassembler;
+    private final TerminalDevice terminal;
+    // Sortie du terminal : écrite par le thread du CPU, vidée en bloc à chaque rafraîchissement
+    private final TerminalRing terminalRing = new TerminalRing();
+    private final StringBuilder pendingOutput = new StringBuilder();
+    // Caractères perdus déjà signalés dans le terminal
+    private long reportedLost;
 
     private JTextField txtPC, txtA, txtB, txtD, txtDP, txtX, txtY, txtU, txtS, txtCC, txtBreakpoints;
     private JTextArea codeEditor, terminalOutput;
-    private DefaultTableModel memoryModel;
+    private MemoryTableModel memoryModel;
+    private JTable memoryTable;
+    private DisassemblyView disassemblyView;
     private JLabel lblStatus;
-    private boolean isRunning = false;
+    private volatile boolean isRunning = false;
     private String lastCode = "";
 
+    // Pendant RUN : dernier état publié par le thread d'exécution, affiché par le timer Swing
+    private final AtomicReference<Snapshot> published = new AtomicReference<>();
+    private volatile int refreshHz = REFRESH_RATES[0];
+    private final Timer refreshTimer = new Timer(1000 / REFRESH_RATES[0], e -> refreshFromRun());
+    private Snapshot lastRunSnapshot;
+    private Thread runner;
+    // État capturé par le bouton « Capturer », rétabli par « Restaurer »
+    private MachineSnapshot savedState;
+
     public Simulateur6809() {
         cpu = new CPU6809_V6();
+        cpu.setRevealTracking(true);
         assembler = new MiniAssembler_V6();
         decoder = new InstructionDecoder_V6(cpu);
+        decoder.setIdleSkip(true);
+        disassembler = new Disassembler(decoder);
 
-        cpu.ioMonitor = (addr, val) -> {
-            if (addr == 0xD000) {
-                SwingUtilities.invokeLater(() -> terminalOutput.append(String.valueOf((char) val)));
-            }
-        };
+        terminal = new TerminalDevice(terminalRing);
+        cpu.bus.mapDevice(TerminalDevice.BASE, terminal);
 
         setTitle("Simulateur Motorola 6809 - Full Registers Edition");
         setSize(1350, 800);
@@ -47,7 +80,6 @@ public class Simulateur6809 extends JFrame {
         lblStatus = new JLabel(" Prêt.");
         add(lblStatus, BorderLayout.NORTH);
 
-        initMemTable();
         setupRegListeners();
         updateUI();
     }
@@ -69,16 +101,49 @@ public class Simulateur6809 extends JFrame {
         txtCC = addReg(pnlReg, "CC (Flags)", "00000000");
 
         JPanel pnlBreak = new JPanel(new BorderLayout());
-        pnlBreak.setBorder(new TitledBorder("Breakpoints (ex: 0010)"));
+        pnlBreak.setBorder(new TitledBorder("Breakpoints (ex: 0010, w:0200, 0020 if A==$7F)"));
         txtBreakpoints = new JTextField("");
+        txtBreakpoints.setToolTipText("<html>0010 : arrêt avant l'instruction en 0010<br>"
+                + "0010 if A==$7F &amp;&amp; (CC&amp;Z) : arrêt conditionnel<br>"
+                + "w:0200-020F, r:0200, rw:0200 : watchpoint écriture, lecture ou accès</html>");
         pnlBreak.add(txtBreakpoints, BorderLayout.CENTER);
 
+        // Désassemblage autour de PC, breakpoints marqués au fil de la saisie
+        disassemblyView = new DisassemblyView(cpu, disassembler);
+        disassemblyView.setBorder(new TitledBorder("Désassemblage"));
+        txtBreakpoints.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                markBreakpoints();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                markBreakpoints();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                markBreakpoints();
+            }
+        });
+
         pnlLeft.add(pnlReg, BorderLayout.NORTH);
+        pnlLeft.add(disassemblyView, BorderLayout.CENTER);
         pnlLeft.add(pnlBreak, BorderLayout.SOUTH);
-        pnlLeft.setPreferredSize(new Dimension(280, 0));
+        pnlLeft.setPreferredSize(new Dimension(340, 0));
         add(pnlLeft, BorderLayout.WEST);
     }
 
+    // Une saisie incomplète ou invalide efface simplement les marques
+    private void markBreakpoints() {
+        try {
+            disassemblyView.setBreakpoints(BreakpointEngine.parse(txtBreakpoints.getText()));
+        } catch (IllegalArgumentException ex) {
+            disassemblyView.setBreakpoints(null);
+        }
+    }
+
     private void buildCenterPanel() {
         JSplitPane splitCenter = new JSplitPane(JSplitPane.VERTICAL_SPLIT);
         codeEditor = new JTextArea();
@@ -107,8 +172,15 @@ public class Simulateur6809 extends JFrame {
         terminalOutput.setBackground(Color.BLACK);
         terminalOutput.setForeground(Color.GREEN);
         terminalOutput.setFont(new Font("Monospaced", Font.BOLD, 14));
+        // Les touches frappées dans le terminal sont lues par le programme en $D000
+        terminalOutput.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyTyped(KeyEvent e) {
+                terminal.type(e.getKeyChar());
+            }
+        });
         JPanel pnlTerm = new JPanel(new BorderLayout());
-        pnlTerm.setBorder(new TitledBorder("Terminal Sortie ($D000)"));
+        pnlTerm.setBorder(new TitledBorder("Terminal ($D000)"));
         pnlTerm.add(new JScrollPane(terminalOutput));
 
         splitCenter.setTopComponent(pnlCode);
@@ -118,18 +190,47 @@ public class Simulateur6809 extends JFrame {
     }
 
     private void buildRightPanel() {
-        String[] cols = {"Addr", "Value (Hex)"};
-        memoryModel = new DefaultTableModel(cols, 0) {
+        memoryModel = new MemoryTableModel(cpu, decoder) {
+            // Une édition peut toucher du code : le désassemblage est rafraîchi aussitôt
             @Override
             public boolean isCellEditable(int row, int column) {
-                return column == 1;
+                return !cpuBusy() && super.isCellEditable(row, column);
+            }
+
+            @Override
+            public void setValueAt(Object value, int row, int column) {
+                if (cpuBusy()) return;
+                super.setValueAt(value, row, column);
+                updateUI();
             }
         };
-        JTable table = new JTable(memoryModel);
-        table.getModel().addTableModelListener(e -> {
-            if (e.getType() == TableModelEvent.UPDATE) updateMemoryFromTable(e.getFirstRow());
+        memoryTable = new JTable(memoryModel);
+        memoryTable.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        memoryTable.getTableHeader().setReorderingAllowed(false);
+        memoryTable.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+        for (int i = 0; i < memoryModel.getColumnCount(); i++) {
+            TableColumn col = memoryTable.getColumnModel().getColumn(i);
+            col.setPreferredWidth(i == 0 ? 45 : i > MemoryTableModel.BYTES_PER_ROW ? 130 : 24);
+        }
+        JScrollPane scroll = new JScrollPane(memoryTable);
+        scroll.setPreferredSize(new Dimension(580, 0));
+
+        // Saut direct à une adresse dans les 64 Ko
+        JTextField txtGoto = new JTextField();
+        txtGoto.addActionListener(e -> {
+            int row = MemoryTableModel.rowOf(parse(txtGoto.getText()));
+            memoryTable.scrollRectToVisible(memoryTable.getCellRect(row, 0, true));
+            memoryTable.setRowSelectionInterval(row, row);
         });
-        add(new JScrollPane(table), BorderLayout.EAST);
+        JPanel pnlGoto = new JPanel(new BorderLayout());
+        pnlGoto.add(new JLabel(" Aller à (hex) : "), BorderLayout.WEST);
+        pnlGoto.add(txtGoto, BorderLayout.CENTER);
+
+        JPanel pnlMem = new JPanel(new BorderLayout());
+        pnlMem.setBorder(new TitledBorder("Mémoire (64 Ko)"));
+        pnlMem.add(pnlGoto, BorderLayout.NORTH);
+        pnlMem.add(scroll, BorderLayout.CENTER);
+        add(pnlMem, BorderLayout.EAST);
     }
 
     private void buildBottomPanel() {
@@ -138,30 +239,113 @@ public class Simulateur6809 extends JFrame {
         JButton btnRun = new JButton("RUN");
         JButton btnNMI = new JButton("NMI (Interrupt)");
         JButton btnReset = new JButton("RESET");
+        JButton btnSave = new JButton("Capturer");
+        JButton btnRestore = new JButton("Restaurer");
+        btnRestore.setEnabled(false);
+        JButton btnImage = new JButton("Charger image");
+        JCheckBox chkJournal = new JCheckBox("Journal");
+        JButton btnBack = new JButton("◀ Pas");
+        JButton btnBackWrite = new JButton("◀ Écriture");
+        btnBack.setEnabled(false);
+        btnBackWrite.setEnabled(false);
 
         btnStep.addActionListener(e -> doStep());
         btnRun.addActionListener(e -> toggleRun(btnRun));
         btnNMI.addActionListener(e -> {
+            // Seule action permise pendant RUN : la demande est prise en compte par le thread d'exécution
             cpu.triggerNMI();
-            updateUI();
-            terminalOutput.append("\n[NMI]\n");
+            if (!cpuBusy()) updateUI();
+            terminalOutput.append("\n[NMI en attente : prise avant la prochaine instruction]\n");
         });
         btnReset.addActionListener(e -> {
+            if (cpuBusy()) return;
             cpu.reset();
+            decoder.invalidateCode();
+            disassembler.invalidateAll();
+            restartJournal();
+            assembler.invalidate();
             lastCode = "";
+            drainTerminal();
             terminalOutput.setText("");
             updateUI();
         });
+        btnSave.addActionListener(e -> {
+            if (cpuBusy() || !checkAssembly()) return;
+            savedState = MachineSnapshot.capture(cpu);
+            btnRestore.setEnabled(true);
+            lblStatus.setText(String.format(" État capturé à %04X (%d pages recopiées)", cpu.PC, savedState.getCopiedPages()));
+        });
+        btnRestore.addActionListener(e -> {
+            if (cpuBusy() || savedState == null) return;
+            int pages = savedState.restore(cpu, decoder);
+            restartJournal();
+            updateUI();
+            lblStatus.setText(String.format(" État restauré à %04X (%d pages recopiées)", cpu.PC, pages));
+        });
 
         pnlBot.add(btnStep);
         pnlBot.add(btnRun);
         pnlBot.add(btnNMI);
         pnlBot.add(btnReset);
+        btnImage.addActionListener(e -> loadImage());
+
+        pnlBot.add(btnSave);
+        pnlBot.add(btnRestore);
+        pnlBot.add(btnImage);
+
+        // Retour arrière : le journal enregistre chaque instruction exécutée (pas à pas ou RUN)
+        chkJournal.addActionListener(e -> {
+            if (cpuBusy()) {
+                chkJournal.setSelected(decoder.getJournal() != null);
+                return;
+            }
+            decoder.setJournal(chkJournal.isSelected() ? new ExecutionJournal(cpu, decoder) : null);
+            btnBack.setEnabled(chkJournal.isSelected());
+            btnBackWrite.setEnabled(chkJournal.isSelected());
+        });
+        btnBack.addActionListener(e -> {
+            ExecutionJournal journal = decoder.getJournal();
+            if (cpuBusy() || journal == null) return;
+            try {
+                long undone = journal.stepBack(1);
+                updateUI();
+                lblStatus.setText(undone == 0 ? " Début du journal atteint."
+                        : String.format(" Retour à %04X (%d instructions en arrière possibles)", cpu.PC, journal.getRetained()));
+            } catch (Exception ex) {
+                lblStatus.setText("Erreur: " + ex.getMessage());
+            }
+        });
+        btnBackWrite.addActionListener(e -> {
+            ExecutionJournal journal = decoder.getJournal();
+            if (cpuBusy() || journal == null) return;
+            String input = JOptionPane.showInputDialog(this, "Adresse (hex) :", "Dernière écriture", JOptionPane.QUESTION_MESSAGE);
+            if (input == null || input.trim().isEmpty()) return;
+            try {
+                int addr = Integer.parseInt(input.trim(), 16) & 0xFFFF;
+                long undone = journal.backToLastWrite(addr);
+                updateUI();
+                lblStatus.setText(undone < 0 ? String.format(" Aucune écriture en %04X dans le journal.", addr)
+                        : String.format(" Écriture en %04X par l'instruction à %04X (%d instructions en arrière)", addr, cpu.PC, undone));
+            } catch (NumberFormatException ex) {
+                lblStatus.setText(" Adresse invalide : " + input);
+            }
+        });
+        pnlBot.add(chkJournal);
+        pnlBot.add(btnBack);
+        pnlBot.add(btnBackWrite);
+
+        JComboBox<Integer> cmbRefresh = new JComboBox<>(REFRESH_RATES);
+        cmbRefresh.addActionListener(e -> {
+            refreshHz = (Integer) cmbRefresh.getSelectedItem();
+            refreshTimer.setDelay(1000 / refreshHz);
+        });
+        pnlBot.add(new JLabel("Rafraîchissement (Hz) :"));
+        pnlBot.add(cmbRefresh);
         add(pnlBot, BorderLayout.SOUTH);
     }
 
     private void doStep() {
-        checkAssembly();
+        if (cpuBusy() || !checkAssembly()) return;
         try {
             decoder.executeNext();
             updateUI();
@@ -173,59 +357,181 @@ public class Simulateur6809 extends JFrame {
     }
 
     private void toggleRun(JButton btn) {
-        if (isRunning) {
+        // Le bouton revient à RUN quand le thread d'exécution s'est réellement arrêté
+        if (runner != null && runner.isAlive()) {
             stopRun();
-            btn.setText("RUN");
             return;
         }
 
+        BreakpointEngine breaks;
+        try {
+            breaks = BreakpointEngine.parse(txtBreakpoints.getText());
+        } catch (IllegalArgumentException ex) {
+            lblStatus.setText(" " + ex.getMessage());
+            return;
+        }
+        if (!checkAssembly()) return;
+        if (memoryTable.isEditing()) memoryTable.getCellEditor().cancelCellEditing();
+        setRegistersEditable(false);
         isRunning = true;
         btn.setText("STOP");
-        checkAssembly();
-
-        Set<Integer> breaks = new HashSet<>();
-        for (String s : txtBreakpoints.getText().split(",")) {
-            try {
-                if (!s.trim().isEmpty()) breaks.add(Integer.parseInt(s.trim(), 16));
-            } catch (Exception ignored) {}
-        }
+        decoder.setWatchpoints(breaks);
+        boolean stepMode = !breaks.isEmpty();
+
+        lastRunSnapshot = null;
+        published.set(null);
+        refreshTimer.start();
+        runner = new Thread(() -> {
+            String status = runLoop(breaks, stepMode);
+            decoder.setWatchpoints(null);
+            isRunning = false;
+            SwingUtilities.invokeLater(() -> {
+                refreshTimer.stop();
+                btn.setText("RUN");
+                setRegistersEditable(true);
+                updateUI();
+                lblStatus.setText(status);
+            });
+        }, "6809-run");
+        runner.setDaemon(true);
+        runner.start();
+    }
 
-        new Thread(() -> {
+    /**
+     * Boucle du thread d'exécution : enchaîne des lots d'instructions sans attendre Swing
+     * et publie un instantané de l'état au plus {@code refreshHz} fois par seconde.
+     * @return le message d'état à afficher à l'arrêt
+     */
+    private String runLoop(BreakpointEngine breaks, boolean stepMode) {
+        long first = decoder.getInstructionCount();
+        long nextFrame = System.nanoTime();
+        try {
             while (isRunning) {
-                try {
-                    if (breaks.contains(cpu.PC)) {
-                        SwingUtilities.invokeLater(() -> {
-                            lblStatus.setText("Breakpoint atteint à " + String.format("%04X", cpu.PC));
-                            stopRun();
-                            btn.setText("RUN");
-                        });
-                        break;
+                for (int i = 0; i < RUN_BATCH; i++) {
+                    if (stepMode) {
+                        int pc = cpu.PC & 0xFFFF;
+                        // Pas d'arrêt sur la première instruction : permet de repartir d'un breakpoint
+                        if (decoder.getInstructionCount() != first && breaks.shouldBreak(cpu, pc)) {
+                            return "Breakpoint atteint à " + String.format("%04X", pc);
+                        }
+                        decoder.executeNext();
+                        if (breaks.takeHit()) {
+                            return breaks.describeHit() + String.format(" par l'instruction à %04X", pc);
+                        }
+                    } else {
+                        decoder.executeBlock();
+                        // Boucle d'attente sans échéance : seul NMI peut la terminer
+                        if (decoder.isHung()) {
+                            LockSupport.parkNanos(HUNG_PARK_NANOS);
+                            break;
+                        }
                     }
-                    decoder.executeNext();
-                    Thread.sleep(2);
-                    SwingUtilities.invokeLater(this::updateUI);
-                } catch (Exception ex) {
-                    isRunning = false;
+                }
+                long now = System.nanoTime();
+                if (now >= nextFrame) {
+                    Snapshot snap = new Snapshot(cpu, decoder, now);
+                    snap.merge(published.getAndSet(null));
+                    published.set(snap);
+                    nextFrame = now + 1_000_000_000L / refreshHz;
                 }
             }
-        }).start();
+            return "Arrêt à " + String.format("%04X", cpu.PC);
+        } catch (Exception ex) {
+            return "Arrêt : " + ex.getMessage();
+        }
+    }
+
+    // Timer Swing : affiche le dernier instantané publié et le débit émulé
+    private void refreshFromRun() {
+        Snapshot snap = published.getAndSet(null);
+        if (snap == null) return;
+        render(snap);
+        if (lastRunSnapshot != null && snap.nanos > lastRunSnapshot.nanos) {
+            double ips = (snap.instructions - lastRunSnapshot.instructions) * 1e9 / (snap.nanos - lastRunSnapshot.nanos);
+            lblStatus.setText(String.format(" RUN : %.2f M instructions/s (%d Hz)", ips / 1e6, refreshHz));
+        }
+        lastRunSnapshot = snap;
     }
 
     private void stopRun() {
         isRunning = false;
     }
 
-    private void checkAssembly() {
+    /**
+     * Vrai tant que le thread d'exécution possède le CPU, y compris entre STOP et sa fin effective.
+     * L'EDT ne modifie alors ni registres ni mémoire et n'affiche que les instantanés publiés.
+     */
+    private boolean cpuBusy() {
+        return runner != null && runner.isAlive();
+    }
+
+    /**
+     * Assemble le code de l'éditeur s'il a changé. Après le premier assemblage, seules les lignes
+     * modifiées sont réencodées et la machine n'est pas réinitialisée (voir {@link MiniAssembler_V6#reassemble}).
+     * @return faux si le code contient une erreur (affichée dans la barre d'état)
+     */
+    private boolean checkAssembly() {
         String current = codeEditor.getText();
-        if (!current.equals(lastCode)) {
-            try {
+        if (current.equals(lastCode)) return true;
+        try {
+            if (assembler.hasProgram()) {
+                int patched = assembler.reassemble(current, cpu, decoder);
+                lblStatus.setText(String.format(" Réassemblé : %d octets modifiés, état conservé", patched));
+            } else {
                 cpu.reset();
                 assembler.assemble(current, cpu);
-                lastCode = current;
-            } catch (Exception ignored) {}
+                decoder.invalidateCode();
+                disassembler.invalidateAll();
+            }
+            restartJournal();
+            lastCode = current;
+            return true;
+        } catch (Exception ex) {
+            lblStatus.setText(" Erreur d'assemblage : " + ex.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Charge une image binaire (S-record, Intel HEX, brute) dans une machine remise à zéro.
+     * Le code de l'éditeur n'est réassemblé que s'il est modifié ensuite.
+     */
+    private void loadImage() {
+        if (cpuBusy()) return;
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) return;
+        java.nio.file.Path path = chooser.getSelectedFile().toPath();
+        int origin = 0;
+        if (ImageLoader.formatOf(path) == ImageLoader.Format.RAW) {
+            String input = JOptionPane.showInputDialog(this, "Origine (hex) :", "Image brute", JOptionPane.QUESTION_MESSAGE);
+            if (input == null) return;
+            try {
+                origin = input.trim().isEmpty() ? 0 : Integer.parseInt(input.trim(), 16) & 0xFFFF;
+            } catch (NumberFormatException ex) {
+                lblStatus.setText(" Adresse invalide : " + input);
+                return;
+            }
+        }
+        try {
+            cpu.reset();
+            ImageLoader.Result image = ImageLoader.load(path, cpu, decoder, origin);
+            decoder.invalidateCode();
+            disassembler.invalidateAll();
+            restartJournal();
+            assembler.invalidate();
+            lastCode = codeEditor.getText();
+            updateUI();
+            lblStatus.setText(" Image " + image);
+        } catch (java.io.IOException ex) {
+            lblStatus.setText(" Erreur de chargement : " + ex.getMessage());
         }
     }
 
+    // L'état a changé hors exécution (reset, assemblage, restauration) : l'historique ne s'y applique plus
+    private void restartJournal() {
+        if (decoder.getJournal() != null) decoder.getJournal().clear();
+    }
+
     private JTextField addReg(JPanel p, String lbl, String val) {
         p.add(new JLabel(" " + lbl));
         JTextField tf = new JTextField(val);
@@ -236,15 +542,28 @@ public class Simulateur6809 extends JFrame {
     }
 
     private void setupRegListeners() {
-        txtA.addActionListener(e -> { cpu.A = parse(txtA.getText()); updateUI(); });
-        txtB.addActionListener(e -> { cpu.B = parse(txtB.getText()); updateUI(); });
-        txtDP.addActionListener(e -> { cpu.DP = parse(txtDP.getText()); updateUI(); });
-        txtPC.addActionListener(e -> { cpu.PC = parse(txtPC.getText()); updateUI(); });
-        txtX.addActionListener(e -> { cpu.X = parse(txtX.getText()); updateUI(); });
-        txtY.addActionListener(e -> { cpu.Y = parse(txtY.getText()); updateUI(); });
-        txtU.addActionListener(e -> { cpu.U = parse(txtU.getText()); updateUI(); });
-        txtS.addActionListener(e -> { cpu.S = parse(txtS.getText()); updateUI(); });
-        txtD.addActionListener(e -> { cpu.setD(parse(txtD.getText())); updateUI(); });
+        txtA.addActionListener(e -> editRegister(() -> cpu.A = parse(txtA.getText())));
+        txtB.addActionListener(e -> editRegister(() -> cpu.B = parse(txtB.getText())));
+        txtDP.addActionListener(e -> editRegister(() -> cpu.DP = parse(txtDP.getText())));
+        txtPC.addActionListener(e -> editRegister(() -> cpu.PC = parse(txtPC.getText())));
+        txtX.addActionListener(e -> editRegister(() -> cpu.X = parse(txtX.getText())));
+        txtY.addActionListener(e -> editRegister(() -> cpu.Y = parse(txtY.getText())));
+        txtU.addActionListener(e -> editRegister(() -> cpu.U = parse(txtU.getText())));
+        txtS.addActionListener(e -> editRegister(() -> cpu.S = parse(txtS.getText())));
+        txtD.addActionListener(e -> editRegister(() -> cpu.setD(parse(txtD.getText()))));
+    }
+
+    // Les registres appartiennent au thread d'exécution pendant RUN : édition ignorée
+    private void editRegister(Runnable edit) {
+        if (cpuBusy()) return;
+        edit.run();
+        updateUI();
+    }
+
+    private void setRegistersEditable(boolean editable) {
+        for (JTextField field : new JTextField[] {txtPC, txtA, txtB, txtD, txtDP, txtX, txtY, txtU, txtS}) {
+            field.setEditable(editable);
+        }
     }
 
     private int parse(String s) {
@@ -255,38 +574,87 @@ public class Simulateur6809 extends JFrame {
         }
     }
 
-    private void initMemTable() {
-        for (int i = 0; i < 100; i++) {
-            memoryModel.addRow(new Object[]{String.format("%04X", i), "--"});
-        }
+    private void updateUI() {
+        Snapshot snap = new Snapshot(cpu, decoder, System.nanoTime());
+        snap.merge(published.getAndSet(null));
+        render(snap);
     }
 
-    private void updateMemoryFromTable(int row) {
-        try {
-            int addr = Integer.parseInt((String) memoryModel.getValueAt(row, 0), 16);
-            int val = Integer.parseInt((String) memoryModel.getValueAt(row, 1), 16);
-            cpu.memory[addr] = val & 0xFF;
-            cpu.revealAddress(addr);
-        } catch (Exception ignored) {}
+    private void render(Snapshot snap) {
+        if (!txtA.hasFocus()) txtA.setText(String.format("%02X", snap.a));
+        if (!txtB.hasFocus()) txtB.setText(String.format("%02X", snap.b));
+        if (!txtD.hasFocus()) txtD.setText(String.format("%04X", ((snap.a & 0xFF) << 8) | (snap.b & 0xFF)));
+        if (!txtDP.hasFocus()) txtDP.setText(String.format("%02X", snap.dp));
+
+        if (!txtPC.hasFocus()) txtPC.setText(String.format("%04X", snap.pc));
+        if (!txtX.hasFocus()) txtX.setText(String.format("%04X", snap.x));
+        if (!txtY.hasFocus()) txtY.setText(String.format("%04X", snap.y));
+        if (!txtU.hasFocus()) txtU.setText(String.format("%04X", snap.u));
+        if (!txtS.hasFocus()) txtS.setText(String.format("%04X", snap.s));
+
+        txtCC.setText(String.format("%8s", Integer.toBinaryString(snap.cc)).replace(' ', '0'));
+
+        drainTerminal();
+        disassemblyView.refresh(snap.pc, snap.dirtyPages);
+
+        // Seules les lignes visibles des pages modifiées sont signalées au tableau
+        Rectangle view = memoryTable.getVisibleRect();
+        int firstRow = memoryTable.rowAtPoint(view.getLocation());
+        int lastRow = memoryTable.rowAtPoint(new Point(view.x, view.y + view.height - 1));
+        if (lastRow < 0) lastRow = memoryModel.getRowCount() - 1;
+        memoryModel.pagesChanged(snap.dirtyPages, firstRow, lastRow);
     }
 
-    private void updateUI() {
-        if (!txtA.hasFocus()) txtA.setText(String.format("%02X", cpu.A));
-        if (!txtB.hasFocus()) txtB.setText(String.format("%02X", cpu.B));
-        if (!txtD.hasFocus()) txtD.setText(String.format("%04X", cpu.getD()));
-        if (!txtDP.hasFocus()) txtDP.setText(String.format("%02X", cpu.DP));
-
-        if (!txtPC.hasFocus()) txtPC.setText(String.format("%04X", cpu.PC));
-        if (!txtX.hasFocus()) txtX.setText(String.format("%04X", cpu.X));
-        if (!txtY.hasFocus()) txtY.setText(String.format("%04X", cpu.Y));
-        if (!txtU.hasFocus()) txtU.setText(String.format("%04X", cpu.U));
-        if (!txtS.hasFocus()) txtS.setText(String.format("%04X", cpu.S));
-
-        txtCC.setText(String.format("%8s", Integer.toBinaryString(cpu.CC)).replace(' ', '0'));
-
-        for (int i = 0; i < 100; i++) {
-            String value = cpu.memoryRevealed[i] ? String.format("%02X", cpu.memory[i]) : "--";
-            memoryModel.setValueAt(value, i, 1);
+    // Une seule modification du document par rafraîchissement, historique borné ; les caractères
+    // écrasés dans le tampon sont signalés à leur place, avant ceux qui les ont remplacés
+    private void drainTerminal() {
+        pendingOutput.setLength(0);
+        int drained = terminalRing.drainTo(pendingOutput);
+        long lost = terminalRing.getLost();
+        if (lost > reportedLost) {
+            pendingOutput.insert(0, "\n[" + (lost - reportedLost) + " caractères perdus]\n");
+            reportedLost = lost;
+        } else if (drained == 0) {
+            return;
+        }
+        terminalOutput.append(pendingOutput.toString());
+        Document doc = terminalOutput.getDocument();
+        int excess = doc.getLength() - SCROLLBACK_CHARS;
+        if (excess > 0) {
+            try {
+                doc.remove(0, excess);
+            } catch (BadLocationException ignored) {}
+        }
+    }
+
+    /**
+     * Copie des registres et des pages mémoire modifiées, prise par le thread qui possède le CPU
+     * puis affichée par l'EDT. Le contenu mémoire, lui, est lu à la demande par {@link MemoryTableModel}.
+     */
+    private static final class Snapshot {
+        final int a, b, dp, pc, x, y, u, s, cc;
+        final long[] dirtyPages = new long[4];
+        final long instructions, nanos;
+
+        Snapshot(CPU6809_V6 cpu, InstructionDecoder_V6 decoder, long nanos) {
+            a = cpu.A;
+            b = cpu.B;
+            dp = cpu.DP;
+            pc = cpu.PC;
+            x = cpu.X;
+            y = cpu.Y;
+            u = cpu.U;
+            s = cpu.S;
+            cc = cpu.getCC();
+            cpu.takeDirtyPages(dirtyPages);
+            instructions = decoder.getInstructionCount();
+            this.nanos = nanos;
+        }
+
+        // Reprend les pages d'un instantané remplacé avant d'avoir été affiché
+        void merge(Snapshot dropped) {
+            if (dropped == null) return;
+            for (int i = 0; i < dirtyPages.length; i++) dirtyPages[i] |= dropped.dirtyPages[i];
         }
     }
 
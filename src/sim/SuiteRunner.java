@@ -0,0 +1,328 @@
+package sim;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Exécution parallèle de nombreux programmes, chacun sur son propre CPU, avec vérification
+ * d'assertions : fichiers .asm annotés (lignes {@code ;@expect}) et programmes aléatoires (fuzzing)
+ * comparés à l'interpréteur historique. Les tâches sont réparties sur un pool à vol de tâches.
+ * Usage : java -cp src sim.SuiteRunner [--threads N] [--fuzz N] [--size N] [--seed S]
+ *         [--jit] [--scaling] [--verbose] [fichiers.asm|dossiers ...]
+ *
+ * Syntaxe des attentes (plusieurs lignes possibles, valeurs en hexadécimal) :
+ * <pre>
+ * ;@expect stop=HALT PC=002D A=00 D=1234 CC=05 Z=1 C=0 [2010]=AA out=HI
+ * ;@max 100000
+ * </pre>
+ */
+public class SuiteRunner {
+    private static final long DEFAULT_FUZZ_SEED = 6809;
+    private static final int DEFAULT_FUZZ_SIZE = 500;
+    private static final String FLAG_NAMES = "CVZNIHFE";
+
+    /** Résultat d'une tâche : échecs éventuels, instructions exécutées et durée. */
+    public static final class JobResult {
+        public final String name;
+        public final List<String> failures;
+        public final long instructions;
+        public final long nanos;
+
+        JobResult(String name, List<String> failures, long instructions, long nanos) {
+            this.name = name;
+            this.failures = failures;
+            this.instructions = instructions;
+            this.nanos = nanos;
+        }
+
+        public boolean passed() {
+            return failures.isEmpty();
+        }
+    }
+
+    /** Attentes déclarées dans un source par les commentaires {@code ;@expect} et {@code ;@max}. */
+    public static final class Expectations {
+        final List<String> assertions = new ArrayList<>();
+        long maxInstructions = BatchRunner.DEFAULT_MAX_INSTRUCTIONS;
+
+        public static Expectations parse(String source) {
+            Expectations e = new Expectations();
+            for (String line : source.split("\n")) {
+                String t = line.trim();
+                if (t.startsWith(";@expect")) {
+                    for (String a : t.substring(8).trim().split("\\s+")) {
+                        if (!a.isEmpty()) e.assertions.add(a);
+                    }
+                } else if (t.startsWith(";@max")) {
+                    e.maxInstructions = Long.parseLong(t.substring(5).trim());
+                }
+            }
+            return e;
+        }
+
+        public boolean isEmpty() {
+            return assertions.isEmpty();
+        }
+
+        /** @return la liste des assertions non vérifiées (vide si tout est conforme) */
+        public List<String> check(BatchRunner runner) {
+            List<String> failures = new ArrayList<>();
+            CPU6809_V6 cpu = runner.getCpu();
+            for (String a : assertions) {
+                int eq = a.indexOf('=');
+                if (eq <= 0) {
+                    failures.add("attente illisible : " + a);
+                    continue;
+                }
+                String key = a.substring(0, eq).toUpperCase();
+                String want = a.substring(eq + 1);
+                String actual;
+                try {
+                    actual = actual(key, runner, cpu);
+                    if (actual == null) {
+                        failures.add("attente inconnue : " + a);
+                        continue;
+                    }
+                    boolean ok = key.equals("STOP") || key.equals("OUT")
+                            ? actual.equalsIgnoreCase(want)
+                            : Integer.parseInt(actual, 16) == Integer.parseInt(want, 16);
+                    if (!ok) failures.add(a.substring(0, eq) + " attendu " + want + ", obtenu " + actual);
+                } catch (NumberFormatException ex) {
+                    failures.add("valeur illisible : " + a);
+                }
+            }
+            return failures;
+        }
+
+        private static String actual(String key, BatchRunner runner, CPU6809_V6 cpu) {
+            if (key.startsWith("[") && key.endsWith("]")) {
+                return String.format("%02X", cpu.memory.read(Integer.parseInt(key.substring(1, key.length() - 1), 16)));
+            }
+            switch (key) {
+                case "STOP": return String.valueOf(runner.getStopReason());
+                case "OUT": return runner.getTerminalOutput();
+                case "PC": return String.format("%04X", cpu.PC);
+                case "A": return String.format("%02X", cpu.A);
+                case "B": return String.format("%02X", cpu.B);
+                case "D": return String.format("%04X", cpu.getD());
+                case "DP": return String.format("%02X", cpu.DP);
+                case "X": return String.format("%04X", cpu.X);
+                case "Y": return String.format("%04X", cpu.Y);
+                case "U": return String.format("%04X", cpu.U);
+                case "S": return String.format("%04X", cpu.S);
+                case "CC": return String.format("%02X", cpu.getCC());
+                default:
+                    int flag = key.length() == 1 ? FLAG_NAMES.indexOf(key.charAt(0)) : -1;
+                    if (flag < 0) return null;
+                    return cpu.testFlag(1 << flag) ? "1" : "0";
+            }
+        }
+    }
+
+    /** Tâche : un fichier .asm et ses attentes. */
+    static Callable<JobResult> asmJob(String name, String source) {
+        return () -> {
+            Expectations expect = Expectations.parse(source);
+            BatchRunner runner = new BatchRunner();
+            long start = System.nanoTime();
+            runner.load(source);
+            runner.run(expect.maxInstructions);
+            List<String> failures = expect.check(runner);
+            if (expect.isEmpty()) failures.add("aucune attente ;@expect");
+            return new JobResult(name, failures, runner.getDecoder().getInstructionCount(), System.nanoTime() - start);
+        };
+    }
+
+    /**
+     * Tâche de fuzzing : un programme aléatoire (boucles et sauts compris) exécuté par l'interpréteur historique (référence,
+     * flags immédiats), par le mode batch (blocs, flags paresseux) et, si {@code jit}, par le JIT
+     * (seuil 1 ; chaque bloc compilé coûte environ 1 ms). L'état final (registres, CC, mémoire)
+     * doit être identique. Les instructions comptées sont celles de tous les moteurs, référence comprise.
+     */
+    static Callable<JobResult> fuzzJob(long seed, int size, boolean jit) {
+        return () -> {
+            String name = "fuzz#" + seed;
+            String source = RandomPrograms.generateWithBranches(new Random(seed), size);
+            long start = System.nanoTime();
+
+            // Assemblé une seule fois, l'image est recopiée dans les autres CPU
+            CPU6809_V6 ref = new CPU6809_V6();
+            new MiniAssembler_V6().assemble(source, ref);
+            BatchRunner runner = new BatchRunner();
+            CPU6809_V6 jitCpu = new CPU6809_V6();
+            for (int addr = 0; addr < Memory.SIZE; addr++) {
+                int val = ref.memory.read(addr);
+                if (val != 0) {
+                    runner.getCpu().memory.write(addr, val);
+                    jitCpu.memory.write(addr, val);
+                }
+            }
+
+            // Référence pas à pas (switch fusionné) ; le mode batch passe par les blocs et les handlers
+            InstructionDecoder_V6 refDecoder = new InstructionDecoder_V6(ref);
+            try {
+                while (refDecoder.getInstructionCount() < 10L * size + 10) refDecoder.executeNext();
+            } catch (Exception halt) {
+                // HALT attendu en fin de programme
+            }
+
+            runner.run(10L * size + 10);
+
+            InstructionDecoder_V6 jitDecoder = new InstructionDecoder_V6(jitCpu);
+            if (jit) {
+                JitTier tier = new JitTier(jitCpu, jitDecoder, 1);
+                try {
+                    for (long n = 0; n < 10L * size + 10; ) n += tier.executeBlock();
+                } catch (Exception halt) {
+                    // idem
+                }
+            }
+
+            List<String> failures = new ArrayList<>();
+            compare("batch", ref, runner.getCpu(), failures);
+            if (jit) compare("jit", ref, jitCpu, failures);
+            if (runner.getStopReason() != BatchRunner.StopReason.HALT) failures.add("batch : arrêt " + runner.getStopReason());
+            long executed = refDecoder.getInstructionCount() + runner.getDecoder().getInstructionCount()
+                    + jitDecoder.getInstructionCount();
+            return new JobResult(name, failures, executed, System.nanoTime() - start);
+        };
+    }
+
+    private static void compare(String engine, CPU6809_V6 ref, CPU6809_V6 cpu, List<String> failures) {
+        int[] want = {ref.PC, ref.A, ref.B, ref.DP, ref.getCC(), ref.X, ref.Y, ref.U, ref.S};
+        int[] got = {cpu.PC, cpu.A, cpu.B, cpu.DP, cpu.getCC(), cpu.X, cpu.Y, cpu.U, cpu.S};
+        String[] names = {"PC", "A", "B", "DP", "CC", "X", "Y", "U", "S"};
+        for (int i = 0; i < want.length; i++) {
+            if (want[i] != got[i]) failures.add(String.format("%s : %s=%04X, référence %04X", engine, names[i], got[i], want[i]));
+        }
+        if (!cpu.memory.contentEquals(ref.memory)) failures.add(engine + " : mémoire différente");
+    }
+
+    /**
+     * Exécute toutes les tâches sur {@code threads} threads (pool à vol de tâches).
+     * @return les résultats dans l'ordre des tâches
+     */
+    public static List<JobResult> runAll(List<Callable<JobResult>> jobs, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newWorkStealingPool(threads);
+        try {
+            List<JobResult> results = new ArrayList<>(jobs.size());
+            List<Future<JobResult>> futures = pool.invokeAll(jobs);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    List<String> failures = new ArrayList<>();
+                    failures.add("exception : " + cause);
+                    results.add(new JobResult("tâche " + i, failures, 0, 0));
+                }
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    static List<Path> asmFiles(List<String> args) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            Path p = Paths.get(arg);
+            if (Files.isDirectory(p)) {
+                try (Stream<Path> s = Files.list(p)) {
+                    files.addAll(s.filter(f -> f.toString().endsWith(".asm")).sorted().collect(Collectors.toList()));
+                }
+            } else {
+                files.add(p);
+            }
+        }
+        return files;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int fuzz = 0;
+        int size = DEFAULT_FUZZ_SIZE;
+        long seed = DEFAULT_FUZZ_SEED;
+        boolean scaling = false, verbose = false, jit = false;
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads": threads = Integer.parseInt(args[++i]); break;
+                case "--fuzz": fuzz = Integer.parseInt(args[++i]); break;
+                case "--size": size = Integer.parseInt(args[++i]); break;
+                case "--seed": seed = Long.parseLong(args[++i]); break;
+                case "--scaling": scaling = true; break;
+                case "--verbose": verbose = true; break;
+                case "--jit": jit = true; break;
+                default: paths.add(args[i]);
+            }
+        }
+        if (paths.isEmpty() && fuzz == 0) {
+            // Par défaut : les programmes de test du dépôt
+            try (Stream<Path> s = Files.list(Paths.get("."))) {
+                s.map(Path::toString).filter(f -> f.matches(".*test_.*\\.asm")).sorted().forEach(paths::add);
+            }
+        }
+
+        List<Callable<JobResult>> jobs = new ArrayList<>();
+        for (Path file : asmFiles(paths)) {
+            jobs.add(asmJob(file.getFileName().toString(), new String(Files.readAllBytes(file), StandardCharsets.UTF_8)));
+        }
+        for (int i = 0; i < fuzz; i++) jobs.add(fuzzJob(seed + i, size, jit));
+
+        if (scaling) {
+            System.out.println("== Passage à l'échelle : " + jobs.size() + " tâches ==");
+            runAll(jobs, threads); // chauffe
+            List<Integer> counts = new ArrayList<>();
+            for (int t = 1; t < threads; t *= 2) counts.add(t);
+            counts.add(threads);
+            double base = 0;
+            for (int t : counts) {
+                long start = System.nanoTime();
+                runAll(jobs, t);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                if (t == 1) base = seconds;
+                System.out.printf("%2d threads : %.3f s, accélération x%.2f%n", t, seconds, base / seconds);
+            }
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<JobResult> results = runAll(jobs, threads);
+        long wall = System.nanoTime() - start;
+        System.exit(summarize(results, wall, threads, verbose) ? 0 : 1);
+    }
+
+    /** Affiche les résultats et le récapitulatif ; @return true si toutes les tâches ont réussi. */
+    static boolean summarize(List<JobResult> results, long wallNanos, int threads, boolean verbose) {
+        long instructions = 0, busy = 0;
+        int failed = 0;
+        for (JobResult r : results) {
+            instructions += r.instructions;
+            busy += r.nanos;
+            if (!r.passed()) failed++;
+            if (verbose || !r.passed() || !r.name.startsWith("fuzz#")) {
+                System.out.printf("%-5s %-28s %10d instr %9.3f ms%s%n", r.passed() ? "OK" : "ÉCHEC", r.name,
+                        r.instructions, r.nanos / 1e6, r.passed() ? "" : "  " + String.join(" ; ", r.failures));
+            }
+        }
+        double seconds = wallNanos / 1e9;
+        System.out.printf("%d tâches, %d réussies, %d échecs sur %d threads%n",
+                results.size(), results.size() - failed, failed, threads);
+        System.out.printf("%d instructions en %.3f s : %.1f MIPS cumulés (parallélisme effectif x%.2f)%n",
+                instructions, seconds, instructions / seconds / 1e6, busy / (double) wallNanos);
+        return failed == 0;
+    }
+}
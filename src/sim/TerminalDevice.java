@@ -0,0 +1,62 @@
+package sim;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.IntConsumer;
+
+/**
+ * Terminal projeté en mémoire (page $D0 par défaut).
+ * $D000 en écriture : caractère envoyé à la sortie ; en lecture : prochain caractère saisi (0 si aucun).
+ * $D001 en lecture : état, bit 0 = un caractère saisi est disponible.
+ * Les autres adresses de la page lisent 0 et ignorent les écritures.
+ */
+public class TerminalDevice implements Device {
+    public static final int BASE = 0xD000;
+    public static final int DATA = 0x00, STATUS = 0x01;
+    public static final int STATUS_INPUT_READY = 0x01;
+
+    private final IntConsumer output;
+    private final ConcurrentLinkedQueue<Integer> input = new ConcurrentLinkedQueue<>();
+
+    public TerminalDevice(IntConsumer output) {
+        this.output = output;
+    }
+
+    /** Saisie clavier (appelable depuis un autre thread que celui du CPU). */
+    public void type(char c) {
+        input.add(c & 0xFF);
+    }
+
+    @Override
+    public int read(int addr) {
+        switch (addr & 0xFF) {
+            case DATA: {
+                Integer c = input.poll();
+                return c == null ? 0 : c;
+            }
+            case STATUS:
+                return input.isEmpty() ? 0 : STATUS_INPUT_READY;
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public void write(int addr, int value) {
+        if ((addr & 0xFF) == DATA) output.accept(value);
+    }
+
+    // État conservé : les caractères saisis pas encore lus (la sortie déjà émise ne se rejoue pas)
+    @Override
+    public byte[] saveState() {
+        Integer[] pending = input.toArray(new Integer[0]);
+        byte[] state = new byte[pending.length];
+        for (int i = 0; i < pending.length; i++) state[i] = (byte) (int) pending[i];
+        return state;
+    }
+
+    @Override
+    public void restoreState(byte[] state) {
+        input.clear();
+        for (byte b : state) input.add(b & 0xFF);
+    }
+}
@@ -0,0 +1,80 @@
+package sim;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.IntConsumer;
+
+/**
+ * Tampon circulaire sans verrou entre le thread du CPU (seul producteur) et l'EDT (seul consommateur)
+ * pour la sortie du terminal. Le producteur ne bloque jamais : si le consommateur prend du retard,
+ * les caractères les plus anciens sont écrasés et comptés comme perdus, l'affichage garde la fin.
+ */
+public class TerminalRing implements IntConsumer {
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private static final VarHandle TAIL;
+
+    static {
+        try {
+            TAIL = MethodHandles.lookup().findVarHandle(TerminalRing.class, "tail", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final byte[] buffer;
+    private final int mask;
+    // Nombre total d'octets écrits (producteur) / lus (consommateur)
+    private long tail;
+    private long head;
+    private long lost;
+
+    public TerminalRing() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /** @param capacity puissance de 2 */
+    public TerminalRing(int capacity) {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("Capacité non puissance de 2 : " + capacity);
+        buffer = new byte[capacity];
+        mask = capacity - 1;
+    }
+
+    /** Producteur : un caractère écrit en $D000. */
+    @Override
+    public void accept(int value) {
+        long t = tail;
+        buffer[(int) t & mask] = (byte) value;
+        TAIL.setRelease(this, t + 1);
+    }
+
+    /**
+     * Consommateur : ajoute à {@code out} tout ce qui a été écrit depuis l'appel précédent.
+     * @return le nombre de caractères ajoutés
+     */
+    public int drainTo(StringBuilder out) {
+        long t = (long) TAIL.getAcquire(this);
+        long h = head;
+        if (t - h > buffer.length) {
+            lost += t - h - buffer.length;
+            h = t - buffer.length;
+        }
+        int n = (int) (t - h);
+        if (n == 0) return 0;
+        char[] chars = new char[n];
+        for (int i = 0; i < n; i++) chars[i] = (char) (buffer[(int) (h + i) & mask] & 0xFF);
+        // Le producteur a pu réécrire le début pendant la copie : ces caractères sont perdus
+        VarHandle.loadLoadFence();
+        long firstValid = (long) TAIL.getAcquire(this) - buffer.length;
+        int skip = (int) Math.max(0, Math.min(n, firstValid - h));
+        lost += skip;
+        head = t;
+        out.append(chars, skip, n - skip);
+        return n - skip;
+    }
+
+    /** Caractères écrasés avant d'avoir été lus. */
+    public long getLost() {
+        return lost;
+    }
+}
@@ -0,0 +1,58 @@
+package sim;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.function.IntConsumer;
+
+/**
+ * Sortie du terminal en mode sans interface : les caractères partent directement vers un flux
+ * (fichier ou sortie standard) à travers un tampon, vidé selon la politique choisie.
+ */
+public class TerminalStream implements IntConsumer, AutoCloseable {
+    /** Quand vider le tampon vers le flux. */
+    public enum FlushPolicy {
+        /** À chaque caractère (suivi en direct, le plus lent). */
+        CHAR,
+        /** À chaque fin de ligne. */
+        LINE,
+        /** Quand le tampon est plein et à la fermeture (le plus rapide). */
+        BUFFER
+    }
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private final FlushPolicy policy;
+    private final boolean closeTarget;
+
+    /**
+     * @param closeTarget false pour ne pas fermer le flux cible (System.out)
+     */
+    public TerminalStream(OutputStream target, FlushPolicy policy, boolean closeTarget) {
+        this.out = new BufferedOutputStream(target, BUFFER_SIZE);
+        this.policy = policy;
+        this.closeTarget = closeTarget;
+    }
+
+    @Override
+    public void accept(int value) {
+        try {
+            out.write(value);
+            if (policy == FlushPolicy.CHAR || (policy == FlushPolicy.LINE && value == '\n')) out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closeTarget) out.close();
+        else out.flush();
+    }
+}
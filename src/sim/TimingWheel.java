@@ -0,0 +1,206 @@
+package sim;
+
+/**
+ * Roue temporelle hiérarchique des périphériques, indexée par le compteur de cycles du CPU.
+ * {@link #LEVELS} niveaux de 64 cases : une échéance est rangée au niveau du groupe de 6 bits le plus
+ * haut où elle diffère du temps courant, dans la case donnée par ce groupe. Planifier ou annuler
+ * coûte O(1) (listes doublement chaînées), trouver la prochaine échéance un numberOfTrailingZeros
+ * sur le masque d'occupation du premier niveau non vide ; une case d'un niveau supérieur n'est
+ * redescendue (cascade) qu'au moment où le temps l'atteint.
+ *
+ * La roue ne place qu'un seul événement dans l'{@link InterruptController} : le réveil à sa
+ * prochaine échéance. Les périphériques ne sont donc jamais interrogés entre deux échéances.
+ */
+public final class TimingWheel {
+    static final int BITS = 6, SLOTS = 1 << BITS, LEVELS = 7;
+    /** Délai maximal d'une échéance (2^42 cycles, plus de 50 jours à 1 MHz). */
+    public static final long MAX_DELAY = 1L << (BITS * LEVELS);
+
+    /** Échéance réutilisable d'un périphérique ; au plus une planification à la fois. */
+    public static final class Timer {
+        private final TimingWheel wheel;
+        private final InterruptController.Event action;
+        private Timer prev, next;
+        private int level = -1, slot;
+        private long due;
+
+        private Timer(TimingWheel wheel, InterruptController.Event action) {
+            this.wheel = wheel;
+            this.action = action;
+        }
+
+        /** (Re)planifie au cycle absolu {@code cycle} ; un cycle passé déclenche à la prochaine instruction. */
+        public void schedule(long cycle) {
+            wheel.schedule(this, cycle);
+        }
+
+        /** Planifie dans {@code delay} cycles à partir du cycle courant du CPU. */
+        public void scheduleIn(long delay) {
+            wheel.schedule(this, wheel.cpu.cycles + delay);
+        }
+
+        public void cancel() {
+            if (level >= 0) wheel.cancel(this);
+        }
+
+        public boolean isScheduled() {
+            return level >= 0;
+        }
+
+        /** Cycle demandé ; n'a de sens que si {@link #isScheduled()}. */
+        public long due() {
+            return due;
+        }
+    }
+
+    private final CPU6809_V6 cpu;
+    private final Timer[][] heads = new Timer[LEVELS][SLOTS];
+    private final long[] occupied = new long[LEVELS];
+    private long current;
+    private int count;
+    // Vrai pendant advance() : current désigne alors la case en cours de vidage et ne doit pas bouger
+    private boolean advancing;
+    // Réveil placé dans le contrôleur d'interruptions (Long.MAX_VALUE = aucun)
+    private final InterruptController.Event wake = cycle -> advance();
+    private long wakeAt = Long.MAX_VALUE;
+
+    TimingWheel(CPU6809_V6 cpu) {
+        this.cpu = cpu;
+    }
+
+    public Timer newTimer(InterruptController.Event action) {
+        return new Timer(this, action);
+    }
+
+    /** Nombre d'échéances planifiées. */
+    public int size() {
+        return count;
+    }
+
+    /** Cycle de la prochaine échéance (ou d'une cascade qui la précède), {@code Long.MAX_VALUE} si aucune. */
+    public long nextDue() {
+        for (int level = 0; level < LEVELS; level++) {
+            long bits = occupied[level];
+            if (bits == 0) continue;
+            int shift = BITS * level;
+            long base = current >>> (shift + BITS) << (shift + BITS);
+            return base | (long) Long.numberOfTrailingZeros(bits) << shift;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private void schedule(Timer timer, long cycle) {
+        if (timer.level >= 0) unlink(timer);
+        // Roue vide : rattraper le temps évite des cascades inutiles (pas pendant un vidage, où une
+        // replanification rangée par rapport au cycle courant tomberait dans la case vidée)
+        if (count == 0 && !advancing && cpu.cycles > current) current = cpu.cycles;
+        if (cycle - current >= MAX_DELAY) throw new IllegalArgumentException("Échéance trop lointaine : " + cycle);
+        timer.due = Math.max(cycle, current);
+        insert(timer);
+        count++;
+        rearm();
+    }
+
+    private void cancel(Timer timer) {
+        unlink(timer);
+        count--;
+        rearm();
+    }
+
+    private void insert(Timer timer) {
+        long diff = timer.due ^ current;
+        int level = diff == 0 ? 0 : (63 - Long.numberOfLeadingZeros(diff)) / BITS;
+        int slot = (int) (timer.due >>> (BITS * level)) & (SLOTS - 1);
+        Timer head = heads[level][slot];
+        timer.level = level;
+        timer.slot = slot;
+        timer.prev = null;
+        timer.next = head;
+        if (head != null) head.prev = timer;
+        heads[level][slot] = timer;
+        occupied[level] |= 1L << slot;
+    }
+
+    private void unlink(Timer timer) {
+        int level = timer.level, slot = timer.slot;
+        if (timer.prev != null) timer.prev.next = timer.next;
+        else heads[level][slot] = timer.next;
+        if (timer.next != null) timer.next.prev = timer.prev;
+        if (heads[level][slot] == null) occupied[level] &= ~(1L << slot);
+        timer.prev = timer.next = null;
+        timer.level = -1;
+    }
+
+    /** Déclenche, dans l'ordre des cycles, les échéances atteintes par le CPU. */
+    void advance() {
+        long now = cpu.cycles;
+        wakeAt = Long.MAX_VALUE;
+        advancing = true;
+        try {
+            long next;
+            while ((next = nextDue()) <= now) {
+                current = next;
+                int level = 0;
+                while (occupied[level] == 0) level++;
+                int slot = Long.numberOfTrailingZeros(occupied[level]);
+                // Une échéance à la fois : un rappel peut annuler ou replanifier les autres de la case
+                Timer timer;
+                while ((timer = heads[level][slot]) != null) {
+                    unlink(timer);
+                    if (level == 0) {
+                        count--;
+                        timer.action.fire(timer.due);
+                    } else {
+                        // Cascade : l'échéance redescend d'au moins un niveau
+                        insert(timer);
+                    }
+                }
+            }
+        } finally {
+            advancing = false;
+        }
+        // Aucune échéance avant now : avancer le temps courant garde le rangement valide
+        current = now;
+        rearm();
+    }
+
+    /**
+     * Décale toutes les échéances de {@code elapsed} cycles vers le passé, quand le compteur
+     * de cycles du CPU recule d'autant (reset, restauration d'un instantané).
+     */
+    void rebase(long elapsed) {
+        if (elapsed == 0) return;
+        Timer all = null;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                for (Timer timer = heads[level][slot]; timer != null; ) {
+                    Timer following = timer.next;
+                    timer.next = all;
+                    all = timer;
+                    timer = following;
+                }
+                heads[level][slot] = null;
+            }
+            occupied[level] = 0;
+        }
+        current = Math.max(0, current - elapsed);
+        for (Timer timer = all; timer != null; ) {
+            Timer following = timer.next;
+            timer.due = Math.max(current, timer.due - elapsed);
+            insert(timer);
+            timer = following;
+        }
+        // Le contrôleur a déjà décalé le réveil : seule la référence locale change
+        if (wakeAt != Long.MAX_VALUE) wakeAt -= elapsed;
+        rearm();
+    }
+
+    // Un seul événement dans la file du contrôleur, déplacé seulement si la prochaine échéance change
+    private void rearm() {
+        long next = nextDue();
+        if (next == wakeAt) return;
+        if (wakeAt != Long.MAX_VALUE) cpu.interrupts.cancel(wake);
+        wakeAt = next;
+        if (next != Long.MAX_VALUE) cpu.interrupts.schedule(next, wake);
+    }
+}
@@ -0,0 +1,247 @@
+package sim;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Lecture en flux d'une trace écrite par {@link TraceRecorder}.
+ * Le fichier est projeté par fenêtres de 64 Mo en lecture seule : une trace de plusieurs Go
+ * se parcourt sans être chargée dans le tas. Le lecteur est un curseur (pas d'objet par
+ * enregistrement) : {@link #next()} avance, les accesseurs lisent l'enregistrement courant.
+ *
+ * Usage : java -cp src sim.TraceReader trace.bin [--from N] [--count N] [--pc 0010-0020]
+ *         [--write 0200-020F] [--op LDA] [--stats]
+ */
+public final class TraceReader implements AutoCloseable {
+    private final FileChannel channel;
+    private final long records;
+    private final long startCycles;
+    private MappedByteBuffer window;
+    private long windowStart = -1;
+    private long index = -1;
+    private int o;
+
+    public TraceReader(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        ByteBuffer header = ByteBuffer.allocate(TraceRecorder.HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header) >= 0) { }
+        if (header.position() < TraceRecorder.HEADER_SIZE || header.getInt(0) != TraceRecorder.MAGIC) {
+            channel.close();
+            throw new IOException("Pas une trace 6809 : " + path);
+        }
+        if (header.getShort(4) != TraceRecorder.VERSION || header.getShort(6) != TraceRecorder.RECORD_SIZE) {
+            channel.close();
+            throw new IOException("Version de trace non supportée : " + path);
+        }
+        long stored = header.getLong(8);
+        long available = (channel.size() - TraceRecorder.HEADER_SIZE) / TraceRecorder.RECORD_SIZE;
+        records = Math.min(stored, available);
+        startCycles = header.getLong(16);
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getStartCycles() {
+        return startCycles;
+    }
+
+    /** Place le curseur juste avant l'enregistrement {@code n}. */
+    public void seek(long n) {
+        index = Math.max(-1, Math.min(n, records) - 1);
+    }
+
+    /** Passe à l'enregistrement suivant ; faux en fin de trace. */
+    public boolean next() throws IOException {
+        if (index + 1 >= records) return false;
+        index++;
+        long pos = TraceRecorder.HEADER_SIZE + index * TraceRecorder.RECORD_SIZE;
+        if (window == null || pos < windowStart || pos + TraceRecorder.RECORD_SIZE > windowStart + window.capacity()) {
+            windowStart = pos - pos % TraceRecorder.SEGMENT_SIZE;
+            long length = Math.min(TraceRecorder.SEGMENT_SIZE, channel.size() - windowStart);
+            window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+        }
+        o = (int) (pos - windowStart);
+        return true;
+    }
+
+    /** Numéro de l'enregistrement courant (0 = première instruction tracée). */
+    public long index() {
+        return index;
+    }
+
+    public int pc() {
+        return window.getShort(o) & 0xFFFF;
+    }
+
+    /** Les 4 octets à partir de PC, groupés comme pour {@link Disassembler}. */
+    public int bytes() {
+        return window.getInt(o + 2);
+    }
+
+    public int changed() {
+        return window.get(o + 6) & 0xFF;
+    }
+
+    public int cycles() {
+        return window.get(o + 7) & 0xFF;
+    }
+
+    public int a() { return window.get(o + 8) & 0xFF; }
+
+    public int b() { return window.get(o + 9) & 0xFF; }
+
+    public int dp() { return window.get(o + 10) & 0xFF; }
+
+    public int cc() { return window.get(o + 11) & 0xFF; }
+
+    public int x() { return window.getShort(o + 12) & 0xFFFF; }
+
+    public int y() { return window.getShort(o + 14) & 0xFFFF; }
+
+    public int u() { return window.getShort(o + 16) & 0xFFFF; }
+
+    public int s() { return window.getShort(o + 18) & 0xFFFF; }
+
+    public int flags() {
+        return window.get(o + 20) & 0xFF;
+    }
+
+    /** Nombre d'écritures de l'instruction (les deux premières sont détaillées). */
+    public int writeCount() {
+        return window.get(o + 21) & 0xFF;
+    }
+
+    public int writeAddr(int i) {
+        return window.getShort(o + (i == 0 ? 22 : 26)) & 0xFFFF;
+    }
+
+    public int writeValue(int i) {
+        return window.get(o + (i == 0 ? 24 : 25)) & 0xFF;
+    }
+
+    public boolean hasRead() {
+        return (flags() & TraceRecorder.HAS_READ) != 0;
+    }
+
+    public int readAddr() {
+        return window.getShort(o + 28) & 0xFFFF;
+    }
+
+    public int readValue() {
+        return window.get(o + 30) & 0xFF;
+    }
+
+    /** Vrai si l'instruction courante a écrit dans [from, to] (écritures détaillées seulement). */
+    public boolean wrote(int from, int to) {
+        int n = Math.min(2, writeCount());
+        for (int i = 0; i < n; i++) {
+            int addr = writeAddr(i);
+            if (addr >= from && addr <= to) return true;
+        }
+        return false;
+    }
+
+    /** Ligne lisible de l'enregistrement courant : instruction, registres modifiés, effets mémoire. */
+    public String describe(Disassembler disassembler) {
+        StringBuilder sb = new StringBuilder(96);
+        sb.append(String.format("#%-10d %04X  %-14s", index, pc(), disassembler.format(pc(), bytes())));
+        int changed = changed();
+        if ((changed & TraceRecorder.REG_A) != 0) sb.append(String.format(" A=%02X", a()));
+        if ((changed & TraceRecorder.REG_B) != 0) sb.append(String.format(" B=%02X", b()));
+        if ((changed & TraceRecorder.REG_DP) != 0) sb.append(String.format(" DP=%02X", dp()));
+        if ((changed & TraceRecorder.REG_CC) != 0) sb.append(String.format(" CC=%02X", cc()));
+        if ((changed & TraceRecorder.REG_X) != 0) sb.append(String.format(" X=%04X", x()));
+        if ((changed & TraceRecorder.REG_Y) != 0) sb.append(String.format(" Y=%04X", y()));
+        if ((changed & TraceRecorder.REG_U) != 0) sb.append(String.format(" U=%04X", u()));
+        if ((changed & TraceRecorder.REG_S) != 0) sb.append(String.format(" S=%04X", s()));
+        if (hasRead()) sb.append(String.format("  [%04X]->%02X", readAddr(), readValue()));
+        int writes = writeCount();
+        for (int i = 0; i < Math.min(2, writes); i++) {
+            sb.append(String.format("  [%04X]<-%02X", writeAddr(i), writeValue(i)));
+        }
+        if (writes > 2) sb.append(" (+").append(writes - 2).append(')');
+        if ((flags() & TraceRecorder.INTERRUPTED) != 0) sb.append("  [interrompue]");
+        return sb.toString();
+    }
+
+    @Override
+    public void close() throws IOException {
+        window = null;
+        channel.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.out.println("Usage : java sim.TraceReader trace.bin [--from N] [--count N] [--pc 0010-0020]"
+                    + " [--write 0200-020F] [--op LDA] [--stats]");
+            return;
+        }
+        long from = 0, count = Long.MAX_VALUE;
+        int pcFrom = 0, pcTo = 0xFFFF, writeFrom = -1, writeTo = -1;
+        String op = null;
+        boolean stats = false;
+        for (int i = 1; i < args.length; i++) {
+            switch (args[i]) {
+                case "--from": from = Long.parseLong(args[++i]); break;
+                case "--count": count = Long.parseLong(args[++i]); break;
+                case "--pc": {
+                    int[] range = parseRange(args[++i]);
+                    pcFrom = range[0];
+                    pcTo = range[1];
+                    break;
+                }
+                case "--write": {
+                    int[] range = parseRange(args[++i]);
+                    writeFrom = range[0];
+                    writeTo = range[1];
+                    break;
+                }
+                case "--op": op = args[++i].toUpperCase(); break;
+                case "--stats": stats = true; break;
+                default:
+                    System.err.println("Option inconnue : " + args[i]);
+                    return;
+            }
+        }
+
+        Disassembler disassembler = new Disassembler(new InstructionDecoder_V6(new CPU6809_V6()));
+        PrintStream out = new PrintStream(new java.io.BufferedOutputStream(System.out, 1 << 16), false);
+        long start = System.nanoTime();
+        long scanned = 0, matched = 0, cycles = 0;
+        try (TraceReader reader = new TraceReader(Paths.get(args[0]))) {
+            reader.seek(from);
+            while (matched < count && reader.next()) {
+                scanned++;
+                cycles += reader.cycles();
+                int pc = reader.pc();
+                if (pc < pcFrom || pc > pcTo) continue;
+                if (writeFrom >= 0 && !reader.wrote(writeFrom, writeTo)) continue;
+                if (op != null && !disassembler.format(pc, reader.bytes()).startsWith(op)) continue;
+                matched++;
+                if (!stats) out.println(reader.describe(disassembler));
+            }
+            out.flush();
+            if (stats || matched == 0) {
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("%d enregistrements dans la trace, %d parcourus, %d retenus, %d cycles ;"
+                                + " %.0f enregistrements/s%n",
+                        reader.getRecords(), scanned, matched, cycles, seconds > 0 ? scanned / seconds : 0);
+            }
+        }
+    }
+
+    private static int[] parseRange(String text) {
+        int dash = text.indexOf('-');
+        int from = Integer.parseInt((dash < 0 ? text : text.substring(0, dash)).trim(), 16);
+        int to = dash < 0 ? from : Integer.parseInt(text.substring(dash + 1).trim(), 16);
+        return new int[]{from, to};
+    }
+}
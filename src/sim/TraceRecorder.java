@@ -0,0 +1,180 @@
+package sim;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Trace binaire d'exécution : un enregistrement de {@link #RECORD_SIZE} octets par instruction,
+ * écrit directement dans le fichier par segments projetés en mémoire ({@link FileChannel#map}).
+ * Aucune allocation ni appel système par instruction ; un nouveau segment de 64 Mo est projeté
+ * quand le précédent est plein. Relecture : {@link TraceReader}.
+ *
+ * En-tête ({@link #HEADER_SIZE} octets) : magique, version, taille d'enregistrement,
+ * nombre d'enregistrements, cycles au début de la trace.
+ * Enregistrement (gros-boutiste) :
+ * <pre>
+ *  0 PC (2)            2 octets de l'instruction (4)   6 registres modifiés (bits A B DP CC X Y U S)
+ *  7 cycles (1)        8 A B DP CC après (4)          12 X Y U S après (8)
+ * 20 indicateurs (1)  21 nombre d'écritures (1)       22 1re écriture : adresse (2) valeur (1)
+ * 25 2e écriture : valeur (1) adresse (2)             28 1re lecture : adresse (2) valeur (1)
+ * 31 réservé
+ * </pre>
+ */
+public final class TraceRecorder implements AutoCloseable {
+    public static final int MAGIC = 0x54383039; // "T809"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    public static final int RECORD_SIZE = 32;
+    static final long SEGMENT_SIZE = 64L << 20;
+
+    // Indicateurs
+    public static final int HAS_READ = 0x01, MORE_WRITES = 0x02, INTERRUPTED = 0x04;
+    // Bits du masque des registres modifiés
+    public static final int REG_A = 0x01, REG_B = 0x02, REG_DP = 0x04, REG_CC = 0x08,
+            REG_X = 0x10, REG_Y = 0x20, REG_U = 0x40, REG_S = 0x80;
+
+    private final CPU6809_V6 cpu;
+    private final FileChannel channel;
+    private final long startCycles;
+    private MappedByteBuffer segment;
+    private long segmentStart;
+    private int offset;
+    private long records;
+    private boolean closed;
+
+    // Instruction en cours
+    private boolean open;
+    private int pc, bytes, writes, flags, w1Addr, w1Value, w2Addr, w2Value, readAddr, readValue;
+    private long cycles;
+    // État écrit par l'enregistrement précédent (calcul du masque des registres modifiés)
+    private int a, b, dp, cc, x, y, u, s;
+
+    public TraceRecorder(Path path, CPU6809_V6 cpu) throws IOException {
+        this.cpu = cpu;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.startCycles = cpu.cycles;
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, SEGMENT_SIZE);
+        writeHeader(segment);
+        offset = HEADER_SIZE;
+        a = cpu.A; b = cpu.B; dp = cpu.DP; cc = cpu.getCC();
+        x = cpu.X; y = cpu.Y; u = cpu.U; s = cpu.S;
+    }
+
+    /** Appelé par le décodeur avant chaque instruction. */
+    void begin() throws IOException {
+        if (open) {
+            flags |= INTERRUPTED;
+            seal();
+        }
+        pc = cpu.PC & 0xFFFF;
+        bytes = Disassembler.fetch(cpu.memory, pc);
+        cycles = cpu.cycles;
+        writes = 0;
+        flags = 0;
+        open = true;
+    }
+
+    void recordRead(int addr, int value) {
+        if ((flags & HAS_READ) != 0 || !open) return;
+        flags |= HAS_READ;
+        readAddr = addr;
+        readValue = value;
+    }
+
+    void recordWrite(int addr, int value) {
+        if (!open) return;
+        if (writes == 0) {
+            w1Addr = addr;
+            w1Value = value;
+        } else if (writes == 1) {
+            w2Addr = addr;
+            w2Value = value;
+        } else {
+            flags |= MORE_WRITES;
+        }
+        if (writes < 255) writes++;
+    }
+
+    /** Appelé par le décodeur après chaque instruction. */
+    void end() throws IOException {
+        if (open) seal();
+    }
+
+    private void seal() throws IOException {
+        open = false;
+        if (offset + RECORD_SIZE > SEGMENT_SIZE) {
+            segmentStart += SEGMENT_SIZE;
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart, SEGMENT_SIZE);
+            offset = 0;
+        }
+        int nA = cpu.A & 0xFF, nB = cpu.B & 0xFF, nDP = cpu.DP & 0xFF, nCC = cpu.getCC();
+        int nX = cpu.X & 0xFFFF, nY = cpu.Y & 0xFFFF, nU = cpu.U & 0xFFFF, nS = cpu.S & 0xFFFF;
+        int changed = (nA != a ? REG_A : 0) | (nB != b ? REG_B : 0) | (nDP != dp ? REG_DP : 0) | (nCC != cc ? REG_CC : 0)
+                | (nX != x ? REG_X : 0) | (nY != y ? REG_Y : 0) | (nU != u ? REG_U : 0) | (nS != s ? REG_S : 0);
+        a = nA; b = nB; dp = nDP; cc = nCC; x = nX; y = nY; u = nU; s = nS;
+
+        MappedByteBuffer m = segment;
+        int o = offset;
+        m.putShort(o, (short) pc);
+        m.putInt(o + 2, bytes);
+        m.put(o + 6, (byte) changed);
+        m.put(o + 7, (byte) Math.min(255, cpu.cycles - cycles));
+        m.putInt(o + 8, nA << 24 | nB << 16 | nDP << 8 | nCC);
+        m.putLong(o + 12, (long) nX << 48 | (long) nY << 32 | (long) nU << 16 | nS);
+        m.put(o + 20, (byte) flags);
+        m.put(o + 21, (byte) writes);
+        m.putShort(o + 22, (short) w1Addr);
+        m.put(o + 24, (byte) w1Value);
+        m.put(o + 25, (byte) w2Value);
+        m.putShort(o + 26, (short) w2Addr);
+        m.putShort(o + 28, (short) readAddr);
+        m.put(o + 30, (byte) readValue);
+        m.put(o + 31, (byte) 0);
+        offset = o + RECORD_SIZE;
+        records++;
+    }
+
+    // Écrit aussi à l'ouverture : une trace interrompue reste lisible (nombre d'enregistrements nul)
+    private void writeHeader(MappedByteBuffer head) {
+        head.putInt(0, MAGIC);
+        head.putShort(4, (short) VERSION);
+        head.putShort(6, (short) RECORD_SIZE);
+        head.putLong(8, records);
+        head.putLong(16, startCycles);
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    /** Taille utile de la trace en octets (en-tête compris). */
+    public long size() {
+        return HEADER_SIZE + records * RECORD_SIZE;
+    }
+
+    /**
+     * Écrit l'en-tête puis ramène le fichier à sa taille utile. Si le système refuse de tronquer
+     * un fichier encore projeté, le nombre d'enregistrements de l'en-tête fait foi.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        if (open) {
+            flags |= INTERRUPTED;
+            seal();
+        }
+        closed = true;
+        writeHeader(segmentStart == 0 ? segment : channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE));
+        segment = null;
+        try {
+            channel.truncate(size());
+        } catch (IOException ignored) {
+            // Projection encore active (Windows) : le fichier garde la taille du dernier segment
+        }
+        channel.close();
+    }
+}
@@ -0,0 +1,82 @@
+package sim;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BatchRunnerTest {
+    private static final String COUNTER = " LDA #$01\nLOOP INCA\n STA $0200\n BRA LOOP\n";
+    // Boucle chaude de 255 tours puis FIN en $0008
+    private static final String WRAP = " LDA #$01\nLOOP INCA\n STA $0200\n BNE LOOP\nFIN NOP\n";
+
+    @Test
+    void breakpointStopsInstructionBudget() throws Exception {
+        BatchRunner runner = runner("0002");
+        assertEquals(BatchRunner.StopReason.BREAKPOINT, runner.run(1000));
+        assertEquals(0x0002, runner.getCpu().PC);
+    }
+
+    /** Un budget de cycles (cadencé ou non) ne doit pas faire ignorer breakpoints et watchpoints. */
+    @Test
+    void breakpointStopsCycleBudget() throws Exception {
+        for (long hz : new long[]{ClockPacer.UNTHROTTLED, 100_000}) {
+            BatchRunner runner = runner("0002");
+            assertEquals(BatchRunner.StopReason.BREAKPOINT, runner.runCycles(1000, hz), "horloge " + hz);
+            assertEquals(0x0002, runner.getCpu().PC);
+            assertEquals(BatchRunner.StopReason.BREAKPOINT, runner.runCycles(1000, hz), "reprise, horloge " + hz);
+            assertEquals(2, runner.getCpu().A);
+        }
+    }
+
+    @Test
+    void watchpointStopsCycleBudget() throws Exception {
+        BatchRunner runner = runner("w:0200");
+        assertEquals(BatchRunner.StopReason.WATCHPOINT, runner.runCycles(1000, ClockPacer.UNTHROTTLED));
+        assertEquals(2, runner.getCpu().memory.read(0x0200));
+    }
+
+    @Test
+    void cycleBudgetWithoutBreakpoints() throws Exception {
+        BatchRunner runner = runner("");
+        assertEquals(BatchRunner.StopReason.BUDGET, runner.runCycles(1000, ClockPacer.UNTHROTTLED));
+    }
+
+    /** Avec --jit, budgets d'instructions et de cycles aboutissent au même état qu'en interprétation. */
+    @Test
+    void jitMatchesInterpreter() throws Exception {
+        BatchRunner plain = runner("");
+        BatchRunner jit = runner("");
+        jit.enableJit();
+        assertEquals(plain.run(10_000), jit.run(10_000));
+        assertEquals(plain.runCycles(100_000, ClockPacer.UNTHROTTLED), jit.runCycles(100_000, ClockPacer.UNTHROTTLED));
+        assertEquals(ExecutionJournalTest.registers(plain.getCpu()), ExecutionJournalTest.registers(jit.getCpu()));
+        assertEquals(plain.getDecoder().getInstructionCount(), jit.getDecoder().getInstructionCount());
+        assertArrayEquals(ExecutionJournalTest.memory(plain.getCpu()), ExecutionJournalTest.memory(jit.getCpu()));
+    }
+
+    /** Sous breakpoints, le JIT exécute la boucle chaude compilée et s'arrête au breakpoint qui la suit. */
+    @Test
+    void jitStopsOnBreakpointAfterHotLoop() throws Exception {
+        for (boolean cycles : new boolean[]{false, true}) {
+            BatchRunner runner = new BatchRunner();
+            runner.load(WRAP);
+            runner.setBreakpoints(BreakpointEngine.parse("0008"));
+            JitTier jit = runner.enableJit();
+            BatchRunner.StopReason reason = cycles ? runner.runCycles(100_000, ClockPacer.UNTHROTTLED) : runner.run(100_000);
+            assertEquals(BatchRunner.StopReason.BREAKPOINT, reason);
+            assertEquals(0x0008, runner.getCpu().PC);
+            assertEquals(0, runner.getCpu().A);
+            assertEquals(2 + 255 * 10, runner.getCpu().cycles);
+            assertTrue(jit.getCompiledBlocks() > 0, "boucle non compilée");
+        }
+    }
+
+    private static BatchRunner runner(String breakpoints) throws Exception {
+        BatchRunner runner = new BatchRunner();
+        runner.load(COUNTER);
+        runner.setBreakpoints(BreakpointEngine.parse(breakpoints));
+        return runner;
+    }
+}
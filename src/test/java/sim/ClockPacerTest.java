@@ -0,0 +1,33 @@
+package sim;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClockPacerTest {
+    /** Sous 1 kHz, une tranche de 1 ms vaut moins d'un cycle : l'exécution doit quand même avancer. */
+    @Test
+    void lowClockRateMakesProgress() throws Exception {
+        BatchRunner runner = new BatchRunner();
+        runner.load(Benchmarks.LOOP_PROGRAM);
+        long start = System.nanoTime();
+        BatchRunner.StopReason reason = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> runner.runCycles(100, 500));
+        long nanos = System.nanoTime() - start;
+        assertEquals(BatchRunner.StopReason.BUDGET, reason);
+        assertTrue(runner.getCpu().cycles >= 100);
+        // 100 cycles à 500 Hz : 200 ms de temps émulé, rattrapés par l'horloge murale
+        assertTrue(nanos >= 150_000_000L, "exécution non cadencée : " + nanos / 1_000_000 + " ms");
+    }
+
+    @Test
+    void unthrottledRunsWholeBudget() throws Exception {
+        BatchRunner runner = new BatchRunner();
+        runner.load(Benchmarks.LOOP_PROGRAM);
+        assertEquals(BatchRunner.StopReason.BUDGET, runner.runCycles(1_000_000, ClockPacer.UNTHROTTLED));
+        assertTrue(runner.getCpu().cycles >= 1_000_000);
+    }
+}
@@ -0,0 +1,190 @@
+package sim;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExecutionJournalTest {
+    /**
+     * Retour arrière à des instants tirés au hasard dans des programmes aléatoires (pas à pas et blocs,
+     * anneau normal ou minuscule) : registres et mémoire égaux à ceux enregistrés à l'aller, puis
+     * ré-exécution identique.
+     */
+    @Test
+    void stepBackMatchesRecordedHistory() throws Exception {
+        for (int seed = 0; seed < 80; seed++) {
+            String name = "programme #" + seed;
+            Random rnd = new Random(seed);
+            CPU6809_V6 cpu = new CPU6809_V6();
+            cpu.setLazyFlags(seed % 2 == 0);
+            InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+            new MiniAssembler_V6().assemble(RandomPrograms.generateWithBranches(new Random(seed), 400), cpu);
+            ExecutionJournal journal = seed % 4 == 0 ? new ExecutionJournal(cpu, decoder, 0, 50) : new ExecutionJournal(cpu, decoder);
+            decoder.setJournal(journal);
+            List<String> states = new ArrayList<>();
+            Map<Integer, byte[]> memories = new HashMap<>();
+            states.add(registers(cpu));
+            memories.put(0, memory(cpu));
+            boolean blocks = seed % 3 != 0;
+            try {
+                while (states.size() < 3000) {
+                    if (blocks && rnd.nextBoolean()) decoder.executeBlock();
+                    else decoder.executeNext();
+                    while (states.size() < decoder.getInstructionCount()) states.add(null);
+                    states.add(registers(cpu));
+                    if (rnd.nextInt(50) == 0) memories.put(states.size() - 1, memory(cpu));
+                }
+            } catch (Exception halt) {
+                // Le HALT compte comme une instruction journalisée
+                while (states.size() < decoder.getInstructionCount()) states.add(null);
+                states.add(registers(cpu));
+                memories.put(states.size() - 1, memory(cpu));
+            }
+            assertEquals(states.size() - 1, journal.getTime(), name + " : temps du journal");
+
+            for (int k = 0; k < 15; k++) {
+                long target = rnd.nextInt((int) journal.getTime() + 1);
+                journal.stepBack(journal.getTime() - target);
+                assertEquals(target, journal.getTime(), name);
+                String expected = states.get((int) target);
+                if (expected != null) assertEquals(expected, registers(cpu), name + " : registres à t=" + target);
+                byte[] mem = memories.get((int) target);
+                if (mem != null) assertArrayEquals(mem, memory(cpu), name + " : mémoire à t=" + target);
+                int forward = rnd.nextInt(Math.max(1, states.size() - 1 - (int) target) + 1);
+                try {
+                    for (int i = 0; i < forward; i++) decoder.executeNext();
+                } catch (Exception halt) {
+                    // fin du programme
+                }
+                String again = states.get((int) journal.getTime());
+                if (again != null) assertEquals(again, registers(cpu), name + " : ré-exécution jusqu'à t=" + journal.getTime());
+            }
+        }
+    }
+
+    /** Au-delà de l'anneau, le retour passe par un instantané et une ré-exécution. */
+    @Test
+    void stepBackBeyondRingReplaysFromKeyframe() throws Exception {
+        Random rnd = new Random(6809);
+        CPU6809_V6 cpu = new CPU6809_V6();
+        cpu.setLazyFlags(true);
+        InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+        new MiniAssembler_V6().assemble(Benchmarks.LOOP_PROGRAM, cpu);
+        ExecutionJournal journal = new ExecutionJournal(cpu, decoder, 0, 300);
+        decoder.setJournal(journal);
+        List<String> states = new ArrayList<>();
+        states.add(registers(cpu));
+        for (int i = 0; i < 20_000; i++) {
+            decoder.executeNext();
+            states.add(registers(cpu));
+        }
+        assertTrue(journal.getKeyframeCount() > 0, "aucun instantané");
+        for (int k = 0; k < 30; k++) {
+            long target = rnd.nextInt((int) journal.getTime() + 1);
+            journal.stepBack(journal.getTime() - target);
+            assertEquals(states.get((int) target), registers(cpu), "registres à t=" + target);
+            int forward = rnd.nextInt(20_000 - (int) target + 1);
+            for (int i = 0; i < forward; i++) decoder.executeNext();
+            assertEquals(states.get((int) journal.getTime()), registers(cpu), "ré-exécution jusqu'à t=" + journal.getTime());
+        }
+        long back = journal.backToLastWrite(0x0200);
+        assertTrue(back >= 0, "aucune écriture en $0200 retrouvée");
+        assertEquals(0x0009, cpu.PC, "PC de la dernière écriture en $0200");
+    }
+
+    /** Annuler une entrée de NMI rend la NMI en attente ; la ré-exécution reprend le même chemin. */
+    @Test
+    void stepBackAcrossNmi() throws Exception {
+        CPU6809_V6 cpu = interruptMachine();
+        InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+        ExecutionJournal journal = new ExecutionJournal(cpu, decoder);
+        decoder.setJournal(journal);
+        decoder.executeNext();
+        decoder.executeNext();
+        String before = registers(cpu);
+        cpu.interrupts.raiseNMI();
+        List<String> forward = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            decoder.executeNext();
+            forward.add(registers(cpu));
+        }
+        assertEquals(0x0006, cpu.PC, "retour de la routine NMI");
+
+        journal.stepBack(3);
+        assertEquals(before, registers(cpu));
+        assertTrue(cpu.interrupts.isNMIPending(), "NMI consommée non rendue");
+        for (int i = 0; i < 3; i++) {
+            decoder.executeNext();
+            assertEquals(forward.get(i), registers(cpu), "ré-exécution, pas " + (i + 1));
+        }
+    }
+
+    /** Annuler CWAI lève l'attente (PC sur CWAI) ; annuler le réveil par NMI la rétablit. */
+    @Test
+    void stepBackAcrossCwai() throws Exception {
+        CPU6809_V6 cpu = interruptMachine();
+        InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+        ExecutionJournal journal = new ExecutionJournal(cpu, decoder);
+        decoder.setJournal(journal);
+        for (int i = 0; i < 3; i++) decoder.executeNext();
+        assertEquals(0x0007, cpu.PC);
+        String beforeCwai = registers(cpu);
+        decoder.executeNext();
+        assertTrue(cpu.interrupts.isWaiting(), "CWAI n'attend pas");
+        String waiting = registers(cpu);
+
+        journal.stepBack(1);
+        assertEquals(beforeCwai, registers(cpu));
+        assertFalse(cpu.interrupts.isWaiting(), "attente restée après l'annulation de CWAI");
+        decoder.executeNext();
+        assertTrue(cpu.interrupts.isWaiting());
+        assertEquals(waiting, registers(cpu));
+
+        cpu.interrupts.raiseNMI();
+        decoder.executeNext();
+        assertEquals(0x0100, cpu.PC, "réveil par la NMI");
+        String woken = registers(cpu);
+        journal.stepBack(1);
+        assertTrue(cpu.interrupts.isWaiting(), "attente CWAI non rétablie");
+        assertTrue(cpu.interrupts.isNMIPending(), "NMI du réveil non rendue");
+        decoder.executeNext();
+        assertEquals(woken, registers(cpu));
+        assertFalse(cpu.interrupts.isWaiting());
+    }
+
+    // LDS, LDA, NOP, CWAI, INCA ; routine NMI en $0100 : INCB, RTI
+    private static CPU6809_V6 interruptMachine() throws Exception {
+        CPU6809_V6 cpu = new CPU6809_V6();
+        new MiniAssembler_V6().assemble(" LDS #$8000\n LDA #$05\n NOP\n CWAI #$FF\n INCA\n", cpu);
+        cpu.memory.write(0x0100, 0x5C);
+        cpu.memory.write(0x0101, 0x3B);
+        cpu.memory.write(CPU6809_V6.VECTOR_NMI, 0x01);
+        cpu.memory.write(CPU6809_V6.VECTOR_NMI + 1, 0x00);
+        return cpu;
+    }
+
+    static String registers(CPU6809_V6 cpu) {
+        return String.format("%02X %02X %02X %02X %04X %04X %04X %04X %04X %d", cpu.A, cpu.B, cpu.DP, cpu.getCC(),
+                cpu.X, cpu.Y, cpu.U, cpu.S, cpu.PC, cpu.cycles);
+    }
+
+    static byte[] memory(CPU6809_V6 cpu) {
+        byte[] all = new byte[Memory.SIZE];
+        byte[] page = new byte[Memory.PAGE_SIZE];
+        for (int i = 0; i < Memory.PAGES; i++) {
+            cpu.memory.readPage(i, page);
+            System.arraycopy(page, 0, all, i * Memory.PAGE_SIZE, Memory.PAGE_SIZE);
+        }
+        return all;
+    }
+}
@@ -0,0 +1,82 @@
+package sim;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IdleSkipTest {
+    // Attente active du temporisateur (période de 4096 cycles), puis comptage en $0200
+    private static final String IDLE_PROGRAM =
+            "W LDA $D301\n BEQ W\n STA $D301\n LDD $0200\n ADDD #$0001\n STD $0200\n BRA W\n";
+
+    /** Une boucle d'attente avancée jusqu'à chaque échéance compte autant que si elle était interprétée. */
+    @Test
+    void skippedLoopMatchesInterpretedLoop() throws Exception {
+        long[] plain = run(false);
+        long[] skipped = run(true);
+        assertEquals(plain[0], skipped[0], "compteur en $0200");
+        assertEquals(0, plain[1]);
+        assertTrue(skipped[1] > 0, "aucun cycle avancé");
+    }
+
+    /** Tout opcode qui modifie la mémoire est marqué comme écrivant : sa boucle n'est jamais avancée. */
+    @Test
+    void writingOpcodesAreFlagged() throws Exception {
+        for (int page = InstructionDecoder_V6.PAGE_0; page <= InstructionDecoder_V6.PAGE_3; page++) {
+            for (int opcode = 0; opcode < 256; opcode++) {
+                CPU6809_V6 cpu = new CPU6809_V6();
+                InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+                String mnemonic = decoder.mnemonics[page][opcode];
+                if (mnemonic == null || mnemonic.equals("HALT")) continue;
+                // Préfixe, opcode puis opérandes valables pour tous les modes (indexé ,X ; direct $84 ; étendu $8420)
+                int pc = 0x1000;
+                if (page != InstructionDecoder_V6.PAGE_0) cpu.memory.write(pc++, page == InstructionDecoder_V6.PAGE_2 ? 0x10 : 0x11);
+                cpu.memory.write(pc, opcode);
+                cpu.memory.write(pc + 1, 0x84);
+                cpu.memory.write(pc + 2, 0x20);
+                cpu.PC = 0x1000;
+                cpu.A = 0x55;
+                cpu.B = 0xAA;
+                cpu.X = 0x3000;
+                cpu.Y = 0x6000;
+                cpu.U = 0x5000;
+                cpu.S = 0x4000;
+                byte[] before = ExecutionJournalTest.memory(cpu);
+                decoder.executeNext();
+                boolean changed = !Arrays.equals(before, ExecutionJournalTest.memory(cpu));
+                if (changed) assertTrue(decoder.writesMemory(page, opcode), mnemonic + " écrit sans être marqué");
+                else assertFalse(decoder.writesMemory(page, opcode), mnemonic + " marqué sans écrire");
+            }
+        }
+    }
+
+    /** La saisie du terminal arrive d'un autre thread : la boucle qui l'attend reste interprétée. */
+    @Test
+    void terminalPollingIsNotSkipped() throws Exception {
+        CPU6809_V6 cpu = new CPU6809_V6();
+        new MiniAssembler_V6().assemble("W LDA $D001\n BEQ W\n", cpu);
+        cpu.bus.mapDevice(TerminalDevice.BASE, new TerminalDevice(c -> { }));
+        InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+        decoder.setIdleSkip(true);
+        while (cpu.cycles < 100_000L) decoder.executeBlock();
+        assertEquals(0, decoder.getIdleSkippedCycles());
+        assertFalse(decoder.isHung());
+    }
+
+    // Compteur final et cycles avancés sans interprétation
+    private static long[] run(boolean idleSkip) throws Exception {
+        CPU6809_V6 cpu = new CPU6809_V6();
+        new MiniAssembler_V6().assemble(IDLE_PROGRAM, cpu);
+        new IntervalTimer(cpu).attach(IntervalTimer.BASE);
+        cpu.bus.write(IntervalTimer.BASE + IntervalTimer.LATCH_HI, 0x10);
+        cpu.bus.write(IntervalTimer.BASE, IntervalTimer.CTRL_RUN | IntervalTimer.CTRL_RELOAD);
+        InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+        decoder.setIdleSkip(idleSkip);
+        while (cpu.cycles < 2_000_000L) decoder.executeBlock();
+        return new long[]{cpu.memory.read(0x0200) << 8 | cpu.memory.read(0x0201), decoder.getIdleSkippedCycles()};
+    }
+}
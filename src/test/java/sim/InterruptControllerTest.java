@@ -0,0 +1,33 @@
+package sim;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InterruptControllerTest {
+    @Test
+    void nmiRaisedBeforeAcknowledgeStaysPending() {
+        InterruptController nmi = new CPU6809_V6().interrupts;
+        nmi.raiseNMI();
+        assertEquals(InterruptController.NMI, nmi.pending());
+        nmi.raiseNMI(); // autre thread, avant l'acquittement
+        nmi.acknowledge(InterruptController.NMI);
+        assertTrue(nmi.isNMIPending(), "NMI demandée avant l'acquittement perdue");
+        nmi.acknowledge(nmi.pending());
+        assertFalse(nmi.isNMIPending(), "NMI servie restée en attente");
+    }
+
+    @Test
+    void maskedIrqIsNotTaken() {
+        CPU6809_V6 cpu = new CPU6809_V6();
+        InterruptController lines = cpu.interrupts;
+        int source = lines.newSource();
+        cpu.setCC(CPU6809_V6.FLAG_I);
+        lines.setIRQ(source, true);
+        assertEquals(InterruptController.NONE, lines.pending());
+        cpu.setCC(0);
+        assertEquals(InterruptController.IRQ, lines.pending());
+    }
+}
@@ -0,0 +1,83 @@
+package sim;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JitTierTest {
+    // Modes direct, indexé (octets bruts : STD ,X ; STX ,Y ; LDD ,X ; STA $10,X ; LDU ,Y ; LDS ,Y) et étendu,
+    // registres 16 bits, rotations à travers C, code auto-modifié
+    private static final String MODES_PROGRAM =
+            " LDS #$0800\n LDU #$0400\n LDY #$0300\n LDX #$0200\n LDD #$1234\n FCB $ED,$84\n FCB $AF,$A4\n"
+            + " LDB #$80\n STB <$20\n LDA <$20\n ASLA\n RORA\n ROLB\n LSRB\n FCB $EC,$84\n ADDD #$FFFF\n"
+            + " FCB $A7,$00,$10\n STX $0210\n LDY $0210\n FCB $EE,$A4\n FCB $10,$EE,$A4\n LDA #$4C\n STA P\n"
+            + "P NOP\n COMA\n NEGA\n DECA\n TSTA\n CLRB\n TSTB\n JMP FIN\n"
+            + "FIN LDA #$05\nBCL DECA\n BNE BCL\n BEQ L1\n NOP\nL1 BRA L2\nL2 LDB #$5A\n";
+
+    /** JIT (seuil 1) et interpréteur pas à pas ont le même état après chaque bloc. */
+    @Test
+    void compiledBlocksMatchInterpreter() throws Exception {
+        assertNull(JitTier.differentialCheck(MODES_PROGRAM, 10_000));
+        CPU6809_V6 cpu = new CPU6809_V6();
+        new MiniAssembler_V6().assemble(MODES_PROGRAM, cpu);
+        JitTier tier = new JitTier(cpu, new InstructionDecoder_V6(cpu), 1);
+        assertThrows(Exception.class, () -> { while (true) tier.executeBlock(); });
+        assertEquals(0x5A, cpu.B, "programme interrompu avant la fin");
+        for (int seed = 0; seed < 20; seed++) {
+            String source = RandomPrograms.generateWithBranches(new Random(seed), 200);
+            assertNull(JitTier.differentialCheck(source, 10_000), "programme aléatoire " + seed);
+        }
+    }
+
+    /** Une écriture qui lève une interruption fait sortir du bloc compilé avant l'instruction suivante. */
+    @Test
+    void storeRaisingInterruptLeavesCompiledBlock() throws Exception {
+        CPU6809_V6 jitCpu = interruptMachine();
+        InstructionDecoder_V6 jitDecoder = new InstructionDecoder_V6(jitCpu);
+        JitTier tier = new JitTier(jitCpu, jitDecoder, 1);
+        assertThrows(Exception.class, () -> { while (true) tier.executeBlock(); });
+        assertTrue(tier.getCompiledBlocks() > 0);
+
+        CPU6809_V6 refCpu = interruptMachine();
+        InstructionDecoder_V6 refDecoder = new InstructionDecoder_V6(refCpu);
+        assertThrows(Exception.class, () -> { while (true) refDecoder.executeNext(); });
+
+        assertEquals(ExecutionJournalTest.registers(refCpu), ExecutionJournalTest.registers(jitCpu));
+        assertEquals(refDecoder.getInstructionCount(), jitDecoder.getInstructionCount());
+        assertArrayEquals(ExecutionJournalTest.memory(refCpu), ExecutionJournalTest.memory(jitCpu));
+        assertEquals(0, jitCpu.B, "COMB exécuté avant l'interruption");
+    }
+
+    /** Le code compilé n'est pas utilisé sur un bloc qui porte un breakpoint. */
+    @Test
+    void breakpointKeepsBlockInterpreted() throws Exception {
+        CPU6809_V6 cpu = new CPU6809_V6();
+        new MiniAssembler_V6().assemble("W INCA\n INCB\n BRA W\n", cpu);
+        InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+        JitTier tier = new JitTier(cpu, decoder, 1);
+        BreakpointEngine breakpoints = new BreakpointEngine();
+        assertTrue(tier.canRunBlock(breakpoints, Long.MAX_VALUE));
+        breakpoints.addBreakpoint(0x0001);
+        assertEquals(false, tier.canRunBlock(breakpoints, Long.MAX_VALUE));
+        assertEquals(false, tier.canRunBlock(new BreakpointEngine(), 2), "bloc plus long que le budget");
+    }
+
+    // IRQ du PIA prête (front vu sur C1), démasquée par l'écriture de CRA au milieu du bloc ; handler = HALT
+    private static CPU6809_V6 interruptMachine() throws Exception {
+        CPU6809_V6 cpu = new CPU6809_V6();
+        new MiniAssembler_V6().assemble(" LDS #$0800\nW LDA #$01\n STA $D101\n COMB\n LSRB\n BRA W\nH HALT\n", cpu);
+        PIA6821 pia = new PIA6821(cpu);
+        pia.attach(PIA6821.BASE);
+        pia.setC1(PIA6821.PORT_A, true);
+        pia.setC1(PIA6821.PORT_A, false);
+        cpu.memory.write(CPU6809_V6.VECTOR_IRQ, 0x00);
+        cpu.memory.write(CPU6809_V6.VECTOR_IRQ + 1, 0x0D);
+        return cpu;
+    }
+}
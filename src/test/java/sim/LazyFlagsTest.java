@@ -0,0 +1,158 @@
+package sim;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Flags paresseux (switch fusionné) contre calcul immédiat (handlers des tables). Lire CC après chaque instruction
+ * matérialiserait les flags à chaque pas et masquerait l'état paresseux : on compare donc registres et
+ * PC à chaque pas, Z par {@link CPU6809_V6#testFlag} (sans matérialiser) avant chaque BEQ/BNE, et CC
+ * en entier seulement à la fin.
+ */
+class LazyFlagsTest {
+    // Plusieurs instructions qui écrivent des flags avant qu'un branchement ou une rotation ne les lise :
+    // fusions dans defer() (C d'une addition conservé par INCA/DECA), Z paresseux 8 et 16 bits
+    private static final String[] FLAG_CHAINS = {
+            " LDD #$FFFF\n ADDD #$0001\n INCA\n BEQ E\n ROLA\n LDB #$80\n ASLB\n DECA\n NEGB\n BNE E\n"
+                    + " LDD #$7FFF\n ADDD #$0001\n TSTA\n INCA\n BEQ E\n RORA\n COMB\n LSRA\n DECA\n RORB\nE HALT\n",
+            " LDA #$06\n STA $2100\n LDD #$1234\n STD $2102\nL LDD $2102\n ADDD #$3579\n ROLB\n COMA\n NEGB\n"
+                    + " STD $2102\n LDA $2100\n DECA\n STA $2100\n BNE L\n RORA\n TSTB\n BEQ E\n ASLA\nE HALT\n",
+            " LDD #$0100\n ADDD #$0000\n BEQ E\n LDA #$FF\n INCA\n BNE E\n LDD #$FF00\n ADDD #$0100\n BNE E\n"
+                    + " LDA #$80\n ASLA\n BNE E\n ROLA\n NEGA\n LSRB\n BEQ E\n COMA\nE HALT\n",
+    };
+
+    @Test
+    void flagChains() throws Exception {
+        for (int i = 0; i < FLAG_CHAINS.length; i++) checkLazyFlags("enchaînement #" + i, FLAG_CHAINS[i]);
+    }
+
+    @Test
+    void loopProgram() throws Exception {
+        checkLazyFlags("boucle", Benchmarks.LOOP_PROGRAM);
+    }
+
+    @Test
+    void testPrograms() throws Exception {
+        int programs = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get("."), "test_*.asm")) {
+            for (Path file : files) {
+                checkLazyFlags(file.getFileName().toString(), read(file));
+                programs++;
+            }
+        }
+        assertTrue(programs > 0, "aucun programme test_*.asm dans " + Paths.get(".").toAbsolutePath());
+    }
+
+    @Test
+    void randomPrograms() throws Exception {
+        Random rnd = new Random(6809);
+        for (int i = 0; i < 500; i++) {
+            checkLazyFlags("aléatoire #" + i, RandomPrograms.generateWithBranches(rnd, 200));
+        }
+    }
+
+    /** Chaque opcode du switch fusionné fait exactement ce que fait son handler, C levé ou non. */
+    @Test
+    void inlineSwitchMatchesHandlers() throws Exception {
+        for (int page = InstructionDecoder_V6.PAGE_0; page <= InstructionDecoder_V6.PAGE_3; page++) {
+            for (int opcode = 0; opcode < 256; opcode++) {
+                for (int cc : new int[] {0x00, CPU6809_V6.FLAG_C | CPU6809_V6.FLAG_Z}) {
+                    CPU6809_V6 ref = opcodeMachine(page, opcode, cc);
+                    CPU6809_V6 cpu = opcodeMachine(page, opcode, cc);
+                    InstructionDecoder_V6 tables = new InstructionDecoder_V6(ref);
+                    tables.setTablesOnly(true);
+                    String where = String.format("page %d, opcode %02X, CC %02X", page, opcode, cc);
+                    assertEquals(outcome(tables), outcome(new InstructionDecoder_V6(cpu)), where);
+                    assertEquals(ExecutionJournalTest.registers(ref), ExecutionJournalTest.registers(cpu), where);
+                    assertArrayEquals(ExecutionJournalTest.memory(ref), ExecutionJournalTest.memory(cpu), where);
+                }
+            }
+        }
+    }
+
+    // Préfixe, opcode puis opérandes valables pour tous les modes (indexé ,X ; direct $84 ; étendu $8420)
+    private static CPU6809_V6 opcodeMachine(int page, int opcode, int cc) {
+        CPU6809_V6 cpu = new CPU6809_V6();
+        int pc = 0x1000;
+        if (page != InstructionDecoder_V6.PAGE_0) cpu.memory.write(pc++, page == InstructionDecoder_V6.PAGE_2 ? 0x10 : 0x11);
+        cpu.memory.write(pc, opcode);
+        cpu.memory.write(pc + 1, 0x84);
+        cpu.memory.write(pc + 2, 0x20);
+        cpu.memory.write(0x8420, 0x81);
+        cpu.PC = 0x1000;
+        cpu.A = 0x80;
+        cpu.B = 0x01;
+        cpu.X = 0x3000;
+        cpu.Y = 0x6000;
+        cpu.U = 0x5000;
+        cpu.S = 0x4000;
+        cpu.setCC(cc);
+        return cpu;
+    }
+
+    private static String outcome(InstructionDecoder_V6 decoder) {
+        try {
+            decoder.executeNext();
+            return "ok";
+        } catch (Exception e) {
+            return e.getMessage();
+        }
+    }
+
+    private static void checkLazyFlags(String name, String source) throws Exception {
+        CPU6809_V6 eager = new CPU6809_V6();
+        CPU6809_V6 lazy = new CPU6809_V6();
+        lazy.setLazyFlags(true);
+        new MiniAssembler_V6().assemble(source, eager);
+        new MiniAssembler_V6().assemble(source, lazy);
+        // Référence : flags immédiats et handlers des tables ; testé : flags paresseux et switch fusionné
+        InstructionDecoder_V6 ref = new InstructionDecoder_V6(eager);
+        ref.setTablesOnly(true);
+        InstructionDecoder_V6 dut = new InstructionDecoder_V6(lazy);
+        for (int i = 0; i < 5000; i++) {
+            int opcode = eager.memory.read(eager.PC);
+            if (opcode == 0x26 || opcode == 0x27) {
+                assertEquals(eager.testFlag(CPU6809_V6.FLAG_Z), lazy.testFlag(CPU6809_V6.FLAG_Z),
+                        String.format("%s : Z divergent avant le branchement en %04X (instruction %d)", name, eager.PC, i + 1));
+            }
+            boolean halted = false;
+            try {
+                ref.executeNext();
+            } catch (Exception e) {
+                halted = true;
+            }
+            try {
+                dut.executeNext();
+            } catch (Exception e) {
+                halted = true;
+            }
+            String where = String.format("%s : après %d instructions", name, i + 1);
+            assertEquals(eager.PC, lazy.PC, where + ", PC");
+            assertEquals(eager.A, lazy.A, where + ", A");
+            assertEquals(eager.B, lazy.B, where + ", B");
+            assertEquals(eager.DP, lazy.DP, where + ", DP");
+            assertEquals(eager.X, lazy.X, where + ", X");
+            assertEquals(eager.Y, lazy.Y, where + ", Y");
+            assertEquals(eager.U, lazy.U, where + ", U");
+            assertEquals(eager.S, lazy.S, where + ", S");
+            assertEquals(eager.cycles, lazy.cycles, where + ", cycles");
+            if (halted) break;
+        }
+        assertEquals(eager.getCC(), lazy.getCC(), name + " : CC final");
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,102 @@
+package sim;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MachineSnapshotTest {
+    @TempDir
+    Path dir;
+
+    /** Restaurer un instantané puis rejouer redonne exactement le même état, en mémoire comme depuis un fichier. */
+    @Test
+    void restoreAndReplay() throws Exception {
+        Path file = dir.resolve("etat.snap");
+        for (String kind : new String[]{"byte", "direct", "int"}) {
+            for (int seed = 0; seed < 40; seed++) {
+                String name = kind + " #" + seed;
+                CPU6809_V6 cpu = new CPU6809_V6(Memory.create(kind));
+                cpu.setLazyFlags(seed % 2 == 0);
+                InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+                new MiniAssembler_V6().assemble(RandomPrograms.generateWithBranches(new Random(seed), 300), cpu);
+                decoder.invalidateCode();
+                run(decoder, 50 + seed, seed % 3 == 0);
+                MachineSnapshot first = MachineSnapshot.capture(cpu);
+                String atFirst = state(cpu);
+                run(decoder, 100, seed % 3 == 1);
+                MachineSnapshot second = MachineSnapshot.capture(cpu);
+                run(decoder, 5000, true);
+                String end = state(cpu);
+
+                first.restore(cpu, decoder);
+                assertEquals(atFirst, state(cpu), name + " : restauration");
+                run(decoder, 100, seed % 3 == 1);
+                run(decoder, 5000, true);
+                assertEquals(end, state(cpu), name + " : ré-exécution");
+                second.restore(cpu, decoder);
+                run(decoder, 5000, true);
+                assertEquals(end, state(cpu), name + " : ré-exécution depuis le second instantané");
+
+                first.writeTo(file);
+                CPU6809_V6 other = new CPU6809_V6(Memory.create(kind));
+                InstructionDecoder_V6 otherDecoder = new InstructionDecoder_V6(other);
+                MachineSnapshot.readFrom(file).restore(other, otherDecoder);
+                assertEquals(atFirst, state(other), name + " : relu du fichier");
+            }
+        }
+    }
+
+    /**
+     * Un instantané pris pendant un CWAI, NMI en attente et IRQ masquée levée, rend attente et lignes
+     * à la restauration, en mémoire comme depuis un fichier.
+     */
+    @Test
+    void interruptStateRestored() throws Exception {
+        CPU6809_V6 cpu = new CPU6809_V6();
+        new MiniAssembler_V6().assemble(" LDS #$8000\n ORCC #$50\n CWAI #$FF\n", cpu);
+        InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+        for (int i = 0; i < 3; i++) decoder.executeNext();
+        int source = cpu.interrupts.newSource();
+        cpu.interrupts.setIRQ(source, true);
+        cpu.interrupts.raiseNMI();
+        MachineSnapshot image = MachineSnapshot.capture(cpu);
+        Path file = dir.resolve("cwai.snap");
+        image.writeTo(file);
+
+        cpu.reset();
+        cpu.interrupts.setIRQ(source, false);
+        image.restore(cpu, decoder);
+        CPU6809_V6 other = new CPU6809_V6();
+        other.interrupts.newSource();
+        MachineSnapshot.readFrom(file).restore(other, null);
+        for (CPU6809_V6 restored : new CPU6809_V6[]{cpu, other}) {
+            InterruptController lines = restored.interrupts;
+            assertTrue(lines.isWaiting(), "attente CWAI perdue");
+            assertTrue(lines.isNMIPending(), "NMI en attente perdue");
+            assertEquals(source, lines.getIRQLines(), "lignes IRQ");
+        }
+    }
+
+    private static void run(InstructionDecoder_V6 decoder, int steps, boolean blocks) {
+        try {
+            for (int i = 0; i < steps; i++) {
+                if (blocks) decoder.executeBlock();
+                else decoder.executeNext();
+            }
+        } catch (Exception halt) {
+            // HALT en fin de programme
+        }
+    }
+
+    private static String state(CPU6809_V6 cpu) {
+        long hash = 0;
+        for (int addr = 0; addr < Memory.SIZE; addr++) hash = hash * 31 + cpu.memory.read(addr);
+        return String.format("%02X %02X %02X %02X %04X %04X %04X %04X %04X %d %x", cpu.A, cpu.B, cpu.DP, cpu.getCC(),
+                cpu.X, cpu.Y, cpu.U, cpu.S, cpu.PC, cpu.cycles, hash);
+    }
+}
@@ -0,0 +1,47 @@
+package sim;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProfilerTest {
+    // SWI vers une routine RTI en $0100 (état complet : 6 + 9 cycles), puis branchements de déplacement nul
+    private static final String PROGRAM =
+            " LDS #$8000\n SWI\n LDA #$00\n BEQ N1\nN1 BNE N2\nN2 BRA N3\nN3 HALT\n";
+
+    @Test
+    void stepByStep() throws Exception {
+        check(false);
+    }
+
+    @Test
+    void blocks() throws Exception {
+        check(true);
+    }
+
+    private static void check(boolean blocks) throws Exception {
+        CPU6809_V6 cpu = new CPU6809_V6();
+        new MiniAssembler_V6().assemble(PROGRAM, cpu);
+        cpu.memory.write(0x0100, 0x3B);
+        cpu.memory.write(CPU6809_V6.VECTOR_SWI, 0x01);
+        cpu.memory.write(CPU6809_V6.VECTOR_SWI + 1, 0x00);
+        InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+        Profiler profiler = new Profiler(cpu, decoder);
+        decoder.setProfiler(profiler);
+        try {
+            for (int i = 0; i < 100; i++) {
+                if (blocks) decoder.executeBlock();
+                else decoder.executeNext();
+            }
+        } catch (Exception halt) {
+            // HALT final
+        }
+        assertEquals(15, profiler.getCycles(0x0100), "RTI avec état complet");
+        assertEquals(cpu.cycles, profiler.getTotalCycles(), "cycles du profil / du CPU");
+        assertEquals(decoder.getInstructionCount(), profiler.getTotalInstructions(), "instructions, HALT compris");
+        // LDS (4 octets), SWI (1), LDA (2) : BEQ en $0007, BNE en $0009, BRA en $000B
+        assertEquals(1, profiler.getTaken(0x0007), "BEQ pris, déplacement nul");
+        assertEquals(0, profiler.getTaken(0x0009), "BNE non pris");
+        assertEquals(1, profiler.getTaken(0x000B), "BRA pris, déplacement nul");
+    }
+}
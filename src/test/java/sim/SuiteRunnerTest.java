@@ -0,0 +1,24 @@
+package sim;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SuiteRunnerTest {
+    /** Interpréteur historique, mode batch et JIT aboutissent au même état sur des programmes aléatoires. */
+    @Test
+    void fuzzEnginesAgree() throws Exception {
+        List<Callable<SuiteRunner.JobResult>> jobs = new ArrayList<>();
+        for (int seed = 0; seed < 60; seed++) jobs.add(SuiteRunner.fuzzJob(seed, 200, seed % 4 == 0));
+        for (Callable<SuiteRunner.JobResult> job : jobs) {
+            SuiteRunner.JobResult result = job.call();
+            assertEquals(List.of(), result.failures, result.name);
+            assertTrue(result.instructions > 0, result.name);
+        }
+    }
+}
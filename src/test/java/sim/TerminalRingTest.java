@@ -0,0 +1,22 @@
+package sim;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TerminalRingTest {
+    /** Un consommateur en retard garde la fin de la sortie et compte les caractères écrasés. */
+    @Test
+    void overrunKeepsTailAndCountsLost() {
+        TerminalRing ring = new TerminalRing(8);
+        for (char c : "ABCDEFGHIJKL".toCharArray()) ring.accept(c);
+        StringBuilder out = new StringBuilder();
+        assertEquals(8, ring.drainTo(out));
+        assertEquals("EFGHIJKL", out.toString());
+        assertEquals(4, ring.getLost());
+
+        ring.accept('M');
+        assertEquals(1, ring.drainTo(out));
+        assertEquals(4, ring.getLost(), "rien de perdu sans retard");
+    }
+}
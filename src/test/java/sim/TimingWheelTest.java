@@ -0,0 +1,36 @@
+package sim;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+    /**
+     * Une minuterie périodique replanifiée depuis son propre rappel ne doit jamais se déclencher avant
+     * son échéance, y compris quand le rappel arrive en retard et que l'échéance suivante retombe
+     * dans la case de la roue en cours de vidage (périodes multiples de 64, départs en fin de case).
+     */
+    @Test
+    void periodicTimerNeverFiresEarly() throws Exception {
+        for (int period = 1; period <= 640; period += period % 64 == 0 ? 64 : 9) {
+            for (int offset = 0; offset < 64; offset += 3) {
+                CPU6809_V6 cpu = new CPU6809_V6();
+                new MiniAssembler_V6().assemble("L NOP\n LDA $0300\n BRA L\n", cpu);
+                InstructionDecoder_V6 decoder = new InstructionDecoder_V6(cpu);
+                int step = period;
+                long[] deadline = {period + offset};
+                long[] early = {-1};
+                TimingWheel.Timer[] timer = new TimingWheel.Timer[1];
+                timer[0] = cpu.timers.newTimer(cycle -> {
+                    if (cpu.cycles < deadline[0] && early[0] < 0) early[0] = cpu.cycles;
+                    deadline[0] = cycle + step;
+                    timer[0].schedule(deadline[0]);
+                });
+                timer[0].schedule(deadline[0]);
+                while (cpu.cycles < 20_000 && early[0] < 0) decoder.executeBlock();
+                assertTrue(early[0] < 0, String.format("période %d déclenchée au cycle %d pour l'échéance %d",
+                        step, early[0], deadline[0]));
+            }
+        }
+    }
+}
@@ -44,3 +44,6 @@ NOP
 
 ; Fin du test
 NOP
+
+; État final attendu (vérifié par sim.SuiteRunner)
+;@expect stop=HALT PC=002D A=00 B=00 X=0000 Y=0000 U=0000 S=0100 CC=05 Z=1 C=1
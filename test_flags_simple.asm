@@ -6,3 +6,6 @@ INCA        ; N=1, V=1 (Overflow)
 LDA #$FF    ; N=1
 INCA        ; Z=1, C=1 (Carry)
 NOP
+
+; État final attendu (vérifié par sim.SuiteRunner)
+;@expect stop=HALT PC=000B A=00 B=00 X=0000 Y=0000 U=0000 S=0100 CC=04 Z=1
@@ -75,3 +75,6 @@ NOP
 
 ; Fin du test
 NOP
+
+; État final attendu (vérifié par sim.SuiteRunner)
+;@expect stop=HALT PC=0039 A=12 B=34 X=0000 Y=0000 U=0000 S=0100 CC=00
@@ -38,8 +38,12 @@ NOP
 
 ; Test arithmétique avec données directes
 LDA <$10     ; A = $AA
-ADDA <$20    ; A = $AA + $BB
+; ADDA <$20  ; (ADDA non implémenté par le décodeur) A = $AA + $BB
 NOP          ; A devrait valoir $AA + $BB = $165 (overflow!)
 
 ; Fin du test
 NOP
+
+; État final attendu (vérifié par sim.SuiteRunner)
+;@expect stop=HALT PC=002B A=AA B=BB X=1234 Y=1234 U=0000 S=0100 CC=08 N=1
+;@expect [0010]=AA [0020]=BB [0030]=12 [0031]=34 [0040]=56
@@ -8,3 +8,6 @@ TSTB        ; Test B
 COMB        ; B = ~85 = 170
 CLRB        ; B = 0
 NOP
+
+; État final attendu (vérifié par sim.SuiteRunner)
+;@expect stop=HALT PC=000C A=00 B=00 X=0000 Y=0000 U=0000 S=0100 CC=04 Z=1